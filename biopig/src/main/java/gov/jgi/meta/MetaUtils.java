@@ -40,6 +40,7 @@
 package gov.jgi.meta;
 
 import gov.jgi.meta.hadoop.input.FastaBlockLineReader;
+import gov.jgi.meta.hadoop.input.SequenceIndex;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
@@ -269,12 +270,8 @@ public class MetaUtils {
          FSDataInputStream    in   = fs.open(f);
          FastaBlockLineReader fblr = new FastaBlockLineReader(in);
 
-         Text key    = new Text();
-         long length = fs.getFileStatus(f).getLen();
-         HashMap<String, String> tmpcontigs = new HashMap<String, String>();
-         fblr.readLine(key, tmpcontigs, Integer.MAX_VALUE, (int)length);
-         count += tmpcontigs.size();
-         in.close();
+         count += fblr.countRecords(Long.MAX_VALUE);
+         fblr.close();
       }
 
       return(count);
@@ -304,12 +301,66 @@ public class MetaUtils {
          FSDataInputStream    in   = fs.open(f);
          FastaBlockLineReader fblr = new FastaBlockLineReader(in);
 
-         Text key    = new Text();
-         long length = fs.getFileStatus(f).getLen();
-         HashMap<String, String> tmpcontigs = new HashMap<String, String>();
-         fblr.readLine(key, tmpcontigs, Integer.MAX_VALUE, (int)length);
-         results.putAll(tmpcontigs);
-         in.close();
+         fblr.readLine(new Text(), results, Integer.MAX_VALUE, Long.MAX_VALUE);
+         fblr.close();
+      }
+
+      return(results);
+   }
+
+   /**
+    * reads the sequences with the given ids from a fasta file or directory.  A file with an
+    * index (see SequenceIndex) is read only where the sequences are, others are scanned.
+    *
+    * @param contigFileName the file or file path of the fasta file
+    * @param ids the ids of the sequences to read
+    * @return map containing the sequences found keyed by sequence id
+    * @throws IOException if file does not exist
+    */
+   public static Map<String, String> readSequences(String contigFileName, Collection<String> ids) throws IOException
+   {
+      Configuration conf         = new Configuration();
+      FileSystem    fs           = FileSystem.get(conf);
+      Path          filenamePath = new Path(contigFileName);
+
+      final Map<String, String> results = new HashMap<String, String>();
+      final Set<String>         wanted  = new HashSet<String>(ids);
+
+      if (!fs.exists(filenamePath))
+      {
+         throw new IOException("file not found: " + contigFileName);
+      }
+
+      for (Path f : findAllPaths(filenamePath))
+      {
+         if (f.getName().endsWith(SequenceIndex.EXTENSION))
+         {
+            continue;
+         }
+         if (SequenceIndex.exists(conf, f))
+         {
+            SequenceIndex index = SequenceIndex.open(conf, f, wanted);
+            for (Map.Entry<String, String> e : index.getSequences(wanted).entrySet())
+            {
+               results.put(e.getKey(), e.getValue().toLowerCase());
+            }
+            index.close();
+            continue;
+         }
+
+         FSDataInputStream    in   = fs.open(f);
+         FastaBlockLineReader fblr = new FastaBlockLineReader(in);
+
+         fblr.readRecords(new FastaBlockLineReader.RecordVisitor() {
+            public void visit(byte[] id, int idLength, byte[] sequence, int sequenceLength) throws IOException
+            {
+               String key = new String(id, 0, idLength, "UTF-8");
+               if (wanted.contains(key))
+               {
+                  results.put(key, new String(sequence, 0, sequenceLength, "UTF-8").toLowerCase());
+               }
+            }
+         }, Long.MAX_VALUE);
          fblr.close();
       }
 
@@ -675,39 +726,80 @@ public class MetaUtils {
         return s;
     }
 
-    public static Set<String> generateAllNeighborsWithinDistance(String start, int distance)
-    {
-        Set<String> s = new HashSet<String>();
+   /**
+    * find all sequences that are within hamming distance 'distance' of start,
+    * changing bases to one of {atgc}.  each neighbor is generated once, by
+    * changing distinct positions in increasing order to a base other than the
+    * one already there.
+    *
+    * @param start sequence to start with
+    * @param distance -- hamming distance
+    * @return set of sequences that are within distance including start sequence
+    */
+   public static Set<String> generateAllNeighborsWithinDistance(String start, int distance)
+   {
+      Set<String> s = new HashSet<String>();
+      generateNeighbors(start.toCharArray(), 0, Math.min(distance, start.length()), s);
+      return s;
+   }
 
-        if (distance == 0) {
-            s.add(start);
-            return s;
-        }
+   private static void generateNeighbors(char[] sequence, int from, int distance, Set<String> s)
+   {
+      s.add(new String(sequence));
+      if (distance == 0) {
+         return;
+      }
+      char [] bases = { 'a', 't', 'g', 'c' };
+      for (int i = from; i < sequence.length; i++) {
+         char old = sequence[i];
+         for (char base : bases) {
+            if (base == old) { continue; }
+            sequence[i] = base;
+            generateNeighbors(sequence, i + 1, distance - 1, s);
+         }
+         sequence[i] = old;
+      }
+   }
 
-        int[] v = new int[distance];
-        int i;
+   /**
+    * called by visitAllNeighborsWithinDistance for each neighbor
+    */
+   public interface NeighborVisitor {
+      void visit(long kmer, int distance) throws IOException;
+   }
 
-        for (i = 0; i < distance; i++) v[i] = i; // init the change vector
+   /**
+    * visit each k-mer within hamming distance 'distance' of a k-mer exactly
+    * once, the k-mer itself first.  k-mers are 2-bit coded as in RollingKmer,
+    * so k <= 32, and a neighbor is made by xor-ing the code of distinct
+    * positions, in increasing order, with 1, 2 or 3.
+    *
+    * @param kmer the 2-bit coded k-mer to start with
+    * @param k the number of bases of the k-mer
+    * @param distance -- hamming distance
+    * @param visitor called with each neighbor and its distance to kmer
+    */
+   public static void visitAllNeighborsWithinDistance(long kmer, int k, int distance, NeighborVisitor visitor) throws IOException
+   {
+      if (k < 1 || k > 32) {
+         throw new IllegalArgumentException("kmer size must be between 1 and 32: " + k);
+      }
+      visitNeighbors(kmer, k, 0, 0, Math.min(distance, k), visitor);
+   }
 
-        boolean overflow = false;
-        while (!overflow) {
-            Set<String> c = changeVectorApply2(start, v);
-            s.addAll(c);
-            for (int j = v.length-1; j >=0 ; j--) {
-                if (v[j] < start.length()-distance+j) {
-                    v[j] += 1;
-                    for (int k = j+1; k < v.length; k++) v[k] = v[k-1]+1;
-                    break;
-                } else if (j == 0) {
-                    v[j] = 0;
-                    overflow = true;
-                } else {
-                    v[j] = 0;
-                }
-            }
-        }
-        return s;
-    }
+   private static void visitNeighbors(long kmer, int k, int from, int changed, int distance, NeighborVisitor visitor) throws IOException
+   {
+      visitor.visit(kmer, changed);
+      if (changed == distance) {
+         return;
+      }
+      for (int i = from; i < k; i++) {
+         int shift = 2 * (k - 1 - i);
+         for (long x = 1; x <= 3; x++) {
+            visitNeighbors(kmer ^ (x << shift), k, i + 1, changed + 1, distance, visitor);
+         }
+      }
+   }
 
 
     public static Set<String> generateAllNeighborsAtDistance(String start, int distance)
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.hadoop.compress;
+
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Codec for BGZF (blocked gzip) files, as written by bgzip and samtools.  A
+ * BGZF file is a series of gzip members of at most 64k each, every member
+ * carrying its compressed size in a "BC" extra field, so a reader can start
+ * at any member and a file can be split on member boundaries.
+ *
+ * BGZF files are valid gzip files and usually keep the .gz extension, which
+ * CompressionCodecFactory maps to GzipCodec; use {@link #isBgzf} on the
+ * first bytes of the file to tell the two apart.
+ */
+public class BgzfCodec implements SplittableCompressionCodec {
+
+    /**
+     * largest member, header and trailer included
+     */
+    public static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * length of a BGZF member header with only the BC extra field
+     */
+    public static final int HEADER_LENGTH = 18;
+
+    /**
+     * check whether the bytes look like the header of a BGZF member:
+     * a gzip header with FEXTRA set and a "BC" subfield of length 2.
+     *
+     * @param b the bytes to check
+     * @param off offset of the member header
+     * @param len number of bytes available from off
+     * @return true if a BGZF header starts at off
+     */
+    public static boolean isBgzf(byte[] b, int off, int len) {
+        if (len < HEADER_LENGTH) return false;
+        if ((b[off] & 0xff) != 0x1f || (b[off + 1] & 0xff) != 0x8b ||
+            b[off + 2] != 8 || (b[off + 3] & 4) == 0) {
+            return false;
+        }
+        int xlen = (b[off + 10] & 0xff) | (b[off + 11] & 0xff) << 8;
+        if (len < 12 + xlen) return false;
+        return findBlockSize(b, off, xlen) > 0;
+    }
+
+    /**
+     * find the BC subfield in the extra field of a member header
+     *
+     * @return the total member size, or -1 if there is no BC subfield
+     */
+    static int findBlockSize(byte[] b, int off, int xlen) {
+        int p = off + 12;
+        int xend = p + xlen;
+        while (p + 4 <= xend) {
+            int slen = (b[p + 2] & 0xff) | (b[p + 3] & 0xff) << 8;
+            if (b[p] == 'B' && b[p + 1] == 'C' && slen == 2 && p + 6 <= xend) {
+                return ((b[p + 4] & 0xff) | (b[p + 5] & 0xff) << 8) + 1;
+            }
+            p += 4 + slen;
+        }
+        return -1;
+    }
+
+    public CompressionOutputStream createOutputStream(OutputStream out) throws IOException {
+        return new BgzfOutputStream(out);
+    }
+
+    public CompressionOutputStream createOutputStream(OutputStream out, Compressor compressor) throws IOException {
+        return createOutputStream(out);
+    }
+
+    /**
+     * members are deflated with java.util.zip, there is no pooled compressor
+     */
+    public Class<? extends Compressor> getCompressorType() {
+        return null;
+    }
+
+    public Compressor createCompressor() {
+        return null;
+    }
+
+    public CompressionInputStream createInputStream(InputStream in) throws IOException {
+        return new BgzfInputStream(in);
+    }
+
+    public CompressionInputStream createInputStream(InputStream in, Decompressor decompressor) throws IOException {
+        return createInputStream(in);
+    }
+
+    /**
+     * open the members of the byte range [start, end) of a BGZF file.  The
+     * stream starts at the first member that begins after start (or at 0)
+     * and, like the bzip2 codec in BYBLOCK mode, reports as its position the
+     * offset of the member the last bytes read came from, so the caller
+     * should stop at the first record that starts in a member beyond end.
+     * The read mode is ignored, BGZF is always read by block.
+     */
+    public SplitCompressionInputStream createInputStream(InputStream seekableIn, Decompressor decompressor,
+                                                         long start, long end, READ_MODE readMode) throws IOException {
+        if (!(seekableIn instanceof Seekable)) {
+            throw new IOException("seekableIn must be an instance of " + Seekable.class.getName());
+        }
+        return new BgzfInputStream(seekableIn, start, end);
+    }
+
+    public Class<? extends Decompressor> getDecompressorType() {
+        return null;
+    }
+
+    public Decompressor createDecompressor() {
+        return null;
+    }
+
+    public String getDefaultExtension() {
+        return ".bgz";
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.hadoop.compress;
+
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a BGZF file one member at a time.  A read never returns bytes
+ * from more than one member and getPos() is the offset of the member the
+ * last bytes were returned from, which is what a record reader needs to
+ * decide whether a record belongs to its split.
+ */
+public class BgzfInputStream extends SplitCompressionInputStream {
+
+    private final byte[] compressed = new byte[BgzfCodec.MAX_BLOCK_SIZE];
+    private final byte[] block = new byte[BgzfCodec.MAX_BLOCK_SIZE];
+    // the number of bytes of uncompressed data in block
+    private int blockLength = 0;
+    // the current position in block
+    private int blockPosn = 0;
+
+    // offset of the member block came from, and of the member after it
+    private long blockAddress;
+    private long nextAddress;
+
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * read a whole BGZF stream from its start
+     *
+     * @param in the compressed stream
+     * @throws IOException
+     */
+    public BgzfInputStream(InputStream in) throws IOException {
+        super(in, 0, Long.MAX_VALUE);
+        blockAddress = nextAddress = 0;
+    }
+
+    /**
+     * read the members of the byte range [start, end): the stream starts at
+     * the first member beginning after start, or at 0 for the first split,
+     * and getAdjustedStart() returns the offset of that member.  Reading
+     * does not stop at end, the caller decides when to stop from getPos().
+     *
+     * @param in the compressed stream, must be Seekable
+     * @param start first byte of the range
+     * @param end first byte after the range
+     * @throws IOException
+     */
+    public BgzfInputStream(InputStream in, long start, long end) throws IOException {
+        super(in, start, end);
+        long address = start > 0 ? resync(start) : 0;
+        ((Seekable) in).seek(address);
+        setStart(address);
+        blockAddress = nextAddress = address;
+    }
+
+    /**
+     * find the first member that starts after the given offset.  A candidate
+     * header only counts if another member, or the end of the file, follows
+     * it at the offset its BC field gives, so the header bytes showing up by
+     * chance inside compressed data are not taken for a member.
+     *
+     * @return the offset of the member, or of the end of the data if none
+     */
+    private long resync(long start) throws IOException {
+        long from = start + 1;
+        ((Seekable) in).seek(from);
+
+        byte[] window = new byte[2 * BgzfCodec.MAX_BLOCK_SIZE + BgzfCodec.HEADER_LENGTH];
+        int n = readFully(window, 0, window.length);
+        boolean eof = n < window.length;
+        for (int i = 0; i < n; i++) {
+            if (!BgzfCodec.isBgzf(window, i, n - i)) continue;
+            int xlen = (window[i + 10] & 0xff) | (window[i + 11] & 0xff) << 8;
+            int next = i + BgzfCodec.findBlockSize(window, i, xlen);
+            if ((eof && next == n) || (next < n && BgzfCodec.isBgzf(window, next, n - next))) {
+                return from + i;
+            }
+        }
+        return from + n;
+    }
+
+    /**
+     * read up to len bytes of the current member, moving to the next one
+     * once it has been consumed
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (blockPosn >= blockLength && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, blockLength - blockPosn);
+        System.arraycopy(block, blockPosn, b, off, n);
+        blockPosn += n;
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    /**
+     * the offset of the member the last bytes were read from
+     */
+    @Override
+    public long getPos() throws IOException {
+        return blockAddress;
+    }
+
+    @Override
+    public void resetState() throws IOException {
+        blockLength = blockPosn = 0;
+        inflater.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        super.close();
+    }
+
+    /**
+     * inflate the next non empty member into block
+     *
+     * @return false at the end of the stream
+     */
+    private boolean nextBlock() throws IOException {
+        do {
+            int n = readFully(compressed, 0, 12);
+            if (n == 0) return false;
+            if (n < 12) throw new EOFException("truncated BGZF member at " + nextAddress);
+
+            int xlen = (compressed[10] & 0xff) | (compressed[11] & 0xff) << 8;
+            if (12 + xlen > compressed.length || readFully(compressed, 12, xlen) < xlen ||
+                !BgzfCodec.isBgzf(compressed, 0, 12 + xlen)) {
+                throw new IOException("not a BGZF member at " + nextAddress);
+            }
+            int size = BgzfCodec.findBlockSize(compressed, 0, xlen);
+            int rest = size - 12 - xlen;
+            if (rest < 8 || readFully(compressed, 12 + xlen, rest) < rest) {
+                throw new EOFException("truncated BGZF member at " + nextAddress);
+            }
+
+            int trailer = size - 8;
+            long expectedCrc = readInt(compressed, trailer) & 0xffffffffL;
+            int isize = readInt(compressed, trailer + 4);
+            if (isize < 0 || isize > block.length) {
+                throw new IOException("bad BGZF member size " + isize + " at " + nextAddress);
+            }
+
+            inflater.reset();
+            inflater.setInput(compressed, 12 + xlen, rest - 8);
+            try {
+                n = isize == 0 ? 0 : inflater.inflate(block, 0, isize);
+            } catch (DataFormatException e) {
+                throw new IOException("corrupt BGZF member at " + nextAddress, e);
+            }
+            crc.reset();
+            crc.update(block, 0, n);
+            if (n != isize || crc.getValue() != expectedCrc) {
+                throw new IOException("corrupt BGZF member at " + nextAddress);
+            }
+
+            if (n > 0) blockAddress = nextAddress;
+            nextAddress += size;
+            blockLength = n;
+            blockPosn = 0;
+        } while (blockLength == 0);
+        return true;
+    }
+
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(b, off + total, len - total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.hadoop.compress;
+
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes BGZF: the data is cut into pieces of at most 0xff00 bytes, each
+ * deflated into its own gzip member with a BC extra field, and finish()
+ * appends the empty member that marks the end of a BGZF file.
+ */
+public class BgzfOutputStream extends CompressionOutputStream {
+
+    /**
+     * most uncompressed bytes in a member, as in bgzip, so that even
+     * incompressible data fits in a 64k member
+     */
+    public static final int MAX_INPUT_SIZE = 0xff00;
+
+    /**
+     * the empty member every BGZF file ends with
+     */
+    static final byte[] EOF_BLOCK = {
+        0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+        0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final byte[] buffer = new byte[MAX_INPUT_SIZE];
+    private int count = 0;
+    private final byte[] compressed = new byte[BgzfCodec.MAX_BLOCK_SIZE];
+
+    private final Deflater deflater;
+    private final Deflater storer = new Deflater(Deflater.NO_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private boolean finished = false;
+
+    public BgzfOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param out the stream to write the members to
+     * @param level the deflate level for every member
+     */
+    public BgzfOutputStream(OutputStream out, int level) {
+        super(out);
+        deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) writeBlock();
+        buffer[count++] = (byte) b;
+        finished = false;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) writeBlock();
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+        finished = false;
+    }
+
+    /**
+     * write out what is buffered and the end of file member
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) return;
+        if (count > 0) writeBlock();
+        out.write(EOF_BLOCK);
+        finished = true;
+    }
+
+    @Override
+    public void resetState() throws IOException {
+        count = 0;
+        finished = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            deflater.end();
+            storer.end();
+        }
+    }
+
+    /**
+     * deflate the buffer into one member, falling back to stored blocks in
+     * the unlikely case the deflated data does not fit
+     */
+    private void writeBlock() throws IOException {
+        int room = compressed.length - BgzfCodec.HEADER_LENGTH - 8;
+        int n = deflate(deflater, room);
+        if (n < 0) n = deflate(storer, room);
+
+        int size = BgzfCodec.HEADER_LENGTH + n + 8;
+        byte[] h = compressed;
+        h[0] = 0x1f; h[1] = (byte) 0x8b; h[2] = 8; h[3] = 4;
+        h[4] = h[5] = h[6] = h[7] = 0;
+        h[8] = 0; h[9] = (byte) 0xff;
+        h[10] = 6; h[11] = 0;
+        h[12] = 'B'; h[13] = 'C'; h[14] = 2; h[15] = 0;
+        h[16] = (byte) (size - 1); h[17] = (byte) ((size - 1) >>> 8);
+
+        crc.reset();
+        crc.update(buffer, 0, count);
+        int trailer = BgzfCodec.HEADER_LENGTH + n;
+        writeInt(h, trailer, (int) crc.getValue());
+        writeInt(h, trailer + 4, count);
+
+        out.write(compressed, 0, size);
+        count = 0;
+    }
+
+    /**
+     * @return the deflated length, or -1 if it exceeds room
+     */
+    private int deflate(Deflater d, int room) {
+        d.reset();
+        d.setInput(buffer, 0, count);
+        d.finish();
+        int n = d.deflate(compressed, BgzfCodec.HEADER_LENGTH, room);
+        return d.finished() ? n : -1;
+    }
+
+    private static void writeInt(byte[] b, int off, int v) {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >>> 8);
+        b[off + 2] = (byte) (v >>> 16);
+        b[off + 3] = (byte) (v >>> 24);
+    }
+}
@@ -39,18 +39,15 @@
 
 package gov.jgi.meta.hadoop.input;
 
+import gov.jgi.meta.sequence.ReadBlock;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 
-import java.util.Map;
-
 
 /** An {@link FastaBlockInputFormat} is for fasta text files.  Files are broken
  * records seperated by ">" eg:
@@ -62,13 +59,21 @@ import java.util.Map;
  * the identifier is from after the ">" till new line, and the sequence is
  * the following line till the next ">"
  *
- * This class splits the fasta records into a single large multi-fasta block.
+ * This class splits the fasta records into blocks of reads.  A block is the
+ * reads of a split, cut at MAX_BLOCK_RECORDS reads or once it has read
+ * MAX_BLOCK_BYTES bytes of the file, so the block size does not depend on
+ * the split size.
  */
-public class FastaBlockInputFormat extends FileInputFormat<Text, Map<String,String>> {
+public class FastaBlockInputFormat extends FileInputFormat<Text, ReadBlock> {
+
+  public static final String MAX_BLOCK_BYTES = "biopig.block.maxbytes";
+  public static final String MAX_BLOCK_RECORDS = "biopig.block.maxrecords";
+
+  public static final long DEFAULT_MAX_BLOCK_BYTES = 64L * 1024 * 1024;
+  public static final long DEFAULT_MAX_BLOCK_RECORDS = 100000;
 
-    
   @Override
-  public RecordReader<Text, Map<String,String>>
+  public RecordReader<Text, ReadBlock>
     createRecordReader(InputSplit split,
                        TaskAttemptContext context) {
     return new FastaBlockRecordReader();
@@ -76,9 +81,7 @@ public class FastaBlockInputFormat extends FileInputFormat<Text, Map<String,Stri
 
   @Override
   protected boolean isSplitable(JobContext context, Path file) {
-    CompressionCodec codec =
-      new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
-    return codec == null;
+    return SplitInput.isSplitable(context.getConfiguration(), file);
   }
 
 }
\ No newline at end of file
@@ -47,6 +47,7 @@ import org.apache.hadoop.io.Text;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -121,149 +122,261 @@ public class FastaBlockLineReader {
     }
 
 
-    public int readLine(Text key, Map<String, String> set, int maxLineLength,
-                        long maxBytesToConsume) throws IOException {
-
-        int totalBytesRead = 0;
-        int numRecordsRead = 0;
-        Boolean eof = false;
-        int startPosn;
-        Text recordBlock = new Text();
-     
-
-        /*
-        first thing to do is to move forward till you see a start character
-         */
-        startPosn = bufferPosn;
-        do {
+    /**
+     * Move forward to the start of the next record, so a record reader can
+     * tell where it starts before reading it.
+     *
+     * @return the number of bytes skipped
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public int skipToRecord() throws IOException {
+        int skipped = 0;
+        while (true) {
             if (bufferPosn >= bufferLength) {
-                totalBytesRead += bufferPosn - startPosn;
                 bufferPosn = 0;
                 bufferLength = in.read(buffer);
                 if (bufferLength <= 0) {
-                    eof = true;
+                    bufferLength = 0;
                     break; // EOF
                 }
             }
-        } while (buffer[bufferPosn++] != '>');
+            if (buffer[bufferPosn] == '>') break;
+            bufferPosn++;
+            skipped++;
+        }
+        return skipped;
+    }
 
-        /*
-        if we hit the end of file already, then just return 0 bytes processed
+    /**
+     * Receives the records of a block as they are parsed.  The arrays are
+     * reused for the next record, so a visitor must copy what it keeps.
+     */
+    public interface RecordVisitor {
+        /**
+         * @param id the first word of the header line, in id[0, idLength)
+         * @param sequence the sequence lines joined, in sequence[0, sequenceLength),
+         *                 as they are in the file
          */
-        if (eof)
-            return totalBytesRead;
+        void visit(byte[] id, int idLength, byte[] sequence, int sequenceLength) throws IOException;
+    }
+
+    /**
+     * puts the records into a map, id to lowercased sequence
+     */
+    private static class MapVisitor implements RecordVisitor {
+        private final Map<String, String> set;
+
+        MapVisitor(Map<String, String> set) {
+            this.set = set;
+        }
+
+        public void visit(byte[] id, int idLength, byte[] sequence, int sequenceLength) throws IOException {
+            for (int i = 0; i < sequenceLength; i++) {
+                byte c = sequence[i];
+                if (c >= 'A' && c <= 'Z') sequence[i] = (byte) (c + ('a' - 'A'));
+            }
+            set.put(new String(id, 0, idLength, "UTF-8"), new String(sequence, 0, sequenceLength, "UTF-8"));
+        }
+    }
+
+    // the id and sequence of the record being parsed
+    private byte[] id = new byte[256];
+    private int idLength = 0;
+    private byte[] sequence = new byte[1024];
+    private int sequenceLength = 0;
+    // the number of records in the last block
+    private long records = 0;
+
+    public int readLine(Text key, Map<String, String> set, int maxLineLength,
+                        long maxBytesToConsume) throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, readBlock(new MapVisitor(set), maxBytesToConsume, Long.MAX_VALUE, null, 0));
+    }
+
+    /**
+     * Read all the records that belong to the split into set: the block
+     * ends before the first record the split does not own.
+     *
+     * @param key unused
+     * @param set the map to add the records to, id to sequence
+     * @param split the input the records are read from
+     * @param pos the position of the split the reader is at
+     * @return the number of bytes consumed
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public long readLine(Text key, Map<String, String> set, SplitInput split, long pos) throws IOException {
+        return readBlock(new MapVisitor(set), Long.MAX_VALUE, Long.MAX_VALUE, split, pos);
+    }
+
+    /**
+     * Hand the records of the next block to visitor one at a time, holding
+     * no more than one record in memory.  The block is the records that start
+     * within maxBytesToConsume bytes, and at least one record.
+     *
+     * @return the number of bytes consumed
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public long readRecords(RecordVisitor visitor, long maxBytesToConsume) throws IOException {
+        return readBlock(visitor, maxBytesToConsume, Long.MAX_VALUE, null, 0);
+    }
+
+    /**
+     * Hand the records of the next block of the split to visitor one at a
+     * time.  The block ends before the first record the split does not own,
+     * that starts maxBytesToConsume bytes on or that would be record
+     * maxRecords + 1, and has at least one record.
+     *
+     * @param split the input the records are read from
+     * @param pos the position of the split the reader is at
+     * @return the number of bytes consumed
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public long readRecords(RecordVisitor visitor, SplitInput split, long pos,
+                            long maxBytesToConsume, long maxRecords) throws IOException {
+        return readBlock(visitor, maxBytesToConsume, maxRecords, split, pos);
+    }
+
+    /**
+     * Count the records that start within maxBytesToConsume bytes without
+     * copying their sequences anywhere.
+     *
+     * @return the number of records
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public long countRecords(long maxBytesToConsume) throws IOException {
+        readBlock(null, maxBytesToConsume, Long.MAX_VALUE, null, 0);
+        return records;
+    }
+
+    private long readBlock(RecordVisitor visitor, long maxBytesToConsume, long maxRecords,
+                           SplitInput split, long pos) throws IOException {
 
         /*
-        now bufferPosn should be at the start of a fasta record
+        first thing to do is to move forward till you see a start character
          */
-        totalBytesRead += (bufferPosn - 1) - startPosn;
-        startPosn = bufferPosn-1;  // startPosn guaranteed to be at a ">"
+        long totalBytesRead = skipToRecord();
+        records = 0;
 
         /*
-        find the next record start
+        bufferPosn is at the ">" of a record, or at the end of the file
          */
-        eof = false;
-        do {
-            if (bufferPosn >= bufferLength) {
-
-                /*
-                copy the current buffer before refreshing the buffer
-                 */
-                int appendLength = bufferPosn - startPosn;
-                recordBlock.append(buffer, startPosn, appendLength);
-                totalBytesRead += appendLength;
-
-                startPosn = bufferPosn = 0;
-                bufferLength = in.read(buffer);
-                if (bufferLength <= 0) {
-                    eof = true;
-                    break; // EOF
-                }
+        while (bufferPosn < bufferLength) {
+            if (records > 0 && (records >= maxRecords || totalBytesRead > maxBytesToConsume
+                                || (split != null && !split.owns(pos + totalBytesRead)))) {
+                break;
             }
+            totalBytesRead += readRecord(visitor);
+            records++;
+        }
+        return totalBytesRead;
+    }
 
-        } while (buffer[bufferPosn++] != '>' || (totalBytesRead + bufferPosn - startPosn) <= maxBytesToConsume);
-
-        if (!eof) {
-            bufferPosn--;  // make sure we leave bufferPosn pointing to the next record
-            int appendLength = bufferPosn - startPosn;
-            recordBlock.append(buffer, startPosn, appendLength);
-            totalBytesRead += appendLength;
+    /**
+     * refill the buffer
+     *
+     * @return false at the end of the file
+     */
+    private boolean fill() throws IOException {
+        bufferPosn = 0;
+        bufferLength = in.read(buffer);
+        if (bufferLength <= 0) {
+            bufferLength = 0;
+            return false;
         }
+        return true;
+    }
+
+    /**
+     * parse the record at bufferPosn, leaving bufferPosn at the ">" of the
+     * next record or at the end of the file.  A ">" only starts a record at
+     * the start of a line.
+     *
+     * @param visitor the visitor to hand the record to, null to skip the
+     *                sequence without copying it
+     * @return the number of bytes consumed
+     */
+    private long readRecord(RecordVisitor visitor) throws IOException {
+        long consumed = 1;
+        bufferPosn++;  // skip the ">"
+        idLength = 0;
+        sequenceLength = 0;
 
         /*
-        record block now has the byte array we want to process for reads
+        the id is the first word of the header line; the rest of the line is ignored
          */
+        boolean inId = true;
+        boolean eof = false;
+        while (true) {
+            if (bufferPosn >= bufferLength && !fill()) {
+                eof = true;
+                break;
+            }
+            int start = bufferPosn;
+            int end = start;
+            while (end < bufferLength && buffer[end] != LF) end++;
+            if (inId) {
+                int w = start;
+                while (w < end && buffer[w] != ' ' && buffer[w] != '\t' && buffer[w] != CR) w++;
+                id = append(id, idLength, buffer, start, w - start);
+                idLength += w - start;
+                inId = (w == end);
+            }
+            consumed += end - start;
+            bufferPosn = end;
+            if (end < bufferLength) {
+                bufferPosn++;
+                consumed++;
+                break;
+            }
+        }
 
-        Text k = new Text();
-        Text s = new Text();
-        int i = 1; // skip initial record seperator ">"
-        int j = 1;
-        do {
-            k.clear();
-            s.clear();
-            /*
-            first parse the key
-             */
-            i = j;
-            Boolean junkOnLine = false;
-            while (j < recordBlock.getLength()) {
-                int c = recordBlock.charAt(j++);
-                if (c == CR || c == LF) {
+        /*
+        then the sequence lines, up to the next line starting with ">"
+         */
+        while (!eof) {
+            if (bufferPosn >= bufferLength && !fill()) {
+                break;
+            }
+            if (buffer[bufferPosn] == seperator) {
+                break;
+            }
+            int lineStart = sequenceLength;
+            while (true) {
+                if (bufferPosn >= bufferLength && !fill()) {
+                    eof = true;
                     break;
-                } else if (c == ' ' || c == '\t') {
-                    junkOnLine = true;
+                }
+                int start = bufferPosn;
+                int end = start;
+                while (end < bufferLength && buffer[end] != LF) end++;
+                if (visitor != null) {
+                    sequence = append(sequence, sequenceLength, buffer, start, end - start);
+                    sequenceLength += end - start;
+                }
+                consumed += end - start;
+                bufferPosn = end;
+                if (end < bufferLength) {
+                    bufferPosn++;
+                    consumed++;
                     break;
                 }
             }
-            k.append(recordBlock.getBytes(), i, j - i - 1);
-
-            /*
-            in case there is additional metadata on the header line, ignore everything after
-            the first word.
-             */
-            if (junkOnLine) {
-                while (j < recordBlock.getLength() && recordBlock.charAt(j) != CR && recordBlock.charAt(j) != LF ) j++;
+            if (sequenceLength > lineStart && sequence[sequenceLength - 1] == CR) {
+                sequenceLength--;
             }
+        }
 
-            //LOG.info ("key = " + k.toString());
-
-            /*
-           now skip the newlines
-            */
-            while (j < recordBlock.getLength() && (recordBlock.charAt(j) == CR || recordBlock.charAt(j) == LF)) j++;
-
-            /*
-           now read the sequence
-            */
-            do {
-                i = j;
-                while (j < recordBlock.getLength()) {
-                    int c = recordBlock.charAt(j++);
-                    if (c == CR || c == LF) {
-                        break;
-                    }
-                }
-                s.append(recordBlock.getBytes(), i, j - i - 1);
-                set.put(k.toString(), s.toString().toLowerCase());
-
-                while (j < recordBlock.getLength() && (recordBlock.charAt(j) == CR || recordBlock.charAt(j) == LF)) j++;
-
-            } while (j < recordBlock.getLength() && recordBlock.charAt(j) != '>');
-
-            numRecordsRead++;
-
-            /*
-           now skip characters (newline or carige return most likely) till record start
-            */
-            while (j < recordBlock.getLength() && recordBlock.charAt(j) != '>') {
-                j++;
-            }
-
-            j++; // skip the ">"
-
-        } while (j < recordBlock.getLength());
+        if (visitor != null) {
+            visitor.visit(id, idLength, sequence, sequenceLength);
+        }
+        return consumed;
+    }
 
-        return totalBytesRead;
+    private static byte[] append(byte[] dest, int length, byte[] src, int start, int n) {
+        if (length + n > dest.length) {
+            dest = Arrays.copyOf(dest, Math.max(length + n, 2 * dest.length));
+        }
+        System.arraycopy(src, start, dest, length, n);
+        return dest;
     }
 
     /**
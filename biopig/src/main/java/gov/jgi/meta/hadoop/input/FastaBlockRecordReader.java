@@ -39,117 +39,72 @@
 
 package gov.jgi.meta.hadoop.input;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import gov.jgi.meta.sequence.ReadBlock;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 
 import java.io.IOException;
-import java.util.*;
 
 
 /**
- * Treats keys as offset in file and value as line.
+ * Reads a split as blocks of reads.  The key is the offset in the file of
+ * the block and the value the reads of the block.  A new block is returned
+ * each time, so the caller may keep it.
  */
-public class FastaBlockRecordReader extends RecordReader<Text, Map<String,String>> {
-  private static final Log LOG = LogFactory.getLog(FastaBlockRecordReader.class);
+public class FastaBlockRecordReader extends RecordReader<Text, ReadBlock> {
 
-  private CompressionCodecFactory compressionCodecs = null;
-  private long start;
+  private SplitInput input;
   private long pos;
-  private long end;
   private FastaBlockLineReader in;
-  private int maxLineLength;
+  private long maxBlockBytes;
+  private long maxBlockRecords;
   private Text key = null;
-  private Map<String,String> value = null;
+  private ReadBlock value = null;
 
   FastaBlockRecordReader() {
-      LOG.info("creating new fastablockrecordreader");
   }
 
 
     public void initialize(InputSplit genericSplit,
                            TaskAttemptContext context) throws IOException {
-
-      LOG.info("initializing FastaBlockRecordReader");
-        
       FileSplit split = (FileSplit) genericSplit;
       Configuration job = context.getConfiguration();
-      this.maxLineLength = job.getInt("mapred.linerecordreader.maxlength",
-                                      Integer.MAX_VALUE);
-      start = split.getStart();
-      end = start + split.getLength();
-      final Path file = split.getPath();
-      compressionCodecs = new CompressionCodecFactory(job);
-      final CompressionCodec codec = compressionCodecs.getCodec(file);
-
-      // open the file and seek to the start of the split
-      FileSystem fs = file.getFileSystem(job);
-      FSDataInputStream fileIn = fs.open(split.getPath());
-      boolean skipFirstLine = false;
-      if (codec != null) {
-        in = new FastaBlockLineReader(codec.createInputStream(fileIn), job);
-        end = Long.MAX_VALUE;
-      } else {
-        if (start != 0) {
-          skipFirstLine = false;       // don't do this!
-          //--start;                      or this
-          fileIn.seek(start);
-        }
-        in = new FastaBlockLineReader(fileIn, job);
-      }
-      this.pos = start;
+      maxBlockBytes = job.getLong(FastaBlockInputFormat.MAX_BLOCK_BYTES,
+                                  FastaBlockInputFormat.DEFAULT_MAX_BLOCK_BYTES);
+      maxBlockRecords = job.getLong(FastaBlockInputFormat.MAX_BLOCK_RECORDS,
+                                    FastaBlockInputFormat.DEFAULT_MAX_BLOCK_RECORDS);
+      input = SplitInput.open(split, job);
+      in = new FastaBlockLineReader(input.getStream(), job);
+      this.pos = input.getStart();
     }
 
   public boolean nextKeyValue() throws IOException {
-
-      LOG.info("retrieving next key/value, pos = " + pos + " : end = " + end);
-
     if (key == null) {
       key = new Text();
     }
-    if (value == null) {
-      value = new HashMap<String,String>();
-    } else {
-        value.clear();
-    }
-
-    int newSize = 0;
-    while (pos < end) {
-      key.set(Long.toString(pos/(end-start)));
-      newSize = in.readLine(key, value, maxLineLength,
-                            Math.min((int)Math.min(Integer.MAX_VALUE, end-pos),
-                                     maxLineLength));
-
-      LOG.info("split value is sizex " + value.size());
-      LOG.info("key value = " + key);
-
-      if (newSize == 0) {
-        break;
-      }
+    final ReadBlock block = new ReadBlock();
+
+    long newSize = 0;
+    pos += in.skipToRecord();
+    if (input.owns(pos)) {
+      key.set(Long.toString(pos));
+      newSize = in.readRecords(new FastaBlockLineReader.RecordVisitor() {
+        public void visit(byte[] id, int idLength, byte[] sequence, int sequenceLength) throws IOException {
+          block.add(id, idLength, sequence, sequenceLength);
+        }
+      }, input, pos, maxBlockBytes, maxBlockRecords);
       pos += newSize;
-      if (newSize < maxLineLength) {
-        break;
-      }
-
-      // line too long. try again
-      LOG.info("Skipped line of size " + newSize + " at pos " +
-               (pos - newSize));
     }
-    if (newSize == 0) {
+    if (newSize == 0 || block.size() == 0) {
       key = null;
       value = null;
       return false;
     } else {
+      value = block;
       return true;
     }
   }
@@ -160,19 +115,15 @@ public class FastaBlockRecordReader extends RecordReader<Text, Map<String,String
   }
 
   @Override
-  public Map<String,String> getCurrentValue() {
+  public ReadBlock getCurrentValue() {
     return value;
   }
 
   /**
    * Get the progress within the split
    */
-  public float getProgress() {
-    if (start == end) {
-      return 0.0f;
-    } else {
-      return Math.min(1.0f, (pos - start) / (float)(end - start));
-    }
+  public float getProgress() throws IOException {
+    return input.getProgress(pos);
   }
 
   public synchronized void close() throws IOException {
@@ -180,4 +131,4 @@ public class FastaBlockRecordReader extends RecordReader<Text, Map<String,String
       in.close();
     }
   }
-}
\ No newline at end of file
+}
@@ -46,6 +46,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * A class that provides a line reader from an input stream.
@@ -65,6 +66,13 @@ public class FastaLineReader {
   private static final byte LF = '\n';
   private static final byte seperator = '>';
 
+  // the packed sequence of the current record
+  private byte[] packed = new byte[1024];
+  private int packedLength = 0;
+  // bases of the current record not yet packed, fewer than 3
+  private byte[] pending = new byte[3];
+  private int pendingLength = 0;
+
   /**
    * Create a line reader that reads from the given stream using the
    * default buffer-size (64k).
@@ -109,225 +117,148 @@ public class FastaLineReader {
   }
 
   /**
-   * Read one line from the InputStream into the given Text.  A line
-   * can be terminated by one of the following: '\n' (LF) , '\r' (CR),
-   * or '\r\n' (CR+LF).  EOF also terminates an otherwise unterminated
-   * line.
+   * Read one fasta record from the InputStream: the header line (without
+   * the ">" and the newline) into key and the sequence lines, joined and
+   * packed with SequenceString, into str.  The record ends at the next ">"
+   * or at EOF; anything before the first ">" is skipped.
+   *
+   * The record is parsed in place in the read buffer, the header is
+   * appended to key straight from the buffer and the bases are packed
+   * straight from the buffer, so no intermediate strings are built.
    *
-   * @param str the object to store the given line (without newline)
-   * @param maxLineLength the maximum number of bytes to store into str;
-   *  the rest of the line is silently discarded.
-   * @param maxBytesToConsume the maximum number of bytes to consume
-   *  in this call.  This is only a hint, because if the line cross
-   *  this threshold, we allow it to happen.  It can overshoot
-   *  potentially by as much as one buffer length.
+   * @param key the object to store the header line
+   * @param str the object to store the packed sequence
+   * @param maxLineLength ignored, kept for compatibility.
+   * @param maxBytesToConsume ignored, kept for compatibility.
    *
-   * @return the number of bytes read including the (longest) newline
-   * found.
+   * @return the number of bytes consumed, up to the start of the next
+   * record, or 0 if there is no further record (key and str are then left
+   * as they were).
    *
    * @throws IOException if the underlying stream throws
    */
   public int readLine(Text key, Text str, int maxLineLength,
                       int maxBytesToConsume) throws IOException {
-        int totalBytesRead = 0;
-        int numRecordsRead = 0;
-        Boolean eof = false;
         int startPosn;
-        StringBuilder recordBlock = new StringBuilder(this.bufferSize);
 
         /*
         first thing to do is to move forward till you see a start character
          */
-        startPosn = bufferPosn;
-        do {
-            if (bufferPosn >= bufferLength) {
-                totalBytesRead += bufferPosn - startPosn;
-                bufferPosn = 0;
-                bufferLength = in.read(buffer);
-                if (bufferLength <= 0) {
-                    eof = true;
-                    break; // EOF
-                }
-            }
-        } while (buffer[bufferPosn++] != '>');
+        int totalBytesRead = skipToRecord();
+        if (bufferPosn >= bufferLength) {
+            return 0;  // no further record
+        }
 
-        /*
-        if we hit the end of file already, then just return 0 bytes processed
-         */
-        if (eof)
-            return totalBytesRead;  
+        bufferPosn++;  // skip the ">"
+        totalBytesRead++;
 
-        /*
-        now bufferPosn should be at the start of a fasta record
-         */
-        totalBytesRead += (bufferPosn - 1) - startPosn;
-        startPosn = bufferPosn-1;  // startPosn guaranteed to be at a ">"
+        key.clear();
+        str.clear();
+        packedLength = 0;
+        pendingLength = 0;
 
         /*
-        find the next record start:  first scan to end of the line
+        the header runs to the end of the line
          */
-        eof = false;
-        do {
-            if (bufferPosn >= bufferLength) {
-
-                /*
-                copy the current buffer before refreshing the buffer
-                 */
-                int appendLength = bufferPosn - startPosn;
-                for (int copyi = startPosn; copyi < startPosn+appendLength; copyi++) {
-                   recordBlock.append((char) buffer[copyi]);
-                }
-                //recordBlock.append(buffer, startPosn, appendLength);
-                totalBytesRead += appendLength;
-
-                startPosn = bufferPosn = 0;
-                bufferLength = in.read(buffer);
-                if (bufferLength <= 0) {
-                    eof = true;
-                    break; // EOF
-                }
+        boolean eol = false;
+        while (!eol) {
+            if (bufferPosn >= bufferLength && !fillBuffer()) {
+                str.set(packed, 0, 0);
+                return totalBytesRead;
             }
-            bufferPosn++;
-        } while (buffer[bufferPosn-1] != CR && buffer[bufferPosn-1] != LF) ;
-
+            startPosn = bufferPosn;
+            while (bufferPosn < bufferLength && buffer[bufferPosn] != CR && buffer[bufferPosn] != LF) bufferPosn++;
+            key.append(buffer, startPosn, bufferPosn - startPosn);
+            eol = bufferPosn < bufferLength;
+            totalBytesRead += bufferPosn - startPosn;
+        }
 
         /*
-        find the next record start:  scan till next ">"
+        the sequence lines run to the next ">" or EOF; newlines are dropped
+        and every run of bases is packed straight from the buffer
          */
-        do {
-            if (bufferPosn >= bufferLength) {
-
-                /*
-                copy the current buffer before refreshing the buffer
-                 */
-                int appendLength = bufferPosn - startPosn;
-                for (int copyi = startPosn; copyi < startPosn+appendLength; copyi++) {
-                   recordBlock.append((char) buffer[copyi]);
+        while (bufferPosn < bufferLength || fillBuffer()) {
+            startPosn = bufferPosn;
+            int b = buffer[bufferPosn];
+            if (b == seperator) {
+                break;
+            } else if (b == CR || b == LF) {
+                bufferPosn++;
+            } else {
+                while (bufferPosn < bufferLength) {
+                    b = buffer[bufferPosn];
+                    if (b == CR || b == LF || b == seperator) break;
+                    bufferPosn++;
                 }
-                //recordBlock.append(buffer, startPosn, appendLength);
-                totalBytesRead += appendLength;
-
-                startPosn = bufferPosn = 0;
-                bufferLength = in.read(buffer);
-                if (bufferLength <= 0) {
-                    eof = true;
-                    break; // EOF
-                }
-            }
-        } while (buffer[bufferPosn++] != '>');  // only read one record at a time
-
-        if (!eof) {
-            bufferPosn--;  // make sure we leave bufferPosn pointing to the next record
-            int appendLength = bufferPosn - startPosn;
-            for (int copyi = startPosn; copyi < startPosn+appendLength; copyi++) {
-               recordBlock.append((char) buffer[copyi]);
+                packBases(startPosn, bufferPosn);
             }
-            //recordBlock.append(buffer, startPosn, appendLength);
-            totalBytesRead += appendLength;
+            totalBytesRead += bufferPosn - startPosn;
         }
 
-        /*
-        record block now has the byte array we want to process for reads
-         */
-
-        int i = 1; // skip initial record seperator ">"
-        int j = 1;
-        do {
-            key.clear();
-            str.clear();
-            /*
-            first parse the key
-             */
-            i = j;
-            Boolean junkOnLine = false;
-            while (j < recordBlock.length()) {
-                int c = recordBlock.charAt(j++);
-                if (c == CR || c == LF) {
-                    break;
-                } //else if (c == ' ' || c == '\t') {
-                  //  junkOnLine = true;
-                  //  break;
-                //}
-            }
-            if (j == i) {
-               // then we didn't parse out a proper id
-               LOG.error("Unable to parse entry: " + recordBlock);
-               str.clear();
-               key.clear();
-               return totalBytesRead;
-            }
-            key.set(recordBlock.substring(i, j-1));
-           
-            /*
-            in case there is additional metadata on the header line, ignore everything after
-            the first word.
-             */
-            if (junkOnLine) {
-                while (j < recordBlock.length() && recordBlock.charAt(j) != CR && recordBlock.charAt(j) != LF ) j++;
-            }
-
-            //LOG.info ("key = " + k.toString());
-
-            /*
-           now skip the newlines
-            */
-            while (j < recordBlock.length() && (recordBlock.charAt(j) == CR || recordBlock.charAt(j) == LF)) j++;
-
-            /*
-           now read the sequence
-            */
-           StringBuilder sequenceTmp = new StringBuilder(recordBlock.length());
-            do {
-                i = j;
-                while (j < recordBlock.length()) {
-                    int c = recordBlock.charAt(j++);
-                    if (c == CR || c == LF) {
-                        break;
-                    }
-                }
-                //byte[] ba = recordBlock.getBytes();
-                //if (ba.length <= i || ba.length <= j - i - 1) {
-                //    LOG.fatal("hmm... ba.length = " + ba.length + " i = " + i + " j-i-1 = " + (j-i-1));
-                //}
-
-               if (j == i) {
-                  // then we didn't parse out a proper id
-                  LOG.error("Unable to parse entry: " + recordBlock);
-                  str.clear();
-                  key.clear();
-                  return totalBytesRead;
-               }
-               for (int copyi = i; copyi < j-1; copyi++) {
-                  sequenceTmp.append((char) recordBlock.charAt(copyi));
-               }
-
-
-                while (j < recordBlock.length() && (recordBlock.charAt(j) == CR || recordBlock.charAt(j) == LF)) j++;
-
-            } while (j < recordBlock.length() && recordBlock.charAt(j) != '>');
-            str.set(sequenceTmp.toString());           
-
-            numRecordsRead++;
-
-            /*
-           now skip characters (newline or carige return most likely) till record start
-            */
-            while (j < recordBlock.length() && recordBlock.charAt(j) != '>') {
-                j++;
-            }
+        if (pendingLength > 0) {
+            packedLength += SequenceString.pack(pending, 0, pendingLength, packed, packedLength);
+        }
+        str.set(packed, 0, packedLength);
 
-            j++; // skip the ">"
+        return totalBytesRead;
+  }
 
-        } while (j < recordBlock.length());
+  /**
+   * Move forward to the start of the next record, so a record reader can
+   * tell where it starts before reading it.
+   *
+   * @return the number of bytes skipped
+   * @throws IOException if the underlying stream throws
+   */
+  public int skipToRecord() throws IOException {
+    int skipped = 0;
+    while (bufferPosn < bufferLength || fillBuffer()) {
+      int startPosn = bufferPosn;
+      while (bufferPosn < bufferLength && buffer[bufferPosn] != seperator) bufferPosn++;
+      skipped += bufferPosn - startPosn;
+      if (bufferPosn < bufferLength) break;
+    }
+    return skipped;
+  }
 
-//        LOG.info("");
-//        LOG.info("object key = " + key);
-        byte[] strpacked = SequenceString.sequenceToByteArray(str.toString().toLowerCase());
-        
-        str.clear();
-        str.append(strpacked, 0, strpacked.length);
+  /**
+   * refill the buffer once it has been consumed
+   *
+   * @return false at EOF
+   */
+  private boolean fillBuffer() throws IOException {
+    bufferPosn = 0;
+    bufferLength = in.read(buffer);
+    if (bufferLength <= 0) {
+      bufferLength = 0;
+      return false;
+    }
+    return true;
+  }
 
-        return totalBytesRead;
+  /**
+   * pack the bases buffer[start, end), carrying up to two bases over to the
+   * next run so the packing does not depend on the line breaks
+   */
+  private void packBases(int start, int end) {
+    int needed = SequenceString.packedLength(pendingLength + end - start) + 1;
+    if (packedLength + needed > packed.length) {
+      packed = Arrays.copyOf(packed, Math.max(2 * packed.length, packedLength + needed));
+    }
+
+    while (pendingLength > 0 && pendingLength < 3 && start < end) {
+      pending[pendingLength++] = buffer[start++];
+    }
+    if (pendingLength == 3) {
+      packedLength += SequenceString.pack(pending, 0, 3, packed, packedLength);
+      pendingLength = 0;
+    }
+
+    int fullEnd = end - (end - start) % 3;
+    packedLength += SequenceString.pack(buffer, start, fullEnd, packed, packedLength);
+    for (int i = fullEnd; i < end; i++) {
+      pending[pendingLength++] = buffer[i];
+    }
   }
 
   /**
@@ -42,12 +42,7 @@ package gov.jgi.meta.hadoop.input;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -63,7 +58,7 @@ import java.io.IOException;
 public class FastaRecordReader extends RecordReader<Text, Text> {
   private static final Log LOG = LogFactory.getLog(FastaRecordReader.class);
 
-  private CompressionCodecFactory compressionCodecs = null;
+  private SplitInput input;
   private long start;
   private long pos;
   private long end;
@@ -78,31 +73,10 @@ public class FastaRecordReader extends RecordReader<Text, Text> {
     Configuration job = context.getConfiguration();
     this.maxLineLength = job.getInt("mapred.linerecordreader.maxlength",
                                     Integer.MAX_VALUE);
-    start = split.getStart();
-    end = start + split.getLength();
-    final Path file = split.getPath();
-    compressionCodecs = new CompressionCodecFactory(job);
-    final CompressionCodec codec = compressionCodecs.getCodec(file);
-
-    // open the file and seek to the start of the split
-    FileSystem fs = file.getFileSystem(job);
-    FSDataInputStream fileIn = fs.open(split.getPath());
-    boolean skipFirstLine = false;
-    if (codec != null) {
-      in = new FastaLineReader(codec.createInputStream(fileIn), job);
-      end = Long.MAX_VALUE;
-    } else {
-      if (start != 0) {
-        skipFirstLine = false;       // don't do this!
-        //--start;                      or this
-        fileIn.seek(start);
-      }
-      in = new FastaLineReader(fileIn, job);
-    }
-    if (skipFirstLine) {  // skip first line and re-establish "start".
-      start += in.readLine(new Text(), new Text(), 0,
-                           (int)Math.min((long)Integer.MAX_VALUE, end - start));
-    }
+    input = SplitInput.open(split, job);
+    in = new FastaLineReader(input.getStream(), job);
+    start = input.getStart();
+    end = input.getEnd();
     this.pos = start;
   }
 
@@ -118,7 +92,8 @@ public class FastaRecordReader extends RecordReader<Text, Text> {
     int newSize = 0;
 //    LOG.info("pos = " + pos + "/" + end);
     
-    while (pos < end) {
+    pos += in.skipToRecord();
+    while (input.owns(pos)) {
         
         newSize = in.readLine(key, txtvalue, maxLineLength,
                             Math.max((int)Math.min(Integer.MAX_VALUE, end-pos),
@@ -162,12 +137,8 @@ public class FastaRecordReader extends RecordReader<Text, Text> {
   /**
    * Get the progress within the split
    */
-  public float getProgress() {
-    if (start == end) {
-      return 0.0f;
-    } else {
-      return Math.min(1.0f, (pos - start) / (float)(end - start));
-    }
+  public float getProgress() throws IOException {
+    return input.getProgress(pos);
   }
 
   public synchronized void close() throws IOException {
@@ -39,18 +39,15 @@
 
 package gov.jgi.meta.hadoop.input;
 
+import gov.jgi.meta.sequence.ReadBlock;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 
-import java.util.Map;
-
 
 /** An {@link FastqBlockInputFormat} is for fasta text files.  Files are broken
  * records seperated by ">" eg:
@@ -62,12 +59,13 @@ import java.util.Map;
  * the identifier is from after the ">" till new line, and the sequence is
  * the following line till the next ">"
  *
- * This class splits the fasta records into a single large multi-fasta block.
+ * This class splits the fasta records into blocks of reads, sized by the
+ * same settings as {@link FastaBlockInputFormat}.
  */
-public class FastqBlockInputFormat extends FileInputFormat<Text, Map<String,String>> {
+public class FastqBlockInputFormat extends FileInputFormat<Text, ReadBlock> {
 
   @Override
-  public RecordReader<Text, Map<String,String>>
+  public RecordReader<Text, ReadBlock>
     createRecordReader(InputSplit split,
                        TaskAttemptContext context) {
     return new FastqBlockRecordReader();
@@ -75,9 +73,7 @@ public class FastqBlockInputFormat extends FileInputFormat<Text, Map<String,Stri
 
   @Override
   protected boolean isSplitable(JobContext context, Path file) {
-    CompressionCodec codec =
-      new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
-    return codec == null;
+    return SplitInput.isSplitable(context.getConfiguration(), file);
   }
 
 }
\ No newline at end of file
@@ -39,6 +39,7 @@
 
 package gov.jgi.meta.hadoop.input;
 
+import gov.jgi.meta.sequence.ReadBlock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -60,16 +61,11 @@ public class FastqBlockLineReader {
     private int bufferSize = DEFAULT_BUFFER_SIZE;
     private int readBlockSize = 100000;  // default number of reads in each block
 
-    private InputStream in;
-    private byte[] buffer;
-    // the number of bytes of real data in the buffer
-    private int bufferLength = 0;
-    // the current position in the buffer
-    private int bufferPosn = 0;
-
-    private static final byte CR = '\r';
-    private static final byte LF = '\n';
-    private static final byte seperator = '@';
+    // reads the records one at a time
+    private FastqLineReader reader;
+    // the id and sequence of the record being read
+    private final Text id = new Text();
+    private final Text sequence = new Text();
 
     /**
      * Create a line reader that reads from the given stream using the
@@ -91,10 +87,8 @@ public class FastqBlockLineReader {
      * @throws java.io.IOException
      */
     public FastqBlockLineReader(InputStream in, int bufferSize) {
-        this.in = in;
         this.bufferSize = bufferSize;
-        //     this.bufferSize = DEFAULT_BUFFER_SIZE;
-        this.buffer = new byte[this.bufferSize];
+        this.reader = new FastqLineReader(in, bufferSize);
 
     }
 
@@ -117,151 +111,91 @@ public class FastqBlockLineReader {
      * @throws java.io.IOException
      */
     public void close() throws IOException {
-        in.close();
+        reader.close();
     }
 
 
+    /**
+     * Move forward to the start of the next record, so a record reader can
+     * tell where it starts before reading it.
+     *
+     * @return the number of bytes skipped
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public int skipToRecord() throws IOException {
+        return reader.skipToRecord();
+    }
+
     public int readLine(Text key, Map<String, String> set, int maxLineLength,
                         int maxBytesToConsume) throws IOException {
+        return readBlock(key, set, maxBytesToConsume, null, 0);
+    }
 
-        int totalBytesRead = 0;
-        int numRecordsRead = 0;
-        Boolean eof = false;
-        int startPosn;
-        Text recordBlock = new Text();
-
-
-        /*
-        first thing to do is to move forward till you see a start character
-         */
-        startPosn = bufferPosn;
-        do {
-            if (bufferPosn >= bufferLength) {
-                totalBytesRead += bufferPosn - startPosn;
-                bufferPosn = 0;
-                bufferLength = in.read(buffer);
-                if (bufferLength <= 0) {
-                    eof = true;
-                    break; // EOF
-                }
-            }
-        } while (buffer[bufferPosn++] != '@');
-
-        /*
-        if we hit the end of file already, then just return 0 bytes processed
-         */
-        if (eof)
-            return totalBytesRead;
-
-        /*
-        now bufferPosn should be at the start of a fasta record
-         */
-        totalBytesRead += (bufferPosn - 1) - startPosn;
-        startPosn = bufferPosn - 1;  // startPosn guaranteed to be at a "@"
-
-        /*
-        find the next record start
-         */
-        eof = false;
-        do {
-            if (bufferPosn >= bufferLength) {
-
-                /*
-                copy the current buffer before refreshing the buffer
-                 */
-                int appendLength = bufferPosn - startPosn;
-                recordBlock.append(buffer, startPosn, appendLength);
-                totalBytesRead += appendLength;
+    /**
+     * Read all the records that belong to the split into set: the block
+     * ends before the first record the split does not own.
+     *
+     * @param key unused
+     * @param set the map to add the records to, id to sequence
+     * @param split the input the records are read from
+     * @param pos the position of the split the reader is at
+     * @return the number of bytes consumed
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public int readLine(Text key, Map<String, String> set, SplitInput split, long pos) throws IOException {
+        return readBlock(key, set, Long.MAX_VALUE, split, pos);
+    }
 
-                startPosn = bufferPosn = 0;
-                bufferLength = in.read(buffer);
-                if (bufferLength <= 0) {
-                    eof = true;
-                    break; // EOF
-                }
+    /**
+     * Add the records of the next block of the split to block.  The block
+     * ends before the first record the split does not own, that starts
+     * maxBytesToConsume bytes on or that would be record maxRecords + 1, and
+     * has at least one record.
+     *
+     * @param block the block to add the records to
+     * @param split the input the records are read from
+     * @param pos the position of the split the reader is at
+     * @return the number of bytes consumed
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public long readRecords(ReadBlock block, SplitInput split, long pos,
+                            long maxBytesToConsume, long maxRecords) throws IOException {
+        long totalBytesRead = reader.skipToRecord();
+        long records = 0;
+        while (records == 0 || (records < maxRecords && totalBytesRead <= maxBytesToConsume
+                                && split.owns(pos + totalBytesRead))) {
+            int n = reader.readLine(id, sequence);
+            if (n == 0) {
+                break;  // EOF
             }
-
-        } while (buffer[bufferPosn++] != '@' || (totalBytesRead + bufferPosn - startPosn) < maxBytesToConsume);
-
-        if (!eof) {
-            bufferPosn--;  // make sure we leave bufferPosn pointing to the next record
-            int appendLength = bufferPosn - startPosn;
-            recordBlock.append(buffer, startPosn, appendLength);
-            totalBytesRead += appendLength;
+            block.add(id.getBytes(), id.getLength(), sequence.getBytes(), sequence.getLength());
+            records++;
+            totalBytesRead += n;
+            totalBytesRead += reader.skipToRecord();
         }
+        return totalBytesRead;
+    }
 
-        /*
-        record block now has the byte array we want to process for reads
-         */
+    /**
+     * read records into set, starting with the one at the current position,
+     * up to the first record that starts maxBytesToConsume bytes on or that
+     * the split does not own.
+     */
+    private int readBlock(Text key, Map<String, String> set, long maxBytesToConsume,
+                          SplitInput split, long pos) throws IOException {
 
         Text k = new Text();
         Text s = new Text();
-        int i = 1; // skip initial record seperator ">"
-        int j = 1;
+        int totalBytesRead = reader.skipToRecord();
         do {
-            k.clear();
-            s.clear();
-            /*
-            first parse the key
-             */
-            i = j;
-            Boolean junkOnLine = false;
-            while (j < recordBlock.getLength()) {
-                int c = recordBlock.charAt(j++);
-                if (c == CR || c == LF) {
-                    break;
-                } else if (c == ' ' || c == '\t') {
-                    junkOnLine = true;
-                    break;
-                }
-            }
-            k.append(recordBlock.getBytes(), i, j - i - 1);
-
-            /*
-            in case there is additional metadata on the header line, ignore everything after
-            the first word.
-             */
-            if (junkOnLine) {
-                while (j < recordBlock.getLength() && recordBlock.charAt(j) != CR && recordBlock.charAt(j) != LF) j++;
+            int n = reader.readLine(k, s);
+            if (n == 0) {
+                break;  // EOF
             }
-
-            //LOG.info ("key = " + k.toString());
-
-            /*
-           now skip the newlines
-            */
-            while (j < recordBlock.getLength() && (recordBlock.charAt(j) == CR || recordBlock.charAt(j) == LF)) j++;
-
-            /*
-           now read the sequence
-            */
-            do {
-                i = j;
-                while (j < recordBlock.getLength()) {
-                    int c = recordBlock.charAt(j++);
-                    if (c == CR || c == LF) {
-                        break;
-                    }
-                }
-                s.append(recordBlock.getBytes(), i, j - i - 1);
-                set.put(k.toString(), s.toString().toLowerCase());
-
-                while (j < recordBlock.getLength() && (recordBlock.charAt(j) == CR || recordBlock.charAt(j) == LF)) j++;
-
-            } while (j < recordBlock.getLength() && recordBlock.charAt(j) != '+');
-
-            numRecordsRead++;
-
-            /*
-           now skip characters (newline or carige return most likely) till record start
-            */
-            while (j < recordBlock.getLength() && recordBlock.charAt(j) != '@') {
-                j++;
-            }
-
-            j++; // skip the "@"
-
-        } while (j < recordBlock.getLength());
+            set.put(k.toString(), s.toString().toLowerCase());
+            totalBytesRead += n;
+            totalBytesRead += reader.skipToRecord();
+        } while (split == null ? totalBytesRead < maxBytesToConsume : split.owns(pos + totalBytesRead));
 
         return totalBytesRead;
     }
@@ -41,8 +41,6 @@ package gov.jgi.meta.hadoop.input;
 
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
@@ -71,9 +69,7 @@ public class FastqInputFormat extends FileInputFormat<Text, Text> {
 
   @Override
   protected boolean isSplitable(JobContext context, Path file) {
-    CompressionCodec codec =
-      new CompressionCodecFactory(context.getConfiguration()).getCodec(file);
-    return codec == null;
+    return SplitInput.isSplitable(context.getConfiguration(), file);
   }
 
 }
\ No newline at end of file
@@ -47,6 +47,7 @@ import org.apache.hadoop.io.Text;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * A class that provides a line reader from an input stream.
@@ -62,10 +63,12 @@ public class FastqLineReader {
     private int bufferLength = 0;
     // the current position in the buffer
     private int bufferPosn = 0;
+    // whether the stream has been read to its end
+    private boolean eof = false;
 
     private static final byte CR = '\r';
     private static final byte LF = '\n';
-    private static final byte seperator = '>';
+    private static final byte seperator = '@';
 
     /**
      * Create a line reader that reads from the given stream using the
@@ -115,176 +118,185 @@ public class FastqLineReader {
     }
 
     /**
-     * Read one line from the InputStream into the given Text.  A line
-     * can be terminated by one of the following: '\n' (LF) , '\r' (CR),
-     * or '\r\n' (CR+LF).  EOF also terminates an otherwise unterminated
-     * line.
+     * Move forward to the start of the next record, so a record reader can
+     * tell where it starts before reading it.  "@" is also a quality
+     * character, so a "@" at the start of a line only counts as a record
+     * start if it is followed by a whole record: a sequence line, a line
+     * starting with "+" and a quality line as long as the sequence (see
+     * {@link #checkRecord}).  This lets a split start anywhere in a file.
      *
-     * @param str               the object to store the given line (without newline)
-     * @param maxLineLength     the maximum number of bytes to store into str;
-     *                          the rest of the line is silently discarded.
-     * @param maxBytesToConsume the maximum number of bytes to consume
-     *                          in this call.  This is only a hint, because if the line cross
-     *                          this threshold, we allow it to happen.  It can overshoot
-     *                          potentially by as much as one buffer length.
-     * @return the number of bytes read including the (longest) newline
-     *         found.
+     * @return the number of bytes skipped
      * @throws java.io.IOException if the underlying stream throws
      */
-    public int readLine(Text key, Text str, int maxLineLength,
-                        int maxBytesToConsume) throws IOException {
-        int totalBytesRead = 0;
-        int numRecordsRead = 0;
-        Boolean eof = false;
-        int startPosn;
-        Text recordBlock = new Text();
-
-        /*
-        first thing to do is to move forward till you see a start character
-         */
-        startPosn = bufferPosn;
-        do {
+    public int skipToRecord() throws IOException {
+        int skipped = 0;
+        boolean lineStart = true;
+        while (true) {
             if (bufferPosn >= bufferLength) {
-                totalBytesRead += bufferPosn - startPosn;
-                bufferPosn = 0;
-                bufferLength = in.read(buffer);
-                if (bufferLength <= 0) {
-                    eof = true;
-                    break; // EOF
-                }
+                bufferPosn = bufferLength = 0;
+                if (!fillBuffer()) break; // EOF
             }
-        } while (buffer[bufferPosn++] != '@');
-
-        /*
-        if we hit the end of file already, then just return 0 bytes processed
-         */
-        if (eof)
-            return totalBytesRead;
-
-        /*
-        now bufferPosn should be at the start of a fastq record
-         */
-        totalBytesRead += (bufferPosn - 1) - startPosn;
-        startPosn = bufferPosn - 1;  // startPosn guaranteed to be at a "@"
-
-        /*
-        find the next record start
-         */
-        eof = false;
-	int numOfNewlines = 0;//Added by lanhin
-        do {
-            if (bufferPosn >= bufferLength) {
-
-                /*
-                copy the current buffer before refreshing the buffer
-                 */
-                int appendLength = bufferPosn - startPosn;
-                recordBlock.append(buffer, startPosn, appendLength);
-                totalBytesRead += appendLength;
-
-                startPosn = bufferPosn = 0;
-                bufferLength = in.read(buffer);
-                if (bufferLength <= 0) {
-                    eof = true;
-                    break; // EOF
+            byte c = buffer[bufferPosn];
+            if (c == seperator && lineStart) {
+                int end = checkRecord(buffer, bufferPosn, bufferLength, eof);
+                if (end > 0) {
+                    break;
+                } else if (end < 0) {
+                    fillBuffer();  // the record runs past the buffer, look further
+                    continue;
                 }
             }
-	    //Modefied by lanhin
-	    if(buffer[bufferPosn] == CR || buffer[bufferPosn] == LF){
-		numOfNewlines ++;
-	    }
-	    if((numOfNewlines >= 4) && buffer[bufferPosn] == '@'){
-		bufferPosn ++;
-		break;
-	    }
-	    bufferPosn ++;
-        } while (true);//buffer[bufferPosn++] != '@');  // only read one record at a time
-	//Modefied by lanhin end
-
-        if (!eof) {
-            bufferPosn--;  // make sure we leave bufferPosn pointing to the next record
-            int appendLength = bufferPosn - startPosn;
-            recordBlock.append(buffer, startPosn, appendLength);
-            totalBytesRead += appendLength;
+            lineStart = c == CR || c == LF;
+            bufferPosn++;
+            skipped++;
         }
+        return skipped;
+    }
 
-        /*
-        record block now has the byte array we want to process for reads
-         */
-
-        int i = 1; // skip initial record seperator "@"
-        int j = 1;
-        do {
-            key.clear();
-            str.clear();
-            /*
-            first parse the key
-             */
-            i = j;
-            Boolean junkOnLine = false;
-            while (j < recordBlock.getLength()) {
-                int c = recordBlock.charAt(j++);
-                if (c == CR || c == LF) {
-                    break;
-                } else if (c == ' ' || c == '\t') {
-                    junkOnLine = true;
-                    break;
+    /**
+     * Check whether a fastq record starts at b[start]: a header line starting
+     * with "@", a sequence line, a line starting with "+" and a quality line
+     * of the same length as the sequence.
+     *
+     * @param b   the bytes to check
+     * @param start the offset of the candidate record
+     * @param end the end of the data in b
+     * @param eof whether the data ends at end; if not, a record that runs
+     *            past end can not be checked yet
+     * @return the offset just past the record and the newline after it if
+     *         the record is well formed, 0 if it is not, and -1 if more data
+     *         is needed to tell
+     */
+    public static int checkRecord(byte[] b, int start, int end, boolean eof) {
+        if (start >= end || b[start] != seperator) return 0;
+        int p = start;
+        int sequenceLength = 0;
+        for (int line = 0; line < 4; line++) {
+            int q = p;
+            while (q < end && b[q] != CR && b[q] != LF) q++;
+            if (q == end && !eof) return -1;
+
+            if (line == 1) {
+                for (int i = p; i < q; i++) {
+                    byte c = b[i];
+                    if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '.' || c == '-' || c == '*')) return 0;
                 }
+                sequenceLength = q - p;
+            } else if (line == 2) {
+                if (q == p || b[p] != '+') return 0;
+            } else if (line == 3) {
+                if (q - p != sequenceLength) return 0;
             }
-            key.append(recordBlock.getBytes(), i, j - i - 1);
 
-            /*
-            in case there is additional metadata on the header line, ignore everything after
-            the first word.
-             */
-            if (junkOnLine) {
-                while (j < recordBlock.getLength() && recordBlock.charAt(j) != CR && recordBlock.charAt(j) != LF) j++;
+            if (q == end) {
+                return line == 3 ? q : 0;
             }
+            if (b[q] == CR && q + 1 == end && !eof) return -1;
+            if (b[q] == CR && q + 1 < end && b[q + 1] == LF) q++;
+            p = q + 1;
+        }
+        return p;
+    }
 
-            //LOG.info ("key = " + k.toString());
-
-            /*
-           now skip the newlines
-            */
-            while (j < recordBlock.getLength() && (recordBlock.charAt(j) == CR || recordBlock.charAt(j) == LF)) j++;
-
-            /*
-           now read the sequence
-            */
-            do {
-                i = j;
-                while (j < recordBlock.getLength()) {
-                    int c = recordBlock.charAt(j++);
-                    if (c == CR || c == LF) {
-                        break;
-                    }
-                }
-                str.append(recordBlock.getBytes(), i, j - i - 1);
+    /**
+     * Read one fastq record from the InputStream: the first word of the
+     * header line (without the "@") into key and the sequence line into str.
+     * The quality line is skipped.
+     *
+     * @param key               the object to store the record id
+     * @param str               the object to store the sequence
+     * @param maxLineLength     ignored, kept for compatibility.
+     * @param maxBytesToConsume ignored, kept for compatibility.
+     * @return the number of bytes consumed, up to and including the newline
+     *         after the quality line, or 0 if there is no further record
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public int readLine(Text key, Text str, int maxLineLength,
+                        int maxBytesToConsume) throws IOException {
+        return readLine(key, str, null);
+    }
 
-                while (j < recordBlock.getLength() && (recordBlock.charAt(j) == CR || recordBlock.charAt(j) == LF)) j++;
+    /**
+     * Read one fastq record from the InputStream, keeping the quality line.
+     *
+     * @param key     the object to store the record id
+     * @param str     the object to store the sequence
+     * @param quality the object to store the quality line, as it is in the
+     *                file; null to skip it
+     * @return the number of bytes consumed, or 0 if there is no further record
+     * @throws java.io.IOException if the underlying stream throws
+     */
+    public int readLine(Text key, Text str, Text quality) throws IOException {
+        int totalBytesRead = skipToRecord();
+        if (bufferPosn >= bufferLength) {
+            return 0;  // no further record
+        }
 
-            } while (j < recordBlock.getLength() && recordBlock.charAt(j) != '+');
+        /*
+        skipToRecord leaves the whole record in the buffer
+         */
+        int recordEnd = checkRecord(buffer, bufferPosn, bufferLength, eof);
 
-            numRecordsRead++;
+        /*
+        the key is the first word of the header line
+         */
+        int i = bufferPosn + 1;
+        int j = i;
+        while (j < recordEnd && buffer[j] != ' ' && buffer[j] != '\t' && buffer[j] != CR && buffer[j] != LF) j++;
+        key.clear();
+        key.append(buffer, i, j - i);
 
-            /*
-           now skip characters (newline or carige return most likely) till record start
-            */
-            while (j < recordBlock.getLength()){
-		// && recordBlock.charAt(j) != '@') {  // Modified by lanhin
-		/* Should go straight to the end of recordBlock,
-		   ignore all the left info.  --lanhin*/
+        /*
+        the sequence is the whole next line
+         */
+        while (buffer[j] != CR && buffer[j] != LF) j++;
+        if (buffer[j] == CR && buffer[j + 1] == LF) j++;
+        i = ++j;
+        while (j < recordEnd && buffer[j] != CR && buffer[j] != LF) j++;
+        str.clear();
+        str.append(buffer, i, j - i);
 
-                j++;
+        /*
+        then the "+" line and the quality line
+         */
+        if (quality != null) {
+            for (int line = 0; line < 2; line++) {
+                if (buffer[j] == CR && buffer[j + 1] == LF) j++;
+                i = ++j;
+                while (j < recordEnd && buffer[j] != CR && buffer[j] != LF) j++;
             }
+            quality.clear();
+            quality.append(buffer, i, j - i);
+        }
 
-            j++; // skip the "@"
-
-        } while (j < recordBlock.getLength());
-
+        totalBytesRead += recordEnd - bufferPosn;
+        bufferPosn = recordEnd;
         return totalBytesRead;
     }
 
+    /**
+     * move the unread bytes to the front of the buffer, growing it when
+     * they fill it, and read more after them
+     *
+     * @return false at EOF
+     */
+    private boolean fillBuffer() throws IOException {
+        if (bufferPosn > 0) {
+            System.arraycopy(buffer, bufferPosn, buffer, 0, bufferLength - bufferPosn);
+            bufferLength -= bufferPosn;
+            bufferPosn = 0;
+        } else if (bufferLength == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        int n = in.read(buffer, bufferLength, buffer.length - bufferLength);
+        if (n <= 0) {
+            eof = true;
+            return false;
+        }
+        bufferLength += n;
+        return true;
+    }
+
     /**
      * Read from the InputStream into the given Text.
      *
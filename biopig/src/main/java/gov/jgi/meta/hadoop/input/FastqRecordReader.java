@@ -42,12 +42,7 @@ package gov.jgi.meta.hadoop.input;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
-import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.compress.CompressionCodec;
-import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -62,7 +57,7 @@ import java.io.IOException;
 public class FastqRecordReader extends RecordReader<Text, Text> {
   private static final Log LOG = LogFactory.getLog(FastqRecordReader.class);
 
-  private CompressionCodecFactory compressionCodecs = null;
+  private SplitInput input;
   private long start;
   private long pos;
   private long end;
@@ -70,6 +65,7 @@ public class FastqRecordReader extends RecordReader<Text, Text> {
   private int maxLineLength;
   private Text key = null;
   private Text value = null;
+  private Text quality = new Text();
 
   public void initialize(InputSplit genericSplit,
                          TaskAttemptContext context) throws IOException {
@@ -77,57 +73,38 @@ public class FastqRecordReader extends RecordReader<Text, Text> {
     Configuration job = context.getConfiguration();
     this.maxLineLength = job.getInt("mapred.linerecordreader.maxlength",
                                     Integer.MAX_VALUE);
-    start = split.getStart();
-    end = start + split.getLength();
-    final Path file = split.getPath();
-    compressionCodecs = new CompressionCodecFactory(job);
-    final CompressionCodec codec = compressionCodecs.getCodec(file);
-
-    // open the file and seek to the start of the split
-    FileSystem fs = file.getFileSystem(job);
-    FSDataInputStream fileIn = fs.open(split.getPath());
-    boolean skipFirstLine = false;
-    if (codec != null) {
-      in = new FastqLineReader(codec.createInputStream(fileIn), job);
-      end = Long.MAX_VALUE;
-    } else {
-      if (start != 0) {
-        skipFirstLine = false;       // don't do this!
-        //--start;                      or this
-        fileIn.seek(start);
-      }
-      in = new FastqLineReader(fileIn, job);
-    }
-    if (skipFirstLine) {  // skip first line and re-establish "start".
-      start += in.readLine(new Text(), new Text(), 0,
-                           (int)Math.min((long)Integer.MAX_VALUE, end - start));
-    }
+    input = SplitInput.open(split, job);
+    in = new FastqLineReader(input.getStream(), job);
+    start = input.getStart();
+    end = input.getEnd();
     this.pos = start;
   }
 
-  public boolean nextKeyValue() throws IOException {
-    Text txtvalue = null;
+  /**
+   * whether to keep the quality line of every record; when not, the line is
+   * skipped without being copied
+   */
+  public void setKeepQuality(boolean keep) {
+    quality = keep ? new Text() : null;
+  }
 
+  public boolean nextKeyValue() throws IOException {
     if (key == null) {
       key = new Text();
     }
-    if (txtvalue == null) {
-      txtvalue = new Text();
+    if (value == null) {
+      value = new Text();
     }
     int newSize = 0;
 //    LOG.info("pos = " + pos + "/" + end);
 
-    while (pos < end) {
+    pos += in.skipToRecord();
+    while (input.owns(pos)) {
 
-        newSize = in.readLine(key, txtvalue, maxLineLength,
-                            Math.max((int)Math.min(Integer.MAX_VALUE, end-pos),
-                                     maxLineLength));
+        newSize = in.readLine(key, value, quality);
 //        LOG.info("newsize = " + newSize);
 
 
-      value = txtvalue;
-
-
       if (newSize == 0) {
         break;
       }
@@ -159,15 +136,19 @@ public class FastqRecordReader extends RecordReader<Text, Text> {
     return value;
   }
 
+  /**
+   * the quality line of the current record, as it is in the file, or null
+   * if setKeepQuality(false)
+   */
+  public Text getCurrentQuality() {
+    return quality;
+  }
+
   /**
    * Get the progress within the split
    */
-  public float getProgress() {
-    if (start == end) {
-      return 0.0f;
-    } else {
-      return Math.min(1.0f, (pos - start) / (float)(end - start));
-    }
+  public float getProgress() throws IOException {
+    return input.getProgress(pos);
   }
 
   public synchronized void close() throws IOException {
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.hadoop.input;
+
+import gov.jgi.meta.kmer.KmerSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the k-mers of a whole k-mer set file in order.
+ */
+public class KmerSetRecordReader extends RecordReader<LongWritable, LongWritable> {
+
+  private DataInputStream in;
+  private long count;
+  private long pos;
+  private int k;
+  private boolean canonical;
+  private LongWritable key = new LongWritable();
+  private LongWritable value = new LongWritable();
+
+  public void initialize(InputSplit genericSplit,
+                         TaskAttemptContext context) throws IOException {
+    FileSplit split = (FileSplit) genericSplit;
+    Configuration job = context.getConfiguration();
+    final Path file = split.getPath();
+    FileSystem fs = file.getFileSystem(job);
+    long length = fs.getFileStatus(file).getLen();
+
+    FSDataInputStream fileIn = fs.open(file);
+    if (length < KmerSet.HEADER_SIZE + KmerSet.TRAILER_SIZE || fileIn.readInt() != KmerSet.MAGIC) {
+      fileIn.close();
+      throw new IOException(file + " is not a k-mer set file");
+    }
+    int version = fileIn.readInt();
+    if (version != KmerSet.VERSION) {
+      fileIn.close();
+      throw new IOException(file + " has unsupported k-mer set version " + version);
+    }
+    k = fileIn.readInt();
+    canonical = (fileIn.readInt() & KmerSet.FLAG_CANONICAL) != 0;
+
+    fileIn.seek(length - KmerSet.TRAILER_SIZE);
+    count = fileIn.readLong();
+
+    fileIn.seek(KmerSet.HEADER_SIZE);
+    in = new DataInputStream(new BufferedInputStream(fileIn, 1 << 16));
+    pos = 0;
+  }
+
+  public boolean nextKeyValue() throws IOException {
+    if (pos >= count) {
+      return false;
+    }
+    key.set(pos++);
+    value.set(in.readLong());
+    return true;
+  }
+
+  @Override
+  public LongWritable getCurrentKey() {
+    return key;
+  }
+
+  @Override
+  public LongWritable getCurrentValue() {
+    return value;
+  }
+
+  public int getKmerSize() {
+    return k;
+  }
+
+  public boolean isCanonical() {
+    return canonical;
+  }
+
+  /**
+   * Get the progress within the file
+   */
+  public float getProgress() {
+    return (count == 0 ? 1.0f : Math.min(1.0f, pos / (float) count));
+  }
+
+  public synchronized void close() throws IOException {
+    if (in != null) {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.hadoop.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A samtools faidx compatible index of a plain fasta or fastq file, and
+ * lookup of records by id through it.  The index is a tab separated file
+ * with a line for each record:
+ * <pre>
+ *   NAME  LENGTH  OFFSET  LINEBASES  LINEWIDTH  [QUALOFFSET]
+ * </pre>
+ * where OFFSET is the offset of the first base, LINEBASES and LINEWIDTH the
+ * bases and bytes in each line of the sequence and QUALOFFSET, for fastq
+ * only, the offset of the first quality character.
+ *
+ * The index of a file is file.fai, a file or a directory of part files as
+ * stored by pig:
+ * <pre>
+ *   a = load 'reads.fq' using gov.jgi.meta.pig.storage.SequenceIndexStorage();
+ *   store a into 'reads.fq.fai';
+ * </pre>
+ * or it can be written by {@link #index} for files small enough to scan in
+ * one go.
+ *
+ * Opening an index for a set of ids reads the index once and keeps only the
+ * entries of those ids; the records are then read with positional reads, so
+ * fetching a few reads from a large file does not read the whole file.
+ */
+public class SequenceIndex {
+
+    public static final String EXTENSION = ".fai";
+
+    /**
+     * the index line of one record
+     */
+    public static class Entry {
+        private String name;
+        private long length;
+        private long offset;
+        private int lineBases;
+        private int lineWidth;
+        private long qualityOffset = -1;
+
+        public void set(String name, long offset) {
+            this.name = name;
+            this.offset = offset;
+            this.length = 0;
+            this.lineBases = 0;
+            this.lineWidth = 0;
+            this.qualityOffset = -1;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public void setLength(long length) {
+            this.length = length;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLineBases() {
+            return lineBases;
+        }
+
+        public int getLineWidth() {
+            return lineWidth;
+        }
+
+        public void setLines(int lineBases, int lineWidth) {
+            this.lineBases = lineBases;
+            this.lineWidth = lineWidth;
+        }
+
+        /**
+         * @return the offset of the quality, -1 for a fasta record
+         */
+        public long getQualityOffset() {
+            return qualityOffset;
+        }
+
+        public void setQualityOffset(long qualityOffset) {
+            this.qualityOffset = qualityOffset;
+        }
+
+        /**
+         * @return the number of bytes from the offset to the end of the
+         *         sequence, counting the line ends in between
+         */
+        long getSpan() {
+            if (lineBases == 0 || length == 0) {
+                return length;
+            }
+            return ((length - 1) / lineBases) * lineWidth + (length - 1) % lineBases + 1;
+        }
+
+        /**
+         * parse an index line
+         */
+        public static Entry parse(String line) throws IOException {
+            String[] a = line.split("\t");
+            if (a.length < 5) {
+                throw new IOException("not an index line: " + line);
+            }
+            Entry e = new Entry();
+            try {
+                e.set(a[0], Long.parseLong(a[2]));
+                e.setLength(Long.parseLong(a[1]));
+                e.setLines(Integer.parseInt(a[3]), Integer.parseInt(a[4]));
+                if (a.length > 5) {
+                    e.setQualityOffset(Long.parseLong(a[5]));
+                }
+            } catch (NumberFormatException ex) {
+                throw new IOException("not an index line: " + line, ex);
+            }
+            return e;
+        }
+
+        /**
+         * @return the index line, without the newline
+         */
+        public String toString() {
+            return name + "\t" + length + "\t" + offset + "\t" + lineBases + "\t" + lineWidth
+                    + (qualityOffset >= 0 ? "\t" + qualityOffset : "");
+        }
+    }
+
+    private final FSDataInputStream in;
+    private final Map<String, Entry> entries;
+
+    private SequenceIndex(FSDataInputStream in, Map<String, Entry> entries) {
+        this.in = in;
+        this.entries = entries;
+    }
+
+    /**
+     * @return the index of file, file.fai
+     */
+    public static Path indexPath(Path file) {
+        return file.suffix(EXTENSION);
+    }
+
+    /**
+     * write the index of file to file.fai, reading the whole file
+     */
+    public static void index(Configuration conf, Path file) throws IOException {
+        FileSystem fs = file.getFileSystem(conf);
+        SequenceIndexRecordReader reader = new SequenceIndexRecordReader();
+        reader.initialize(new FileSplit(file, 0, fs.getFileStatus(file).getLen(), null), conf);
+        FSDataOutputStream out = fs.create(indexPath(file), true);
+        try {
+            while (reader.nextKeyValue()) {
+                out.write((reader.getCurrentValue().toString() + "\n").getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * whether file has an index
+     */
+    public static boolean exists(Configuration conf, Path file) throws IOException {
+        return file.getFileSystem(conf).exists(indexPath(file));
+    }
+
+    /**
+     * open file with all the entries of its index
+     */
+    public static SequenceIndex open(Configuration conf, Path file) throws IOException {
+        return open(conf, file, null);
+    }
+
+    /**
+     * open file keeping only the entries of the given ids
+     *
+     * @param ids the ids to look up, null for all
+     */
+    public static SequenceIndex open(Configuration conf, Path file, Collection<String> ids) throws IOException {
+        FileSystem fs = file.getFileSystem(conf);
+        Set<String> wanted = ids == null ? null : new HashSet<String>(ids);
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+
+        Path index = indexPath(file);
+        List<Path> parts = new ArrayList<Path>();
+        if (fs.getFileStatus(index).isDirectory()) {
+            for (FileStatus f : fs.listStatus(index)) {
+                String name = f.getPath().getName();
+                if (!f.isDirectory() && !name.startsWith("_") && !name.startsWith(".")) {
+                    parts.add(f.getPath());
+                }
+            }
+        } else {
+            parts.add(index);
+        }
+
+        for (Path part : parts) {
+            BufferedReader r = new BufferedReader(new InputStreamReader(fs.open(part), "UTF-8"));
+            try {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    if (line.length() == 0) {
+                        continue;
+                    }
+                    if (wanted != null && !wanted.contains(line.substring(0, Math.max(0, line.indexOf('\t'))))) {
+                        continue;
+                    }
+                    Entry e = Entry.parse(line);
+                    entries.put(e.getName(), e);
+                }
+            } finally {
+                r.close();
+            }
+        }
+        return new SequenceIndex(fs.open(file), entries);
+    }
+
+    /**
+     * @return the number of entries kept
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * @return the entry of id, null if it is not kept
+     */
+    public Entry getEntry(String id) {
+        return entries.get(id);
+    }
+
+    /**
+     * @return the sequence of id as it is in the file without the line
+     *         ends, null if id is not kept
+     */
+    public String getSequence(String id) throws IOException {
+        Entry e = entries.get(id);
+        if (e == null) {
+            return null;
+        }
+        return read(e.getOffset(), e.getSpan(), e.getLength());
+    }
+
+    /**
+     * @return the quality of the fastq record id, null if id is not kept or
+     *         is not a fastq record
+     */
+    public String getQuality(String id) throws IOException {
+        Entry e = entries.get(id);
+        if (e == null || e.getQualityOffset() < 0) {
+            return null;
+        }
+        return read(e.getQualityOffset(), e.getLength(), e.getLength());
+    }
+
+    /**
+     * read the sequences of ids, in the order they are in the file
+     *
+     * @return the sequences keyed by id, leaving out the ids that are not kept
+     */
+    public Map<String, String> getSequences(Collection<String> ids) throws IOException {
+        List<Entry> l = new ArrayList<Entry>();
+        for (String id : ids) {
+            Entry e = entries.get(id);
+            if (e != null) {
+                l.add(e);
+            }
+        }
+        Collections.sort(l, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return a.getOffset() < b.getOffset() ? -1 : (a.getOffset() == b.getOffset() ? 0 : 1);
+            }
+        });
+        Map<String, String> sequences = new LinkedHashMap<String, String>();
+        for (Entry e : l) {
+            sequences.put(e.getName(), read(e.getOffset(), e.getSpan(), e.getLength()));
+        }
+        return sequences;
+    }
+
+    /**
+     * read span bytes at offset and drop the line ends
+     */
+    private String read(long offset, long span, long length) throws IOException {
+        if (span > Integer.MAX_VALUE) {
+            throw new IOException("record too long to read: " + length);
+        }
+        byte[] b = new byte[(int) span];
+        in.readFully(offset, b);
+        StringBuilder s = new StringBuilder((int) length);
+        for (byte c : b) {
+            if (c != '\n' && c != '\r') {
+                s.append((char) (c & 0xff));
+            }
+        }
+        return s.toString();
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
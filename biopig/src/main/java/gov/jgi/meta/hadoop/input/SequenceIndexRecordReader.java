@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.hadoop.input;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.IOException;
+
+
+/**
+ * Reads the index entries of the records of a split of a plain fasta or
+ * fastq file (see SequenceIndex).  The key is the offset of the record in the
+ * file and the value its entry.  Whether the file is fasta or fastq is told
+ * by its first byte.
+ *
+ * A record belongs to the split if its header line starts before the end of
+ * the split.  A fastq split resyncs on the first line starting with "@"
+ * whose next line but one starts with "+".
+ */
+public class SequenceIndexRecordReader extends RecordReader<LongWritable, SequenceIndex.Entry> {
+
+  private FSDataInputStream fileIn;
+  private LineReader in;
+  private long start;
+  private long end;
+  private boolean fastq;
+
+  private LongWritable key = null;
+  private SequenceIndex.Entry value = null;
+
+  // the lines read ahead of the current record, and the offset of each
+  private Text[] lines = { new Text(), new Text(), new Text(), new Text() };
+  private long[] offsets = new long[4];
+  private int[] lengths = new int[4];
+  private int buffered = 0;
+  // the offset of the next line to read
+  private long pos;
+
+  public void initialize(InputSplit genericSplit,
+                         TaskAttemptContext context) throws IOException {
+    initialize((FileSplit) genericSplit, context.getConfiguration());
+  }
+
+  /**
+   * initialize the reader outside of a task
+   */
+  public void initialize(FileSplit split, Configuration job) throws IOException {
+    Path file = split.getPath();
+    if (SplitInput.getCodec(job, file) != null) {
+      throw new IOException("only plain files can be indexed: " + file);
+    }
+    start = split.getStart();
+    end = start + split.getLength();
+    fileIn = file.getFileSystem(job).open(file);
+    fastq = fileIn.read() == '@';
+
+    /*
+    start from the end of the line before the split, so a record that
+    starts exactly at the start of the split is not skipped
+     */
+    pos = Math.max(0, start - 1);
+    fileIn.seek(pos);
+    in = new LineReader(fileIn, job);
+    if (start != 0) {
+      pos += in.readLine(new Text());
+    }
+  }
+
+  public boolean nextKeyValue() throws IOException {
+    if (key == null) {
+      key = new LongWritable();
+    }
+    if (value == null) {
+      value = new SequenceIndex.Entry();
+    }
+    boolean found = fastq ? nextFastq() : nextFasta();
+    if (!found) {
+      key = null;
+      value = null;
+    }
+    return found;
+  }
+
+  /**
+   * make sure n lines are buffered
+   *
+   * @return false at the end of the file
+   */
+  private boolean fill(int n) throws IOException {
+    while (buffered < n) {
+      int bytes = in.readLine(lines[buffered]);
+      if (bytes == 0) {
+        return false;
+      }
+      offsets[buffered] = pos;
+      lengths[buffered] = bytes;
+      pos += bytes;
+      buffered++;
+    }
+    return true;
+  }
+
+  /**
+   * drop the first n buffered lines
+   */
+  private void shift(int n) {
+    for (int i = 0; i < n; i++) {
+      Text t = lines[0];
+      for (int j = 1; j < lines.length; j++) {
+        lines[j - 1] = lines[j];
+        offsets[j - 1] = offsets[j];
+        lengths[j - 1] = lengths[j];
+      }
+      lines[lines.length - 1] = t;
+      buffered--;
+    }
+  }
+
+  private static boolean startsWith(Text line, char c) {
+    return line.getLength() > 0 && line.getBytes()[0] == c;
+  }
+
+  private boolean nextFasta() throws IOException {
+    /*
+    find the next header line
+     */
+    while (true) {
+      if (!fill(1)) {
+        return false;
+      }
+      if (startsWith(lines[0], '>')) {
+        break;
+      }
+      shift(1);
+    }
+    if (offsets[0] >= end) {
+      return false;
+    }
+    key.set(offsets[0]);
+    value.set(name(lines[0]), offsets[0] + lengths[0]);
+    shift(1);
+
+    /*
+    then the sequence lines up to the next header.  All but the last line
+    have to be the same length, for the offset of a base to be computed, and
+    the last one may only be shorter (or lack its newline at the end of the
+    file), as samtools faidx requires
+     */
+    boolean last = false;
+    while (fill(1) && !startsWith(lines[0], '>')) {
+      int bases = lines[0].getLength();
+      if (last) {
+        throw new IOException("different line lengths in sequence " + value.getName());
+      }
+      if (value.getLineBases() == 0) {
+        value.setLines(bases, lengths[0]);
+      } else if (bases > value.getLineBases()
+                 || (bases == value.getLineBases() && lengths[0] != value.getLineWidth() && lengths[0] != bases)) {
+        throw new IOException("different line lengths in sequence " + value.getName());
+      } else if (bases < value.getLineBases() || lengths[0] != value.getLineWidth()) {
+        last = true;
+      }
+      value.setLength(value.getLength() + bases);
+      shift(1);
+    }
+    return true;
+  }
+
+  private boolean nextFastq() throws IOException {
+    while (true) {
+      if (!fill(4)) {
+        return false;
+      }
+      if (startsWith(lines[0], '@') && startsWith(lines[2], '+')) {
+        break;
+      }
+      shift(1);
+    }
+    if (offsets[0] >= end) {
+      return false;
+    }
+    key.set(offsets[0]);
+    value.set(name(lines[0]), offsets[1]);
+    value.setLength(lines[1].getLength());
+    value.setLines(lines[1].getLength(), lengths[1]);
+    value.setQualityOffset(offsets[3]);
+    shift(4);
+    return true;
+  }
+
+  /**
+   * @return the id of a header line, the first word after its first character
+   */
+  private static String name(Text header) throws IOException {
+    byte[] b = header.getBytes();
+    int n = header.getLength();
+    int i = 1;
+    while (i < n && b[i] != ' ' && b[i] != '\t') i++;
+    return Text.decode(b, 1, i - 1);
+  }
+
+  @Override
+  public LongWritable getCurrentKey() {
+    return key;
+  }
+
+  @Override
+  public SequenceIndex.Entry getCurrentValue() {
+    return value;
+  }
+
+  /**
+   * Get the progress within the split
+   */
+  public float getProgress() throws IOException {
+    if (start == end) {
+      return 0.0f;
+    }
+    return Math.min(1.0f, (pos - start) / (float) (end - start));
+  }
+
+  public synchronized void close() throws IOException {
+    if (in != null) {
+      in.close();
+    }
+  }
+}
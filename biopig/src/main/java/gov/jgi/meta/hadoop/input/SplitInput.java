@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.hadoop.input;
+
+import gov.jgi.meta.hadoop.compress.BgzfCodec;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The bytes of a FileSplit as the record readers see them, for plain files
+ * as well as for compressed ones.
+ *
+ * A plain file is read from the start of the split and a record belongs to
+ * the split if it starts before the end of the split.  A file compressed
+ * with a splittable codec (bzip2, BGZF) is read from the first compressed
+ * block of the split, and a record belongs to the split if it starts in a
+ * block that starts at or before the end of the split; the record that runs
+ * over into the next split's first block is read to its end, and the next
+ * split skips it just as it would in a plain file.  Any other compressed
+ * file is read whole by the first split.
+ *
+ * Record readers keep their position as the number of bytes they have
+ * consumed from getStream(), starting at getStart(), and ask owns(pos)
+ * before reading a record that starts at pos.
+ */
+public class SplitInput {
+
+    private static final int NONE = -2;
+
+    private final FSDataInputStream fileIn;
+    private final InputStream stream;
+    private final long start;
+    private final long end;
+    private final long splitStart;
+    private final long splitEnd;
+
+    // set if the split is read by block from a splittable codec
+    private final SplitCompressionInputStream blocks;
+    // uncompressed bytes handed out of blocks
+    private long emitted = 0;
+    // a byte read ahead of the line reader to find out which block it is in
+    private int lookahead = NONE;
+    // the uncompressed offset of the first block past the split, once seen
+    private long limit = Long.MAX_VALUE;
+
+    /**
+     * the codec for the file, recognising BGZF among the .gz files and by its
+     * own .bgz extension
+     *
+     * @return the codec, or null for a plain file
+     */
+    public static CompressionCodec getCodec(Configuration conf, Path file) throws IOException {
+        CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+        if (codec == null && file.getName().endsWith(new BgzfCodec().getDefaultExtension())) {
+            codec = new BgzfCodec();
+        } else if (codec instanceof GzipCodec) {
+            FileSystem fs = file.getFileSystem(conf);
+            FSDataInputStream in = fs.open(file);
+            try {
+                byte[] header = new byte[BgzfCodec.HEADER_LENGTH];
+                int n = 0;
+                while (n < header.length) {
+                    int r = in.read(header, n, header.length - n);
+                    if (r < 0) break;
+                    n += r;
+                }
+                if (BgzfCodec.isBgzf(header, 0, n)) {
+                    codec = new BgzfCodec();
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return codec;
+    }
+
+    /**
+     * whether the file can be cut into several splits: plain files and files
+     * compressed with a splittable codec can
+     */
+    public static boolean isSplitable(Configuration conf, Path file) {
+        try {
+            CompressionCodec codec = getCodec(conf, file);
+            return codec == null || codec instanceof SplittableCompressionCodec;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * open the file of the split, positioned for reading its first record
+     *
+     * @param split the split to read
+     * @param conf the job configuration
+     * @return the input of the split
+     * @throws IOException
+     */
+    public static SplitInput open(FileSplit split, Configuration conf) throws IOException {
+        Path file = split.getPath();
+        CompressionCodec codec = getCodec(conf, file);
+        FSDataInputStream fileIn = file.getFileSystem(conf).open(file);
+        return new SplitInput(fileIn, codec, split.getStart(), split.getStart() + split.getLength());
+    }
+
+    private SplitInput(FSDataInputStream fileIn, CompressionCodec codec, long splitStart, long splitEnd) throws IOException {
+        this.fileIn = fileIn;
+        this.splitStart = splitStart;
+        this.splitEnd = splitEnd;
+
+        if (codec == null) {
+            if (splitStart != 0) {
+                fileIn.seek(splitStart);
+            }
+            blocks = null;
+            stream = fileIn;
+            start = splitStart;
+            end = splitEnd;
+        } else if (codec instanceof SplittableCompressionCodec) {
+            blocks = ((SplittableCompressionCodec) codec).createInputStream(fileIn, null, splitStart, splitEnd,
+                    SplittableCompressionCodec.READ_MODE.BYBLOCK);
+            if (blocks.getPos() > splitEnd) {
+                limit = 0;  // no block starts in this split
+            }
+            stream = new BlockStream();
+            start = 0;
+            end = Long.MAX_VALUE;
+        } else {
+            blocks = null;
+            stream = codec.createInputStream(fileIn);
+            start = 0;
+            end = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * the stream to read the records from
+     */
+    public InputStream getStream() {
+        return stream;
+    }
+
+    /**
+     * the position of the first byte of getStream(): the offset of the split
+     * for a plain file, 0 for a compressed one
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * the position records have to start before, Long.MAX_VALUE if that is
+     * only known as the file is read
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * whether a record that starts at the given position belongs to the
+     * split.  The position must not be ahead of the bytes consumed from
+     * getStream().
+     *
+     * @param pos the position of the record start
+     * @throws IOException
+     */
+    public boolean owns(long pos) throws IOException {
+        if (blocks == null) {
+            return pos < end;
+        }
+        if (pos >= emitted && lookahead == NONE && limit == Long.MAX_VALUE) {
+            peek();
+        }
+        return pos < limit;
+    }
+
+    /**
+     * the fraction of the split read so far
+     *
+     * @param pos the position of the record reader
+     */
+    public float getProgress(long pos) throws IOException {
+        if (splitStart == splitEnd) {
+            return 0.0f;
+        } else if (stream == fileIn) {
+            return Math.min(1.0f, (pos - splitStart) / (float) (splitEnd - splitStart));
+        } else {
+            return Math.min(1.0f, Math.max(0, fileIn.getPos() - splitStart) / (float) (splitEnd - splitStart));
+        }
+    }
+
+    /**
+     * read the next byte ahead so the block it comes from is known
+     */
+    private void peek() throws IOException {
+        byte[] one = new byte[1];
+        long before = blocks.getPos();
+        int n;
+        do {
+            n = blocks.read(one, 0, 1);
+        } while (n == 0);
+        if (n < 0) {
+            lookahead = -1;
+        } else {
+            checkBlock(before);
+            lookahead = one[0] & 0xff;
+        }
+    }
+
+    /**
+     * the codec streams never return bytes of two blocks in one read and
+     * move their position when the first byte of a new block is returned:
+     * the first block starting past the end of the split sets the limit
+     */
+    private void checkBlock(long before) throws IOException {
+        long after = blocks.getPos();
+        if (after != before && after > splitEnd && limit == Long.MAX_VALUE) {
+            limit = emitted;
+        }
+    }
+
+    /**
+     * the uncompressed bytes of the split's blocks, counted as they are read
+     */
+    private class BlockStream extends InputStream {
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (lookahead != NONE) {
+                if (lookahead < 0) return -1;
+                b[off] = (byte) lookahead;
+                lookahead = NONE;
+                emitted++;
+                return 1;
+            }
+            long before = blocks.getPos();
+            int n = blocks.read(b, off, len);
+            if (n > 0) {
+                checkBlock(before);
+                emitted += n;
+            }
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public void close() throws IOException {
+            blocks.close();
+        }
+    }
+}
@@ -39,6 +39,7 @@
 
 package gov.jgi.meta.hadoop.output;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
@@ -56,7 +57,19 @@ import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.ReflectionUtils;
 
 
+/**
+ * Writes fasta records, the key as the header line and the value as the
+ * sequence.  With a null key the value is written as it is, so a store
+ * function can hand over whole records it has already formatted (see
+ * gov.jgi.meta.pig.storage.FastaOutput).
+ */
 public class FastaOutputFormat<K, V> extends TextOutputFormat {
+   /**
+    * size of the buffer between the record writer and the (compressed) file
+    */
+   static final int BUFFER_SIZE = 64 * 1024;
+
+
    protected static class FastaRecordWriter<K, V> extends RecordWriter<K, V> {
       private static final String utf8 = "UTF-8";
 
@@ -108,14 +121,22 @@ public class FastaOutputFormat<K, V> extends TextOutputFormat {
             return;
          }
 
-         Object keyObj = key;
-
          if (nullKey)
          {
-            keyObj = "value";
+            // a record formatted by the caller
+            if (value instanceof Text)
+            {
+               Text to = (Text)value;
+               out.write(to.getBytes(), 0, to.getLength());
+            }
+            else
+            {
+               out.write(value.toString().getBytes(utf8));
+            }
+            return;
          }
 
-         writeKey(keyObj);
+         writeKey(key);
 
          if (!nullValue)
          {
@@ -150,13 +171,14 @@ public class FastaOutputFormat<K, V> extends TextOutputFormat {
       if (!isCompressed)
       {
          FSDataOutputStream fileOut = fs.create(file, false);
-         return(new FastaRecordWriter<K, V>(fileOut));
+         return(new FastaRecordWriter<K, V>(new DataOutputStream
+                                               (new BufferedOutputStream(fileOut, BUFFER_SIZE))));
       }
       else
       {
          FSDataOutputStream fileOut = fs.create(file, false);
          return(new FastaRecordWriter<K, V>(new DataOutputStream
-                                               (codec.createOutputStream(fileOut))));
+                                               (new BufferedOutputStream(codec.createOutputStream(fileOut), BUFFER_SIZE))));
       }
    }
 }
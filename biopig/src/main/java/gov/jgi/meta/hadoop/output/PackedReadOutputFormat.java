@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.hadoop.output;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+import gov.jgi.meta.sequence.PackedRead;
+import gov.jgi.meta.sequence.PackedReadFile;
+import gov.jgi.meta.sequence.PackedReadWriter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+/**
+ * Writes the reads as a packed read file per task (see
+ * gov.jgi.meta.sequence.PackedReadFile).  The block size and deflate level
+ * are taken from biopig.packedread.blocksize and biopig.packedread.level.
+ */
+public class PackedReadOutputFormat extends FileOutputFormat<NullWritable, PackedRead> {
+
+   public static final String BLOCK_SIZE = "biopig.packedread.blocksize";
+   public static final String LEVEL = "biopig.packedread.level";
+
+   protected static class PackedReadRecordWriter extends RecordWriter<NullWritable, PackedRead> {
+
+      private final PackedReadWriter writer;
+
+      public PackedReadRecordWriter(PackedReadWriter writer)
+      {
+         this.writer = writer;
+      }
+
+      public synchronized void write(NullWritable key, PackedRead value) throws IOException
+      {
+         writer.add(value);
+      }
+
+      public synchronized void close(TaskAttemptContext c) throws IOException
+      {
+         writer.close();
+      }
+   }
+
+   public RecordWriter<NullWritable, PackedRead> getRecordWriter(TaskAttemptContext job) throws IOException, InterruptedException
+   {
+      Configuration conf = job.getConfiguration();
+      Path file = getDefaultWorkFile(job, "");
+      FileSystem fs = file.getFileSystem(conf);
+      return new PackedReadRecordWriter(new PackedReadWriter(fs.create(file, false),
+                                                             conf.getInt(BLOCK_SIZE, PackedReadFile.DEFAULT_BLOCK_SIZE),
+                                                             conf.getInt(LEVEL, Deflater.DEFAULT_COMPRESSION)));
+   }
+}
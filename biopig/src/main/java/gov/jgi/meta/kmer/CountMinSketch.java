@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.kmer;
+
+import java.util.Arrays;
+
+/**
+ * Count-min sketch of the abundance of 2-bit coded k-mers.
+ *
+ * depth rows of 2^widthBits saturating int counters; a k-mer increments one
+ * counter per row and its abundance is estimated as the minimum of those
+ * counters.  The estimate never undercounts, and overcounts by at most
+ * e * N / 2^widthBits with probability 1 - exp(-depth), where N is the total
+ * number of k-mers added.  Sketches of the same shape are merged by adding
+ * the counters.
+ *
+ * see Cormode and Muthukrishnan, "An improved data stream summary: the
+ * count-min sketch and its applications", 2005.
+ */
+public class CountMinSketch {
+
+   public static final int DEFAULT_WIDTH_BITS = 16;
+   public static final int DEFAULT_DEPTH = 4;
+
+   private static final long[] SEEDS = {
+      0x9e3779b97f4a7c15L, 0xbf58476d1ce4e5b9L, 0x94d049bb133111ebL, 0xd6e8feb86659fd93L,
+      0xa0761d6478bd642fL, 0xe7037ed1a0b428dbL, 0x8ebc6af09c88c6e3L, 0x589965cc75374cc3L
+   };
+
+   private final int widthBits;
+   private final int depth;
+   private final int mask;
+   private final int[] counts;
+   private long total = 0;
+
+   public CountMinSketch()
+   {
+      this(DEFAULT_WIDTH_BITS, DEFAULT_DEPTH);
+   }
+
+   public CountMinSketch(int widthBits, int depth)
+   {
+      if (widthBits < 1 || widthBits > 24) {
+         throw new IllegalArgumentException("widthBits must be between 1 and 24, was " + widthBits);
+      }
+      if (depth < 1 || depth > SEEDS.length) {
+         throw new IllegalArgumentException("depth must be between 1 and " + SEEDS.length + ", was " + depth);
+      }
+      this.widthBits = widthBits;
+      this.depth = depth;
+      this.mask = (1 << widthBits) - 1;
+      this.counts = new int[depth << widthBits];
+   }
+
+   /**
+    * read a sketch written by toBytes
+    */
+   public CountMinSketch(byte[] b, int off)
+   {
+      this(b[off], b[off + 1]);
+      total = readLong(b, off + 2);
+      int p = off + 10;
+      for (int i = 0; i < counts.length; i++, p += 4) {
+         counts[i] = ((b[p] & 0xff) << 24) | ((b[p + 1] & 0xff) << 16) | ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
+      }
+   }
+
+   public int getWidthBits()
+   {
+      return widthBits;
+   }
+
+   public int getDepth()
+   {
+      return depth;
+   }
+
+   /**
+    * @return the total of all counts added
+    */
+   public long getTotal()
+   {
+      return total;
+   }
+
+   private int cell(int row, long kmer)
+   {
+      return (row << widthBits) | ((int) KmerTable.mix(kmer ^ SEEDS[row]) & mask);
+   }
+
+   public void add(long kmer, int count)
+   {
+      if (count <= 0) return;
+      total += count;
+      for (int row = 0; row < depth; row++) {
+         int c = cell(row, kmer);
+         counts[c] = saturatedAdd(counts[c], count);
+      }
+   }
+
+   /**
+    * @return an upper bound of the number of times kmer was added
+    */
+   public int estimate(long kmer)
+   {
+      int min = Integer.MAX_VALUE;
+      for (int row = 0; row < depth; row++) {
+         min = Math.min(min, counts[cell(row, kmer)]);
+      }
+      return min;
+   }
+
+   /**
+    * reset the sketch to empty, so it can be reused
+    */
+   public void clear()
+   {
+      Arrays.fill(counts, 0);
+      total = 0;
+   }
+
+   public void merge(CountMinSketch other)
+   {
+      if (other.widthBits != widthBits || other.depth != depth) {
+         throw new IllegalArgumentException("cannot merge sketches of different shapes");
+      }
+      for (int i = 0; i < counts.length; i++) {
+         counts[i] = saturatedAdd(counts[i], other.counts[i]);
+      }
+      total += other.total;
+   }
+
+   private static int saturatedAdd(int a, int b)
+   {
+      long sum = (long) a + b;
+      return (sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum);
+   }
+
+   /**
+    * @return the number of bytes written by toBytes
+    */
+   public int serializedSize()
+   {
+      return 10 + 4 * counts.length;
+   }
+
+   public byte[] toBytes()
+   {
+      byte[] b = new byte[serializedSize()];
+      b[0] = (byte) widthBits;
+      b[1] = (byte) depth;
+      for (int i = 0; i < 8; i++) b[2 + i] = (byte) (total >>> (56 - 8 * i));
+      int p = 10;
+      for (int i = 0; i < counts.length; i++, p += 4) {
+         int c = counts[i];
+         b[p] = (byte) (c >>> 24);
+         b[p + 1] = (byte) (c >>> 16);
+         b[p + 2] = (byte) (c >>> 8);
+         b[p + 3] = (byte) c;
+      }
+      return b;
+   }
+
+   private static long readLong(byte[] b, int off)
+   {
+      long v = 0;
+      for (int i = 0; i < 8; i++) v = (v << 8) | (b[off + i] & 0xff);
+      return v;
+   }
+}
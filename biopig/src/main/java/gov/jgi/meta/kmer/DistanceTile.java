@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.kmer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A tile of k-mer frequency vectors (see KmerVector) laid out for all-pairs
+ * distances: the rows are kept in one flat primitive array, scaled to unit
+ * length for the euclidean distance or as presence bits for the hamming
+ * distance, and the pairs are visited in small sub-blocks so both sides stay
+ * in cache.
+ *
+ * Distances are the same as KmerVector.distance and KmerVector.hammingDistance.
+ */
+public class DistanceTile {
+
+   public static final String EUCLIDEAN = "euclidean";
+   public static final String HAMMING   = "hamming";
+
+   /**
+    * the number of rows of each side of a sub-block
+    */
+   private static final int BLOCK = 64;
+
+   public interface PairVisitor {
+      void visit(int i, int j, double distance) throws IOException;
+   }
+
+   private final boolean hamming;
+   private final int     dimension;
+   private final int     width;
+   private double[]      unit;
+   private long[]        bits;
+   private int           size = 0;
+
+   /**
+    * @param hamming   whether to compute hamming rather than euclidean distances
+    * @param dimension the number of counts in a vector
+    */
+   public DistanceTile(boolean hamming, int dimension)
+   {
+      this.hamming   = hamming;
+      this.dimension = dimension;
+      this.width     = hamming ? (dimension + 63) >>> 6 : dimension;
+      if (hamming) {
+         bits = new long[16 * width];
+      } else {
+         unit = new double[16 * width];
+      }
+   }
+
+   public boolean isHamming()
+   {
+      return hamming;
+   }
+
+   public int dimension()
+   {
+      return dimension;
+   }
+
+   public int size()
+   {
+      return size;
+   }
+
+   public void clear()
+   {
+      size = 0;
+   }
+
+   /**
+    * add a vector as the next row
+    *
+    * @return the index of the row
+    * @throws IllegalArgumentException if the vector has the wrong dimension
+    */
+   public int add(int[] counts)
+   {
+      if (counts.length != dimension) {
+         throw new IllegalArgumentException("vector has " + counts.length + " counts, expected " + dimension);
+      }
+      int p = size * width;
+      if (hamming) {
+         if (bits.length < p + width) {
+            bits = Arrays.copyOf(bits, 2 * bits.length);
+         }
+         Arrays.fill(bits, p, p + width, 0);
+         for (int i = 0; i < dimension; i++) {
+            if (counts[i] != 0) {
+               bits[p + (i >>> 6)] |= 1L << i;
+            }
+         }
+      } else {
+         if (unit.length < p + width) {
+            unit = Arrays.copyOf(unit, 2 * unit.length);
+         }
+         double len = KmerVector.length(counts);
+         if (len == 0) len = 1;
+         for (int i = 0; i < dimension; i++) {
+            unit[p + i] = counts[i] / len;
+         }
+      }
+      return size++;
+   }
+
+   /**
+    * visit the pairs of rows within maxDistance of each other: each pair
+    * i < j once if other is this tile, otherwise each row i of this tile
+    * with each row j of other.
+    */
+   public void pairs(DistanceTile other, double maxDistance, PairVisitor visitor) throws IOException
+   {
+      if (other.hamming != hamming || other.dimension != dimension) {
+         throw new IllegalArgumentException("tiles of different vectors");
+      }
+      boolean self = other == this;
+      for (int i0 = 0; i0 < size; i0 += BLOCK) {
+         int i1 = Math.min(i0 + BLOCK, size);
+         for (int j0 = self ? i0 : 0; j0 < other.size; j0 += BLOCK) {
+            int j1 = Math.min(j0 + BLOCK, other.size);
+            for (int i = i0; i < i1; i++) {
+               for (int j = self ? Math.max(j0, i + 1) : j0; j < j1; j++) {
+                  double d = hamming ? hammingDistance(i, other, j) : distance(i, other, j);
+                  if (d <= maxDistance) {
+                     visitor.visit(i, j, d);
+                  }
+               }
+            }
+         }
+      }
+   }
+
+   private double distance(int i, DistanceTile other, int j)
+   {
+      double[] a = unit;
+      double[] b = other.unit;
+      int    p   = i * width;
+      int    q   = j * width;
+      double dis = 0;
+      for (int n = 0; n < width; n++) {
+         double d = a[p + n] - b[q + n];
+         dis += d * d;
+      }
+      return Math.sqrt(dis);
+   }
+
+   private int hammingDistance(int i, DistanceTile other, int j)
+   {
+      long[] a   = bits;
+      long[] b   = other.bits;
+      int    p   = i * width;
+      int    q   = j * width;
+      int    dis = 0;
+      for (int n = 0; n < width; n++) {
+         dis += Long.bitCount(a[p + n] ^ b[q + n]);
+      }
+      return dis;
+   }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.kmer;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog estimate of the number of distinct 2-bit coded k-mers.
+ *
+ * The sketch holds 2^precision one byte registers, so the default precision
+ * of 14 takes 16KB and has a relative standard error of about 0.8%
+ * (1.04 / sqrt(2^precision)).  Sketches of the same precision are merged by
+ * taking the register-wise maximum, which makes them suitable as partials of
+ * an algebraic UDF.
+ *
+ * see Flajolet et al., "HyperLogLog: the analysis of a near-optimal
+ * cardinality estimation algorithm", 2007.
+ */
+public class HyperLogLog {
+
+   public static final int DEFAULT_PRECISION = 14;
+   public static final int MIN_PRECISION = 4;
+   public static final int MAX_PRECISION = 18;
+
+   private final int precision;
+   private final byte[] registers;
+
+   public HyperLogLog()
+   {
+      this(DEFAULT_PRECISION);
+   }
+
+   public HyperLogLog(int precision)
+   {
+      if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+         throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ", was " + precision);
+      }
+      this.precision = precision;
+      this.registers = new byte[1 << precision];
+   }
+
+   /**
+    * read a sketch written by toBytes
+    */
+   public HyperLogLog(byte[] b, int off)
+   {
+      this(b[off]);
+      System.arraycopy(b, off + 1, registers, 0, registers.length);
+   }
+
+   public int getPrecision()
+   {
+      return precision;
+   }
+
+   public void add(long kmer)
+   {
+      long h = KmerTable.mix(kmer);
+      int index = (int) (h >>> (64 - precision));
+      // rank of the first set bit of the remaining bits, the sentinel bit
+      // bounds it at 64 - precision + 1
+      int rank = Long.numberOfLeadingZeros((h << precision) | (1L << (precision - 1))) + 1;
+      if (rank > registers[index]) registers[index] = (byte) rank;
+   }
+
+   /**
+    * reset the sketch to empty, so it can be reused
+    */
+   public void clear()
+   {
+      Arrays.fill(registers, (byte) 0);
+   }
+
+   public void merge(HyperLogLog other)
+   {
+      if (other.precision != precision) {
+         throw new IllegalArgumentException("cannot merge sketches of precision " + precision + " and " + other.precision);
+      }
+      for (int i = 0; i < registers.length; i++) {
+         if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+      }
+   }
+
+   /**
+    * @return the estimated number of distinct k-mers added
+    */
+   public long estimate()
+   {
+      int m = registers.length;
+      double sum = 0;
+      int zeros = 0;
+      for (int i = 0; i < m; i++) {
+         sum += 1.0 / (1L << registers[i]);
+         if (registers[i] == 0) zeros++;
+      }
+      double alpha = (m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m));
+      double e = alpha * m * m / sum;
+
+      // small range correction, the 64 bit hash needs no large range one
+      if (e <= 2.5 * m && zeros > 0) {
+         e = m * Math.log((double) m / zeros);
+      }
+      return Math.round(e);
+   }
+
+   /**
+    * @return the number of bytes written by toBytes
+    */
+   public int serializedSize()
+   {
+      return 1 + registers.length;
+   }
+
+   public byte[] toBytes()
+   {
+      byte[] b = new byte[serializedSize()];
+      b[0] = (byte) precision;
+      System.arraycopy(registers, 0, b, 1, registers.length);
+      return b;
+   }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.kmer;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted runs of k-mer counts into a single sorted sequence, adding
+ * (with saturation) the counts of k-mers that appear in several runs.
+ *
+ * usage:
+ *   KmerRunMerger m = new KmerRunMerger(runs);
+ *   while (m.next()) { m.key(); m.count(); }
+ */
+public class KmerRunMerger {
+
+   private static final Comparator<KmerRunReader> BY_KEY = new Comparator<KmerRunReader>() {
+      public int compare(KmerRunReader a, KmerRunReader b)
+      {
+         return KmerTable.compareKmers(a.key(), b.key());
+      }
+   };
+
+   private final PriorityQueue<KmerRunReader> heap;
+   private long key;
+   private int count;
+
+   public KmerRunMerger(List<KmerRunReader> runs) throws IOException
+   {
+      heap = new PriorityQueue<KmerRunReader>(Math.max(1, runs.size()), BY_KEY);
+      for (KmerRunReader run : runs) {
+         if (run.next()) heap.add(run);
+      }
+   }
+
+   /**
+    * advance to the next distinct k-mer
+    *
+    * @return false when all runs are exhausted
+    */
+   public boolean next() throws IOException
+   {
+      if (heap.isEmpty()) return false;
+
+      KmerRunReader run = heap.poll();
+      key = run.key();
+      long sum = run.count();
+      if (run.next()) heap.add(run);
+
+      while (!heap.isEmpty() && heap.peek().key() == key) {
+         run = heap.poll();
+         sum += run.count();
+         if (run.next()) heap.add(run);
+      }
+      count = (sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum);
+      return true;
+   }
+
+   public long key()
+   {
+      return key;
+   }
+
+   public int count()
+   {
+      return count;
+   }
+
+   /**
+    * merge the runs and write the result to out as a single sorted run
+    *
+    * @return the number of distinct k-mers written
+    */
+   public static long merge(List<KmerRunReader> runs, DataOutput out) throws IOException
+   {
+      KmerRunMerger merger = new KmerRunMerger(runs);
+      long n = 0;
+      while (merger.next()) {
+         out.writeLong(merger.key());
+         out.writeInt(merger.count());
+         n++;
+      }
+      KmerRunReader.writeEnd(out);
+      return n;
+   }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.kmer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A sorted set of 2-bit coded k-mers (k <= 32) in a memory mapped file, with
+ * O(log n) membership tests.
+ *
+ * The file, written by KmerSetWriter, is big endian:
+ *
+ *   header   int magic "KSET", int version, int k, int flags (1 = canonical),
+ *            int k-mers per block, int 0
+ *   k-mers   long * count, ascending as signed longs
+ *   index    long * ceil(count / blockSize), the first k-mer of each block
+ *   trailer  long count, long index offset, int magic, int 0
+ *
+ * The block index is read onto the heap, so a lookup is a binary search of
+ * the index and then of one block of the mapped k-mers, which keeps the
+ * pages touched per lookup to a minimum.  The set is not thread safe, but
+ * the mapped pages are shared between instances.
+ */
+public class KmerSet implements Closeable {
+
+   public static final int MAGIC = 0x4b534554;
+   public static final int VERSION = 1;
+   public static final int FLAG_CANONICAL = 1;
+   public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+   public static final int HEADER_SIZE = 24;
+   public static final int TRAILER_SIZE = 24;
+
+   /**
+    * k-mers per mapped segment, segments are mapped separately since a
+    * mapping is limited to 2GB
+    */
+   static final int SEGMENT_BITS = 27;
+
+   private final RandomAccessFile file;
+   private final int k;
+   private final boolean canonical;
+   private final int blockSize;
+   private final long count;
+   private final long[] index;
+   private final LongBuffer[] segments;
+
+   public KmerSet(File f) throws IOException
+   {
+      file = new RandomAccessFile(f, "r");
+      try {
+         if (file.length() < HEADER_SIZE + TRAILER_SIZE || file.readInt() != MAGIC) {
+            throw new IOException(f + " is not a k-mer set file");
+         }
+         int version = file.readInt();
+         if (version != VERSION) {
+            throw new IOException(f + " has unsupported k-mer set version " + version);
+         }
+         k = file.readInt();
+         canonical = (file.readInt() & FLAG_CANONICAL) != 0;
+         blockSize = file.readInt();
+
+         file.seek(file.length() - TRAILER_SIZE);
+         count = file.readLong();
+         long indexOffset = file.readLong();
+         if (file.readInt() != MAGIC || indexOffset != HEADER_SIZE + 8 * count) {
+            throw new IOException(f + " is truncated or corrupt");
+         }
+
+         int blocks = (int) ((count + blockSize - 1) / blockSize);
+         index = new long[blocks];
+         ByteBuffer b = ByteBuffer.allocate(8 * blocks);
+         file.getChannel().read(b, indexOffset);
+         b.flip();
+         b.asLongBuffer().get(index);
+
+         FileChannel channel = file.getChannel();
+         int n = (int) ((count + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+         segments = new LongBuffer[n];
+         for (int i = 0; i < n; i++) {
+            long first = (long) i << SEGMENT_BITS;
+            long size = Math.min(1L << SEGMENT_BITS, count - first);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + 8 * first, 8 * size).asLongBuffer();
+         }
+      } catch (IOException e) {
+         file.close();
+         throw e;
+      }
+   }
+
+   public int getK()
+   {
+      return k;
+   }
+
+   public boolean isCanonical()
+   {
+      return canonical;
+   }
+
+   /**
+    * @return the number of k-mers in the set
+    */
+   public long size()
+   {
+      return count;
+   }
+
+   /**
+    * @return the i-th smallest k-mer of the set
+    */
+   public long get(long i)
+   {
+      return segments[(int) (i >>> SEGMENT_BITS)].get((int) (i & ((1 << SEGMENT_BITS) - 1)));
+   }
+
+   public boolean contains(long kmer)
+   {
+      if (count == 0 || kmer < index[0]) return false;
+
+      // the last block whose first k-mer is <= kmer
+      int lo = 0;
+      int hi = index.length - 1;
+      while (lo < hi) {
+         int mid = (lo + hi + 1) >>> 1;
+         if (index[mid] <= kmer) lo = mid; else hi = mid - 1;
+      }
+
+      long first = (long) lo * blockSize;
+      long last = Math.min(first + blockSize, count) - 1;
+      while (first <= last) {
+         long mid = (first + last) >>> 1;
+         long v = get(mid);
+         if (v < kmer) first = mid + 1;
+         else if (v > kmer) last = mid - 1;
+         else return true;
+      }
+      return false;
+   }
+
+   /**
+    * @return the smallest k-mer of the set, undefined if it is empty
+    */
+   public long first()
+   {
+      return index.length > 0 ? index[0] : 0;
+   }
+
+   public void close() throws IOException
+   {
+      file.close();
+   }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.kmer;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes a k-mer set file (see KmerSet for the format).  The k-mers must be
+ * added in ascending order, as pig sorts longs; repeated k-mers are written
+ * once.
+ */
+public class KmerSetWriter implements Closeable {
+
+   private final DataOutputStream out;
+   private final int blockSize;
+
+   private long count = 0;
+   private long last;
+   private long[] index = new long[16];
+   private int blocks = 0;
+
+   public KmerSetWriter(OutputStream out, int k, boolean canonical) throws IOException
+   {
+      this(out, k, canonical, KmerSet.DEFAULT_BLOCK_SIZE);
+   }
+
+   /**
+    * @param blockSize the number of k-mers per indexed block
+    */
+   public KmerSetWriter(OutputStream out, int k, boolean canonical, int blockSize) throws IOException
+   {
+      if (k < 1 || k > 32) {
+         throw new IllegalArgumentException("a k-mer set holds 1 to 32-mers, k was " + k);
+      }
+      if (blockSize < 1) {
+         throw new IllegalArgumentException("blockSize must be positive, was " + blockSize);
+      }
+      this.out = (out instanceof DataOutputStream ? (DataOutputStream) out : new DataOutputStream(out));
+      this.blockSize = blockSize;
+
+      this.out.writeInt(KmerSet.MAGIC);
+      this.out.writeInt(KmerSet.VERSION);
+      this.out.writeInt(k);
+      this.out.writeInt(canonical ? KmerSet.FLAG_CANONICAL : 0);
+      this.out.writeInt(blockSize);
+      this.out.writeInt(0);
+   }
+
+   public void add(long kmer) throws IOException
+   {
+      if (count > 0) {
+         if (kmer == last) return;
+         if (kmer < last) {
+            throw new IOException("kmers must be added in ascending order, got " + kmer + " after " + last);
+         }
+      }
+      if (count % blockSize == 0) {
+         if (blocks == index.length) index = Arrays.copyOf(index, 2 * blocks);
+         index[blocks++] = kmer;
+      }
+      out.writeLong(kmer);
+      last = kmer;
+      count++;
+   }
+
+   /**
+    * @return the number of distinct k-mers written so far
+    */
+   public long size()
+   {
+      return count;
+   }
+
+   /**
+    * write the block index and trailer and close the stream
+    */
+   public void close() throws IOException
+   {
+      long indexOffset = KmerSet.HEADER_SIZE + 8 * count;
+      for (int i = 0; i < blocks; i++) out.writeLong(index[i]);
+      out.writeLong(count);
+      out.writeLong(indexOffset);
+      out.writeInt(KmerSet.MAGIC);
+      out.writeInt(0);
+      out.close();
+   }
+}
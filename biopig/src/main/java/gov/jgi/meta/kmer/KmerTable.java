@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.kmer;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Open addressing hash table from 2-bit coded k-mers to saturating counts,
+ * held outside the java heap in direct buffers.
+ *
+ * Keys and counts live in parallel segments of direct buffers, so the table
+ * can grow past 2GB and the collector never copies or scans the counts.  The
+ * buffers still count against -XX:MaxDirectMemorySize, which defaults to the
+ * heap size (-Xmx), and their memory is only released once their small heap
+ * wrappers are collected, so a table should be cleared and reused rather than
+ * dropped and allocated again.
+ *
+ * A compact list of the occupied slots is kept alongside the buffers, so
+ * clearing and iterating cost O(entries) rather than O(capacity), and the
+ * table can be sorted in place (by permuting that list) and spilled as a
+ * sorted run (see KmerRunReader and KmerRunMerger).
+ *
+ * A count of 0 marks an empty slot; counts saturate at Integer.MAX_VALUE.
+ * The table is not thread safe.
+ */
+public class KmerTable {
+
+   static final int SEGMENT_BITS = 24;
+   static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+   static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+   public static final int MAX_CAPACITY = 1 << 30;
+   private static final int MIN_CAPACITY = 1 << 10;
+
+   private LongBuffer[] keys;
+   private IntBuffer[] counts;
+   private IntBuffer[] entries;
+
+   private int capacity;
+   private int mask;
+   private int size;
+
+   public KmerTable()
+   {
+      this(MIN_CAPACITY / 2);
+   }
+
+   /**
+    * @param expected the number of distinct k-mers expected
+    */
+   public KmerTable(int expected)
+   {
+      int c = MIN_CAPACITY;
+      while (c < 2L * expected && c < MAX_CAPACITY) c <<= 1;
+      allocate(c);
+   }
+
+   private void allocate(int newCapacity)
+   {
+      int segments = (newCapacity + SEGMENT_SIZE - 1) >>> SEGMENT_BITS;
+      int segmentSize = Math.min(newCapacity, SEGMENT_SIZE);
+
+      keys = new LongBuffer[segments];
+      counts = new IntBuffer[segments];
+      entries = new IntBuffer[segments];
+      for (int i = 0; i < segments; i++) {
+         keys[i] = ByteBuffer.allocateDirect(8 * segmentSize).asLongBuffer();
+         counts[i] = ByteBuffer.allocateDirect(4 * segmentSize).asIntBuffer();
+         // at most half of the slots are ever occupied
+         entries[i] = ByteBuffer.allocateDirect(2 * segmentSize).asIntBuffer();
+      }
+      capacity = newCapacity;
+      mask = newCapacity - 1;
+      size = 0;
+   }
+
+   static int hash(long key)
+   {
+      return (int) mix(key);
+   }
+
+   /**
+    * murmur3 64 bit finalizer, spreads the bits of a 2-bit coded k-mer over
+    * the whole long
+    */
+   public static long mix(long key)
+   {
+      key ^= key >>> 33;
+      key *= 0xff51afd7ed558ccdL;
+      key ^= key >>> 33;
+      key *= 0xc4ceb9fe1a85ec53L;
+      key ^= key >>> 33;
+      return key;
+   }
+
+   private long slotKey(int slot)
+   {
+      return keys[slot >>> SEGMENT_BITS].get(slot & SEGMENT_MASK);
+   }
+
+   private int slotCount(int slot)
+   {
+      return counts[slot >>> SEGMENT_BITS].get(slot & SEGMENT_MASK);
+   }
+
+   private void setSlot(int slot, long key, int count)
+   {
+      keys[slot >>> SEGMENT_BITS].put(slot & SEGMENT_MASK, key);
+      counts[slot >>> SEGMENT_BITS].put(slot & SEGMENT_MASK, count);
+   }
+
+   private int entrySlot(int entry)
+   {
+      return entries[entry >>> (SEGMENT_BITS - 1)].get(entry & (SEGMENT_MASK >>> 1));
+   }
+
+   private void setEntrySlot(int entry, int slot)
+   {
+      entries[entry >>> (SEGMENT_BITS - 1)].put(entry & (SEGMENT_MASK >>> 1), slot);
+   }
+
+   /**
+    * add count occurrences of key, saturating at Integer.MAX_VALUE
+    */
+   public void add(long key, int count)
+   {
+      if (count <= 0) return;
+      int slot = hash(key) & mask;
+      int c;
+      while ((c = slotCount(slot)) != 0) {
+         if (slotKey(slot) == key) {
+            long sum = (long) c + count;
+            counts[slot >>> SEGMENT_BITS].put(slot & SEGMENT_MASK,
+                                              sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum);
+            return;
+         }
+         slot = (slot + 1) & mask;
+      }
+      if (size >= capacity / 2) {
+         if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("kmer table is full at " + size + " entries");
+         }
+         resize(2 * capacity);
+         add(key, count);
+         return;
+      }
+      setSlot(slot, key, count);
+      setEntrySlot(size++, slot);
+   }
+
+   /**
+    * @return the count of key, 0 if it is not in the table
+    */
+   public int get(long key)
+   {
+      int slot = hash(key) & mask;
+      int c;
+      while ((c = slotCount(slot)) != 0) {
+         if (slotKey(slot) == key) return c;
+         slot = (slot + 1) & mask;
+      }
+      return 0;
+   }
+
+   private void resize(int newCapacity)
+   {
+      LongBuffer[] oldKeys = keys;
+      IntBuffer[] oldCounts = counts;
+      IntBuffer[] oldEntries = entries;
+      int oldSize = size;
+
+      allocate(newCapacity);
+      for (int e = 0; e < oldSize; e++) {
+         int oldSlot = oldEntries[e >>> (SEGMENT_BITS - 1)].get(e & (SEGMENT_MASK >>> 1));
+         long key = oldKeys[oldSlot >>> SEGMENT_BITS].get(oldSlot & SEGMENT_MASK);
+         int count = oldCounts[oldSlot >>> SEGMENT_BITS].get(oldSlot & SEGMENT_MASK);
+
+         int slot = hash(key) & mask;
+         while (slotCount(slot) != 0) slot = (slot + 1) & mask;
+         setSlot(slot, key, count);
+         setEntrySlot(size++, slot);
+      }
+   }
+
+   /**
+    * @return the number of distinct k-mers in the table
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   public int capacity()
+   {
+      return capacity;
+   }
+
+   /**
+    * @return the number of bytes held outside the heap
+    */
+   public long getMemorySize()
+   {
+      return 14L * capacity;
+   }
+
+   /**
+    * drop all entries, keeping the current capacity
+    */
+   public void clear()
+   {
+      for (int e = 0; e < size; e++) {
+         int slot = entrySlot(e);
+         counts[slot >>> SEGMENT_BITS].put(slot & SEGMENT_MASK, 0);
+      }
+      size = 0;
+   }
+
+   /**
+    * @return the k-mer of the given entry, 0 <= entry < size()
+    */
+   public long getKey(int entry)
+   {
+      return slotKey(entrySlot(entry));
+   }
+
+   /**
+    * @return the count of the given entry, 0 <= entry < size()
+    */
+   public int getCount(int entry)
+   {
+      return slotCount(entrySlot(entry));
+   }
+
+   /**
+    * order the entries by ascending k-mer (unsigned, i.e. lexicographic
+    * order of the bases).  adding to the table afterwards appends new entries
+    * at the end, unsorted.
+    */
+   public void sort()
+   {
+      quicksort(0, size - 1);
+   }
+
+   /**
+    * write the entries as a sorted run (see KmerRunReader) and clear the table.
+    *
+    * @return the number of entries written
+    */
+   public int spill(DataOutput out) throws IOException
+   {
+      sort();
+      int n = size;
+      for (int e = 0; e < n; e++) {
+         int slot = entrySlot(e);
+         out.writeLong(slotKey(slot));
+         out.writeInt(slotCount(slot));
+      }
+      KmerRunReader.writeEnd(out);
+      clear();
+      return n;
+   }
+
+   private int compareEntries(int a, int b)
+   {
+      return compareKmers(getKey(a), getKey(b));
+   }
+
+   /**
+    * unsigned comparison of 2-bit coded k-mers
+    */
+   public static int compareKmers(long a, long b)
+   {
+      return Long.compare(a ^ Long.MIN_VALUE, b ^ Long.MIN_VALUE);
+   }
+
+   private void swapEntries(int a, int b)
+   {
+      int t = entrySlot(a);
+      setEntrySlot(a, entrySlot(b));
+      setEntrySlot(b, t);
+   }
+
+   private void quicksort(int lo, int hi)
+   {
+      while (hi - lo > 16) {
+         // median of three pivot, moved to hi
+         int mid = (lo + hi) >>> 1;
+         if (compareEntries(mid, lo) < 0) swapEntries(mid, lo);
+         if (compareEntries(hi, lo) < 0) swapEntries(hi, lo);
+         if (compareEntries(mid, hi) < 0) swapEntries(mid, hi);
+         long pivot = getKey(hi);
+
+         int i = lo - 1;
+         for (int j = lo; j < hi; j++) {
+            if (compareKmers(getKey(j), pivot) < 0) swapEntries(++i, j);
+         }
+         swapEntries(++i, hi);
+
+         // recurse into the smaller half to bound the stack depth
+         if (i - lo < hi - i) {
+            quicksort(lo, i - 1);
+            lo = i + 1;
+         } else {
+            quicksort(i + 1, hi);
+            hi = i - 1;
+         }
+      }
+      for (int i = lo + 1; i <= hi; i++) {
+         for (int j = i; j > lo && compareEntries(j, j - 1) < 0; j--) swapEntries(j, j - 1);
+      }
+   }
+}
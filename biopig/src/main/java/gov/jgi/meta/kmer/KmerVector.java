@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.kmer;
+
+import gov.jgi.meta.sequence.SequenceString;
+
+import java.util.Arrays;
+
+/**
+ * Dense k-mer frequency vectors (k <= 8, eg the tetranucleotide frequency of
+ * a sequence for k = 4), counted in one pass over a sequence.
+ *
+ * Forward vectors have a count for each of the 4^k k-mers, indexed by their
+ * 2-bit code (a=0, c=1, g=2, t=3, first base most significant, as in
+ * RollingKmer).  Canonical vectors count a k-mer and its reverse complement
+ * together and have one count per canonical k-mer, in the order of their
+ * codes (136 for k = 4).  k-mers with an n are not counted.
+ *
+ * A vector is stored as a byte array
+ *
+ *   byte k, byte flags (1 = canonical), vint dimension, vint count * dimension
+ *
+ * so a tetranucleotide vector of a short read takes a little over 256 bytes.
+ */
+public class KmerVector {
+
+   public static final int MAX_K = 8;
+   public static final int FLAG_CANONICAL = 1;
+
+   private static final int HEADER_SIZE = 2;
+
+   /**
+    * 2-bit code of each ascii base, -1 for anything else
+    */
+   private static final byte[] CODE = new byte[256];
+
+   static {
+      Arrays.fill(CODE, (byte) -1);
+      CODE['a'] = CODE['A'] = 0;
+      CODE['c'] = CODE['C'] = 1;
+      CODE['g'] = CODE['G'] = 2;
+      CODE['t'] = CODE['T'] = 3;
+   }
+
+   /**
+    * the index in the canonical vector of each k-mer code, by k
+    */
+   private static final int[][] CANONICAL_INDEX = new int[MAX_K + 1][];
+
+   private final int k;
+   private final boolean canonical;
+   private final int[] index;
+   private final int dimension;
+   private byte[] scratch = new byte[256];
+
+   public KmerVector(int k, boolean canonical)
+   {
+      if (k < 1 || k > MAX_K) {
+         throw new IllegalArgumentException("kmer size must be between 1 and " + MAX_K + ": " + k);
+      }
+      this.k = k;
+      this.canonical = canonical;
+      this.index = canonical ? canonicalIndex(k) : null;
+      this.dimension = canonical ? canonicalDimension(k) : 1 << (2 * k);
+   }
+
+   public int getK()
+   {
+      return k;
+   }
+
+   public boolean isCanonical()
+   {
+      return canonical;
+   }
+
+   /**
+    * @return the number of counts in a vector
+    */
+   public int dimension()
+   {
+      return dimension;
+   }
+
+   /**
+    * @return the number of canonical k-mers
+    */
+   public static int canonicalDimension(int k)
+   {
+      // the palindromes are their own reverse complement, and only have an even k
+      return ((1 << (2 * k)) + (k % 2 == 0 ? 1 << k : 0)) / 2;
+   }
+
+   private static synchronized int[] canonicalIndex(int k)
+   {
+      if (CANONICAL_INDEX[k] == null) {
+         int   n     = 1 << (2 * k);
+         int[] index = new int[n];
+         int   next  = 0;
+         for (int code = 0; code < n; code++) {
+            int rc = reverseComplement(code, k);
+            index[code] = rc < code ? index[rc] : next++;
+         }
+         CANONICAL_INDEX[k] = index;
+      }
+      return CANONICAL_INDEX[k];
+   }
+
+   static int reverseComplement(int code, int k)
+   {
+      int rc = 0;
+      for (int i = 0; i < k; i++) {
+         rc = (rc << 2) | (3 - (code & 3));
+         code >>>= 2;
+      }
+      return rc;
+   }
+
+   /**
+    * add the k-mers of the ascii bases sequence[start, end) to counts
+    *
+    * @param counts a vector of dimension() counts, or null for a new one
+    * @return counts
+    */
+   public int[] count(byte[] sequence, int start, int end, int[] counts)
+   {
+      if (counts == null) {
+         counts = new int[dimension];
+      }
+      int mask  = (1 << (2 * k)) - 1;
+      int code  = 0;
+      int valid = 0;
+      for (int i = start; i < end; i++) {
+         int b = CODE[sequence[i] & 0xff];
+         if (b < 0) {
+            valid = 0;
+            continue;
+         }
+         code = ((code << 2) | b) & mask;
+         if (++valid >= k) {
+            counts[canonical ? index[code] : code]++;
+         }
+      }
+      return counts;
+   }
+
+   /**
+    * add the k-mers of a sequence packed by SequenceString to counts
+    *
+    * @param counts a vector of dimension() counts, or null for a new one
+    * @return counts
+    */
+   public int[] countPacked(byte[] packed, int offset, int length, int[] counts)
+   {
+      int n = SequenceString.numBases(packed, offset, length);
+      if (scratch.length < n) {
+         scratch = new byte[Math.max(n, 2 * scratch.length)];
+      }
+      SequenceString.unpack(packed, offset, length, scratch, 0);
+      return count(scratch, 0, n, counts);
+   }
+
+   /**
+    * @return the vector counts as a byte array
+    */
+   public byte[] encode(int[] counts)
+   {
+      if (counts.length != dimension) {
+         throw new IllegalArgumentException("vector has " + counts.length + " counts, expected " + dimension);
+      }
+      byte[] b = new byte[HEADER_SIZE + 5 * (dimension + 1)];
+      b[0] = (byte) k;
+      b[1] = (byte) (canonical ? FLAG_CANONICAL : 0);
+      int p = writeVInt(b, HEADER_SIZE, dimension);
+      for (int c : counts) {
+         p = writeVInt(b, p, c);
+      }
+      return Arrays.copyOf(b, p);
+   }
+
+   /**
+    * read the counts of a vector written by encode
+    *
+    * @param counts the array to read into if it has the right dimension, or null
+    * @return the counts
+    * @throws IllegalArgumentException if b is not a vector
+    */
+   public static int[] decode(byte[] b, int offset, int length, int[] counts)
+   {
+      int   end = offset + length;
+      int[] pos = { offset + HEADER_SIZE };
+      if (length < HEADER_SIZE + 1 || b[offset] < 1 || b[offset] > MAX_K) {
+         throw new IllegalArgumentException("not a kmer vector");
+      }
+      int dimension = readVInt(b, pos, end);
+      if (counts == null || counts.length != dimension) {
+         counts = new int[dimension];
+      }
+      for (int i = 0; i < dimension; i++) {
+         counts[i] = readVInt(b, pos, end);
+      }
+      return counts;
+   }
+
+   /**
+    * @return the k of a vector written by encode
+    */
+   public static int getK(byte[] b, int offset)
+   {
+      return b[offset];
+   }
+
+   /**
+    * @return whether a vector written by encode is canonical
+    */
+   public static boolean isCanonical(byte[] b, int offset)
+   {
+      return (b[offset + 1] & FLAG_CANONICAL) != 0;
+   }
+
+   /**
+    * @return the euclidean length of a vector
+    */
+   public static double length(int[] a)
+   {
+      double len = 0;
+      for (int x : a) {
+         len += (double) x * x;
+      }
+      return Math.sqrt(len);
+   }
+
+   /**
+    * the euclidean distance of two vectors scaled to unit length (vectors
+    * of length 0 are left as they are), as TNFDistance2 computes it
+    */
+   public static double distance(int[] a, int[] b)
+   {
+      checkDimension(a, b);
+      double lenA = length(a);
+      double lenB = length(b);
+      if (lenA == 0) lenA = 1;
+      if (lenB == 0) lenB = 1;
+
+      double dis = 0;
+      for (int i = 0; i < a.length; i++) {
+         double d = a[i] / lenA - b[i] / lenB;
+         dis += d * d;
+      }
+      return Math.sqrt(dis);
+   }
+
+   /**
+    * the number of k-mers found in one of the vectors but not the other, as
+    * TNFHammingDistance computes it
+    */
+   public static int hammingDistance(int[] a, int[] b)
+   {
+      checkDimension(a, b);
+      int dis = 0;
+      for (int i = 0; i < a.length; i++) {
+         if ((a[i] == 0) != (b[i] == 0)) dis++;
+      }
+      return dis;
+   }
+
+   private static void checkDimension(int[] a, int[] b)
+   {
+      if (a.length != b.length) {
+         throw new IllegalArgumentException("vectors of different dimensions: " + a.length + " and " + b.length);
+      }
+   }
+
+   private static int writeVInt(byte[] b, int p, int v)
+   {
+      while ((v & ~0x7f) != 0) {
+         b[p++] = (byte) (v & 0x7f | 0x80);
+         v >>>= 7;
+      }
+      b[p++] = (byte) v;
+      return p;
+   }
+
+   private static int readVInt(byte[] b, int[] pos, int end)
+   {
+      int v = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+         if (pos[0] >= end) {
+            throw new IllegalArgumentException("kmer vector is corrupt");
+         }
+         int x = b[pos[0]++] & 0xff;
+         v |= (x & 0x7f) << shift;
+         if ((x & 0x80) == 0) return v;
+      }
+      throw new IllegalArgumentException("kmer vector is corrupt");
+   }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.kmer;
+
+import java.util.Random;
+
+/**
+ * Random hyperplane locality sensitive hashing (SimHash) of k-mer frequency
+ * vectors (see KmerVector), to find the pairs of vectors that are likely to
+ * be close without comparing all pairs.
+ *
+ * Each of bands * rows hyperplanes gives one bit, the side of the plane the
+ * vector is on, and the bits are grouped into bands of rows bits.  Counts are
+ * all positive, so any two vectors are less than 90 degrees apart and most
+ * random planes would put them on the same side; the planes are therefore
+ * made orthogonal to (1, 1, ..., 1), which is the same as hashing each vector
+ * less its mean count.  Two vectors whose centered forms are at an angle theta
+ * have the same bit with probability 1 - theta / pi, so they share at least
+ * one band key with probability
+ *
+ *   1 - (1 - (1 - theta / pi)^rows)^bands
+ *
+ * More bands raise the recall of close pairs, more rows lower the number of
+ * far pairs that collide.  The planes only depend on the seed, so vectors
+ * hashed by different tasks with the same seed can be compared.
+ */
+public class SimHash {
+
+   public static final long DEFAULT_SEED = 1L;
+
+   private final int      dimension;
+   private final int      bands;
+   private final int      rows;
+   private final double[] planes;
+
+   /**
+    * @param dimension the number of counts in a vector
+    * @param bands     the number of band keys of a vector
+    * @param rows      the number of bits in a band key, at most 64
+    * @param seed      the seed of the random hyperplanes
+    */
+   public SimHash(int dimension, int bands, int rows, long seed)
+   {
+      if (bands < 1 || rows < 1 || rows > 64) {
+         throw new IllegalArgumentException("need at least one band of 1 to 64 rows: " + bands + " x " + rows);
+      }
+      this.dimension = dimension;
+      this.bands     = bands;
+      this.rows      = rows;
+      this.planes    = new double[bands * rows * dimension];
+      Random r = new Random(seed);
+      for (int i = 0; i < planes.length; i++) {
+         planes[i] = r.nextGaussian();
+      }
+      for (int p = 0; p < planes.length; p += dimension) {
+         double mean = 0;
+         for (int i = 0; i < dimension; i++) {
+            mean += planes[p + i];
+         }
+         mean /= dimension;
+         for (int i = 0; i < dimension; i++) {
+            planes[p + i] -= mean;
+         }
+      }
+   }
+
+   public int dimension()
+   {
+      return dimension;
+   }
+
+   public int bands()
+   {
+      return bands;
+   }
+
+   public int rows()
+   {
+      return rows;
+   }
+
+   /**
+    * @param keys an array of bands() keys to fill, or null for a new one
+    * @return the band keys of a vector
+    * @throws IllegalArgumentException if the vector has the wrong dimension
+    */
+   public long[] bandKeys(int[] counts, long[] keys)
+   {
+      if (counts.length != dimension) {
+         throw new IllegalArgumentException("vector has " + counts.length + " counts, expected " + dimension);
+      }
+      if (keys == null || keys.length != bands) {
+         keys = new long[bands];
+      }
+      int p = 0;
+      for (int band = 0; band < bands; band++) {
+         long key = 0;
+         for (int row = 0; row < rows; row++) {
+            double dot = 0;
+            for (int i = 0; i < dimension; i++) {
+               dot += planes[p++] * counts[i];
+            }
+            key = (key << 1) | (dot > 0 ? 1 : 0);
+         }
+         keys[band] = key;
+      }
+      return keys;
+   }
+
+   /**
+    * @return the euclidean distance (0 to 2) of two vectors less their mean
+    *         counts and scaled to unit length, the distance the band keys
+    *         are sensitive to.  A vector with all counts equal has no direction
+    *         once centered; it is taken to be sqrt(2) from any other vector
+    *         and 0 from another such vector.
+    */
+   public static double distance(int[] a, int[] b)
+   {
+      if (a.length != b.length) {
+         throw new IllegalArgumentException("vectors have " + a.length + " and " + b.length + " counts");
+      }
+      double meanA = 0, meanB = 0;
+      for (int i = 0; i < a.length; i++) {
+         meanA += a[i];
+         meanB += b[i];
+      }
+      meanA /= a.length;
+      meanB /= b.length;
+      double dot = 0, normA = 0, normB = 0;
+      for (int i = 0; i < a.length; i++) {
+         double x = a[i] - meanA;
+         double y = b[i] - meanB;
+         dot   += x * y;
+         normA += x * x;
+         normB += y * y;
+      }
+      if (normA == 0 || normB == 0) {
+         return normA == normB ? 0 : Math.sqrt(2);
+      }
+      return Math.sqrt(Math.max(0, 2 - 2 * dot / Math.sqrt(normA * normB)));
+   }
+
+   /**
+    * @param distance the distance of two vectors as {@link #distance(int[], int[])}
+    *                 computes it (0 to 2)
+    * @return the probability the two vectors share at least one band key
+    */
+   public static double collisionProbability(double distance, int bands, int rows)
+   {
+      double theta = 2 * Math.asin(Math.min(1, distance / 2));
+      double p     = Math.pow(1 - theta / Math.PI, rows);
+      return 1 - Math.pow(1 - p, bands);
+   }
+}
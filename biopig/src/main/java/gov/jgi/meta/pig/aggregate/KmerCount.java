@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.aggregate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import gov.jgi.meta.kmer.KmerTable;
+import org.apache.pig.Accumulator;
+import org.apache.pig.Algebraic;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.DefaultBagFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+/**
+ * Counts the occurrences of each k-mer in a bag of 2-bit coded k-mers (as
+ * produced by KmerGenerator('long')), returning a bag of (kmer, count).
+ *
+ * The inner tuples are (kmer) or (kmer, count), so the output can be counted
+ * again.  The function is algebraic: the map side emits the k-mers as a packed
+ * partial, the combiner folds the partials into an off-heap KmerTable and
+ * flushes it whenever it holds more than maxEntries k-mers (the optional
+ * constructor argument), and the reducer merges the partials into the final
+ * counts.  It is also an accumulator, so large groups are never materialised.
+ * Each instance allocates its table once and reuses it across groups.
+ *
+ * The group key should be derived from the k-mer so every occurrence of a
+ * k-mer lands in the same group, e.g.
+ *
+ *   B = foreach A generate FLATTEN(KMERS(seq, 30)) as (kmer:long);
+ *   C = group B by (kmer % 1024);
+ *   D = foreach C generate gov.jgi.meta.pig.aggregate.KmerCount(B) as counts;
+ *   E = foreach D generate FLATTEN(counts);
+ */
+public class KmerCount extends EvalFunc<DataBag> implements Algebraic, Accumulator<DataBag> {
+
+   public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+   /**
+    * bytes per (kmer, count) entry of a partial
+    */
+   static final int ENTRY_SIZE = 12;
+
+   private static final TupleFactory tupleFactory = TupleFactory.getInstance();
+
+   private final int maxEntries;
+   private KmerTable table = null;
+
+   public KmerCount()
+   {
+      this(String.valueOf(DEFAULT_MAX_ENTRIES));
+   }
+
+   /**
+    * @param maxEntries the number of distinct k-mers the combiner holds before flushing
+    */
+   public KmerCount(String maxEntries)
+   {
+      this.maxEntries = Integer.parseInt(maxEntries);
+   }
+
+   public DataBag exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() == 0 || input.get(0) == null) return null;
+
+      if (table == null) table = new KmerTable();
+      addKmers((DataBag) input.get(0), table);
+      DataBag output = toBag(table);
+      table.clear();
+      return output;
+   }
+
+   public void accumulate(Tuple input) throws IOException
+   {
+      if (table == null) table = new KmerTable();
+      if (input != null && input.size() > 0 && input.get(0) != null) {
+         addKmers((DataBag) input.get(0), table);
+      }
+   }
+
+   public DataBag getValue()
+   {
+      if (table == null) table = new KmerTable();
+      return toBag(table);
+   }
+
+   public void cleanup()
+   {
+      if (table != null) table.clear();
+   }
+
+   public String getInitial()
+   {
+      return Initial.class.getName();
+   }
+
+   public String getIntermed()
+   {
+      return Intermediate.class.getName() + "('" + maxEntries + "')";
+   }
+
+   public String getFinal()
+   {
+      return Final.class.getName();
+   }
+
+   /**
+    * map side: encode the k-mers of the input as a partial without hashing,
+    * the combiner does the folding.
+    */
+   public static class Initial extends EvalFunc<Tuple> {
+
+      public Initial()
+      {
+      }
+
+      /**
+       * pig passes the arguments of the DEFINE on to the map side
+       */
+      public Initial(String... args)
+      {
+      }
+
+      public Tuple exec(Tuple input) throws IOException
+      {
+         DataBag bag = (DataBag) input.get(0);
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) (ENTRY_SIZE * bag.size()));
+         DataOutputStream out = new DataOutputStream(bytes);
+         for (Tuple t : bag) {
+            Object kmer = t.get(0);
+            if (kmer == null) continue;
+            out.writeLong(((Number) kmer).longValue());
+            out.writeInt(countOf(t));
+         }
+         out.flush();
+         return tupleFactory.newTuple(new DataByteArray(bytes.toByteArray()));
+      }
+   }
+
+   /**
+    * combiner: fold the partials, flushing the table when it gets too large.
+    */
+   public static class Intermediate extends EvalFunc<Tuple> {
+
+      private final int maxEntries;
+      private KmerTable table = null;
+
+      public Intermediate()
+      {
+         this(String.valueOf(DEFAULT_MAX_ENTRIES));
+      }
+
+      public Intermediate(String maxEntries)
+      {
+         this.maxEntries = Integer.parseInt(maxEntries);
+      }
+
+      public Tuple exec(Tuple input) throws IOException
+      {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         DataOutputStream out = new DataOutputStream(bytes);
+         if (table == null) table = new KmerTable(Math.min(maxEntries, DEFAULT_MAX_ENTRIES));
+
+         for (Tuple t : (DataBag) input.get(0)) {
+            byte[] partial = ((DataByteArray) t.get(0)).get();
+            for (int i = 0; i + ENTRY_SIZE <= partial.length; i += ENTRY_SIZE) {
+               table.add(readLong(partial, i), readInt(partial, i + 8));
+               if (table.size() >= maxEntries) {
+                  writeEntries(table, out);
+                  table.clear();
+               }
+            }
+         }
+         writeEntries(table, out);
+         table.clear();
+         out.flush();
+         return tupleFactory.newTuple(new DataByteArray(bytes.toByteArray()));
+      }
+   }
+
+   /**
+    * reducer: merge the partials into the final counts.
+    */
+   public static class Final extends EvalFunc<DataBag> {
+
+      private KmerTable table = null;
+
+      public DataBag exec(Tuple input) throws IOException
+      {
+         if (table == null) table = new KmerTable();
+         for (Tuple t : (DataBag) input.get(0)) {
+            byte[] partial = ((DataByteArray) t.get(0)).get();
+            for (int i = 0; i + ENTRY_SIZE <= partial.length; i += ENTRY_SIZE) {
+               table.add(readLong(partial, i), readInt(partial, i + 8));
+            }
+         }
+         DataBag output = toBag(table);
+         table.clear();
+         return output;
+      }
+   }
+
+   static int countOf(Tuple t) throws IOException
+   {
+      if (t.size() > 1 && t.get(1) != null) {
+         return ((Number) t.get(1)).intValue();
+      }
+      return 1;
+   }
+
+   static void addKmers(DataBag bag, KmerTable counts) throws IOException
+   {
+      for (Tuple t : bag) {
+         Object kmer = t.get(0);
+         if (kmer == null) continue;
+         counts.add(((Number) kmer).longValue(), countOf(t));
+      }
+   }
+
+   static void writeEntries(KmerTable counts, DataOutputStream out) throws IOException
+   {
+      for (int i = 0; i < counts.size(); i++) {
+         out.writeLong(counts.getKey(i));
+         out.writeInt(counts.getCount(i));
+      }
+   }
+
+   static long readLong(byte[] b, int off)
+   {
+      return ((long) readInt(b, off) << 32) | (readInt(b, off + 4) & 0xffffffffL);
+   }
+
+   static int readInt(byte[] b, int off)
+   {
+      return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+   }
+
+   static DataBag toBag(KmerTable counts)
+   {
+      DataBag output = DefaultBagFactory.getInstance().newDefaultBag();
+      for (int i = 0; i < counts.size(); i++) {
+         Tuple t = tupleFactory.newTuple(2);
+         try {
+            t.set(0, counts.getKey(i));
+            t.set(1, (long) counts.getCount(i));
+         } catch (IOException e) {
+            throw new RuntimeException(e);
+         }
+         output.add(t);
+      }
+      return output;
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      try {
+         Schema tupleSchema = new Schema(new Schema.FieldSchema("kmer", DataType.LONG));
+         tupleSchema.add(new Schema.FieldSchema("count", DataType.LONG));
+
+         Schema.FieldSchema tupleFs = new Schema.FieldSchema("tuple_of_kmer_count", tupleSchema, DataType.TUPLE);
+
+         Schema bagSchema = new Schema(tupleFs);
+         bagSchema.setTwoLevelAccessRequired(true);
+         return new Schema(new Schema.FieldSchema("kmer_counts", bagSchema, DataType.BAG));
+      }
+      catch (FrontendException e) {
+         throw new RuntimeException("Unable to compute KmerCount schema.");
+      }
+   }
+}
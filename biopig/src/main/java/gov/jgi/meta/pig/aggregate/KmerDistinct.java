@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.aggregate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import gov.jgi.meta.kmer.HyperLogLog;
+import org.apache.pig.Accumulator;
+import org.apache.pig.Algebraic;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+/**
+ * Estimates the number of distinct k-mers in a bag of 2-bit coded k-mers (as
+ * produced by KmerGenerator('long')) with a HyperLogLog sketch.
+ *
+ * The function is algebraic: the map side emits the k-mers as a raw partial,
+ * the combiner folds them into a sketch of 2^precision bytes (the optional
+ * constructor argument, default 14 for about 0.8% error) and the reducer
+ * merges the sketches.  Since the sketch is small, the whole input can be
+ * summarised in a single group without a shuffle of the k-mers:
+ *
+ *   B = foreach A generate FLATTEN(KMERS(seq, 30)) as (kmer:long);
+ *   C = group B all;
+ *   D = foreach C generate gov.jgi.meta.pig.aggregate.KmerDistinct(B);
+ */
+public class KmerDistinct extends EvalFunc<Long> implements Algebraic, Accumulator<Long> {
+
+   /**
+    * partial tags, raw partials hold (kmer, count) entries as written by
+    * KmerCount, sketch partials a serialized sketch
+    */
+   static final byte RAW = 0;
+   static final byte SKETCH = 1;
+
+   private static final TupleFactory tupleFactory = TupleFactory.getInstance();
+
+   private final int precision;
+   private HyperLogLog sketch = null;
+
+   public KmerDistinct()
+   {
+      this(String.valueOf(HyperLogLog.DEFAULT_PRECISION));
+   }
+
+   /**
+    * @param precision log2 of the number of registers of the sketch
+    */
+   public KmerDistinct(String precision)
+   {
+      this.precision = Integer.parseInt(precision);
+   }
+
+   public Long exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() == 0 || input.get(0) == null) return null;
+
+      if (sketch == null) sketch = new HyperLogLog(precision);
+      addKmers((DataBag) input.get(0), sketch);
+      Long estimate = sketch.estimate();
+      sketch.clear();
+      return estimate;
+   }
+
+   public void accumulate(Tuple input) throws IOException
+   {
+      if (sketch == null) sketch = new HyperLogLog(precision);
+      if (input != null && input.size() > 0 && input.get(0) != null) {
+         addKmers((DataBag) input.get(0), sketch);
+      }
+   }
+
+   public Long getValue()
+   {
+      return (sketch == null ? 0L : sketch.estimate());
+   }
+
+   public void cleanup()
+   {
+      if (sketch != null) sketch.clear();
+   }
+
+   public String getInitial()
+   {
+      return Initial.class.getName();
+   }
+
+   public String getIntermed()
+   {
+      return Intermediate.class.getName() + "('" + precision + "')";
+   }
+
+   public String getFinal()
+   {
+      return Final.class.getName() + "('" + precision + "')";
+   }
+
+   /**
+    * map side: pass the k-mers on as a raw partial.
+    */
+   public static class Initial extends EvalFunc<Tuple> {
+
+      public Initial()
+      {
+      }
+
+      /**
+       * pig passes the arguments of the DEFINE on to the map side
+       */
+      public Initial(String... args)
+      {
+      }
+
+      public Tuple exec(Tuple input) throws IOException
+      {
+         return tupleFactory.newTuple(rawPartial((DataBag) input.get(0)));
+      }
+   }
+
+   /**
+    * combiner: fold the partials into one sketch.
+    */
+   public static class Intermediate extends EvalFunc<Tuple> {
+
+      private final int precision;
+      private HyperLogLog sketch = null;
+
+      public Intermediate()
+      {
+         this(String.valueOf(HyperLogLog.DEFAULT_PRECISION));
+      }
+
+      public Intermediate(String precision)
+      {
+         this.precision = Integer.parseInt(precision);
+      }
+
+      public Tuple exec(Tuple input) throws IOException
+      {
+         if (sketch == null) sketch = new HyperLogLog(precision);
+         fold((DataBag) input.get(0), sketch);
+         byte[] b = sketch.toBytes();
+         sketch.clear();
+         byte[] partial = new byte[1 + b.length];
+         partial[0] = SKETCH;
+         System.arraycopy(b, 0, partial, 1, b.length);
+         return tupleFactory.newTuple(new DataByteArray(partial));
+      }
+   }
+
+   /**
+    * reducer: merge the partials and estimate.
+    */
+   public static class Final extends EvalFunc<Long> {
+
+      private final int precision;
+      private HyperLogLog sketch = null;
+
+      public Final()
+      {
+         this(String.valueOf(HyperLogLog.DEFAULT_PRECISION));
+      }
+
+      public Final(String precision)
+      {
+         this.precision = Integer.parseInt(precision);
+      }
+
+      public Long exec(Tuple input) throws IOException
+      {
+         if (sketch == null) sketch = new HyperLogLog(precision);
+         fold((DataBag) input.get(0), sketch);
+         Long estimate = sketch.estimate();
+         sketch.clear();
+         return estimate;
+      }
+   }
+
+   /**
+    * merge the partials into h
+    */
+   static void fold(DataBag partials, HyperLogLog h) throws IOException
+   {
+      for (Tuple t : partials) {
+         byte[] partial = ((DataByteArray) t.get(0)).get();
+         if (partial[0] == SKETCH) {
+            h.merge(new HyperLogLog(partial, 1));
+         } else {
+            for (int i = 1; i + KmerCount.ENTRY_SIZE <= partial.length; i += KmerCount.ENTRY_SIZE) {
+               h.add(KmerCount.readLong(partial, i));
+            }
+         }
+      }
+   }
+
+   static void addKmers(DataBag bag, HyperLogLog h) throws IOException
+   {
+      for (Tuple t : bag) {
+         Object kmer = t.get(0);
+         if (kmer != null) h.add(((Number) kmer).longValue());
+      }
+   }
+
+   /**
+    * @return the (kmer, count) entries of the bag as a raw partial
+    */
+   static DataByteArray rawPartial(DataBag bag) throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) (1 + KmerCount.ENTRY_SIZE * bag.size()));
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(RAW);
+      for (Tuple t : bag) {
+         Object kmer = t.get(0);
+         if (kmer == null) continue;
+         out.writeLong(((Number) kmer).longValue());
+         out.writeInt(KmerCount.countOf(t));
+      }
+      out.flush();
+      return new DataByteArray(bytes.toByteArray());
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      return new Schema(new Schema.FieldSchema("distinct_kmers", DataType.LONG));
+   }
+}
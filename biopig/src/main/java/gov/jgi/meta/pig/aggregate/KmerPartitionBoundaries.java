@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.aggregate;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+/**
+ * Picks the partition boundaries for KmerRangePartitioner from a sample of
+ * 2-bit coded k-mers: given a bag of (kmer, ...) tuples and the number of
+ * partitions n, returns the n - 1 quantiles of the first field as a comma
+ * separated list, suitable for biopig.kmer.partition.boundaries.
+ *
+ *   S = SAMPLE B 0.001;
+ *   T = group S all;
+ *   U = foreach T generate gov.jgi.meta.pig.aggregate.KmerPartitionBoundaries(S, 10);
+ */
+public class KmerPartitionBoundaries extends EvalFunc<String> {
+
+   public String exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() < 2 || input.get(0) == null || input.get(1) == null) return null;
+
+      DataBag bag = (DataBag) input.get(0);
+      int partitions = ((Number) input.get(1)).intValue();
+
+      long[] sample = new long[(int) bag.size()];
+      int n = 0;
+      for (Tuple t : bag) {
+         Object kmer = t.get(0);
+         if (kmer == null) continue;
+         if (n == sample.length) sample = Arrays.copyOf(sample, 2 * n + 1);
+         sample[n++] = ((Number) kmer).longValue();
+      }
+      Arrays.sort(sample, 0, n);
+
+      StringBuilder sb = new StringBuilder();
+      if (n > 0) {
+         for (int i = 1; i < partitions; i++) {
+            if (i > 1) sb.append(',');
+            sb.append(sample[(int) ((long) i * n / partitions)]);
+         }
+      }
+      return sb.toString();
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      return new Schema(new Schema.FieldSchema("boundaries", DataType.CHARARRAY));
+   }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.aggregate;
+
+import java.io.IOException;
+
+import gov.jgi.meta.kmer.CountMinSketch;
+import gov.jgi.meta.kmer.KmerTable;
+import org.apache.pig.Accumulator;
+import org.apache.pig.Algebraic;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.DefaultBagFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+/**
+ * Estimates the k-mer spectrum (the number of distinct k-mers that occur
+ * once, twice, ...) of a bag of 2-bit coded k-mers, returning a bag of
+ * (count, kmers) sorted by count.
+ *
+ * The abundances are held in a count-min sketch of 4 rows of 2^widthBits
+ * counters, and a fixed 1 / 2^sampleBits fraction of the distinct k-mers,
+ * chosen by hash, is kept to query it; the number of k-mers of each
+ * abundance is scaled back up by 2^sampleBits.  Both are merged by the
+ * combiner, so like KmerDistinct the whole input can be summarised in a
+ * single group without a shuffle of the k-mers:
+ *
+ *   C = group B all;
+ *   D = foreach C generate FLATTEN(gov.jgi.meta.pig.aggregate.KmerSpectrum(B));
+ *
+ * The sketch never undercounts, so the low abundance end of the spectrum is
+ * shifted up when the sketch is too narrow for the number of k-mers; the
+ * constructor takes widthBits and sampleBits (defaults 16 and 8).
+ */
+public class KmerSpectrum extends EvalFunc<DataBag> implements Algebraic, Accumulator<DataBag> {
+
+   public static final int DEFAULT_SAMPLE_BITS = 8;
+
+   private static final TupleFactory tupleFactory = TupleFactory.getInstance();
+
+   private final int widthBits;
+   private final int sampleBits;
+   private Spectrum spectrum = null;
+
+   public KmerSpectrum()
+   {
+      this(String.valueOf(CountMinSketch.DEFAULT_WIDTH_BITS), String.valueOf(DEFAULT_SAMPLE_BITS));
+   }
+
+   /**
+    * @param widthBits log2 of the number of counters per row of the sketch
+    * @param sampleBits log2 of the inverse sampling rate of the distinct k-mers
+    */
+   public KmerSpectrum(String widthBits, String sampleBits)
+   {
+      this.widthBits = Integer.parseInt(widthBits);
+      this.sampleBits = Integer.parseInt(sampleBits);
+   }
+
+   public DataBag exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() == 0 || input.get(0) == null) return null;
+
+      if (spectrum == null) spectrum = new Spectrum(widthBits, sampleBits);
+      spectrum.addKmers((DataBag) input.get(0));
+      DataBag output = spectrum.toBag();
+      spectrum.clear();
+      return output;
+   }
+
+   public void accumulate(Tuple input) throws IOException
+   {
+      if (spectrum == null) spectrum = new Spectrum(widthBits, sampleBits);
+      if (input != null && input.size() > 0 && input.get(0) != null) {
+         spectrum.addKmers((DataBag) input.get(0));
+      }
+   }
+
+   public DataBag getValue()
+   {
+      if (spectrum == null) spectrum = new Spectrum(widthBits, sampleBits);
+      return spectrum.toBag();
+   }
+
+   public void cleanup()
+   {
+      if (spectrum != null) spectrum.clear();
+   }
+
+   public String getInitial()
+   {
+      return Initial.class.getName();
+   }
+
+   public String getIntermed()
+   {
+      return Intermediate.class.getName() + "('" + widthBits + "', '" + sampleBits + "')";
+   }
+
+   public String getFinal()
+   {
+      return Final.class.getName() + "('" + widthBits + "', '" + sampleBits + "')";
+   }
+
+   /**
+    * map side: pass the k-mers on as a raw partial.
+    */
+   public static class Initial extends EvalFunc<Tuple> {
+
+      public Initial()
+      {
+      }
+
+      /**
+       * pig passes the arguments of the DEFINE on to the map side
+       */
+      public Initial(String... args)
+      {
+      }
+
+      public Tuple exec(Tuple input) throws IOException
+      {
+         return tupleFactory.newTuple(KmerDistinct.rawPartial((DataBag) input.get(0)));
+      }
+   }
+
+   /**
+    * combiner: fold the partials into one sketch and sample.
+    */
+   public static class Intermediate extends EvalFunc<Tuple> {
+
+      private final int widthBits;
+      private final int sampleBits;
+      private Spectrum spectrum = null;
+
+      public Intermediate()
+      {
+         this(String.valueOf(CountMinSketch.DEFAULT_WIDTH_BITS), String.valueOf(DEFAULT_SAMPLE_BITS));
+      }
+
+      public Intermediate(String widthBits, String sampleBits)
+      {
+         this.widthBits = Integer.parseInt(widthBits);
+         this.sampleBits = Integer.parseInt(sampleBits);
+      }
+
+      public Tuple exec(Tuple input) throws IOException
+      {
+         if (spectrum == null) spectrum = new Spectrum(widthBits, sampleBits);
+         spectrum.addPartials((DataBag) input.get(0));
+         Tuple output = tupleFactory.newTuple(spectrum.toPartial());
+         spectrum.clear();
+         return output;
+      }
+   }
+
+   /**
+    * reducer: merge the partials and build the spectrum.
+    */
+   public static class Final extends EvalFunc<DataBag> {
+
+      private final int widthBits;
+      private final int sampleBits;
+      private Spectrum spectrum = null;
+
+      public Final()
+      {
+         this(String.valueOf(CountMinSketch.DEFAULT_WIDTH_BITS), String.valueOf(DEFAULT_SAMPLE_BITS));
+      }
+
+      public Final(String widthBits, String sampleBits)
+      {
+         this.widthBits = Integer.parseInt(widthBits);
+         this.sampleBits = Integer.parseInt(sampleBits);
+      }
+
+      public DataBag exec(Tuple input) throws IOException
+      {
+         if (spectrum == null) spectrum = new Spectrum(widthBits, sampleBits);
+         spectrum.addPartials((DataBag) input.get(0));
+         DataBag output = spectrum.toBag();
+         spectrum.clear();
+         return output;
+      }
+   }
+
+   /**
+    * the count-min sketch and the sampled k-mers.  a sketch partial is the
+    * SKETCH tag, the serialized sketch and the sampled k-mers as longs.  the
+    * tables are off heap (see KmerTable), so a spectrum is cleared and reused
+    * from call to call rather than allocated again.
+    */
+   static class Spectrum {
+
+      final int sampleBits;
+      final CountMinSketch sketch;
+      final KmerTable sample = new KmerTable();
+      final KmerTable histogram = new KmerTable();
+
+      Spectrum(int widthBits, int sampleBits)
+      {
+         if (sampleBits < 0 || sampleBits > 32) {
+            throw new IllegalArgumentException("sampleBits must be between 0 and 32, was " + sampleBits);
+         }
+         this.sampleBits = sampleBits;
+         this.sketch = new CountMinSketch(widthBits, CountMinSketch.DEFAULT_DEPTH);
+      }
+
+      void clear()
+      {
+         sketch.clear();
+         sample.clear();
+         histogram.clear();
+      }
+
+      void add(long kmer, int count)
+      {
+         sketch.add(kmer, count);
+         if (sampleBits == 0 || (KmerTable.mix(kmer) >>> (64 - sampleBits)) == 0) {
+            sample.add(kmer, 1);
+         }
+      }
+
+      void addKmers(DataBag bag) throws IOException
+      {
+         for (Tuple t : bag) {
+            Object kmer = t.get(0);
+            if (kmer != null) add(((Number) kmer).longValue(), KmerCount.countOf(t));
+         }
+      }
+
+      void addPartials(DataBag partials) throws IOException
+      {
+         for (Tuple t : partials) {
+            byte[] partial = ((DataByteArray) t.get(0)).get();
+            if (partial[0] == KmerDistinct.SKETCH) {
+               CountMinSketch other = new CountMinSketch(partial, 1);
+               sketch.merge(other);
+               for (int i = 1 + other.serializedSize(); i + 8 <= partial.length; i += 8) {
+                  sample.add(KmerCount.readLong(partial, i), 1);
+               }
+            } else {
+               for (int i = 1; i + KmerCount.ENTRY_SIZE <= partial.length; i += KmerCount.ENTRY_SIZE) {
+                  add(KmerCount.readLong(partial, i), KmerCount.readInt(partial, i + 8));
+               }
+            }
+         }
+      }
+
+      DataByteArray toPartial()
+      {
+         byte[] b = sketch.toBytes();
+         byte[] partial = new byte[1 + b.length + 8 * sample.size()];
+         partial[0] = KmerDistinct.SKETCH;
+         System.arraycopy(b, 0, partial, 1, b.length);
+         int p = 1 + b.length;
+         for (int e = 0; e < sample.size(); e++, p += 8) {
+            long kmer = sample.getKey(e);
+            for (int i = 0; i < 8; i++) partial[p + i] = (byte) (kmer >>> (56 - 8 * i));
+         }
+         return new DataByteArray(partial);
+      }
+
+      DataBag toBag()
+      {
+         histogram.clear();
+         for (int e = 0; e < sample.size(); e++) {
+            histogram.add(sketch.estimate(sample.getKey(e)), 1);
+         }
+         histogram.sort();
+
+         DataBag output = DefaultBagFactory.getInstance().newDefaultBag();
+         for (int e = 0; e < histogram.size(); e++) {
+            Tuple t = tupleFactory.newTuple(2);
+            try {
+               t.set(0, histogram.getKey(e));
+               t.set(1, (long) histogram.getCount(e) << sampleBits);
+            } catch (IOException ex) {
+               throw new RuntimeException(ex);
+            }
+            output.add(t);
+         }
+         return output;
+      }
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      try {
+         Schema tupleSchema = new Schema(new Schema.FieldSchema("count", DataType.LONG));
+         tupleSchema.add(new Schema.FieldSchema("kmers", DataType.LONG));
+
+         Schema.FieldSchema tupleFs = new Schema.FieldSchema("tuple_of_count_kmers", tupleSchema, DataType.TUPLE);
+
+         Schema bagSchema = new Schema(tupleFs);
+         bagSchema.setTwoLevelAccessRequired(true);
+         return new Schema(new Schema.FieldSchema("kmer_spectrum", bagSchema, DataType.BAG));
+      }
+      catch (FrontendException e) {
+         throw new RuntimeException("Unable to compute KmerSpectrum schema.");
+      }
+   }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.eval;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+import java.io.IOException;
+
+/**
+ * Assigns a read to one of n tiles for TileDistance, and returns the tile pairs
+ * (tile1 <= tile2) the read takes part in, one for each tile.  Grouping by
+ * (tile1, tile2) then brings each pair of tiles together exactly once, so the
+ * reads are only copied n times rather than once per read as with CROSS.
+ *
+ * input is (readid, number of tiles), output a bag of (tile1, tile2, tile).
+ *
+ * e.g. T = foreach E generate flatten(DistanceTiles(readid, 100)), readid, tnf;
+ *      L = foreach (group T by (tile1, tile2)) generate flatten(TileDistance(T));
+ */
+public class DistanceTiles extends EvalFunc<DataBag> {
+
+   public DataBag exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() < 2 || input.get(0) == null) {
+         return(null);
+      }
+      int n = ((Number) input.get(1)).intValue();
+      if (n < 1) {
+         throw new IOException("number of tiles must be positive: " + n);
+      }
+      int tile = tile(input.get(0).toString(), n);
+
+      TupleFactory tf     = TupleFactory.getInstance();
+      DataBag      output = BagFactory.getInstance().newDefaultBag();
+      for (int other = 0; other < n; other++) {
+         Tuple t = tf.newTuple(3);
+         t.set(0, Math.min(tile, other));
+         t.set(1, Math.max(tile, other));
+         t.set(2, tile);
+         output.add(t);
+      }
+      return output;
+   }
+
+   /**
+    * @return the tile of a read
+    */
+   public static int tile(String readid, int n)
+   {
+      return (readid.hashCode() & Integer.MAX_VALUE) % n;
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      try {
+         Schema tupleSchema = new Schema(new Schema.FieldSchema("tile1", DataType.INTEGER));
+         tupleSchema.add(new Schema.FieldSchema("tile2", DataType.INTEGER));
+         tupleSchema.add(new Schema.FieldSchema("tile", DataType.INTEGER));
+
+         Schema bagSchema = new Schema(new Schema.FieldSchema("tuple_of_tiles", tupleSchema, DataType.TUPLE));
+         bagSchema.setTwoLevelAccessRequired(true);
+         return(new Schema(new Schema.FieldSchema("tiles", bagSchema, DataType.BAG)));
+      }
+      catch (FrontendException e) {
+         throw new RuntimeException("Unable to compute DistanceTiles schema.");
+      }
+   }
+}
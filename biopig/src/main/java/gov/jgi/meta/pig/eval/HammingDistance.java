@@ -39,6 +39,7 @@
 package gov.jgi.meta.pig.eval;
 
 import gov.jgi.meta.MetaUtils;
+import gov.jgi.meta.sequence.RollingKmer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pig.EvalFunc;
@@ -50,6 +51,10 @@ import java.io.IOException;
 import java.util.Set;
 
 /**
+ * All the sequences within a hamming distance of a sequence, each once.
+ * Sequences of up to 32 of {acgt} are enumerated as 2-bit coded k-mers.
+ *
+ * input is (sequence chararray, distance int), output a bag of (sequence).
  */
 public class HammingDistance extends EvalFunc<DataBag> {
     private static final Log LOG = LogFactory.getLog(HammingDistance.class);
@@ -67,12 +72,25 @@ public class HammingDistance extends EvalFunc<DataBag> {
            //int seqLength = SequenceString.numBases(ba);
            //String seq = SequenceString.byteArrayToSequence(ba);
            
-           Set<String> neighbors = MetaUtils.generateAllNeighborsWithinDistance(seq, distance);
-           for (String n : neighbors) {
-                Tuple t = DefaultTupleFactory.getInstance().newTuple(1);
-                t.set(0, n);
-                output.add(t);
+           final int k = seq.length();
+           if (isEncodable(seq)) {
+              long kmer = encode(seq);
+              final DataBag neighbors = output;
+              MetaUtils.visitAllNeighborsWithinDistance(kmer, k, distance, new MetaUtils.NeighborVisitor() {
+                 public void visit(long neighbor, int d) throws IOException {
+                    Tuple t = DefaultTupleFactory.getInstance().newTuple(1);
+                    t.set(0, RollingKmer.decode(neighbor, k));
+                    neighbors.add(t);
+                 }
+              });
+           } else {
+              Set<String> neighbors = MetaUtils.generateAllNeighborsWithinDistance(seq, distance);
+              for (String n : neighbors) {
+                 Tuple t = DefaultTupleFactory.getInstance().newTuple(1);
+                 t.set(0, n);
+                 output.add(t);
               }
+           }
         }catch(Exception e){
             System.err.println("HammingDistance: failed to process input; error - " + e.getMessage());
             return null;
@@ -80,6 +98,30 @@ public class HammingDistance extends EvalFunc<DataBag> {
        return output;
    }
 
+    /**
+     * @return whether a sequence can be enumerated as a 2-bit coded k-mer:
+     * 1 to 32 of {acgt}
+     */
+    private static boolean isEncodable(String seq) {
+       if (seq.length() == 0 || seq.length() > 32) return false;
+       for (int i = 0; i < seq.length(); i++) {
+          if ("acgt".indexOf(seq.charAt(i)) < 0) return false;
+       }
+       return true;
+    }
+
+    /**
+     * @return the 2-bit code of a sequence for which isEncodable is true.  a
+     * 32-mer uses the sign bit, so any value is a valid code.
+     */
+    private static long encode(String seq) {
+       long kmer = 0;
+       for (int i = 0; i < seq.length(); i++) {
+          kmer = (kmer << 2) | "acgt".indexOf(seq.charAt(i));
+       }
+       return kmer;
+    }
+
     @Override
     public Schema outputSchema(Schema input) {
 
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.eval;
+
+import gov.jgi.meta.sequence.HammingSegments;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+import java.io.IOException;
+
+/**
+ * The distance + 1 segments of a sequence (see gov.jgi.meta.sequence.HammingSegments)
+ * to join on when looking for the sequences within a hamming distance, in place
+ * of joining on all the neighbors made by HammingDistance.  Every pair within
+ * the distance shares at least one (segment, bases); HammingWithin then checks
+ * the pairs the join finds.
+ *
+ * input is (sequence chararray, distance int), output a bag of (segment, bases).
+ * The bases are lowercased, as HammingWithin ignores case.
+ *
+ * e.g. S = foreach A generate id, seq, flatten(HammingSeeds(seq, 2)) as (segment, bases);
+ *      T = foreach B generate id, seq, flatten(HammingSeeds(seq, 2)) as (segment, bases);
+ *      J = join S by (segment, bases), T by (segment, bases);
+ *      K = filter J by HammingWithin(S::seq, T::seq, 2, S::segment) is not null;
+ */
+public class HammingSeeds extends EvalFunc<DataBag> {
+
+   public DataBag exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() < 2 || input.get(0) == null || input.get(1) == null) {
+         return(null);
+      }
+      String sequence = (String) input.get(0);
+      int    distance = ((Number) input.get(1)).intValue();
+      if (distance < 0) {
+         throw new IOException("distance must not be negative: " + distance);
+      }
+
+      int[]        bounds = HammingSegments.bounds(sequence.length(), distance);
+      TupleFactory tf     = TupleFactory.getInstance();
+      DataBag      output = BagFactory.getInstance().newDefaultBag();
+      for (int s = 0; s + 1 < bounds.length; s++) {
+         Tuple t = tf.newTuple(2);
+         t.set(0, s);
+         t.set(1, sequence.substring(bounds[s], bounds[s + 1]).toLowerCase());
+         output.add(t);
+      }
+      return output;
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      try {
+         Schema tupleSchema = new Schema(new Schema.FieldSchema("segment", DataType.INTEGER));
+         tupleSchema.add(new Schema.FieldSchema("bases", DataType.CHARARRAY));
+
+         Schema bagSchema = new Schema(new Schema.FieldSchema("tuple_of_seed", tupleSchema, DataType.TUPLE));
+         bagSchema.setTwoLevelAccessRequired(true);
+         return(new Schema(new Schema.FieldSchema("seeds", bagSchema, DataType.BAG)));
+      }
+      catch (FrontendException e) {
+         throw new RuntimeException("Unable to compute HammingSeeds schema.");
+      }
+   }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.eval;
+
+import gov.jgi.meta.sequence.HammingSegments;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+import java.io.IOException;
+
+/**
+ * The hamming distance of two sequences of the same length, if it is at most
+ * a distance, otherwise null.  Sequences of {acgt} are compared 32 bases at a
+ * time on their 2-bit codes.
+ *
+ * input is (sequence1, sequence2, distance, optional segment).  When the pairs
+ * come from a join on the seeds of HammingSeeds, passing the segment of the
+ * join keeps each pair only for the first segment both sequences share, so a
+ * pair equal in several segments is still returned once.
+ */
+public class HammingWithin extends EvalFunc<Integer> {
+
+   public Integer exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() < 3 || input.get(0) == null || input.get(1) == null) {
+         return(null);
+      }
+      String a        = (String) input.get(0);
+      String b        = (String) input.get(1);
+      int    distance = ((Number) input.get(2)).intValue();
+
+      if (input.size() > 3 && input.get(3) != null) {
+         int segment = ((Number) input.get(3)).intValue();
+         if (HammingSegments.firstEqualSegment(a, b, distance) != segment) {
+            return(null);
+         }
+      }
+      int d = HammingSegments.distance(a, b, distance);
+      return(d < 0 || d > distance ? null : d);
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      return new Schema(new Schema.FieldSchema("distance", DataType.INTEGER));
+   }
+}
@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package gov.jgi.meta.pig.eval;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import gov.jgi.meta.sequence.RollingKmer;
+import gov.jgi.meta.sequence.SequenceString;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * A read only bag of the k-mers of a packed sequence.
+ *
+ * The k-mer tuples are generated on every iteration from the packed sequence,
+ * so the bag costs O(1) memory regardless of the read length, is never spilled
+ * and is never registered with the spillable memory manager.  The tuples are
+ * freshly allocated per k-mer since consumers (e.g. group or distinct) may hold
+ * on to them after the iteration moves on.
+ *
+ * Used by KmerGenerator; the form of each k-mer is one of KmerGenerator.PACKED,
+ * LONG or LONGPAIR, optionally canonical.
+ */
+public class KmerBag implements DataBag {
+
+   private static final long serialVersionUID = 1L;
+   private static final TupleFactory tupleFactory = TupleFactory.getInstance();
+   private static final InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+
+   private final byte[] sequence;
+   private final int kmerSize;
+   private final int[] starts;
+   private final int[] ends;
+   private final String mode;
+   private final boolean canonical;
+
+   private long size = -1;
+
+   /**
+    * @param sequence the packed sequence
+    * @param kmerSize the k-mer size
+    * @param starts the first k-mer position of each range to generate
+    * @param ends the last k-mer position (inclusive) of each range to generate
+    * @param mode one of KmerGenerator.PACKED, LONG or LONGPAIR
+    * @param canonical emit the lesser of each k-mer and its reverse complement
+    */
+   public KmerBag(byte[] sequence, int kmerSize, int[] starts, int[] ends, String mode, boolean canonical)
+   {
+      this.sequence = sequence;
+      this.kmerSize = kmerSize;
+      this.starts = starts;
+      this.ends = ends;
+      this.mode = mode;
+      this.canonical = canonical;
+   }
+
+   public long size()
+   {
+      if (size < 0) {
+         long n = 0;
+         KmerIterator it = new KmerIterator(false);
+         while (it.hasNext()) {
+            it.advance();
+            n++;
+         }
+         size = n;
+      }
+      return size;
+   }
+
+   public boolean isSorted()
+   {
+      return false;
+   }
+
+   public boolean isDistinct()
+   {
+      return false;
+   }
+
+   public Iterator<Tuple> iterator()
+   {
+      return new KmerIterator(true);
+   }
+
+   public void add(Tuple t)
+   {
+      throw new UnsupportedOperationException("KmerBag is read only");
+   }
+
+   public void addAll(DataBag b)
+   {
+      throw new UnsupportedOperationException("KmerBag is read only");
+   }
+
+   public void clear()
+   {
+      throw new UnsupportedOperationException("KmerBag is read only");
+   }
+
+   public void markStale(boolean stale)
+   {
+   }
+
+   public long spill()
+   {
+      return 0;
+   }
+
+   public long getMemorySize()
+   {
+      return sequence.length + 64;
+   }
+
+   public void write(DataOutput out) throws IOException
+   {
+      out.writeLong(size());
+      for (Tuple t : this) {
+         sedes.writeDatum(out, t, DataType.TUPLE);
+      }
+   }
+
+   public void readFields(DataInput in) throws IOException
+   {
+      throw new UnsupportedOperationException("KmerBag is read only");
+   }
+
+   public int compareTo(Object other)
+   {
+      if (this == other) return 0;
+      if (!(other instanceof DataBag)) return DataType.compare(this, other);
+
+      DataBag bOther = (DataBag) other;
+      if (size() != bOther.size()) return (size() < bOther.size() ? -1 : 1);
+
+      Iterator<Tuple> thisIt = iterator();
+      Iterator<Tuple> otherIt = bOther.iterator();
+      while (thisIt.hasNext() && otherIt.hasNext()) {
+         int c = DataType.compare(thisIt.next(), otherIt.next(), DataType.TUPLE, DataType.TUPLE);
+         if (c != 0) return c;
+      }
+      return 0;
+   }
+
+   @Override
+   public boolean equals(Object other)
+   {
+      return (other instanceof DataBag) && compareTo(other) == 0;
+   }
+
+   @Override
+   public int hashCode()
+   {
+      int hash = 1;
+      for (Tuple t : this) {
+         hash = 31 * hash + t.hashCode();
+      }
+      return hash;
+   }
+
+   @Override
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder("{");
+      Iterator<Tuple> it = iterator();
+      while (it.hasNext()) {
+         sb.append(it.next());
+         if (it.hasNext()) sb.append(",");
+      }
+      return sb.append("}").toString();
+   }
+
+   /**
+    * walks the ranges, one k-mer at a time.  when materialize is false the
+    * iterator only finds k-mer positions, for counting.
+    */
+   private class KmerIterator implements Iterator<Tuple> {
+
+      private final boolean materialize;
+      private final boolean rolling;
+      private final RollingKmer kmer;
+
+      private int range = -1;
+      private int pos;
+      private int limit;
+      private boolean found;
+      private Tuple next;
+
+      KmerIterator(boolean materialize)
+      {
+         this.materialize = materialize;
+         this.rolling = canonical || !KmerGenerator.PACKED.equals(mode);
+         this.kmer = (rolling ? new RollingKmer(kmerSize) : null);
+         nextRange();
+      }
+
+      private boolean nextRange()
+      {
+         if (++range >= starts.length) return false;
+         pos = starts[range];
+         if (rolling) {
+            kmer.reset();
+            limit = ends[range] + kmerSize;
+         } else {
+            limit = ends[range] + 1;
+         }
+         return true;
+      }
+
+      public boolean hasNext()
+      {
+         if (found) return true;
+         do {
+            while (pos < limit) {
+               if (rolling) {
+                  if (kmer.add(SequenceString.baseAt(sequence, pos++))) {
+                     found = true;
+                     return true;
+                  }
+               } else if (!SequenceString.containsN(sequence, pos, pos + kmerSize)) {
+                  found = true;
+                  return true;
+               } else {
+                  pos++;
+               }
+            }
+         } while (nextRange());
+         return false;
+      }
+
+      /**
+       * consume the k-mer found by hasNext
+       */
+      void advance()
+      {
+         found = false;
+         if (!materialize) {
+            if (!rolling) pos++;
+            return;
+         }
+         try {
+            if (!rolling) {
+               next = tupleFactory.newTuple(1);
+               next.set(0, new DataByteArray(SequenceString.subseq(sequence, pos, pos + kmerSize)));
+               pos++;
+               return;
+            }
+
+            long high, low;
+            if (!canonical || kmer.isForwardCanonical()) {
+               high = kmer.getHigh();
+               low = kmer.get();
+            } else {
+               high = kmer.getReverseHigh();
+               low = kmer.getReverse();
+            }
+
+            if (KmerGenerator.PACKED.equals(mode)) {
+               next = tupleFactory.newTuple(1);
+               next.set(0, new DataByteArray(RollingKmer.toPacked(high, low, kmerSize)));
+            } else if (KmerGenerator.LONG.equals(mode)) {
+               next = tupleFactory.newTuple(1);
+               next.set(0, low);
+            } else {
+               next = tupleFactory.newTuple(2);
+               next.set(0, high);
+               next.set(1, low);
+            }
+         } catch (IOException e) {
+            // setting a field of a fresh tuple of the right size cannot fail
+            throw new RuntimeException(e);
+         }
+      }
+
+      public Tuple next()
+      {
+         if (!hasNext()) throw new NoSuchElementException();
+         advance();
+         return next;
+      }
+
+      public void remove()
+      {
+         throw new UnsupportedOperationException("KmerBag is read only");
+      }
+   }
+}
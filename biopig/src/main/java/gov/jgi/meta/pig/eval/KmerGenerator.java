@@ -20,6 +20,7 @@ package gov.jgi.meta.pig.eval;
 import java.io.IOException;
 import java.util.*;
 
+import gov.jgi.meta.sequence.RollingKmer;
 import gov.jgi.meta.sequence.SequenceString;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,19 +30,81 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
 import org.apache.pig.impl.logicalLayer.FrontendException;
 
 /**
- * This function divides a search query string into wrods and extracts
- * n-grams with up to _ngramSizeLimit length.
- * Example 1: if query = "a real nice query" and _ngramSizeLimit = 2,
- * the query is split into: a, real, nice, query, a real, real nice, nice query
- * Example 2: if record = (u1, h1, pig hadoop) and _ngramSizeLimit = 2,
- * the record is split into: (u1, h1, pig), (u1, h1, hadoop), (u1, h1, pig hadoop)
+ * Generates the k-mers of a sequence.
+ *
+ * input: (sequence, k [, start [, count [, bothEnds]]]) where the sequence is
+ * either packed (bytearray) or a chararray.  a start of -1 picks a random
+ * position.  k-mers containing an n are skipped.
+ *
+ * The output form is chosen with the constructor argument:
+ *   packed   - (default) each k-mer packed with SequenceString, as a bytearray
+ *   long     - each k-mer 2-bit coded into a long, k <= 32
+ *   longpair - each k-mer 2-bit coded into two longs (high, low), k <= 64
+ *
+ * An optional second constructor argument of 'canonical' emits, for every
+ * position, the smaller of the k-mer and its reverse complement instead of
+ * the forward k-mer.  The reverse complement is rolled alongside the forward
+ * k-mer, so this costs O(1) per position (k <= 64).
+ *
+ * e.g. DEFINE KMERS gov.jgi.meta.pig.eval.KmerGenerator('long');
+ *      DEFINE CANONICAL_KMERS gov.jgi.meta.pig.eval.KmerGenerator('packed', 'canonical');
+ *
+ * The 2-bit forms are computed with a rolling encoder in one pass over the
+ * read and give fixed width keys that are much cheaper to shuffle and compare.
+ *
+ * The k-mers are returned in a KmerBag, which generates them lazily from the
+ * packed read on iteration rather than holding them all in memory.
  */
 public class KmerGenerator extends EvalFunc<DataBag> {
    private static final Log LOG = LogFactory.getLog(KmerGenerator.class );
 
+   public static final String PACKED = "packed";
+   public static final String LONG = "long";
+   public static final String LONGPAIR = "longpair";
+
+   public static final String FORWARD = "forward";
+   public static final String CANONICAL = "canonical";
+
+   private final String mode;
+   private final boolean canonical;
+
+   public KmerGenerator()
+   {
+      this(PACKED);
+   }
+
+   public KmerGenerator(String mode)
+   {
+      this(mode, FORWARD);
+   }
+
+   public KmerGenerator(String mode, String strand)
+   {
+      this.mode = mode.toLowerCase();
+      if (!PACKED.equals(this.mode) && !LONG.equals(this.mode) && !LONGPAIR.equals(this.mode)) {
+         throw new RuntimeException("Unknown kmer mode " + mode + ", expected one of packed, long, longpair");
+      }
+      this.canonical = isCanonical(strand);
+   }
+
+   /**
+    * @param strand 'forward' or 'canonical', in any case
+    * @return whether strand asks for canonical k-mers
+    * @throws RuntimeException for any other strand
+    */
+   public static boolean isCanonical(String strand)
+   {
+      if (CANONICAL.equalsIgnoreCase(strand)) {
+         return true;
+      } else if (FORWARD.equalsIgnoreCase(strand)) {
+         return false;
+      }
+      throw new RuntimeException("Unknown kmer strand " + strand + ", expected forward or canonical");
+   }
+
    public DataBag exec(Tuple input) throws IOException
    {
-      DataBag output = DefaultBagFactory.getInstance().newDefaultBag();
+      DataBag output;
        int start, num, end;
        boolean bothEnds = false;
 
@@ -102,34 +165,21 @@ public class KmerGenerator extends EvalFunc<DataBag> {
               end = Math.min(start+num-1, seqLength - kmerSize);
           }
          if (kmerSize > seqLength) { return(null); }
-
-         String kmer;
-         for (int i = start; i <= end; i++)
-         {
-            byte[] kmerba = SequenceString.subseq(ba, i, i + kmerSize);
-            kmer = new String(kmerba, "ISO-8859-1");
-            if ((kmer != null) && !SequenceString.contains(kmer, "n"))
-            {
-               Tuple t = DefaultTupleFactory.getInstance().newTuple(1);
-               t.set(0, new DataByteArray(kmer.getBytes("ISO-8859-1")));
-               output.add(t);
-            }
+         if (LONG.equals(mode) && kmerSize > 32) {
+            LOG.warn("kmer size " + kmerSize + " too large for long mode, use longpair");
+            return(null);
+         }
+         if (kmerSize > RollingKmer.MAX_K && (canonical || !PACKED.equals(mode))) {
+            LOG.warn("kmer size " + kmerSize + " too large, at most " + RollingKmer.MAX_K + " supported");
+            return(null);
          }
 
          if (bothEnds) {
-             start = Math.max(seqLength - kmerSize - num + 1, 0);
-             end = Math.min(start+num-1, seqLength - kmerSize);
-             for (int i = start; i <= end; i++)
-             {
-                 byte[] kmerba = SequenceString.subseq(ba, i, i + kmerSize);
-                 kmer = new String(kmerba, "ISO-8859-1");
-                 if ((kmer != null) && !SequenceString.contains(kmer, "n"))
-                 {
-                     Tuple t = DefaultTupleFactory.getInstance().newTuple(1);
-                     t.set(0, new DataByteArray(kmer.getBytes("ISO-8859-1")));
-                     output.add(t);
-                 }
-             }
+             int start2 = Math.max(seqLength - kmerSize - num + 1, 0);
+             int end2 = Math.min(start2+num-1, seqLength - kmerSize);
+             output = new KmerBag(ba, kmerSize, new int[] { start, start2 }, new int[] { end, end2 }, mode, canonical);
+         } else {
+             output = new KmerBag(ba, kmerSize, new int[] { start }, new int[] { end }, mode, canonical);
          }
       }
       catch (Exception e) {
@@ -138,13 +188,20 @@ public class KmerGenerator extends EvalFunc<DataBag> {
       }
       return(output);
    }
+
    @Override
    public Schema outputSchema(Schema input)
    {
       try {
-         Schema.FieldSchema tokenFs = new Schema.FieldSchema("kmer",
-                                                             DataType.BYTEARRAY);
-         Schema tupleSchema = new Schema(tokenFs);
+         Schema tupleSchema;
+         if (LONG.equals(mode)) {
+            tupleSchema = new Schema(new Schema.FieldSchema("kmer", DataType.LONG));
+         } else if (LONGPAIR.equals(mode)) {
+            tupleSchema = new Schema(new Schema.FieldSchema("kmer_high", DataType.LONG));
+            tupleSchema.add(new Schema.FieldSchema("kmer", DataType.LONG));
+         } else {
+            tupleSchema = new Schema(new Schema.FieldSchema("kmer", DataType.BYTEARRAY));
+         }
 
          Schema.FieldSchema tupleFs;
          tupleFs = new Schema.FieldSchema("tuple_of_kmer", tupleSchema,
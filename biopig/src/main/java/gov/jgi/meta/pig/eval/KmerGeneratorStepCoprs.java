@@ -37,7 +37,7 @@ import org.slf4j.LoggerFactory;
  */
 public class KmerGeneratorStepCoprs extends EvalFunc<DataBag> {
 
-    private static final Logger log = LoggerFactory.getLogger(KmerGeneratorWithStep.class );
+    private static final Logger log = LoggerFactory.getLogger(KmerGeneratorStepCoprs.class);
     
     static HashMap<Character, Character> hash = null;
 
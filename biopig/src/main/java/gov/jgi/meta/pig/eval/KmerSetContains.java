@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gov.jgi.meta.kmer.KmerSet;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+/**
+ * Tests 2-bit coded k-mers for membership in a k-mer set written by
+ * KmerSetStorage.  The set, a file or a directory of part files, is shipped
+ * to the tasks through the distributed cache and memory mapped, so each
+ * lookup is a binary search that touches a few pages of the mapped file.
+ *
+ * The input is a k-mer, or a bag of k-mers (e.g. the output of
+ * KmerGenerator('long')), in which case the result is true if any of them is
+ * in the set, for screening reads against the set:
+ *
+ *   DEFINE IN_SET gov.jgi.meta.pig.eval.KmerSetContains('/data/kmers.set', '31');
+ *   A = load 'reads.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);
+ *   B = filter A by IN_SET(KMERS(seq, 31));
+ *
+ * The k and strand ('forward', the default, or 'canonical') of the k-mers
+ * looked up must be those the set was written with, since the codes of other
+ * k-mers are never found; the set is checked against them when it is opened.
+ */
+public class KmerSetContains extends EvalFunc<Boolean> {
+
+   private final String location;
+   private final String symlink;
+   private final int kmerSize;
+   private final boolean canonical;
+   private KmerSet[] sets = null;
+
+   public KmerSetContains(String location, String k)
+   {
+      this(location, k, KmerGenerator.FORWARD);
+   }
+
+   /**
+    * @param location the k-mer set file or directory
+    * @param k the size of the k-mers looked up
+    * @param strand KmerGenerator.FORWARD or KmerGenerator.CANONICAL
+    */
+   public KmerSetContains(String location, String k, String strand)
+   {
+      this.location = location;
+      this.symlink = "kmerset-" + Integer.toHexString(location.hashCode());
+      this.kmerSize = Integer.parseInt(k);
+      this.canonical = KmerGenerator.isCanonical(strand);
+   }
+
+   @Override
+   public List<String> getCacheFiles()
+   {
+      List<String> files = new ArrayList<String>(1);
+      files.add(location + "#" + symlink);
+      return files;
+   }
+
+   private void open() throws IOException
+   {
+      // the distributed cache link in the task's working directory, or the
+      // location itself when running locally
+      File f = new File(symlink);
+      if (!f.exists()) {
+         f = new File(location.startsWith("file:") ? location.substring("file:".length()) : location);
+      }
+
+      File[] files = (f.isDirectory() ? f.listFiles() : new File[] { f });
+      if (files == null) {
+         throw new IOException("unable to read kmer set " + location);
+      }
+      Arrays.sort(files);
+
+      List<KmerSet> list = new ArrayList<KmerSet>();
+      try {
+         for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory() || name.startsWith("_") || name.startsWith(".")) continue;
+            KmerSet set = new KmerSet(file);
+            list.add(set);
+            if (set.getK() != kmerSize || set.isCanonical() != canonical) {
+               throw new IOException("kmer set " + file + " holds " + describe(set.getK(), set.isCanonical())
+                                     + " kmers, but " + describe(kmerSize, canonical) + " kmers are looked up");
+            }
+         }
+      } catch (IOException e) {
+         for (KmerSet set : list) set.close();
+         throw e;
+      }
+
+      // drop the empty parts
+      List<KmerSet> nonEmpty = new ArrayList<KmerSet>();
+      for (KmerSet set : list) {
+         if (set.size() > 0) nonEmpty.add(set); else set.close();
+      }
+      sets = nonEmpty.toArray(new KmerSet[nonEmpty.size()]);
+   }
+
+   private static String describe(int k, boolean canonical)
+   {
+      return "k = " + k + " " + (canonical ? KmerGenerator.CANONICAL : KmerGenerator.FORWARD);
+   }
+
+   public boolean contains(long kmer) throws IOException
+   {
+      if (sets == null) open();
+      for (KmerSet set : sets) {
+         if (set.contains(kmer)) return true;
+      }
+      return false;
+   }
+
+   public Boolean exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() == 0 || input.get(0) == null) return null;
+
+      Object o = input.get(0);
+      if (o instanceof DataBag) {
+         for (Tuple t : (DataBag) o) {
+            Object kmer = t.get(0);
+            if (kmer != null && contains(((Number) kmer).longValue())) return true;
+         }
+         return false;
+      }
+      return contains(((Number) o).longValue());
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      return new Schema(new Schema.FieldSchema(null, DataType.BOOLEAN));
+   }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.eval;
+
+import gov.jgi.meta.kmer.KmerVector;
+import gov.jgi.meta.kmer.SimHash;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+import java.io.IOException;
+
+/**
+ * The locality sensitive band keys (see gov.jgi.meta.kmer.SimHash) of a k-mer
+ * frequency vector made by TNFVector.  Reads that share a (band, key) are
+ * candidates to be close, so grouping by (band, key) and comparing the reads
+ * of each group with TileDistance finds most close pairs without comparing
+ * all pairs.
+ *
+ * input is (vector), output a bag of (band, key).  Constructor arguments are
+ * the number of bands, the number of rows (bits) of each band and an optional
+ * seed, which must be the same for all the reads to compare.
+ *
+ * e.g. DEFINE BANDS gov.jgi.meta.pig.eval.TNFBands('20', '12');
+ *      B = foreach E generate flatten(BANDS(tnf)), readid, tnf;
+ *      C = foreach (group B by (band, key)) generate flatten(TileDistance(B.(readid, tnf)));
+ */
+public class TNFBands extends EvalFunc<DataBag> {
+
+   private final int  bands;
+   private final int  rows;
+   private final long seed;
+   private SimHash    hash   = null;
+   private int[]      counts = null;
+   private long[]     keys   = null;
+
+   public TNFBands(String bands, String rows)
+   {
+      this(bands, rows, Long.toString(SimHash.DEFAULT_SEED));
+   }
+
+   public TNFBands(String bands, String rows, String seed)
+   {
+      this.bands = Integer.parseInt(bands);
+      this.rows  = Integer.parseInt(rows);
+      this.seed  = Long.parseLong(seed);
+   }
+
+   public DataBag exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() == 0 || input.get(0) == null) {
+         return(null);
+      }
+      byte[] v = ((DataByteArray) input.get(0)).get();
+      try {
+         counts = KmerVector.decode(v, 0, v.length, counts);
+         if (hash == null || hash.dimension() != counts.length) {
+            hash = new SimHash(counts.length, bands, rows, seed);
+         }
+         keys = hash.bandKeys(counts, keys);
+      } catch (IllegalArgumentException e) {
+         throw new IOException(e.getMessage(), e);
+      }
+
+      TupleFactory tf     = TupleFactory.getInstance();
+      DataBag      output = BagFactory.getInstance().newDefaultBag();
+      for (int band = 0; band < keys.length; band++) {
+         Tuple t = tf.newTuple(2);
+         t.set(0, band);
+         t.set(1, keys[band]);
+         output.add(t);
+      }
+      return output;
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      try {
+         Schema tupleSchema = new Schema(new Schema.FieldSchema("band", DataType.INTEGER));
+         tupleSchema.add(new Schema.FieldSchema("key", DataType.LONG));
+
+         Schema bagSchema = new Schema(new Schema.FieldSchema("tuple_of_band", tupleSchema, DataType.TUPLE));
+         bagSchema.setTwoLevelAccessRequired(true);
+         return(new Schema(new Schema.FieldSchema("bands", bagSchema, DataType.BAG)));
+      }
+      catch (FrontendException e) {
+         throw new RuntimeException("Unable to compute TNFBands schema.");
+      }
+   }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.eval;
+
+import gov.jgi.meta.kmer.KmerVector;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The dense k-mer frequency vector of a sequence (see gov.jgi.meta.kmer.KmerVector),
+ * the tetranucleotide frequencies by default, as a bytearray for TNFVectorDistance
+ * and TNFVectorHammingDistance.  The vector is counted in one pass over the packed
+ * read, so no k-mers are flattened, unpacked or grouped.
+ *
+ * input is (sequence, optional k <= 8, default 4), where the sequence is either
+ * packed (bytearray) or a chararray, or a bag of such sequences (e.g. the two
+ * ends of a pair) to count into one vector.  An optional constructor argument of
+ * 'canonical' counts each k-mer together with its reverse complement.
+ *
+ * e.g. DEFINE TNF gov.jgi.meta.pig.eval.TNFVector('canonical');
+ *      B = foreach A generate readid, TNF(seq) as tnf;
+ */
+public class TNFVector extends EvalFunc<DataByteArray> {
+
+   private final boolean canonical;
+   private KmerVector vector = null;
+   private int[] counts = null;
+
+   public TNFVector()
+   {
+      this(KmerGenerator.FORWARD);
+   }
+
+   public TNFVector(String strand)
+   {
+      this.canonical = KmerGenerator.isCanonical(strand);
+   }
+
+   public DataByteArray exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() == 0 || input.get(0) == null) {
+         return(null);
+      }
+      int k = input.size() > 1 ? ((Number) input.get(1)).intValue() : 4;
+      if (vector == null || vector.getK() != k) {
+         vector = new KmerVector(k, canonical);
+         counts = new int[vector.dimension()];
+      }
+      Arrays.fill(counts, 0);
+
+      Object sequence = input.get(0);
+      if (sequence instanceof DataBag) {
+         for (Tuple t : (DataBag) sequence) {
+            if (t != null && t.size() > 0 && t.get(0) != null) {
+               count(t.get(0));
+            }
+         }
+      } else {
+         count(sequence);
+      }
+      return new DataByteArray(vector.encode(counts));
+   }
+
+   private void count(Object sequence) throws IOException
+   {
+      if (sequence instanceof DataByteArray) {
+         byte[] packed = ((DataByteArray) sequence).get();
+         vector.countPacked(packed, 0, packed.length, counts);
+      } else {
+         byte[] ascii = ((String) sequence).getBytes("ISO-8859-1");
+         vector.count(ascii, 0, ascii.length, counts);
+      }
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      return new Schema(new Schema.FieldSchema("tnf", DataType.BYTEARRAY));
+   }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.eval;
+
+import gov.jgi.meta.kmer.DistanceTile;
+import gov.jgi.meta.kmer.KmerVector;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.PigWarning;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The distances between the reads of a pair of tiles made by DistanceTiles:
+ * each pair of different reads once, with the reads of tile1 first for a
+ * pair of different tiles.  The k-mer vectors of each tile are decoded into
+ * a DistanceTile and compared in one tight loop, rather than one UDF call and
+ * one pair of bags per pair of reads.
+ *
+ * input is the bag of (tile1, tile2, tile, readid, vector) of a group by
+ * (tile1, tile2), where vector is made by TNFVector.  Output is a bag of
+ * (read1, read2, distance).
+ *
+ * The input may also be a bag of (readid, vector), e.g. the reads sharing a
+ * band key of TNFBands, whose reads are all compared with each other.  The
+ * smaller readid of each pair is then first, so the pairs found in several
+ * bands can be removed with DISTINCT.  The work of a bucket grows with the
+ * square of its size, so buckets of more than an optional number of reads are
+ * skipped with a warning; their close pairs are left to the other bands.
+ *
+ * Constructor arguments are the distance, 'euclidean' (the default, as
+ * TNFVectorDistance) or 'hamming' (as TNFVectorHammingDistance), an optional
+ * maximum distance of the pairs to return and an optional maximum number of
+ * reads of a bucket.
+ */
+public class TileDistance extends EvalFunc<DataBag> {
+
+   private final boolean hamming;
+   private final double  maxDistance;
+   private final long    maxBucket;
+
+   public TileDistance()
+   {
+      this(DistanceTile.EUCLIDEAN);
+   }
+
+   public TileDistance(String distance)
+   {
+      this(distance, null);
+   }
+
+   public TileDistance(String distance, String maxDistance)
+   {
+      this(distance, maxDistance, null);
+   }
+
+   public TileDistance(String distance, String maxDistance, String maxBucket)
+   {
+      if (DistanceTile.HAMMING.equalsIgnoreCase(distance)) {
+         this.hamming = true;
+      } else if (DistanceTile.EUCLIDEAN.equalsIgnoreCase(distance)) {
+         this.hamming = false;
+      } else {
+         throw new RuntimeException("Unknown distance " + distance + ", expected euclidean or hamming");
+      }
+      this.maxDistance = maxDistance == null ? Double.POSITIVE_INFINITY : Double.parseDouble(maxDistance);
+      this.maxBucket   = maxBucket == null ? Long.MAX_VALUE : Long.parseLong(maxBucket);
+   }
+
+   public DataBag exec(Tuple input) throws IOException
+   {
+      if (input == null || input.size() == 0 || input.get(0) == null) {
+         return(null);
+      }
+      DataBag reads = (DataBag) input.get(0);
+
+      Tile  first  = null;
+      Tile  second = null;
+      int[] counts = null;
+      boolean bucket = false;
+      for (Tuple t : reads) {
+         bucket = t.size() == 2;
+         int    tile1 = bucket ? 0 : (Integer) t.get(0);
+         int    tile  = bucket ? 0 : (Integer) t.get(2);
+         byte[] v     = ((DataByteArray) t.get(bucket ? 1 : 4)).get();
+         try {
+            counts = KmerVector.decode(v, 0, v.length, counts);
+            if (first == null) {
+               if (bucket && reads.size() > maxBucket) {
+                  warn("skipped a bucket of " + reads.size() + " reads, more than " + maxBucket, PigWarning.UDF_WARNING_1);
+                  return BagFactory.getInstance().newDefaultBag();
+               }
+               first = new Tile(new DistanceTile(hamming, counts.length));
+               second = bucket || tile1 == (Integer) t.get(1) ? first : new Tile(new DistanceTile(hamming, counts.length));
+            }
+            Tile to = tile == tile1 ? first : second;
+            to.vectors.add(counts);
+            to.ids.add(t.get(bucket ? 0 : 3));
+         } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+         }
+      }
+
+      final DataBag output = BagFactory.getInstance().newDefaultBag();
+      if (first == null) {
+         return output;
+      }
+      final List<Object> ids1 = first.ids;
+      final List<Object> ids2 = second.ids;
+      final TupleFactory tf   = TupleFactory.getInstance();
+      final boolean      sort = bucket;
+      first.vectors.pairs(second.vectors, maxDistance, new DistanceTile.PairVisitor() {
+         public void visit(int i, int j, double distance) throws IOException
+         {
+            Object id1 = ids1.get(i);
+            Object id2 = ids2.get(j);
+            if (sort && id1.toString().compareTo(id2.toString()) > 0) {
+               Object id = id1;
+               id1 = id2;
+               id2 = id;
+            }
+            Tuple t = tf.newTuple(3);
+            t.set(0, id1);
+            t.set(1, id2);
+            t.set(2, hamming ? (Object) (int) distance : (Object) distance);
+            output.add(t);
+         }
+      });
+      return output;
+   }
+
+   private static class Tile {
+      final DistanceTile vectors;
+      final List<Object> ids = new ArrayList<Object>();
+
+      Tile(DistanceTile vectors)
+      {
+         this.vectors = vectors;
+      }
+   }
+
+   @Override
+   public Schema outputSchema(Schema input)
+   {
+      try {
+         Schema tupleSchema = new Schema(new Schema.FieldSchema("read1", DataType.CHARARRAY));
+         tupleSchema.add(new Schema.FieldSchema("read2", DataType.CHARARRAY));
+         tupleSchema.add(new Schema.FieldSchema("distance", hamming ? DataType.INTEGER : DataType.DOUBLE));
+
+         Schema bagSchema = new Schema(new Schema.FieldSchema("tuple_of_distance", tupleSchema, DataType.TUPLE));
+         bagSchema.setTwoLevelAccessRequired(true);
+         return(new Schema(new Schema.FieldSchema("distances", bagSchema, DataType.BAG)));
+      }
+      catch (FrontendException e) {
+         throw new RuntimeException("Unable to compute TileDistance schema.");
+      }
+   }
+}
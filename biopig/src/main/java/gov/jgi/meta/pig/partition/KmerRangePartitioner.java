@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.partition;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.io.PigNullableWritable;
+
+/**
+ * Range partitioner for 2-bit coded k-mers (KmerGenerator('long')), so that
+ * the reducers of a GROUP on the k-mers write globally sorted output: every
+ * k-mer in part-r-00001 is greater than every k-mer in part-r-00000, and so
+ * on.
+ *
+ *   set biopig.kmer.partition.boundaries '/path/to/boundaries';
+ *   C = group B by kmer PARTITION BY gov.jgi.meta.pig.partition.KmerRangePartitioner PARALLEL 10;
+ *
+ * The key is the k-mer itself or a tuple whose first field is the k-mer (or
+ * its high half, for KmerGenerator('longpair') k-mers).  Only a plain long
+ * key comes out of the reducers in numeric order; pig orders tuple keys, and
+ * the keys of a DISTINCT, by their serialized bytes, so those are only range
+ * partitioned.  The partition boundaries are read
+ * from biopig.kmer.partition.boundaries, either a comma separated list of
+ * longs or a file or directory of them, as written by
+ * KmerPartitionBoundaries from a sample of the k-mers.  Without boundaries
+ * the k-mer space of biopig.kmer.partition.k (default 31) is split into
+ * equal prefix ranges, which is only balanced for uniformly distributed
+ * k-mers.
+ *
+ * Boundaries compare the way pig sorts the keys, as signed longs.
+ */
+public class KmerRangePartitioner extends Partitioner<PigNullableWritable, Writable> implements Configurable {
+
+   public static final String BOUNDARIES = "biopig.kmer.partition.boundaries";
+   public static final String KMER_SIZE = "biopig.kmer.partition.k";
+   public static final int DEFAULT_KMER_SIZE = 31;
+
+   private static final Log LOG = LogFactory.getLog(KmerRangePartitioner.class);
+
+   private Configuration conf;
+   private long[] boundaries = null;
+   private int prefixBits;
+
+   public void setConf(Configuration conf)
+   {
+      this.conf = conf;
+
+      int k = conf.getInt(KMER_SIZE, DEFAULT_KMER_SIZE);
+      if (k < 1 || k > 64) {
+         throw new IllegalArgumentException(KMER_SIZE + " must be between 1 and 64, was " + k);
+      }
+      // number of bits of the first field: the k-mer, or the high half of a longpair
+      prefixBits = (k <= 32 ? 2 * k : 2 * k - 64);
+
+      String value = conf.get(BOUNDARIES);
+      if (value != null && value.trim().length() > 0) {
+         try {
+            boundaries = readBoundaries(value.trim(), conf);
+         } catch (IOException e) {
+            throw new RuntimeException("unable to read kmer partition boundaries from " + value, e);
+         }
+         LOG.info("partitioning kmers by " + boundaries.length + " sampled boundaries");
+      }
+   }
+
+   public Configuration getConf()
+   {
+      return conf;
+   }
+
+   @Override
+   public int getPartition(PigNullableWritable key, Writable value, int numPartitions)
+   {
+      if (numPartitions <= 1 || key.isNull()) return 0;
+
+      Object o = key.getValueAsPigType();
+      if (o instanceof Tuple) {
+         try {
+            o = ((Tuple) o).get(0);
+         } catch (IOException e) {
+            throw new RuntimeException(e);
+         }
+      }
+      if (!(o instanceof Number)) return 0;
+
+      return partition(((Number) o).longValue(), numPartitions);
+   }
+
+   int partition(long kmer, int numPartitions)
+   {
+      if (boundaries != null) {
+         // the number of boundaries <= kmer
+         int i = Arrays.binarySearch(boundaries, kmer);
+         int p = (i >= 0 ? i + 1 : -i - 1);
+         while (i >= 0 && p < boundaries.length && boundaries[p] == kmer) p++;
+         return Math.min(p, numPartitions - 1);
+      }
+
+      // map the signed order of the keys onto an unsigned 64 bit position
+      long u = (prefixBits == 64 ? kmer ^ Long.MIN_VALUE : kmer << (64 - prefixBits));
+      return (int) (((u >>> 32) * numPartitions) >>> 32);
+   }
+
+   static long[] readBoundaries(String value, Configuration conf) throws IOException
+   {
+      List<Long> list = new ArrayList<Long>();
+      if (value.matches("[-0-9,\\s]+")) {
+         parse(value, list);
+      } else {
+         Path path = new Path(value);
+         FileSystem fs = path.getFileSystem(conf);
+         FileStatus[] files = (fs.getFileStatus(path).isDirectory() ? fs.listStatus(path) : new FileStatus[] { fs.getFileStatus(path) });
+         for (FileStatus f : files) {
+            String name = f.getPath().getName();
+            if (f.isDirectory() || name.startsWith("_") || name.startsWith(".")) continue;
+            BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(f.getPath()), "UTF-8"));
+            try {
+               String line;
+               while ((line = in.readLine()) != null) parse(line, list);
+            } finally {
+               in.close();
+            }
+         }
+      }
+
+      long[] b = new long[list.size()];
+      for (int i = 0; i < b.length; i++) b[i] = list.get(i);
+      Arrays.sort(b);
+      return b;
+   }
+
+   private static void parse(String s, List<Long> list)
+   {
+      for (String field : s.split("[,\\s]+")) {
+         if (field.length() > 0) list.add(Long.parseLong(field));
+      }
+   }
+}
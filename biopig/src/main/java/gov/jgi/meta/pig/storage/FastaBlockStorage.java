@@ -40,9 +40,7 @@
 package gov.jgi.meta.pig.storage;
 
 import gov.jgi.meta.hadoop.input.FastaBlockInputFormat;
-import gov.jgi.meta.hadoop.input.FastaBlockRecordReader;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import gov.jgi.meta.sequence.ReadBlock;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Job;
@@ -55,31 +53,47 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
 import org.apache.pig.data.*;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Map;
 
 /**
- * A data loader for fasta files. Loads sequences in blocks defined by the hdfs blocksize. Typically, each mapper will load a single block of sequences, as opposed to loading each
- * sequence individually. The advantage of loading them in blocks is where you want to operate on blocks at a time, eg. running blast against a dataset. In this case, you don't
- * want to run blast on each sequence, rather, you want to load a block of sequences (or a bag in pig parlance), and run blast against them all. The blocks are guaranteed to be
- * co-located within the a single map.
+ * A data loader for fasta files. Loads sequences in blocks, as opposed to loading each sequence individually. The advantage of loading them in blocks is where you want to
+ * operate on blocks at a time, eg. running blast against a dataset. In this case, you don't want to run blast on each sequence, rather, you want to load a block of sequences
+ * (or a bag in pig parlance), and run blast against them all. The blocks are guaranteed to be co-located within the a single map.
+ * 
+ * A block is at most maxRecords reads (default 100000) and ends once maxBytes bytes (default 64m) of the file are read, so its size does not depend on the split size:
+ * 
+ * a = load 'reads.fas' using FastaBlockStorage('10000', '16777216');
  * 
  * returns a bag in the form {offset: int, sequences: { seq1, seq2, seq3 ... } } where each sequence is of the form {id: chararray, direction: int, sequence: chararray}
+ * and offset is the position of the block in the file. The sequences are held packed and are only unpacked as the bag is iterated.
  * 
  **/
 
 public class FastaBlockStorage extends LoadFunc {
-	private static final Log LOG = LogFactory.getLog(FastaBlockStorage.class);
-
 	protected RecordReader in = null;
-	private ArrayList<Object> mProtoTuple = null;
 	private TupleFactory mTupleFactory = TupleFactory.getInstance();
+	private String maxRecords = null;
+	private String maxBytes = null;
 
 	/**
 	 * Null constructor
 	 */
 	public FastaBlockStorage() {
-		LOG.info("initializing FastaBlockStorage");
+	}
+
+	/**
+	 * @param maxRecords the most reads in a block
+	 */
+	public FastaBlockStorage(String maxRecords) {
+		this(maxRecords, null);
+	}
+
+	/**
+	 * @param maxRecords the most reads in a block
+	 * @param maxBytes the bytes of the file after which a block ends
+	 */
+	public FastaBlockStorage(String maxRecords, String maxBytes) {
+		this.maxRecords = maxRecords;
+		this.maxBytes = maxBytes;
 	}
 
 	/**
@@ -91,55 +105,16 @@ public class FastaBlockStorage extends LoadFunc {
 	 */
 	@Override
 	public Tuple getNext() throws IOException {
-		if (mProtoTuple == null) {
-			mProtoTuple = new ArrayList<Object>();
-		}
-
 		try {
-			LOG.info("loading next key/value");
-			boolean notDone = ((FastaBlockRecordReader) in).nextKeyValue();
-			LOG.info("notDone = " + notDone);
-
-			if (!notDone) {
+			if (!in.nextKeyValue()) {
 				return (null);
 			}
+			Text key = (Text) in.getCurrentKey();
+			ReadBlock block = (ReadBlock) in.getCurrentValue();
 
-			LOG.info("retrieving key/value from fastablockstorage");
-			String key = ((Text) in.getCurrentKey()).toString();
-			LOG.info("key = " + key);
-			Map<String, String> seqMap = (Map<String, String>) in.getCurrentValue();
-			LOG.info("value map size = " + seqMap.size());
-			DataBag output = DefaultBagFactory.getInstance().newDefaultBag();
-
-			for (String seqid : seqMap.keySet()) {
-				Tuple t = DefaultTupleFactory.getInstance().newTuple(3);
-
-				/*
-				 * check the id of the sequence to see if its a paired read
-				 */
-				String seqkey;
-				int direction;
-				if (seqid.indexOf("/") >= 0) {
-					String[] a = seqid.split("/");
-					seqkey = a[0];
-					direction = Integer.parseInt(a[1]);
-				} else {
-					seqkey = seqid;
-					direction = 0;
-				}
-				t.set(0, seqkey);
-				t.set(1, direction);
-				t.set(2, seqMap.get(seqid));
-
-				output.add(t);
-			}
-			mProtoTuple.add(new DataByteArray(key.getBytes(), 0, key.length()));
-			mProtoTuple.add(output);
-
-			Tuple t = mTupleFactory.newTupleNoCopy(mProtoTuple);
-			mProtoTuple = null;
-
-			LOG.info("loaded " + output.size() + " tuples, t = " + t.getMemorySize());
+			Tuple t = mTupleFactory.newTuple(2);
+			t.set(0, new DataByteArray(key.getBytes(), 0, key.getLength()));
+			t.set(1, new ReadBlockBag(block));
 			return (t);
 		} catch (InterruptedException e) {
 			int errCode = 6018;
@@ -163,5 +138,18 @@ public class FastaBlockStorage extends LoadFunc {
 	@Override
 	public void setLocation(String location, Job job) throws IOException {
 		FileInputFormat.setInputPaths(job, location);
+		setBlockSize(job, maxRecords, maxBytes);
+	}
+
+	/**
+	 * set the block size options of a block loader in the job
+	 */
+	static void setBlockSize(Job job, String maxRecords, String maxBytes) {
+		if (maxRecords != null) {
+			job.getConfiguration().setLong(FastaBlockInputFormat.MAX_BLOCK_RECORDS, Long.parseLong(maxRecords));
+		}
+		if (maxBytes != null) {
+			job.getConfiguration().setLong(FastaBlockInputFormat.MAX_BLOCK_BYTES, Long.parseLong(maxBytes));
+		}
 	}
 }
@@ -39,10 +39,13 @@
 
 package gov.jgi.meta.pig.storage;
 
+import gov.jgi.meta.hadoop.compress.BgzfCodec;
 import gov.jgi.meta.hadoop.output.FastaOutputFormat;
+import gov.jgi.meta.sequence.QualityString;
+import gov.jgi.meta.sequence.SequenceString;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.compress.BZip2Codec;
 import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.mapreduce.Job;
@@ -50,210 +53,261 @@ import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.pig.PigException;
+import org.apache.pig.StoreFunc;
 import org.apache.pig.backend.executionengine.ExecException;
-import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataByteArray;
-import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
- * Created by IntelliJ IDEA.
- * User: dev
- * Date: 1/31/11
- * Time: 2:29 PM
- * To change this template use File | Settings | File Templates.
+ * A pig store function for fasta and fastq files.  Tuples are of the form
+ * (id, direction, sequence[, header]) for fasta and (id, direction, sequence, quality)
+ * for fastq, as FastaStorage and FastqStorage('quality') load them:
+ *
+ *   store A into 'reads.fas' using gov.jgi.meta.pig.storage.FastaOutput();
+ *   store A into 'reads.fas.bgz' using gov.jgi.meta.pig.storage.FastaOutput('60');
+ *   store B into 'reads.fq.gz' using gov.jgi.meta.pig.storage.FastaOutput('fastq', 'bgzip');
+ *
+ * The options are a line width to wrap fasta sequences at (0, the default, does
+ * not wrap), 'fastq' to write fastq, 'bgzip' to write BGZF whatever the
+ * extension of the location, and 'packed' or 'raw' for bytearray sequences (see
+ * below).  Locations ending in .bz2, .gz and .bgz are written with bzip2, gzip
+ * and BGZF.
+ *
+ * A non-zero direction is written after the id as "/direction".  FastaStorage
+ * loads bytearray sequences packed by SequenceString and FastqStorage loads them
+ * as plain text, so a bytearray sequence is only written with 'packed', which
+ * unpacks it, or 'raw', which writes it as it is.  A bytearray quality is taken
+ * to be packed by QualityString and is unpacked; chararrays are written as they
+ * are.
  */
-public class FastaOutput {
+public class FastaOutput extends StoreFunc {
 
     protected RecordWriter writer = null;
 
-    private byte fieldDel = '\t';
-    private static final int BUFFER_SIZE = 1024;
-    private static final String UTF8 = "UTF-8";
-    ByteArrayOutputStream mOut = new ByteArrayOutputStream(BUFFER_SIZE);
+    private int lineWidth = 0;
+    private boolean fastq = false;
+    private boolean bgzip = false;
 
-    public FastaOutput() {
-    }
+    /**
+     * whether bytearray sequences are packed (Boolean.TRUE) or plain text
+     * (Boolean.FALSE); null until the 'packed' or 'raw' option is given
+     */
+    private Boolean packed = null;
 
-    public FastaOutput(String delimiter) {
-        this();
-        if (delimiter.length() == 1) {
-            this.fieldDel = (byte)delimiter.charAt(0);
-        } else if (delimiter.length() > 1 && delimiter.charAt(0) == '\\') {
-            switch (delimiter.charAt(1)) {
-            case 't':
-                this.fieldDel = (byte)'\t';
-                break;
+    /**
+     * the record being formatted, and the text it is handed to the writer in
+     */
+    private byte[] mOut = new byte[1024];
+    private int mLength = 0;
+    private final Text mRecord = new Text();
 
-            case 'x':
-               fieldDel =
-                    Integer.valueOf(delimiter.substring(2), 16).byteValue();
-               break;
-            case 'u':
-                this.fieldDel =
-                    Integer.valueOf(delimiter.substring(2)).byteValue();
-                break;
+    public FastaOutput() {
+    }
 
-            default:
-                throw new RuntimeException("Unknown delimiter " + delimiter);
+    /**
+     * @param options any of a line width, 'fastq', 'bgzip', and 'packed' or 'raw'
+     */
+    public FastaOutput(String... options) {
+        for (String option : options) {
+            if ("fastq".equals(option)) {
+                fastq = true;
+            } else if ("bgzip".equals(option)) {
+                bgzip = true;
+            } else if ("packed".equals(option)) {
+                packed = Boolean.TRUE;
+            } else if ("raw".equals(option)) {
+                packed = Boolean.FALSE;
+            } else {
+                try {
+                    lineWidth = Integer.parseInt(option);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("unknown FastaOutput option " + option);
+                }
+                if (lineWidth < 0) {
+                    throw new IllegalArgumentException("FastaOutput line width must not be negative, was " + option);
+                }
             }
-        } else {
-            throw new RuntimeException("PigStorage delimeter must be a single character");
         }
     }
 
     public void putNext(Tuple f) throws IOException {
-        int sz = f.size();
-        for (int i = 0; i < sz; i++) {
-            Object field;
-            try {
-                field = f.get(i);
-            } catch (ExecException ee) {
-                throw ee;
-            }
-
-            putField(field);
-
-            if (i != sz - 1) {
-                mOut.write(fieldDel);
+        Object id = f.get(0);
+        if (id == null) {
+            return;
+        }
+        Object direction = f.size() > 1 ? f.get(1) : null;
+        Object sequence = f.size() > 2 ? f.get(2) : null;
+        Object extra = f.size() > 3 ? f.get(3) : null;
+
+        mLength = 0;
+        write(fastq ? '@' : '>');
+        write(id);
+        if (direction != null) {
+            String d = direction.toString();
+            if (d.length() > 0 && !d.equals("0")) {
+                write('/');
+                write(d);
             }
         }
-        Text text = new Text(mOut.toByteArray());
+        if (!fastq && extra != null) {
+            write(extra);
+        }
+        write('\n');
+
+        int seqStart = mLength;
+        writeSequence(sequence);
+        int seqLength = mLength - seqStart;
+        if (fastq) {
+            write('\n');
+            write('+');
+            write('\n');
+            writeQuality(extra, seqLength);
+            write('\n');
+        } else {
+            wrap(seqStart, seqLength);
+        }
+
+        mRecord.set(mOut, 0, mLength);
         try {
-            writer.write(null, text);
-            mOut.reset();
+            writer.write(NullWritable.get(), mRecord);
         } catch (InterruptedException e) {
             throw new IOException(e);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void putField(Object field) throws IOException {
-        //string constants for each delimiter
-        String tupleBeginDelim = "(";
-        String tupleEndDelim = ")";
-        String bagBeginDelim = "{";
-        String bagEndDelim = "}";
-        String mapBeginDelim = "[";
-        String mapEndDelim = "]";
-        String fieldDelim = ",";
-        String mapKeyValueDelim = "#";
-
-        switch (DataType.findType(field)) {
-        case DataType.NULL:
-            break; // just leave it empty
-
-        case DataType.BOOLEAN:
-            mOut.write(((Boolean)field).toString().getBytes());
-            break;
-
-        case DataType.INTEGER:
-            mOut.write(((Integer)field).toString().getBytes());
-            break;
-
-        case DataType.LONG:
-            mOut.write(((Long)field).toString().getBytes());
-            break;
-
-        case DataType.FLOAT:
-            mOut.write(((Float)field).toString().getBytes());
-            break;
-
-        case DataType.DOUBLE:
-            mOut.write(((Double)field).toString().getBytes());
-            break;
-
-        case DataType.BYTEARRAY: {
-            byte[] b = ((DataByteArray)field).get();
-            mOut.write(b, 0, b.length);
-            break;
-                                 }
-
-        case DataType.CHARARRAY:
-            // oddly enough, writeBytes writes a string
-            mOut.write(((String)field).getBytes(UTF8));
-            break;
-
-        case DataType.MAP:
-            boolean mapHasNext = false;
-            Map<String, Object> m = (Map<String, Object>)field;
-            mOut.write(mapBeginDelim.getBytes(UTF8));
-            for(Map.Entry<String, Object> e: m.entrySet()) {
-                if(mapHasNext) {
-                    mOut.write(fieldDelim.getBytes(UTF8));
-                } else {
-                    mapHasNext = true;
-                }
-                putField(e.getKey());
-                mOut.write(mapKeyValueDelim.getBytes(UTF8));
-                putField(e.getValue());
+    private void writeSequence(Object sequence) throws IOException {
+        if (sequence instanceof DataByteArray) {
+            byte[] b = ((DataByteArray) sequence).get();
+            if (packed == null) {
+                int errCode = 2108;
+                String msg = "FastaOutput needs the option 'packed' (as FastaStorage loads sequences) or 'raw' (as FastqStorage loads them) to write a bytearray sequence";
+                throw new ExecException(msg, errCode, PigException.INPUT);
+            } else if (!packed) {
+                write(sequence);
+            } else if (!SequenceString.isPacked(b, 0, b.length)) {
+                int errCode = 2108;
+                String msg = "FastaOutput('packed') was given a sequence that is not packed by SequenceString; write plain text sequences with 'raw'";
+                throw new ExecException(msg, errCode, PigException.INPUT);
+            } else {
+                ensure(mLength + SequenceString.numBases(b, 0, b.length));
+                mLength += SequenceString.unpack(b, 0, b.length, mOut, mLength);
             }
-            mOut.write(mapEndDelim.getBytes(UTF8));
-            break;
-
-        case DataType.TUPLE:
-            boolean tupleHasNext = false;
-            Tuple t = (Tuple)field;
-            mOut.write(tupleBeginDelim.getBytes(UTF8));
-            for(int i = 0; i < t.size(); ++i) {
-                if(tupleHasNext) {
-                    mOut.write(fieldDelim.getBytes(UTF8));
-                } else {
-                    tupleHasNext = true;
-                }
-                try {
-                    putField(t.get(i));
-                } catch (ExecException ee) {
-                    throw ee;
-                }
-            }
-            mOut.write(tupleEndDelim.getBytes(UTF8));
-            break;
+        } else if (sequence != null) {
+            write(sequence);
+        }
+    }
 
-        case DataType.BAG:
-            boolean bagHasNext = false;
-            mOut.write(bagBeginDelim.getBytes(UTF8));
-            Iterator<Tuple> tupleIter = ((DataBag)field).iterator();
-            while(tupleIter.hasNext()) {
-                if(bagHasNext) {
-                    mOut.write(fieldDelim.getBytes(UTF8));
-                } else {
-                    bagHasNext = true;
-                }
-                putField((Object)tupleIter.next());
+    private void writeQuality(Object quality, int numBases) throws IOException {
+        if (quality instanceof DataByteArray) {
+            byte[] packed = ((DataByteArray) quality).get();
+            int n = QualityString.numBases(packed);
+            checkQualityLength(n, numBases);
+            ensure(mLength + n);
+            for (int i = 0; i < n; i++) {
+                mOut[mLength++] = (byte) (QualityString.scoreAt(packed, i) + QualityString.PHRED33);
             }
-            mOut.write(bagEndDelim.getBytes(UTF8));
-            break;
+        } else if (quality != null) {
+            int start = mLength;
+            write(quality);
+            checkQualityLength(mLength - start, numBases);
+        } else {
+            int errCode = 2108;
+            String msg = "FastaOutput('fastq') needs a quality field, (id, direction, sequence, quality)";
+            throw new ExecException(msg, errCode, PigException.INPUT);
+        }
+    }
 
-        default: {
+    private void checkQualityLength(int n, int numBases) throws ExecException {
+        if (n != numBases) {
             int errCode = 2108;
-            String msg = "Could not determine data type of field: " + field;
-            throw new ExecException(msg, errCode, PigException.BUG);
+            String msg = "FastaOutput('fastq') quality has " + n + " scores for a sequence of " + numBases + " bases";
+            throw new ExecException(msg, errCode, PigException.INPUT);
+        }
+    }
+
+    /**
+     * break the sequence mOut[start, start+length) into lines of lineWidth
+     * and end it with a newline
+     */
+    private void wrap(int start, int length) {
+        if (lineWidth == 0 || length <= lineWidth) {
+            write('\n');
+            return;
+        }
+        int lines = (length + lineWidth - 1) / lineWidth;
+        ensure(mLength + lines);
+        // move the lines into place from the last one back, so nothing is copied twice
+        int src = start + length;
+        int dest = start + length + lines;
+        mOut[--dest] = '\n';
+        for (int line = lines - 1; line >= 0; line--) {
+            int n = (line == lines - 1) ? length - line * lineWidth : lineWidth;
+            src -= n;
+            dest -= n;
+            System.arraycopy(mOut, src, mOut, dest, n);
+            if (line > 0) {
+                mOut[--dest] = '\n';
+            }
         }
+        mLength = start + length + lines;
+    }
 
+    private void ensure(int n) {
+        if (mOut.length < n) {
+            mOut = Arrays.copyOf(mOut, Math.max(n, 2 * mOut.length));
         }
     }
 
+    private void write(int b) {
+        ensure(mLength + 1);
+        mOut[mLength++] = (byte) b;
+    }
 
-    public OutputFormat getOutputFormat() {
-        return new FastaOutputFormat<WritableComparable, Text>();
+    /**
+     * write a field as text, bytearrays as they are
+     */
+    private void write(Object field) throws IOException {
+        if (field instanceof DataByteArray) {
+            byte[] b = ((DataByteArray) field).get();
+            ensure(mLength + b.length);
+            System.arraycopy(b, 0, mOut, mLength, b.length);
+            mLength += b.length;
+            return;
+        }
+        String s = field.toString();
+        ensure(mLength + s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // not ascii, let the encoder do it
+                mLength -= i;
+                byte[] b = s.getBytes("UTF-8");
+                ensure(mLength + b.length);
+                System.arraycopy(b, 0, mOut, mLength, b.length);
+                mLength += b.length;
+                return;
+            }
+            mOut[mLength++] = (byte) c;
+        }
     }
 
+    public OutputFormat getOutputFormat() {
+        return new FastaOutputFormat<NullWritable, Text>();
+    }
 
     public void prepareToWrite(RecordWriter writer) {
         this.writer = writer;
     }
 
-
     public void setStoreLocation(String location, Job job) throws IOException {
-        job.getConfiguration().set("mapred.textoutputformat.separator", "");
         FileOutputFormat.setOutputPath(job, new Path(location));
-        if (location.endsWith(".bz2")) {
+        if (bgzip || location.endsWith(".bgz")) {
+            FileOutputFormat.setCompressOutput(job, true);
+            FileOutputFormat.setOutputCompressorClass(job, BgzfCodec.class);
+        } else if (location.endsWith(".bz2")) {
             FileOutputFormat.setCompressOutput(job, true);
             FileOutputFormat.setOutputCompressorClass(job,  BZip2Codec.class);
         }  else if (location.endsWith(".gz")) {
@@ -40,7 +40,7 @@
 package gov.jgi.meta.pig.storage;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputFormat;
@@ -49,12 +49,14 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import gov.jgi.meta.hadoop.input.*;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadPushDown;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
 
 /**
  * A pig loader for fasta files.  The loader reads fasta sequence files and returns tuples of the form
@@ -75,12 +77,18 @@ import org.apache.pig.data.TupleFactory;
  * the id of the read is defined to be the first word after the > in the header.  that is, till the first space
  * or tab.
  *
+ * only the fields the script uses are built (see LoadPushDown), so a script that only uses the sequence
+ * does not pay for splitting the header.
+ *
  **/
 
-public class FastaStorage extends LoadFunc {
+public class FastaStorage extends LoadFunc implements LoadPushDown {
    protected RecordReader    in            = null;
-   private ArrayList<Object> mProtoTuple   = null;
    private TupleFactory      mTupleFactory = TupleFactory.getInstance();
+   private String            signature     = null;
+   private int[]             fields        = null;
+
+   static final byte[] UNPAIRED = { '0' };
 
    /**
     * null constructor
@@ -95,12 +103,6 @@ public class FastaStorage extends LoadFunc {
    @Override
    public Tuple getNext() throws IOException
    {
-
-      if (mProtoTuple == null)
-      {
-         mProtoTuple = new ArrayList<Object>();
-      }
-
       try {
          boolean notDone = in.nextKeyValue();
          if (!notDone)
@@ -111,35 +113,30 @@ public class FastaStorage extends LoadFunc {
          /*
            check the id of the sequence to see if its a paired read
           */
-         String seqid = (in.getCurrentKey()).toString();
-         String seqkey = null;
-         String seqkey2;
-         String header = "";
-         String direction;
-         for (int i = 0; i < seqid.length(); i++) {
-            if (seqid.charAt(i) == ' ' || seqid.charAt(i) == '\t') {
-               seqkey = seqid.substring(0, i);
-               header = seqid.substring(i, seqid.length());
+         Text key    = (Text) in.getCurrentKey();
+         byte[] b    = key.getBytes();
+         int length  = key.getLength();
+         int idEnd   = RequiredFields.idEnd(b, length);
+         int sep     = RequiredFields.pairSeparator(b, idEnd);
+
+         Tuple t = mTupleFactory.newTuple(fields.length);
+         for (int i = 0; i < fields.length; i++) {
+            switch (fields[i]) {
+            case 0:  // key
+               t.set(i, new DataByteArray(b, 0, sep));
+               break;
+            case 1:  // direction
+               t.set(i, sep < idEnd ? new DataByteArray(b, sep + 1, RequiredFields.directionEnd(b, sep, idEnd)) : new DataByteArray(UNPAIRED));
+               break;
+            case 2:  // sequence
+               Text value = (Text) in.getCurrentValue();
+               t.set(i, new DataByteArray(value.getBytes(), 0, value.getLength()));
+               break;
+            case 3:  // header
+               t.set(i, new DataByteArray(b, idEnd, length));
                break;
             }
          }
-         if (seqkey == null) seqkey = seqid;
-         if (seqkey.indexOf("/") >= 0) {
-            String[] a = seqkey.split("/");
-            seqkey2 = a[0];
-            direction = a[1];
-         } else {
-            seqkey2 = seqkey;
-            direction = "0";
-         }
-         Text value     = ((Text)in.getCurrentValue());
-         mProtoTuple.add(new DataByteArray(seqkey2.getBytes(), 0, seqkey2.length()));                   // add key
-         mProtoTuple.add(new DataByteArray(direction.getBytes(), 0, direction.length()));               // add direction
-         mProtoTuple.add(new DataByteArray(value.getBytes(), 0, value.getLength()));                    // add sequence
-         mProtoTuple.add(new DataByteArray(header.getBytes(), 0, header.length()));                     // add header
-
-         Tuple t = mTupleFactory.newTupleNoCopy(mProtoTuple);
-         mProtoTuple = null;
          return(t);
       } catch (InterruptedException e) {
          int    errCode = 6018;
@@ -159,6 +156,7 @@ public class FastaStorage extends LoadFunc {
    public void prepareToRead(RecordReader reader, PigSplit split)
    {
       in = reader;
+      fields = RequiredFields.get(getClass(), signature, 4);
    }
 
    @Override
@@ -167,4 +165,22 @@ public class FastaStorage extends LoadFunc {
    {
       FileInputFormat.setInputPaths(job, location);
    }
+
+   @Override
+   public void setUDFContextSignature(String signature)
+   {
+      this.signature = signature;
+   }
+
+   public List<OperatorSet> getFeatures()
+   {
+      return(RequiredFields.features());
+   }
+
+   public RequiredFieldResponse pushProjection(RequiredFieldList requiredFieldList)
+   throws FrontendException
+   {
+      RequiredFields.push(getClass(), signature, requiredFieldList);
+      return(new RequiredFieldResponse(true));
+   }
 }
@@ -40,6 +40,7 @@
 package gov.jgi.meta.pig.storage;
 
 import gov.jgi.meta.hadoop.input.FastqBlockInputFormat;
+import gov.jgi.meta.sequence.ReadBlock;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Job;
@@ -52,17 +53,17 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
 import org.apache.pig.data.*;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Map;
 
 /**
- * A data loader for fastq files.  Loads sequences in blocks defined by the hdfs blocksize.
- * Typically, each mapper will load a single block of sequences, as opposed to loading each
- * sequence individually.  The advantage of loading them in blocks is where you want to operate
- * on blocks at a time, eg. running blast against a dataset.  In this case, you don't want to
- * run blast on each sequence, rather, you want to load a block of sequences (or a bag in pig
- * parlance), and run blast against them all.  The blocks are guaranteed to be co-located within
- * the a single map.
+ * A data loader for fastq files.  Loads sequences in blocks, as opposed to loading each
+ * sequence individually.  The advantage of loading them in blocks is where you want to
+ * operate on blocks at a time, eg. running blast against a dataset.  In this case, you don't
+ * want to run blast on each sequence, rather, you want to load a block of sequences (or a bag
+ * in pig parlance), and run blast against them all.  The blocks are guaranteed to be
+ * co-located within the a single map.
+ *
+ * Blocks are sized as for FastaBlockStorage, by the optional maxRecords and maxBytes
+ * arguments.
  *
  * returns a bag in the form {offset: int,  sequences: { seq1, seq2, seq3 ... } }  where
  * each sequence is of the form {id: chararray, direction: int, sequence: chararray}
@@ -70,9 +71,10 @@ import java.util.Map;
  **/
 
 public class FastqBlockStorage extends LoadFunc {
-   protected RecordReader    in            = null;
-   private ArrayList<Object> mProtoTuple   = null;
-   private TupleFactory      mTupleFactory = TupleFactory.getInstance();
+   protected RecordReader in            = null;
+   private TupleFactory   mTupleFactory = TupleFactory.getInstance();
+   private String         maxRecords    = null;
+   private String         maxBytes      = null;
 
    /**
     * Null constructor
@@ -81,6 +83,24 @@ public class FastqBlockStorage extends LoadFunc {
    {
    }
 
+   /**
+    * @param maxRecords the most reads in a block
+    */
+   public FastqBlockStorage(String maxRecords)
+   {
+      this(maxRecords, null);
+   }
+
+   /**
+    * @param maxRecords the most reads in a block
+    * @param maxBytes the bytes of the file after which a block ends
+    */
+   public FastqBlockStorage(String maxRecords, String maxBytes)
+   {
+      this.maxRecords = maxRecords;
+      this.maxBytes   = maxBytes;
+   }
+
    /**
     * read input and return next tuple.
     * @return Tuple of the form <offset: int, sequences:bag>
@@ -89,49 +109,17 @@ public class FastqBlockStorage extends LoadFunc {
    @Override
    public Tuple getNext() throws IOException
    {
-      if (mProtoTuple == null)
-      {
-         mProtoTuple = new ArrayList<Object>();
-      }
-
       try {
-         boolean notDone = in.nextKeyValue();
-         if (!notDone)
+         if (!in.nextKeyValue())
          {
             return(null);
          }
-         String key                 = ((Text) in.getCurrentKey()).toString();
-         Map<String, String> seqMap = (Map<String, String>) in.getCurrentValue();
-         DataBag             output = DefaultBagFactory.getInstance().newDefaultBag();
-
-         for (String seqid : seqMap.keySet())
-         {
-            Tuple t = DefaultTupleFactory.getInstance().newTuple(3);
-
-            /*
-             check the id of the sequence to see if its a paired read
-             */
-            String seqkey;
-            String direction;
-            if (seqid.indexOf("/") >= 0) {
-               String[] a = seqid.split("/");
-               seqkey = a[0];
-               direction = a[1];
-            } else {
-               seqkey = seqid;
-               direction = "0";
-            }
-            t.set(0, seqkey);
-            t.set(1, direction);
-            t.set(2, seqMap.get(seqid));
-
-            output.add(t);
-         }
-         mProtoTuple.add(new DataByteArray(key.getBytes(), 0, key.length()));
-         mProtoTuple.add(output);
+         Text      key   = (Text) in.getCurrentKey();
+         ReadBlock block = (ReadBlock) in.getCurrentValue();
 
-         Tuple t = mTupleFactory.newTupleNoCopy(mProtoTuple);
-         mProtoTuple = null;
+         Tuple t = mTupleFactory.newTuple(2);
+         t.set(0, new DataByteArray(key.getBytes(), 0, key.getLength()));
+         t.set(1, new ReadBlockBag(block));
          return(t);
       } catch (InterruptedException e) {
          int    errCode = 6018;
@@ -158,5 +146,6 @@ public class FastqBlockStorage extends LoadFunc {
    throws IOException
    {
       FileInputFormat.setInputPaths(job, location);
+      FastaBlockStorage.setBlockSize(job, maxRecords, maxBytes);
    }
-}
\ No newline at end of file
+}
@@ -40,31 +40,51 @@
 package gov.jgi.meta.pig.storage;
 
 import gov.jgi.meta.hadoop.input.FastqInputFormat;
+import gov.jgi.meta.hadoop.input.FastqRecordReader;
+import gov.jgi.meta.sequence.QualityString;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadPushDown;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A pig loader for fastq files.  The loader reads fastq sequence files and returns tuples of the form
  * <seqid: chararray, direction: int, sequence: chararray>
+ *
+ * With the option 'quality' the quality line is kept as a fourth field, packed by QualityString
+ * into a bytearray with one phred score per base; 'binned' also maps the scores to the 8 Illumina
+ * bins and packs two to a byte.  'phred64' reads quality lines with an offset of 64 instead of 33.
+ * The quality UDFs (QualityTrim, QualityFilter, MeanQuality, UnpackQuality) work on the packed form:
+ *
+ *   A = load 'reads.fq' using gov.jgi.meta.pig.storage.FastqStorage('binned') as (id: chararray, d: int, seq: chararray, q: bytearray);
+ *   B = filter A by gov.jgi.meta.pig.eval.QualityFilter(q, 20, 0.1);
+ *
+ * Only the fields the script uses are built (see LoadPushDown); the quality line is not copied
+ * out of the reader unless the quality field is used.
  **/
 
-public class FastqStorage extends LoadFunc {
+public class FastqStorage extends LoadFunc implements LoadPushDown {
    protected RecordReader    in            = null;
-   private ArrayList<Object> mProtoTuple   = null;
    private TupleFactory      mTupleFactory = TupleFactory.getInstance();
+   private String            signature     = null;
+   private int[]             fields        = null;
+
+   private boolean quality = false;
+   private boolean binned = false;
+   private int phredOffset = QualityString.PHRED33;
 
    /**
     * null constructor
@@ -73,18 +93,30 @@ public class FastqStorage extends LoadFunc {
    {
    }
 
+   /**
+    * @param options any of 'quality', 'binned' (implies quality) and 'phred64'
+    */
+   public FastqStorage(String... options)
+   {
+      for (String option : options) {
+         if ("quality".equals(option)) {
+            quality = true;
+         } else if ("binned".equals(option)) {
+            quality = binned = true;
+         } else if ("phred64".equals(option)) {
+            phredOffset = QualityString.PHRED64;
+         } else {
+            throw new IllegalArgumentException("unknown FastqStorage option " + option);
+         }
+      }
+   }
+
    /**
     * returns the next sequence from the block
     */
    @Override
    public Tuple getNext() throws IOException
    {
-
-      if (mProtoTuple == null)
-      {
-         mProtoTuple = new ArrayList<Object>();
-      }
-
       try {
          boolean notDone = in.nextKeyValue();
          if (!notDone)
@@ -95,25 +127,32 @@ public class FastqStorage extends LoadFunc {
          /*
            check the id of the sequence to see if its a paired read
           */
-         String seqid = ((Text)in.getCurrentKey()).toString();
-         String seqkey;
-         String direction;
-         if (seqid.indexOf("/") >= 0) {
-            String[] a = seqid.split("/");
-            seqkey = a[0];
-            direction = a[1];
-         } else {
-            seqkey = seqid;
-            direction = "0";
+         Text key    = (Text) in.getCurrentKey();
+         byte[] b    = key.getBytes();
+         int length  = key.getLength();
+         int sep     = RequiredFields.pairSeparator(b, length);
+
+         Tuple t = mTupleFactory.newTuple(fields.length);
+         for (int i = 0; i < fields.length; i++) {
+            switch (fields[i]) {
+            case 0:  // key
+               t.set(i, new DataByteArray(b, 0, sep));
+               break;
+            case 1:  // direction
+               t.set(i, sep < length ? new DataByteArray(b, sep + 1, RequiredFields.directionEnd(b, sep, length)) : new DataByteArray(FastaStorage.UNPAIRED));
+               break;
+            case 2:  // sequence
+               Text value = (Text) in.getCurrentValue();
+               t.set(i, new DataByteArray(value.getBytes(), 0, value.getLength()));
+               break;
+            case 3:  // quality
+               if (quality) {
+                  Text q = ((FastqRecordReader) in).getCurrentQuality();
+                  t.set(i, new DataByteArray(QualityString.pack(q.getBytes(), 0, q.getLength(), phredOffset, binned)));
+               }
+               break;
+            }
          }
-         String value     =  (String) (in.getCurrentValue().toString());
-	 //Text value     =  (Text)in.getCurrentValue();
-         mProtoTuple.add(new DataByteArray(seqkey.getBytes(), 0, seqkey.length()));                           // add key
-         mProtoTuple.add(new DataByteArray(direction.getBytes(), 0, direction.length()));               // add direction
-         mProtoTuple.add(new DataByteArray(value.getBytes(), 0, value.length()));                       // add sequence
-
-         Tuple t = mTupleFactory.newTupleNoCopy(mProtoTuple);
-         mProtoTuple = null;
          return(t);
       } catch (InterruptedException e) {
          int    errCode = 6018;
@@ -133,6 +172,12 @@ public class FastqStorage extends LoadFunc {
    public void prepareToRead(RecordReader reader, PigSplit split)
    {
       in = reader;
+      fields = RequiredFields.get(getClass(), signature, quality ? 4 : 3);
+      boolean keepQuality = false;
+      for (int f : fields) {
+         keepQuality |= quality && f == 3;
+      }
+      ((FastqRecordReader) in).setKeepQuality(keepQuality);
    }
 
    @Override
@@ -141,4 +186,22 @@ public class FastqStorage extends LoadFunc {
    {
       FileInputFormat.setInputPaths(job, location);
    }
-}
\ No newline at end of file
+
+   @Override
+   public void setUDFContextSignature(String signature)
+   {
+      this.signature = signature;
+   }
+
+   public List<OperatorSet> getFeatures()
+   {
+      return(RequiredFields.features());
+   }
+
+   public RequiredFieldResponse pushProjection(RequiredFieldList requiredFieldList)
+   throws FrontendException
+   {
+      RequiredFields.push(getClass(), signature, requiredFieldList);
+      return(new RequiredFieldResponse(true));
+   }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.storage;
+
+import java.io.IOException;
+
+import gov.jgi.meta.hadoop.input.KmerSetInputFormat;
+import gov.jgi.meta.hadoop.output.KmerSetOutputFormat;
+import gov.jgi.meta.pig.eval.KmerGenerator;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.PigException;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.StoreFunc;
+import org.apache.pig.StoreFuncInterface;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * Loads and stores binary k-mer set files (see gov.jgi.meta.kmer.KmerSet):
+ * sorted 2-bit coded k-mers, as produced by KmerGenerator('long'), with a
+ * block index for lookups by KmerSetContains.
+ *
+ * Storing takes the k-mer size and optionally the strand ('forward' or
+ * 'canonical') the k-mers were generated with, and the first field of each
+ * tuple is the k-mer.  The k-mers must reach each store task in ascending
+ * order, e.g. from a group by kmer partitioned by KmerRangePartitioner:
+ *
+ *   C = group B by kmer PARTITION BY gov.jgi.meta.pig.partition.KmerRangePartitioner PARALLEL 10;
+ *   D = foreach C generate group;
+ *   store D into 'kmers.set' using gov.jgi.meta.pig.storage.KmerSetStorage('31');
+ *
+ * Loading returns tuples of the form <kmer: long>.
+ *
+ *   K = load 'kmers.set' using gov.jgi.meta.pig.storage.KmerSetStorage() as (kmer: long);
+ */
+public class KmerSetStorage extends LoadFunc implements StoreFuncInterface {
+
+   private final int kmerSize;
+   private final boolean canonical;
+
+   protected RecordReader in = null;
+   protected RecordWriter writer = null;
+   private TupleFactory mTupleFactory = TupleFactory.getInstance();
+   private final LongWritable mValue = new LongWritable();
+
+   /**
+    * null constructor, for loading
+    */
+   public KmerSetStorage()
+   {
+      this.kmerSize = -1;
+      this.canonical = false;
+   }
+
+   public KmerSetStorage(String k)
+   {
+      this(k, KmerGenerator.FORWARD);
+   }
+
+   /**
+    * @param k the size of the k-mers stored
+    * @param strand KmerGenerator.FORWARD or KmerGenerator.CANONICAL
+    */
+   public KmerSetStorage(String k, String strand)
+   {
+      this.kmerSize = Integer.parseInt(k);
+      this.canonical = KmerGenerator.isCanonical(strand);
+   }
+
+   /* load */
+
+   @Override
+   public Tuple getNext() throws IOException
+   {
+      try {
+         if (!in.nextKeyValue()) {
+            return(null);
+         }
+         Tuple t = mTupleFactory.newTuple(1);
+         t.set(0, ((LongWritable) in.getCurrentValue()).get());
+         return(t);
+      } catch (InterruptedException e) {
+         int    errCode = 6018;
+         String errMsg  = "Error while reading input";
+         throw new ExecException(errMsg, errCode,
+                                 PigException.REMOTE_ENVIRONMENT, e);
+      }
+   }
+
+   @Override
+   public InputFormat getInputFormat()
+   {
+      return(new KmerSetInputFormat());
+   }
+
+   @Override
+   public void prepareToRead(RecordReader reader, PigSplit split)
+   {
+      in = reader;
+   }
+
+   @Override
+   public void setLocation(String location, Job job)
+   throws IOException
+   {
+      FileInputFormat.setInputPaths(job, location);
+   }
+
+   /* store */
+
+   public String relToAbsPathForStoreLocation(String location, Path curDir) throws IOException
+   {
+      return LoadFunc.getAbsolutePath(location, curDir);
+   }
+
+   public OutputFormat getOutputFormat()
+   {
+      return new KmerSetOutputFormat();
+   }
+
+   public void setStoreLocation(String location, Job job) throws IOException
+   {
+      if (kmerSize < 0) {
+         throw new IOException("KmerSetStorage needs the kmer size to store, e.g. KmerSetStorage('31')");
+      }
+      job.getConfiguration().setInt(KmerSetOutputFormat.KMER_SIZE, kmerSize);
+      job.getConfiguration().setBoolean(KmerSetOutputFormat.CANONICAL, canonical);
+      FileOutputFormat.setOutputPath(job, new Path(location));
+   }
+
+   public void checkSchema(ResourceSchema s) throws IOException
+   {
+   }
+
+   public void prepareToWrite(RecordWriter writer)
+   {
+      this.writer = writer;
+   }
+
+   @SuppressWarnings("unchecked")
+   public void putNext(Tuple t) throws IOException
+   {
+      Object kmer = t.get(0);
+      if (kmer == null) return;
+      mValue.set(((Number) kmer).longValue());
+      try {
+         writer.write(NullWritable.get(), mValue);
+      } catch (InterruptedException e) {
+         throw new IOException(e);
+      }
+   }
+
+   public void setStoreFuncUDFContextSignature(String signature)
+   {
+   }
+
+   public void cleanupOnFailure(String location, Job job) throws IOException
+   {
+      StoreFunc.cleanupOnFailureImpl(location, job);
+   }
+
+   public void cleanupOnSuccess(String location, Job job) throws IOException
+   {
+   }
+}
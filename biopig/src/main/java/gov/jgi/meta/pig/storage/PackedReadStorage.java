@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.storage;
+
+import java.io.IOException;
+import java.util.List;
+
+import gov.jgi.meta.hadoop.input.PackedReadInputFormat;
+import gov.jgi.meta.hadoop.input.PackedReadRecordReader;
+import gov.jgi.meta.hadoop.output.PackedReadOutputFormat;
+import gov.jgi.meta.sequence.PackedRead;
+import gov.jgi.meta.sequence.PackedReadFile;
+import gov.jgi.meta.sequence.QualityString;
+import gov.jgi.meta.sequence.SequenceString;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadPushDown;
+import org.apache.pig.PigException;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.StoreFunc;
+import org.apache.pig.StoreFuncInterface;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+
+/**
+ * Loads and stores packed read files (see gov.jgi.meta.sequence.PackedReadFile),
+ * so that a fasta or fastq file is parsed once and later scripts read the
+ * packed reads directly:
+ *
+ *   A = load 'reads.fq' using gov.jgi.meta.pig.storage.FastqStorage('quality') as (id: chararray, d: int, seq: chararray, q: bytearray);
+ *   store A into 'reads.bpr' using gov.jgi.meta.pig.storage.PackedReadStorage();
+ *
+ * Storing takes tuples of the form (id, direction, sequence[, quality]).  A
+ * chararray sequence is packed with SequenceString.  FastaStorage loads bytearray
+ * sequences already packed and FastqStorage loads them as plain text, and the two
+ * cannot be told apart from the bytes, so storing a bytearray sequence needs the
+ * option 'packed' or 'raw' to say which it is:
+ *
+ *   A = load 'reads.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);
+ *   store A into 'reads.bpr' using gov.jgi.meta.pig.storage.PackedReadStorage('packed');
+ *
+ * A bytearray quality is taken to be packed by QualityString, as
+ * FastqStorage('quality') loads it; a chararray quality is read as phred+33.
+ *
+ * Loading returns tuples of the form <id: chararray, d: int, seq: bytearray, q: bytearray>,
+ * with the sequence packed as FastaStorage returns it and a null quality for
+ * reads without one.  Only the columns of the fields the script uses are read.
+ *
+ *   B = load 'reads.bpr' using gov.jgi.meta.pig.storage.PackedReadStorage() as (id: chararray, d: int, seq: bytearray, q: bytearray);
+ */
+public class PackedReadStorage extends LoadFunc implements StoreFuncInterface, LoadPushDown {
+
+   protected RecordReader in = null;
+   protected RecordWriter writer = null;
+   private TupleFactory mTupleFactory = TupleFactory.getInstance();
+   private String signature = null;
+   private int[] fields = null;
+   private final PackedRead mRead = new PackedRead();
+   private byte[] mBuffer = new byte[256];
+
+   /**
+    * whether bytearray sequences are packed (Boolean.TRUE) or plain text
+    * (Boolean.FALSE); null until the 'packed' or 'raw' option is given
+    */
+   private Boolean packed = null;
+
+   /**
+    * null constructor
+    */
+   public PackedReadStorage()
+   {
+   }
+
+   /**
+    * @param options 'packed' or 'raw', how bytearray sequences being stored are to be read
+    */
+   public PackedReadStorage(String... options)
+   {
+      for (String option : options) {
+         if ("packed".equals(option)) {
+            packed = Boolean.TRUE;
+         } else if ("raw".equals(option)) {
+            packed = Boolean.FALSE;
+         } else {
+            throw new IllegalArgumentException("unknown PackedReadStorage option " + option);
+         }
+      }
+   }
+
+   /* load */
+
+   @Override
+   public Tuple getNext() throws IOException
+   {
+      try {
+         if (!in.nextKeyValue()) {
+            return(null);
+         }
+         PackedRead read = (PackedRead) in.getCurrentValue();
+         Tuple t = mTupleFactory.newTuple(fields.length);
+         for (int i = 0; i < fields.length; i++) {
+            switch (fields[i]) {
+            case PackedReadFile.ID:
+               t.set(i, read.getId().toString());
+               break;
+            case PackedReadFile.DIRECTION:
+               t.set(i, read.getDirection());
+               break;
+            case PackedReadFile.SEQUENCE:
+               t.set(i, bytes(read.getSequence()));
+               break;
+            case PackedReadFile.QUALITY:
+               if (read.getQuality().getLength() > 0) {
+                  t.set(i, bytes(read.getQuality()));
+               }
+               break;
+            }
+         }
+         return(t);
+      } catch (InterruptedException e) {
+         int    errCode = 6018;
+         String errMsg  = "Error while reading input";
+         throw new ExecException(errMsg, errCode,
+                                 PigException.REMOTE_ENVIRONMENT, e);
+      }
+   }
+
+   private static DataByteArray bytes(Text t)
+   {
+      return new DataByteArray(t.getBytes(), 0, t.getLength());
+   }
+
+   @Override
+   public InputFormat getInputFormat()
+   {
+      return(new PackedReadInputFormat());
+   }
+
+   @Override
+   public void prepareToRead(RecordReader reader, PigSplit split)
+   {
+      in = reader;
+      fields = RequiredFields.get(getClass(), signature, PackedReadFile.NUM_COLUMNS);
+      int mask = 0;
+      for (int f : fields) {
+         if (f < PackedReadFile.NUM_COLUMNS) mask |= 1 << f;
+      }
+      ((PackedReadRecordReader) in).setColumns(mask);
+   }
+
+   @Override
+   public void setLocation(String location, Job job)
+   throws IOException
+   {
+      FileInputFormat.setInputPaths(job, location);
+   }
+
+   @Override
+   public void setUDFContextSignature(String signature)
+   {
+      this.signature = signature;
+   }
+
+   public List<OperatorSet> getFeatures()
+   {
+      return(RequiredFields.features());
+   }
+
+   public RequiredFieldResponse pushProjection(RequiredFieldList requiredFieldList)
+   throws FrontendException
+   {
+      RequiredFields.push(getClass(), signature, requiredFieldList);
+      return(new RequiredFieldResponse(true));
+   }
+
+   /* store */
+
+   public String relToAbsPathForStoreLocation(String location, Path curDir) throws IOException
+   {
+      return LoadFunc.getAbsolutePath(location, curDir);
+   }
+
+   public OutputFormat getOutputFormat()
+   {
+      return new PackedReadOutputFormat();
+   }
+
+   public void setStoreLocation(String location, Job job) throws IOException
+   {
+      FileOutputFormat.setOutputPath(job, new Path(location));
+   }
+
+   public void checkSchema(ResourceSchema s) throws IOException
+   {
+   }
+
+   public void prepareToWrite(RecordWriter writer)
+   {
+      this.writer = writer;
+   }
+
+   @SuppressWarnings("unchecked")
+   public void putNext(Tuple t) throws IOException
+   {
+      mRead.clear();
+
+      Object id = t.get(0);
+      if (id instanceof DataByteArray) {
+         byte[] b = ((DataByteArray) id).get();
+         mRead.getId().set(b, 0, b.length);
+      } else if (id != null) {
+         mRead.getId().set(id.toString());
+      }
+
+      Object direction = t.size() > 1 ? t.get(1) : null;
+      if (direction instanceof Number) {
+         mRead.setDirection(((Number) direction).intValue());
+      } else if (direction != null && direction.toString().length() > 0) {
+         mRead.setDirection(Integer.parseInt(direction.toString()));
+      }
+
+      Object seq = t.size() > 2 ? t.get(2) : null;
+      if (seq instanceof DataByteArray) {
+         byte[] b = ((DataByteArray) seq).get();
+         if (packed == null) {
+            int errCode = 2108;
+            String msg = "PackedReadStorage needs the option 'packed' (as FastaStorage loads sequences) or 'raw' (as FastqStorage loads them) to store a bytearray sequence";
+            throw new ExecException(msg, errCode, PigException.INPUT);
+         } else if (!packed) {
+            ensure(SequenceString.packedLength(b.length));
+            mRead.getSequence().set(mBuffer, 0, SequenceString.pack(b, 0, b.length, mBuffer, 0));
+         } else if (!SequenceString.isPacked(b, 0, b.length)) {
+            int errCode = 2108;
+            String msg = "PackedReadStorage('packed') was given a sequence that is not packed by SequenceString; store plain text sequences with 'raw'";
+            throw new ExecException(msg, errCode, PigException.INPUT);
+         } else {
+            mRead.getSequence().set(b, 0, b.length);
+         }
+      } else if (seq != null) {
+         String s = seq.toString();
+         ensure(SequenceString.packedLength(s.length()));
+         mRead.getSequence().set(mBuffer, 0, SequenceString.pack(s, 0, s.length(), mBuffer, 0));
+      }
+
+      Object quality = t.size() > 3 ? t.get(3) : null;
+      if (quality instanceof DataByteArray) {
+         byte[] b = ((DataByteArray) quality).get();
+         mRead.getQuality().set(b, 0, b.length);
+      } else if (quality != null) {
+         byte[] b = quality.toString().getBytes();
+         ensure(QualityString.packedLength(b.length, false));
+         mRead.getQuality().set(mBuffer, 0, QualityString.pack(b, 0, b.length, QualityString.PHRED33, false, mBuffer, 0));
+      }
+
+      try {
+         writer.write(NullWritable.get(), mRead);
+      } catch (InterruptedException e) {
+         throw new IOException(e);
+      }
+   }
+
+   private void ensure(int n)
+   {
+      if (mBuffer.length < n) {
+         mBuffer = new byte[Math.max(n, 2 * mBuffer.length)];
+      }
+   }
+
+   public void setStoreFuncUDFContextSignature(String signature)
+   {
+   }
+
+   public void cleanupOnFailure(String location, Job job) throws IOException
+   {
+      StoreFunc.cleanupOnFailureImpl(location, job);
+   }
+
+   public void cleanupOnSuccess(String location, Job job) throws IOException
+   {
+   }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.storage;
+
+import gov.jgi.meta.sequence.ReadBlock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.pig.PigCounters;
+import org.apache.pig.data.DefaultAbstractBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The bag of reads of a block loaded by FastaBlockStorage or FastqBlockStorage.
+ * The reads stay packed in the ReadBlock and each tuple
+ * (id: chararray, d: int, sequence: chararray) is made as the bag is iterated.
+ * Under memory pressure the block is written to disk as it is and the bag
+ * then streams from the file.
+ *
+ * The bag is read only.
+ */
+class ReadBlockBag extends DefaultAbstractBag {
+   private static final long serialVersionUID = 1L;
+
+   private static final Log LOG = LogFactory.getLog(ReadBlockBag.class);
+
+   private static final TupleFactory mTupleFactory = TupleFactory.getInstance();
+
+   // the reads, null once they are spilled
+   private ReadBlock block;
+
+   ReadBlockBag(ReadBlock block)
+   {
+      this.block = block;
+      mContents  = new ArrayList<Tuple>(0);
+      mSize      = block.size();
+      markSpillableIfNecessary();
+   }
+
+   public boolean isSorted()
+   {
+      return false;
+   }
+
+   public boolean isDistinct()
+   {
+      return false;
+   }
+
+   @Override
+   public void add(Tuple t)
+   {
+      throw new UnsupportedOperationException("a block of reads is read only");
+   }
+
+   @Override
+   public synchronized void clear()
+   {
+      block = null;
+      super.clear();
+   }
+
+   @Override
+   public synchronized long getMemorySize()
+   {
+      return block == null ? 0 : block.getData().length + 64;
+   }
+
+   public synchronized long spill()
+   {
+      if (block == null) {
+         return 0;
+      }
+      try {
+         DataOutputStream out = getSpillFile();
+         try {
+            out.write(block.getData(), 0, block.getLength());
+         } finally {
+            out.close();
+         }
+      } catch (IOException e) {
+         LOG.error("Unable to spill contents to disk", e);
+         return 0;
+      }
+      block = null;
+      incSpillCount(PigCounters.SPILLABLE_MEMORY_MANAGER_SPILL_COUNT);
+      return mSize;
+   }
+
+   public synchronized Iterator<Tuple> iterator()
+   {
+      if (block != null) {
+         DataInputBuffer in = new DataInputBuffer();
+         in.reset(block.getData(), block.getLength());
+         return new ReadIterator(in, null, mSize);
+      }
+      if (mSpillFiles == null || mSpillFiles.isEmpty()) {
+         return new ReadIterator(null, null, 0);
+      }
+      try {
+         File        f  = mSpillFiles.get(0);
+         InputStream is = new BufferedInputStream(new FileInputStream(f));
+         return new ReadIterator(new DataInputStream(is), is, mSize);
+      } catch (IOException e) {
+         throw new RuntimeException("Unable to read spilled block of reads", e);
+      }
+   }
+
+   private class ReadIterator implements Iterator<Tuple> {
+      private final DataInput in;
+      private final InputStream stream;
+      private long remaining;
+      private final Text id = new Text();
+      private final Text sequence = new Text();
+
+      ReadIterator(DataInput in, InputStream stream, long size)
+      {
+         this.in        = in;
+         this.stream    = stream;
+         this.remaining = size;
+      }
+
+      public boolean hasNext()
+      {
+         return remaining > 0;
+      }
+
+      public Tuple next()
+      {
+         if (remaining <= 0) {
+            throw new NoSuchElementException();
+         }
+         try {
+            int   direction = ReadBlock.readRecord(in, id, sequence);
+            Tuple t         = mTupleFactory.newTuple(3);
+            t.set(0, id.toString());
+            t.set(1, direction);
+            t.set(2, sequence.toString());
+            if (--remaining == 0 && stream != null) {
+               stream.close();
+            }
+            reportProgress();
+            return t;
+         } catch (IOException e) {
+            throw new RuntimeException("Unable to read block of reads", e);
+         }
+      }
+
+      public void remove()
+      {
+         throw new UnsupportedOperationException("a block of reads is read only");
+      }
+   }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.pig.storage;
+
+import org.apache.pig.LoadPushDown;
+import org.apache.pig.impl.util.UDFContext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Projection push down for the sequence loaders.  The fields a script uses are
+ * saved in the UDFContext on the front end and read back in the tasks, so the
+ * loader only builds the fields that are used.  Also splits read ids into id
+ * and direction on the bytes of the header.
+ */
+class RequiredFields {
+
+   private static final String PROPERTY = "biopig.requiredFields";
+
+   /**
+    * save the fields of requiredFieldList for the loader with the given signature
+    */
+   static void push(Class loader, String signature, LoadPushDown.RequiredFieldList requiredFieldList)
+   {
+      StringBuilder fields = new StringBuilder();
+      for (LoadPushDown.RequiredField f : requiredFieldList.getFields()) {
+         if (fields.length() > 0) fields.append(',');
+         fields.append(f.getIndex());
+      }
+      properties(loader, signature).setProperty(PROPERTY, fields.toString());
+   }
+
+   /**
+    * the fields saved by push, or all numFields fields if nothing was pushed
+    *
+    * @return the indices of the fields to load, in the order to load them
+    */
+   static int[] get(Class loader, String signature, int numFields)
+   {
+      String fields = signature == null ? null : properties(loader, signature).getProperty(PROPERTY);
+      if (fields == null) {
+         int[] all = new int[numFields];
+         for (int i = 0; i < numFields; i++) {
+            all[i] = i;
+         }
+         return all;
+      }
+      if (fields.length() == 0) {
+         return new int[0];
+      }
+      String[] a = fields.split(",");
+      int[] required = new int[a.length];
+      for (int i = 0; i < a.length; i++) {
+         required[i] = Integer.parseInt(a[i]);
+      }
+      return required;
+   }
+
+   static List<LoadPushDown.OperatorSet> features()
+   {
+      return Collections.singletonList(LoadPushDown.OperatorSet.PROJECTION);
+   }
+
+   private static Properties properties(Class loader, String signature)
+   {
+      return UDFContext.getUDFContext().getUDFProperties(loader, new String[] { signature });
+   }
+
+   /**
+    * @return the end of the id in header[0, length): the first space or tab, or length
+    */
+   static int idEnd(byte[] header, int length)
+   {
+      for (int i = 0; i < length; i++) {
+         if (header[i] == ' ' || header[i] == '\t') return i;
+      }
+      return length;
+   }
+
+   /**
+    * @return the position of the "/" that separates the read id from its pair
+    *         direction in header[0, idEnd), or idEnd if it is not paired
+    */
+   static int pairSeparator(byte[] header, int idEnd)
+   {
+      for (int i = 0; i < idEnd; i++) {
+         if (header[i] == '/') return i;
+      }
+      return idEnd;
+   }
+
+   /**
+    * @return the end of the direction that starts after the pair separator at sep
+    */
+   static int directionEnd(byte[] header, int sep, int idEnd)
+   {
+      for (int i = sep + 1; i < idEnd; i++) {
+         if (header[i] == '/') return i;
+      }
+      return idEnd;
+   }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.sequence;
+
+/**
+ * Pigeonhole seeds for finding sequences within a hamming distance d of each
+ * other: a sequence is cut into d + 1 segments, and two sequences of the same
+ * length that differ in at most d bases must be equal in at least one of them.
+ * Joining on (segment, bases) therefore finds all the candidate pairs with a
+ * join that grows with the number of sequences, not with their 3^d * L^d
+ * neighbors, and each candidate is then checked with distance().
+ *
+ * distance() compares sequences of {acgt} 32 bases at a time on their 2-bit
+ * codes (as in RollingKmer), and anything else base by base.
+ */
+public class HammingSegments {
+
+   private static final long LOW_BITS = 0x5555555555555555L;
+
+   /**
+    * @return the d + 2 bounds of the d + 1 segments of a sequence of length
+    * bases; segment i is [bounds[i], bounds[i + 1])
+    */
+   public static int[] bounds(int length, int distance)
+   {
+      if (distance < 0) {
+         throw new IllegalArgumentException("distance must not be negative: " + distance);
+      }
+      int   n      = distance + 1;
+      int[] bounds = new int[n + 1];
+      for (int i = 0; i <= n; i++) {
+         bounds[i] = (int) ((long) i * length / n);
+      }
+      return bounds;
+   }
+
+   /**
+    * @return the 2-bit codes of a sequence of {acgt}, 32 bases to a long and
+    * the first base most significant, or null if it has any other base
+    */
+   public static long[] encode(String sequence)
+   {
+      int    length = sequence.length();
+      long[] words  = new long[(length + 31) / 32];
+      for (int i = 0; i < length; i++) {
+         int b;
+         switch (sequence.charAt(i)) {
+         case 'a': case 'A': b = 0; break;
+         case 'c': case 'C': b = 1; break;
+         case 'g': case 'G': b = 2; break;
+         case 't': case 'T': b = 3; break;
+         default: return null;
+         }
+         words[i >>> 5] = (words[i >>> 5] << 2) | b;
+      }
+      return words;
+   }
+
+   /**
+    * @return the number of bases that differ between two sets of 2-bit codes
+    * made by encode from sequences of the same length
+    */
+   public static int distance(long[] a, long[] b)
+   {
+      int dis = 0;
+      for (int i = 0; i < a.length; i++) {
+         long x = a[i] ^ b[i];
+         dis += Long.bitCount((x | (x >>> 1)) & LOW_BITS);
+      }
+      return dis;
+   }
+
+   /**
+    * @return the hamming distance of two sequences if it is at most max,
+    * otherwise max + 1, or -1 if they have different lengths
+    */
+   public static int distance(String a, String b, int max)
+   {
+      if (a.length() != b.length()) {
+         return -1;
+      }
+      long[] ca = encode(a);
+      long[] cb = ca == null ? null : encode(b);
+      if (cb != null) {
+         return Math.min(distance(ca, cb), max + 1);
+      }
+      int dis = 0;
+      for (int i = 0; i < a.length() && dis <= max; i++) {
+         if (Character.toLowerCase(a.charAt(i)) != Character.toLowerCase(b.charAt(i))) dis++;
+      }
+      return dis;
+   }
+
+   /**
+    * @return the first of the distance + 1 segments in which two sequences of
+    * the same length are equal, ignoring case as distance does, or -1 if
+    * there is none.  a pair found by a join on every segment can be kept
+    * only for this one, so that it is reported once.
+    */
+   public static int firstEqualSegment(String a, String b, int distance)
+   {
+      if (a.length() != b.length()) {
+         return -1;
+      }
+      int[] bounds = bounds(a.length(), distance);
+      for (int s = 0; s + 1 < bounds.length; s++) {
+         if (a.regionMatches(true, bounds[s], b, bounds[s], bounds[s + 1] - bounds[s])) {
+            return s;
+         }
+      }
+      return -1;
+   }
+}
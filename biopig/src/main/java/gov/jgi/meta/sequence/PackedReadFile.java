@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.sequence;
+
+import org.apache.hadoop.io.Text;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A splittable binary file of reads, so that fasta and fastq files can be
+ * parsed and packed once and read many times.
+ *
+ * The file, written by PackedReadWriter, is big endian:
+ *
+ *   header   int magic "BPRD", int version, int flags (0), 16 byte sync marker
+ *   blocks   16 byte sync marker, int number of reads, int number of columns,
+ *            then for each column int raw length, int stored length and the
+ *            stored bytes, deflated unless the stored length is the raw length
+ *
+ * The columns of a block hold, for every read in order,
+ *
+ *   ID         vint length, id bytes
+ *   DIRECTION  one byte
+ *   SEQUENCE   vint length, sequence packed by SequenceString
+ *   QUALITY    vint length, quality packed by QualityString (length 0 if none)
+ *
+ * A split reads the blocks whose sync marker starts in it, as SequenceFile
+ * does, and PackedReadReader inflates only the columns it is asked for.
+ */
+public class PackedReadFile {
+
+   public static final int MAGIC = 0x42505244;
+   public static final int VERSION = 1;
+
+   public static final int SYNC_SIZE = 16;
+   public static final int HEADER_SIZE = 12 + SYNC_SIZE;
+
+   public static final int ID = 0;
+   public static final int DIRECTION = 1;
+   public static final int SEQUENCE = 2;
+   public static final int QUALITY = 3;
+   public static final int NUM_COLUMNS = 4;
+
+   /**
+    * bit mask of all the columns, for PackedReadReader.setColumns
+    */
+   public static final int ALL_COLUMNS = (1 << NUM_COLUMNS) - 1;
+
+   /**
+    * raw bytes of all the columns of a block before it is written
+    */
+   public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+   /**
+    * read the header of a packed read file
+    *
+    * @return the sync marker of the file
+    */
+   public static byte[] readHeader(DataInput in, String name) throws IOException
+   {
+      if (in.readInt() != MAGIC) {
+         throw new IOException(name + " is not a packed read file");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+         throw new IOException(name + " has unsupported packed read version " + version);
+      }
+      in.readInt();
+      byte[] sync = new byte[SYNC_SIZE];
+      in.readFully(sync);
+      return sync;
+   }
+
+   /**
+    * a growable byte buffer with a read position, holding one column of a block
+    */
+   static final class Column {
+      byte[] bytes = new byte[1024];
+      int length = 0;
+      int pos = 0;
+
+      void clear()
+      {
+         length = 0;
+         pos = 0;
+      }
+
+      void ensure(int n)
+      {
+         if (bytes.length < n) {
+            bytes = Arrays.copyOf(bytes, Math.max(n, 2 * bytes.length));
+         }
+      }
+
+      void write(int b)
+      {
+         ensure(length + 1);
+         bytes[length++] = (byte) b;
+      }
+
+      void write(byte[] b, int off, int len)
+      {
+         ensure(length + len);
+         System.arraycopy(b, off, bytes, length, len);
+         length += len;
+      }
+
+      void writeVInt(int v)
+      {
+         while ((v & ~0x7f) != 0) {
+            write(v & 0x7f | 0x80);
+            v >>>= 7;
+         }
+         write(v);
+      }
+
+      int read() throws IOException
+      {
+         if (pos >= length) {
+            throw new IOException("packed read block is corrupt");
+         }
+         return bytes[pos++] & 0xff;
+      }
+
+      int readVInt() throws IOException
+      {
+         int v = 0;
+         for (int shift = 0; shift < 32; shift += 7) {
+            int b = read();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return v;
+         }
+         throw new IOException("packed read block is corrupt");
+      }
+
+      /**
+       * read a vint length and the bytes that follow it into t
+       */
+      void readBytes(Text t) throws IOException
+      {
+         int n = readVInt();
+         if (n < 0 || pos + n > length) {
+            throw new IOException("packed read block is corrupt");
+         }
+         t.set(bytes, pos, n);
+         pos += n;
+      }
+   }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.sequence;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the blocks of a packed read file (see PackedReadFile) whose sync
+ * marker starts in [start, end).  Only the columns set by setColumns are
+ * inflated; the fields of the other columns are left empty.
+ */
+public class PackedReadReader implements Closeable {
+
+   private final DataInputStream in;
+   private final byte[] sync;
+   private final long end;
+   private final Inflater inflater = new Inflater();
+
+   private final PackedReadFile.Column[] columns = new PackedReadFile.Column[PackedReadFile.NUM_COLUMNS];
+   private byte[] stored = new byte[1024];
+   private int wanted = PackedReadFile.ALL_COLUMNS;
+
+   private long pos;
+   private long blockStart = -1;
+   private int remaining = 0;
+   private boolean synced = false;
+   private boolean done = false;
+
+   /**
+    * @param in the file, positioned at start
+    * @param start the offset of in in the file, at least PackedReadFile.HEADER_SIZE
+    * @param end the end of the split
+    * @param sync the sync marker of the file, from PackedReadFile.readHeader
+    */
+   public PackedReadReader(InputStream in, long start, long end, byte[] sync)
+   {
+      this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+      this.pos = start;
+      this.end = end;
+      this.sync = sync;
+      for (int i = 0; i < columns.length; i++) {
+         columns[i] = new PackedReadFile.Column();
+      }
+   }
+
+   /**
+    * @param mask bit (1 << column) set for each column to read
+    */
+   public void setColumns(int mask)
+   {
+      wanted = mask;
+   }
+
+   /**
+    * @return the offset of the block of the last read returned, -1 before the first
+    */
+   public long getBlockStart()
+   {
+      return blockStart;
+   }
+
+   /**
+    * @return the offset in the file read up to
+    */
+   public long getPosition()
+   {
+      return pos;
+   }
+
+   /**
+    * read the next read of the split into read
+    *
+    * @return false if there are no more
+    */
+   public boolean next(PackedRead read) throws IOException
+   {
+      while (remaining == 0) {
+         if (done || !nextBlock()) {
+            done = true;
+            return false;
+         }
+      }
+      read.clear();
+      if (want(PackedReadFile.ID)) columns[PackedReadFile.ID].readBytes(read.getId());
+      if (want(PackedReadFile.DIRECTION)) read.setDirection(columns[PackedReadFile.DIRECTION].read());
+      if (want(PackedReadFile.SEQUENCE)) columns[PackedReadFile.SEQUENCE].readBytes(read.getSequence());
+      if (want(PackedReadFile.QUALITY)) columns[PackedReadFile.QUALITY].readBytes(read.getQuality());
+      remaining--;
+      return true;
+   }
+
+   private boolean want(int column)
+   {
+      return (wanted & (1 << column)) != 0;
+   }
+
+   /**
+    * move to the start of the next block of the split and read its columns
+    */
+   private boolean nextBlock() throws IOException
+   {
+      if (!synced) {
+         if (!findSync()) return false;
+         synced = true;
+      } else {
+         // blocks follow each other, so the next sync marker is here
+         if (pos >= end) return false;
+         int b = in.read();
+         if (b < 0) return false;
+         pos++;
+         if ((byte) b != sync[0]) {
+            throw new IOException("packed read file is corrupt at " + (pos - 1));
+         }
+         for (int i = 1; i < sync.length; i++) {
+            if (in.readByte() != sync[i]) {
+               throw new IOException("packed read file is corrupt at " + (pos - 1));
+            }
+         }
+         pos += sync.length - 1;
+      }
+      blockStart = pos - sync.length;
+
+      int records = in.readInt();
+      int numColumns = in.readInt();
+      pos += 8;
+      for (int c = 0; c < numColumns; c++) {
+         int rawLength = in.readInt();
+         int storedLength = in.readInt();
+         pos += 8;
+         if (c < columns.length && want(c)) {
+            readColumn(columns[c], rawLength, storedLength);
+         } else {
+            skip(storedLength);
+         }
+      }
+      remaining = records;
+      return true;
+   }
+
+   /**
+    * scan for the first sync marker that starts before the end of the split
+    */
+   private boolean findSync() throws IOException
+   {
+      byte[] window = new byte[sync.length];
+      int n = 0;
+      while (true) {
+         if (n >= sync.length && pos - sync.length >= end) return false;
+         int b = in.read();
+         if (b < 0) return false;
+         pos++;
+         window[n++ % sync.length] = (byte) b;
+         if (n >= sync.length && matches(window, n)) {
+            return pos - sync.length < end;
+         }
+      }
+   }
+
+   private boolean matches(byte[] window, int n)
+   {
+      for (int i = 0; i < sync.length; i++) {
+         if (window[(n + i) % sync.length] != sync[i]) return false;
+      }
+      return true;
+   }
+
+   private void readColumn(PackedReadFile.Column c, int rawLength, int storedLength) throws IOException
+   {
+      c.clear();
+      c.ensure(rawLength);
+      if (storedLength == rawLength) {
+         in.readFully(c.bytes, 0, rawLength);
+      } else {
+         if (stored.length < storedLength) {
+            stored = new byte[Math.max(storedLength, 2 * stored.length)];
+         }
+         in.readFully(stored, 0, storedLength);
+         inflater.reset();
+         inflater.setInput(stored, 0, storedLength);
+         try {
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+               int m = inflater.inflate(c.bytes, n, rawLength - n);
+               if (m == 0 && inflater.needsInput()) break;
+               n += m;
+            }
+            if (n != rawLength) {
+               throw new IOException("packed read file is corrupt at " + pos);
+            }
+         } catch (DataFormatException e) {
+            throw new IOException("packed read file is corrupt at " + pos, e);
+         }
+      }
+      c.length = rawLength;
+      pos += storedLength;
+   }
+
+   private void skip(int n) throws IOException
+   {
+      int skipped = 0;
+      while (skipped < n) {
+         int m = in.skipBytes(n - skipped);
+         if (m <= 0) throw new EOFException("packed read file is truncated at " + pos);
+         skipped += m;
+      }
+      pos += n;
+   }
+
+   public void close() throws IOException
+   {
+      inflater.end();
+      in.close();
+   }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.sequence;
+
+import org.apache.hadoop.io.Text;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a packed read file (see PackedReadFile).  Reads are gathered into
+ * columns until the block is full, and each column is deflated on its own.
+ */
+public class PackedReadWriter implements Closeable {
+
+   private final DataOutputStream out;
+   private final byte[] sync = new byte[PackedReadFile.SYNC_SIZE];
+   private final int blockSize;
+   private final Deflater deflater;
+
+   private final PackedReadFile.Column[] columns = new PackedReadFile.Column[PackedReadFile.NUM_COLUMNS];
+   private byte[] deflated = new byte[1024];
+   private int records = 0;
+   private long count = 0;
+
+   public PackedReadWriter(OutputStream out) throws IOException
+   {
+      this(out, PackedReadFile.DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+   }
+
+   /**
+    * @param blockSize the raw bytes of the columns at which a block is written
+    * @param level the deflate level of the columns, 0 to store them
+    */
+   public PackedReadWriter(OutputStream out, int blockSize, int level) throws IOException
+   {
+      if (blockSize < 1) {
+         throw new IllegalArgumentException("blockSize must be positive, was " + blockSize);
+      }
+      this.out = (out instanceof DataOutputStream ? (DataOutputStream) out : new DataOutputStream(out));
+      this.blockSize = blockSize;
+      this.deflater = new Deflater(level);
+      for (int i = 0; i < columns.length; i++) {
+         columns[i] = new PackedReadFile.Column();
+      }
+      new Random().nextBytes(sync);
+
+      this.out.writeInt(PackedReadFile.MAGIC);
+      this.out.writeInt(PackedReadFile.VERSION);
+      this.out.writeInt(0);
+      this.out.write(sync);
+   }
+
+   public void add(PackedRead read) throws IOException
+   {
+      if (read.getDirection() < 0 || read.getDirection() > 255) {
+         throw new IOException("read direction must be 0 to 255, was " + read.getDirection());
+      }
+      add(columns[PackedReadFile.ID], read.getId());
+      columns[PackedReadFile.DIRECTION].write(read.getDirection());
+      add(columns[PackedReadFile.SEQUENCE], read.getSequence());
+      add(columns[PackedReadFile.QUALITY], read.getQuality());
+      records++;
+      count++;
+
+      int size = 0;
+      for (PackedReadFile.Column c : columns) {
+         size += c.length;
+      }
+      if (size >= blockSize) {
+         writeBlock();
+      }
+   }
+
+   private static void add(PackedReadFile.Column c, Text t)
+   {
+      c.writeVInt(t.getLength());
+      c.write(t.getBytes(), 0, t.getLength());
+   }
+
+   /**
+    * @return the number of reads written so far
+    */
+   public long size()
+   {
+      return count;
+   }
+
+   private void writeBlock() throws IOException
+   {
+      if (records == 0) return;
+      out.write(sync);
+      out.writeInt(records);
+      out.writeInt(columns.length);
+      for (PackedReadFile.Column c : columns) {
+         int n = deflate(c);
+         out.writeInt(c.length);
+         if (n < c.length) {
+            out.writeInt(n);
+            out.write(deflated, 0, n);
+         } else {
+            out.writeInt(c.length);
+            out.write(c.bytes, 0, c.length);
+         }
+         c.clear();
+      }
+      records = 0;
+   }
+
+   /**
+    * @return the deflated length of the column, or its length if deflating
+    *         does not make it smaller
+    */
+   private int deflate(PackedReadFile.Column c)
+   {
+      deflater.reset();
+      deflater.setInput(c.bytes, 0, c.length);
+      deflater.finish();
+      int n = 0;
+      while (!deflater.finished() && n < c.length) {
+         if (n == deflated.length) {
+            deflated = Arrays.copyOf(deflated, 2 * deflated.length);
+         }
+         n += deflater.deflate(deflated, n, deflated.length - n);
+      }
+      return deflater.finished() ? n : c.length;
+   }
+
+   /**
+    * write the last block and close the stream
+    */
+   public void close() throws IOException
+   {
+      writeBlock();
+      deflater.end();
+      out.close();
+   }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.sequence;
+
+/**
+ * Packs fastq quality lines into a compact byte form, and works on the
+ * packed form directly.
+ *
+ * The first byte gives the encoding:
+ *
+ *   RAW     the phred score of every base, one byte per base.
+ *   BINNED  the scores mapped to the 8 Illumina bins (2, 6, 15, 22, 27, 33,
+ *           37, 40) and stored as the bin number, two bases to a byte, high
+ *           nibble first; an odd length is padded with the nibble 0xf.
+ *
+ * The quality methods (trimLength, countBelow, meanQuality) read the packed
+ * bytes through lookup tables, without building the score array.
+ */
+public class QualityString {
+
+   public static final byte RAW = 0;
+   public static final byte BINNED = 1;
+
+   /**
+    * phred offset of Sanger and Illumina 1.8+ fastq files
+    */
+   public static final int PHRED33 = 33;
+
+   /**
+    * phred offset of Illumina 1.3 - 1.7 fastq files
+    */
+   public static final int PHRED64 = 64;
+
+   /**
+    * the score every bin stands for
+    */
+   static final byte[] BIN_VALUES = {2, 6, 15, 22, 27, 33, 37, 40};
+
+   static final int PAD = 0xf;
+
+   /**
+    * bin number of every score
+    */
+   static final byte[] BIN = new byte[128];
+
+   static {
+      for (int q = 0; q < BIN.length; q++) {
+         BIN[q] = (byte) (q < 2 ? 0 : q < 10 ? 1 : q < 20 ? 2 : q < 25 ? 3 : q < 30 ? 4 : q < 35 ? 5 : q < 40 ? 6 : 7);
+      }
+   }
+
+   /**
+    * the Illumina bin of a phred score
+    *
+    * @return the score the bin stands for
+    */
+   public static int bin(int q)
+   {
+      return BIN_VALUES[BIN[Math.max(0, Math.min(q, BIN.length - 1))]];
+   }
+
+   /**
+    * @return the number of bytes needed to pack numBases scores
+    */
+   public static int packedLength(int numBases, boolean binned)
+   {
+      return 1 + (binned ? (numBases + 1) / 2 : numBases);
+   }
+
+   /**
+    * pack the quality characters src[start, end)
+    *
+    * @param offset the phred offset of the characters, PHRED33 or PHRED64
+    * @param binned whether to bin the scores
+    * @return the packed quality
+    */
+   public static byte[] pack(byte[] src, int start, int end, int offset, boolean binned)
+   {
+      byte[] packed = new byte[packedLength(end - start, binned)];
+      pack(src, start, end, offset, binned, packed, 0);
+      return packed;
+   }
+
+   /**
+    * pack the quality characters src[start, end) into dest
+    *
+    * @return the number of bytes written
+    */
+   public static int pack(byte[] src, int start, int end, int offset, boolean binned, byte[] dest, int destOffset)
+   {
+      int d = destOffset;
+      if (!binned) {
+         dest[d++] = RAW;
+         for (int i = start; i < end; i++) {
+            dest[d++] = (byte) score(src[i], offset);
+         }
+      } else {
+         dest[d++] = BINNED;
+         int i = start;
+         for (; i + 1 < end; i += 2) {
+            dest[d++] = (byte) (BIN[score(src[i], offset)] << 4 | BIN[score(src[i + 1], offset)]);
+         }
+         if (i < end) {
+            dest[d++] = (byte) (BIN[score(src[i], offset)] << 4 | PAD);
+         }
+      }
+      return d - destOffset;
+   }
+
+   private static int score(byte c, int offset)
+   {
+      return Math.max(0, Math.min((c & 0xff) - offset, BIN.length - 1));
+   }
+
+   /**
+    * @return the number of scores in the packed quality
+    */
+   public static int numBases(byte[] packed)
+   {
+      if (packed.length <= 1) return 0;
+      if (packed[0] == RAW) return packed.length - 1;
+      int n = 2 * (packed.length - 1);
+      return (packed[packed.length - 1] & 0xf) == PAD ? n - 1 : n;
+   }
+
+   /**
+    * @return the phred score of base i, the bin value if binned
+    */
+   public static int scoreAt(byte[] packed, int i)
+   {
+      if (packed[0] == RAW) return packed[1 + i];
+      int b = packed[1 + i / 2];
+      return BIN_VALUES[(i % 2 == 0 ? b >>> 4 : b) & 0x7];
+   }
+
+   /**
+    * unpack into quality characters
+    *
+    * @param offset the phred offset to write the characters with
+    */
+   public static String unpack(byte[] packed, int offset)
+   {
+      int n = numBases(packed);
+      char[] c = new char[n];
+      for (int i = 0; i < n; i++) {
+         c[i] = (char) (scoreAt(packed, i) + offset);
+      }
+      return new String(c);
+   }
+
+   /**
+    * the number of bases with a score below minQ
+    */
+   public static int countBelow(byte[] packed, int minQ)
+   {
+      int n = numBases(packed);
+      int count = 0;
+      if (packed[0] == RAW) {
+         for (int i = 1; i <= n; i++) {
+            if (packed[i] < minQ) count++;
+         }
+      } else {
+         // bases below minQ in each byte value, both nibbles at once
+         int[] below = new int[256];
+         for (int b = 0; b < 256; b++) {
+            below[b] = (BIN_VALUES[b >>> 4 & 0x7] < minQ ? 1 : 0) + (BIN_VALUES[b & 0x7] < minQ ? 1 : 0);
+         }
+         for (int i = 1; i < packed.length; i++) {
+            count += below[packed[i] & 0xff];
+         }
+         if (n % 2 == 1 && BIN_VALUES[PAD & 0x7] < minQ) count--;  // the pad nibble
+      }
+      return count;
+   }
+
+   /**
+    * the mean score of the bases, 0 for an empty quality
+    */
+   public static double meanQuality(byte[] packed)
+   {
+      int n = numBases(packed);
+      if (n == 0) return 0;
+      long sum = 0;
+      if (packed[0] == RAW) {
+         for (int i = 1; i <= n; i++) {
+            sum += packed[i];
+         }
+      } else {
+         for (int i = 1; i < packed.length; i++) {
+            int b = packed[i] & 0xff;
+            sum += BIN_VALUES[b >>> 4 & 0x7] + BIN_VALUES[b & 0x7];
+         }
+         if (n % 2 == 1) sum -= BIN_VALUES[PAD & 0x7];
+      }
+      return sum / (double) n;
+   }
+
+   /**
+    * the length to keep when trimming the 3' end of a read at minQ, as bwa
+    * does: the read is cut where the sum of (minQ - score) from the end is
+    * largest, so a few good bases in a bad tail do not stop the trim.
+    */
+   public static int trimLength(byte[] packed, int minQ)
+   {
+      int n = numBases(packed);
+      int sum = 0;
+      int max = 0;
+      int keep = n;
+      for (int i = n - 1; i >= 0; i--) {
+         sum += minQ - scoreAt(packed, i);
+         if (sum < 0) break;
+         if (sum > max) {
+            max = sum;
+            keep = i;
+         }
+      }
+      return keep;
+   }
+}
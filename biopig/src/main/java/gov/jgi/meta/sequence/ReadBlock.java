@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.sequence;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A block of reads held in a single byte array, for the block loaders.  Each
+ * read is the id, the pair direction and the sequence, packed by
+ * SequenceString when it is all acgtn and stored lowercased otherwise (eg
+ * protein sequences), so a block of short reads takes about a third of a
+ * byte per base rather than the two bytes per base of a String.
+ *
+ * Records are written as
+ * <pre>
+ *   vint idLength, id, vint direction, byte encoding, vint length, sequence
+ * </pre>
+ * and read back with {@link #readRecord}, from the block or from anything the
+ * block was written to.
+ */
+public class ReadBlock {
+
+   private static final int PACKED = 0;
+   private static final int RAW = 1;
+
+   private final DataOutputBuffer buffer = new DataOutputBuffer();
+   private byte[] scratch = new byte[1024];
+   private int size = 0;
+
+   /**
+    * add a read.  An id of the form name/direction is split into the name
+    * and the (numeric) direction, other ids have direction 0.  Anything after
+    * the direction is dropped, as the block loaders always did.
+    *
+    * @param id the id in id[0, idLength)
+    * @param sequence the ascii sequence in sequence[0, sequenceLength)
+    */
+   public void add(byte[] id, int idLength, byte[] sequence, int sequenceLength) throws IOException
+   {
+      int nameEnd   = idLength;
+      int direction = 0;
+      for (int i = 0; i < idLength; i++) {
+         if (id[i] == '/') {
+            int end = i + 1;
+            while (end < idLength && id[end] != '/') end++;
+            int d = parseDirection(id, i + 1, end);
+            if (d >= 0) {
+               nameEnd   = i;
+               direction = d;
+            }
+            break;
+         }
+      }
+      WritableUtils.writeVInt(buffer, nameEnd);
+      buffer.write(id, 0, nameEnd);
+      WritableUtils.writeVInt(buffer, direction);
+
+      if (isNucleotide(sequence, sequenceLength)) {
+         int n = SequenceString.packedLength(sequenceLength);
+         ensure(n);
+         SequenceString.pack(sequence, 0, sequenceLength, scratch, 0);
+         buffer.writeByte(PACKED);
+         WritableUtils.writeVInt(buffer, n);
+         buffer.write(scratch, 0, n);
+      } else {
+         ensure(sequenceLength);
+         for (int i = 0; i < sequenceLength; i++) {
+            byte c = sequence[i];
+            scratch[i] = c >= 'A' && c <= 'Z' ? (byte) (c + ('a' - 'A')) : c;
+         }
+         buffer.writeByte(RAW);
+         WritableUtils.writeVInt(buffer, sequenceLength);
+         buffer.write(scratch, 0, sequenceLength);
+      }
+      size++;
+   }
+
+   /**
+    * @return the number of reads in the block
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   /**
+    * @return the records, in getData()[0, getLength())
+    */
+   public byte[] getData()
+   {
+      return buffer.getData();
+   }
+
+   public int getLength()
+   {
+      return buffer.getLength();
+   }
+
+   public void clear()
+   {
+      buffer.reset();
+      size = 0;
+   }
+
+   /**
+    * read the next record of a block from in, unpacking the sequence
+    *
+    * @param id set to the id, without the direction
+    * @param sequence set to the lowercase sequence
+    * @return the direction
+    */
+   public static int readRecord(DataInput in, Text id, Text sequence) throws IOException
+   {
+      readBytes(in, id);
+      int direction = WritableUtils.readVInt(in);
+      int encoding  = in.readByte();
+      if (encoding == RAW) {
+         readBytes(in, sequence);
+      } else if (encoding == PACKED) {
+         int    n      = WritableUtils.readVInt(in);
+         byte[] packed = new byte[n];
+         in.readFully(packed);
+         byte[] bases = new byte[SequenceString.numBases(packed, 0, n)];
+         SequenceString.unpack(packed, 0, n, bases, 0);
+         sequence.set(bases);
+      } else {
+         throw new IOException("read block is corrupt");
+      }
+      return direction;
+   }
+
+   private static void readBytes(DataInput in, Text t) throws IOException
+   {
+      int    n = WritableUtils.readVInt(in);
+      byte[] b = new byte[n];
+      in.readFully(b);
+      t.set(b);
+   }
+
+   /**
+    * @return the direction in id[start, end) or -1 if it is not a number
+    */
+   private static int parseDirection(byte[] id, int start, int end)
+   {
+      if (start == end || end - start > 9) {
+         return -1;
+      }
+      int d = 0;
+      for (int i = start; i < end; i++) {
+         if (id[i] < '0' || id[i] > '9') {
+            return -1;
+         }
+         d = 10 * d + (id[i] - '0');
+      }
+      return d;
+   }
+
+   private static boolean isNucleotide(byte[] sequence, int length)
+   {
+      for (int i = 0; i < length; i++) {
+         switch (sequence[i]) {
+         case 'a': case 'c': case 'g': case 't': case 'n':
+         case 'A': case 'C': case 'G': case 'T': case 'N':
+            break;
+
+         default:
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void ensure(int n)
+   {
+      if (scratch.length < n) {
+         scratch = Arrays.copyOf(scratch, Math.max(n, 2 * scratch.length));
+      }
+   }
+}
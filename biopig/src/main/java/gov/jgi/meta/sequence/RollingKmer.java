@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2010, The Regents of the University of California, through Lawrence Berkeley
+ * National Laboratory (subject to receipt of any required approvals from the U.S. Dept. of Energy).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ * (1) Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ * following disclaimer.
+ *
+ * (2) Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ * (3) Neither the name of the University of California, Lawrence Berkeley National Laboratory, U.S. Dept.
+ * of Energy, nor the names of its contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * You are under no obligation whatsoever to provide any bug fixes, patches, or upgrades to the
+ * features, functionality or performance of the source code ("Enhancements") to anyone; however,
+ * if you choose to make your Enhancements available either publicly, or directly to Lawrence Berkeley
+ * National Laboratory, without imposing a separate written license agreement for such Enhancements,
+ * then you hereby grant the following license: a  non-exclusive, royalty-free perpetual license to install,
+ * use, modify, prepare derivative works, incorporate into other computer software, distribute, and
+ * sublicense such enhancements or derivative works thereof, in binary and source code form.
+ */
+
+package gov.jgi.meta.sequence;
+
+/**
+ * Rolling 2-bit encoder for k-mers.
+ *
+ * Bases are coded a=0, c=1, g=2, t=3 with the first base of the k-mer in the
+ * most significant position, so numeric (unsigned) order of the codes is the
+ * lexicographic order of the k-mers.  k-mers of up to 32 bases fit in a single
+ * long; k-mers of 33 to 64 bases keep their first k-32 bases in a second, high
+ * order long.
+ *
+ * Bases are fed one at a time with {@link #add(int)}; an n resets the window.
+ * The reverse complement of the window is maintained alongside the forward
+ * k-mer, so the canonical k-mer (the smaller of the two) is available in O(1)
+ * per position.
+ */
+public class RollingKmer {
+
+   public static final int MAX_K = 64;
+
+   /**
+    * 2-bit code for each SequenceString base code (a, t, g, c, n); -1 for n
+    */
+   static final int[] TWO_BIT = {0, 3, 2, 1, -1};
+
+   static final byte[] BASES = {'a', 'c', 'g', 't'};
+
+   private final int k;
+   private final long loMask;
+   private final long hiMask;
+
+   private final int rcShift;
+
+   private long lo;
+   private long hi;
+   private long rcLo;
+   private long rcHi;
+   private int valid;
+
+   public RollingKmer(int k)
+   {
+      if (k < 1 || k > MAX_K) {
+         throw new IllegalArgumentException("kmer size must be between 1 and " + MAX_K + ": " + k);
+      }
+      this.k = k;
+      this.loMask = mask(Math.min(k, 32));
+      this.hiMask = (k > 32 ? mask(k - 32) : 0L);
+      // bit position of the first base of the reverse complement, within
+      // rcLo for k <= 32 and within rcHi otherwise
+      this.rcShift = (k > 32 ? 2 * (k - 33) : 2 * (k - 1));
+   }
+
+   private static long mask(int bases)
+   {
+      return (bases == 32 ? -1L : (1L << (2 * bases)) - 1);
+   }
+
+   public int getK()
+   {
+      return k;
+   }
+
+   /**
+    * forget all bases seen so far
+    */
+   public void reset()
+   {
+      lo = 0;
+      hi = 0;
+      rcLo = 0;
+      rcHi = 0;
+      valid = 0;
+   }
+
+   /**
+    * shift a base into the window.
+    *
+    * @param base the SequenceString base code (a=0, t=1, g=2, c=3, n=4)
+    * @return true if the window now holds k consecutive non-n bases
+    */
+   public boolean add(int base)
+   {
+      int b = TWO_BIT[base];
+      if (b < 0) {
+         reset();
+         return false;
+      }
+      if (hiMask != 0) {
+         hi = ((hi << 2) | (lo >>> 62)) & hiMask;
+      }
+      lo = ((lo << 2) | b) & loMask;
+
+      long c = 3 - b;
+      if (hiMask != 0) {
+         rcLo = (rcLo >>> 2) | (rcHi << 62);
+         rcHi = (rcHi >>> 2) | (c << rcShift);
+      } else {
+         rcLo = (rcLo >>> 2) | (c << rcShift);
+      }
+      if (valid < k) valid++;
+      return valid == k;
+   }
+
+   /**
+    * @return the low order 64 bits of the current k-mer (the whole k-mer when k <= 32)
+    */
+   public long get()
+   {
+      return lo;
+   }
+
+   /**
+    * @return the high order bits of the current k-mer; always 0 when k <= 32
+    */
+   public long getHigh()
+   {
+      return hi;
+   }
+
+   /**
+    * @return the low order 64 bits of the reverse complement of the current k-mer
+    */
+   public long getReverse()
+   {
+      return rcLo;
+   }
+
+   /**
+    * @return the high order bits of the reverse complement; always 0 when k <= 32
+    */
+   public long getReverseHigh()
+   {
+      return rcHi;
+   }
+
+   /**
+    * @return true if the forward k-mer is not larger than its reverse complement
+    */
+   public boolean isForwardCanonical()
+   {
+      // flip the sign bits to compare unsigned (k = 32 and k = 64 use all 64 bits)
+      if (hi != rcHi) return (hi ^ Long.MIN_VALUE) < (rcHi ^ Long.MIN_VALUE);
+      return (lo ^ Long.MIN_VALUE) <= (rcLo ^ Long.MIN_VALUE);
+   }
+
+   /**
+    * @return the low order 64 bits of the canonical k-mer
+    */
+   public long getCanonical()
+   {
+      return (isForwardCanonical() ? lo : rcLo);
+   }
+
+   /**
+    * @return the high order bits of the canonical k-mer; always 0 when k <= 32
+    */
+   public long getCanonicalHigh()
+   {
+      return (isForwardCanonical() ? hi : rcHi);
+   }
+
+   /**
+    * @return true if the bases [start, start+k) of a packed sequence can be
+    * coded in one long by {@link #encode(byte[], int, int)}: 1 <= k <= 32 and
+    * none of the bases is an n
+    */
+   public static boolean isEncodable(byte[] packed, int start, int k)
+   {
+      return k >= 1 && k <= 32 && !SequenceString.containsN(packed, start, start + k);
+   }
+
+   /**
+    * encode the bases [start, start+k) of a packed sequence, k <= 32.  every
+    * long is the code of some 32-mer, so there is no value left over to flag
+    * an n; check {@link #isEncodable(byte[], int, int)} first.
+    *
+    * @return the 2-bit code
+    * @throws IllegalArgumentException if k is not 1 to 32 or the range contains an n
+    */
+   public static long encode(byte[] packed, int start, int k)
+   {
+      if (k < 1 || k > 32) {
+         throw new IllegalArgumentException("kmer size must be between 1 and 32: " + k);
+      }
+      long kmer = 0;
+      for (int i = start; i < start + k; i++) {
+         int b = TWO_BIT[SequenceString.baseAt(packed, i)];
+         if (b < 0) {
+            throw new IllegalArgumentException("base " + i + " is an n");
+         }
+         kmer = (kmer << 2) | b;
+      }
+      return kmer;
+   }
+
+   /**
+    * @return the bases of a 2-bit coded k-mer of k <= 32 bases
+    */
+   public static String decode(long kmer, int k)
+   {
+      char[] chars = new char[k];
+      for (int i = k - 1; i >= 0; i--) {
+         chars[i] = (char) BASES[(int) (kmer & 3)];
+         kmer >>>= 2;
+      }
+      return new String(chars);
+   }
+
+   /**
+    * @return the 2-bit coded k-mer of up to 64 bases packed with SequenceString
+    */
+   public static byte[] toPacked(long high, long low, int k)
+   {
+      byte[] ascii = new byte[k];
+      int i = k - 1;
+      for (; i >= Math.max(0, k - 32); i--) {
+         ascii[i] = BASES[(int) (low & 3)];
+         low >>>= 2;
+      }
+      for (; i >= 0; i--) {
+         ascii[i] = BASES[(int) (high & 3)];
+         high >>>= 2;
+      }
+      byte[] packed = new byte[SequenceString.packedLength(k)];
+      SequenceString.pack(ascii, 0, k, packed, 0);
+      return packed;
+   }
+
+   /**
+    * @return the bases of a 2-bit coded k-mer of up to 64 bases held in two longs
+    */
+   public static String decode(long high, long low, int k)
+   {
+      if (k <= 32) return decode(low, k);
+      return decode(high, k - 32) + decode(low, 32);
+   }
+}
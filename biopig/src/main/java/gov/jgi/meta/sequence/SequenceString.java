@@ -43,45 +43,214 @@ import org.apache.hadoop.io.Text;
 import org.apache.commons.lang.StringUtils;
 
 import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
 
 /**
- * Created by IntelliJ IDEA.
+ * Packs nucleotide sequences into a compact, printable byte form and back.
+ *
+ * Bases are coded a=0, t=1, g=2, c=3, n=4 (any other character is treated as
+ * an n) and packed three to a byte as 32 + 25*b0 + 5*b1 + b2.  A trailing group
+ * of two bases is stored as 224 + 5*b0 + b1 and a single trailing base as
+ * 160 + b0, so the number of bases is recoverable from the last byte alone.
+ *
+ * Encoding and decoding are table driven and work directly on byte arrays;
+ * the String based methods are thin wrappers kept for existing callers.
+ *
  * User: kbhatia
  * Date: Dec 3, 2010
- * Time: 9:37:22 AM
- * To change this template use File | Settings | File Templates.
  */
 public class SequenceString {
 
-   static HashMap<String, Byte> hash = null;
-   static HashMap<Byte, String> reverseHash = null;
+   static final int THREE_BASE_OFFSET = 32;
+   static final int ONE_BASE_OFFSET = 32 + 128;
+   static final int TWO_BASE_OFFSET = 32 + 192;
+
+   static final byte[] ALPHABET = {'a', 't', 'g', 'c', 'n'};
+
+   /**
+    * base code (0-4) for every input character, case insensitive
+    */
+   static final byte[] ENCODE = new byte[256];
+
+   /**
+    * number of bases held by every packed byte value, 0 for values that are not
+    * part of the packing
+    */
+   static final byte[] DECODE_LENGTH = new byte[256];
+
+   /**
+    * the (up to) three bases for every packed byte value, stored at index
+    * 3 * (value & 0xff)
+    */
+   static final byte[] DECODE = new byte[256 * 3];
+
+   /**
+    * the base code (0-4) of every position of every packed byte value, stored
+    * at index 3 * (value & 0xff) + position.  unused values and positions are n.
+    */
+   static final byte[] BASE_AT = new byte[256 * 3];
+
+   static {
+      for (int i = 0; i < 256; i++) {
+         ENCODE[i] = 4;
+      }
+      for (int i = 0; i < BASE_AT.length; i++) {
+         BASE_AT[i] = 4;
+      }
+      for (int i = 0; i < ALPHABET.length; i++) {
+         ENCODE[ALPHABET[i]] = (byte) i;
+         ENCODE[Character.toUpperCase(ALPHABET[i])] = (byte) i;
+      }
 
-   public static void init() 
-   {
-      if (hash == null) {
-         hash = new HashMap();
-         reverseHash = new HashMap();
-         initHash();
+      for (int i = 0; i < 5; i++) {
+         setDecode(ONE_BASE_OFFSET + i, 1, i, 0, 0);
+         for (int j = 0; j < 5; j++) {
+            setDecode(TWO_BASE_OFFSET + i * 5 + j, 2, i, j, 0);
+            for (int k = 0; k < 5; k++) {
+               setDecode(THREE_BASE_OFFSET + i * 25 + j * 5 + k, 3, i, j, k);
+            }
+         }
       }
    }
 
+   private static void setDecode(int value, int length, int b0, int b1, int b2)
+   {
+      DECODE_LENGTH[value] = (byte) length;
+      DECODE[3 * value] = ALPHABET[b0];
+      DECODE[3 * value + 1] = ALPHABET[b1];
+      DECODE[3 * value + 2] = ALPHABET[b2];
+      BASE_AT[3 * value] = (byte) b0;
+      if (length > 1) BASE_AT[3 * value + 1] = (byte) b1;
+      if (length > 2) BASE_AT[3 * value + 2] = (byte) b2;
+   }
+
+   private static int code(char c)
+   {
+      return (c < 256 ? ENCODE[c] : 4);
+   }
+
+   /**
+    * the lookup tables are built statically; kept for existing callers.
+    */
+   public static void init()
+   {
+   }
+
+   /**
+    * @return the number of bytes needed to pack numBases bases
+    */
+   public static int packedLength(int numBases)
+   {
+      return (numBases + 2) / 3;
+   }
+
     public static int numBases(byte[] seqarray)
     {
-        int lastByte = seqarray.length - 1;
-        int lastByteNumBases = reverseHash.get(seqarray[lastByte]).length();
-        return (3 * lastByte + lastByteNumBases);
+        return numBases(seqarray, 0, seqarray.length);
+    }
+
+    /**
+     * number of bases held in the packed bytes seqarray[offset, offset+length)
+     */
+    public static int numBases(byte[] seqarray, int offset, int length)
+    {
+        if (length == 0) return 0;
+        int lastByteNumBases = DECODE_LENGTH[seqarray[offset + length - 1] & 0xff];
+        if (lastByteNumBases == 0) lastByteNumBases = 1;
+        return (3 * (length - 1) + lastByteNumBases);
     }
 
+   /**
+    * whether seqarray[offset, offset+length) is a well formed packing: three
+    * bases to every byte but the last, which may hold one, two or three.
+    * plain ascii bases pass this check too, so it only catches bytes that
+    * cannot be packed, not text passed where a packed sequence was meant.
+    */
+   public static boolean isPacked(byte[] seqarray, int offset, int length)
+   {
+      for (int i = offset; i < offset + length - 1; i++) {
+         if (DECODE_LENGTH[seqarray[i] & 0xff] != 3) return false;
+      }
+      return length == 0 || DECODE_LENGTH[seqarray[offset + length - 1] & 0xff] != 0;
+   }
+
+    /**
+     * extract the bases [start, end) of a packed sequence, returning them packed.
+     * the bases are recoded straight from the packed source without unpacking.
+     */
     public static byte[] subseq (byte[] seqarray, int start, int end)
     {
-        int startindex = start/3;
-        int overflow = ( ((end%3) == 0) ? 0 : 1);
-        int endindex = end/3 + overflow;
+        byte[] bytes = new byte[packedLength(end - start)];
+        subseq(seqarray, start, end, bytes, 0);
+        return bytes;
+    }
 
-        String unpackedSeqSegment = byteArrayToSequence(seqarray, startindex, endindex-startindex);
-        return pack(unpackedSeqSegment.substring(start%3, start%3+(end-start)));
+    /**
+     * extract the bases [start, end) of a packed sequence into dest starting at
+     * destOffset.  dest must have room for packedLength(end - start) bytes.
+     *
+     * @return the number of bytes written
+     */
+    public static int subseq(byte[] seqarray, int start, int end, byte[] dest, int destOffset)
+    {
+        int p = destOffset;
+        int pos = start;
+
+        if (start % 3 == 0) {
+            // aligned: every full group inside the range is already a
+            // three base byte and can be copied as is.
+            int full = (end - start) / 3;
+            System.arraycopy(seqarray, start / 3, dest, p, full);
+            p += full;
+            pos += 3 * full;
+        }
+
+        int b = pos / 3;
+        int r = pos % 3;
+        int acc = 0;
+        int count = 0;
+        for (; pos < end; pos++) {
+            acc = acc * 5 + BASE_AT[3 * (seqarray[b] & 0xff) + r];
+            if (++r == 3) {
+                r = 0;
+                b++;
+            }
+            if (++count == 3) {
+                dest[p++] = (byte) (THREE_BASE_OFFSET + acc);
+                acc = 0;
+                count = 0;
+            }
+        }
+        if (count == 2) {
+            dest[p++] = (byte) (TWO_BASE_OFFSET + acc);
+        } else if (count == 1) {
+            dest[p++] = (byte) (ONE_BASE_OFFSET + acc);
+        }
+        return p - destOffset;
+    }
 
+    /**
+     * @return the base code (a=0, t=1, g=2, c=3, n=4) at position pos of a packed sequence
+     */
+    public static int baseAt(byte[] seqarray, int pos)
+    {
+        return BASE_AT[3 * (seqarray[pos / 3] & 0xff) + pos % 3];
+    }
+
+    /**
+     * @return true if any of the bases [start, end) of a packed sequence is an n
+     */
+    public static boolean containsN(byte[] seqarray, int start, int end)
+    {
+        int b = start / 3;
+        int r = start % 3;
+        for (int pos = start; pos < end; pos++) {
+            if (BASE_AT[3 * (seqarray[b] & 0xff) + r] == 4) return true;
+            if (++r == 3) {
+                r = 0;
+                b++;
+            }
+        }
+        return false;
     }
 
     public static boolean contains(String sequence, CharSequence c) throws UnsupportedEncodingException
@@ -91,120 +260,138 @@ public class SequenceString {
 
    public static byte[] sequenceToByteArray(String sequence)
    {
-      init();
       return pack(sequence);
-
    }
+
    public static String byteArrayToSequence(byte[] bytes)
    {
-      init();
-
-      StringBuffer sb = new StringBuffer();
-
-      for (int i = 0; i < bytes.length; i++) {
-         sb.append(reverseHash.get(bytes[i]));
-      }
-
-      return sb.toString();
+      return byteArrayToSequence(bytes, 0, bytes.length);
    }
 
     public static String byteArrayToSequence(byte[] bytes, int startindex, int length)
     {
-       init();
-
-       StringBuffer sb = new StringBuffer();
-
-       for (int i = startindex; i < startindex+length; i++) {
-          sb.append(reverseHash.get(bytes[i]));
-       }
-
-       return sb.toString();
+       char[] chars = new char[3 * length];
+       int n = unpack(bytes, startindex, length, chars, 0);
+       return new String(chars, 0, n);
     }
 
     // because Text.bytes.length is not always the right length to use.
-public static String byteArrayToSequence(Text seq)
+   public static String byteArrayToSequence(Text seq)
    {
-      init();
-
-      StringBuffer sb = new StringBuffer();
-      byte[] ba = seq.getBytes();
+      return byteArrayToSequence(seq.getBytes(), 0, seq.getLength());
+   }
 
-      for (int i = 0; i < seq.getLength() ; i++) {
-         sb.append(reverseHash.get(ba[i]));
+   /**
+    * pack the characters sequence[start, end) into dest starting at destOffset.
+    * dest must have room for packedLength(end - start) bytes.
+    *
+    * @return the number of bytes written
+    */
+   public static int pack(CharSequence sequence, int start, int end, byte[] dest, int destOffset)
+   {
+      int p = destOffset;
+      int i = start;
+      int fullEnd = end - (end - start) % 3;
+
+      for (; i < fullEnd; i += 3) {
+         dest[p++] = (byte) (THREE_BASE_OFFSET
+                             + 25 * code(sequence.charAt(i))
+                             + 5 * code(sequence.charAt(i + 1))
+                             + code(sequence.charAt(i + 2)));
       }
-
-      return sb.toString();
+      if (end - i == 2) {
+         dest[p++] = (byte) (TWO_BASE_OFFSET
+                             + 5 * code(sequence.charAt(i))
+                             + code(sequence.charAt(i + 1)));
+      } else if (end - i == 1) {
+         dest[p++] = (byte) (ONE_BASE_OFFSET + code(sequence.charAt(i)));
+      }
+      return p - destOffset;
    }
 
-
-   private static void initHash()
+   /**
+    * pack the (ascii) bases src[start, end) into dest starting at destOffset.
+    * dest must have room for packedLength(end - start) bytes.
+    *
+    * @return the number of bytes written
+    */
+   public static int pack(byte[] src, int start, int end, byte[] dest, int destOffset)
    {
-      String[] alphabet = {"a", "t", "g", "c", "n"};
-
-      for (byte i = 0; i < 5; i++) {
-         hash.put(alphabet[i], (byte) (32 + 128 + i ));
-         reverseHash.put((byte) (32 + 128 + i ), alphabet[i]);
+      int p = destOffset;
+      int i = start;
+      int fullEnd = end - (end - start) % 3;
+
+      for (; i < fullEnd; i += 3) {
+         dest[p++] = (byte) (THREE_BASE_OFFSET
+                             + 25 * ENCODE[src[i] & 0xff]
+                             + 5 * ENCODE[src[i + 1] & 0xff]
+                             + ENCODE[src[i + 2] & 0xff]);
       }
-
-      for (byte i = 0; i < 5; i++) {
-         for (byte j = 0; j < 5; j++) {
-            hash.put(alphabet[i] + alphabet[j], (byte) (32 + 192 + i * 5 + j ));
-            reverseHash.put((byte) (32 + 192 + i * 5 + j ), alphabet[i] + alphabet[j]);
-         }
+      if (end - i == 2) {
+         dest[p++] = (byte) (TWO_BASE_OFFSET
+                             + 5 * ENCODE[src[i] & 0xff]
+                             + ENCODE[src[i + 1] & 0xff]);
+      } else if (end - i == 1) {
+         dest[p++] = (byte) (ONE_BASE_OFFSET + ENCODE[src[i] & 0xff]);
       }
+      return p - destOffset;
+   }
 
-      for (byte i = 0; i < 5; i++) {
-         for (byte j = 0; j < 5; j++) {
-            for (byte k = 0; k < 5; k++) {
-               hash.put(alphabet[i] + alphabet[j] + alphabet[k], (byte) (32 + i * 25 + j * 5 + k));
-               reverseHash.put((byte) (32 + i * 25 + j * 5 + k), alphabet[i] + alphabet[j] + alphabet[k]);
-            }
+   /**
+    * unpack the packed bytes packed[offset, offset+length) as lowercase ascii
+    * bases into dest starting at destOffset.  dest must have room for
+    * numBases(packed, offset, length) bytes.  bytes outside the packing
+    * decode to a single n.
+    *
+    * @return the number of bases written
+    */
+   public static int unpack(byte[] packed, int offset, int length, byte[] dest, int destOffset)
+   {
+      int p = destOffset;
+      for (int i = offset; i < offset + length; i++) {
+         int v = packed[i] & 0xff;
+         int n = DECODE_LENGTH[v];
+         if (n == 3) {
+            dest[p++] = DECODE[3 * v];
+            dest[p++] = DECODE[3 * v + 1];
+            dest[p++] = DECODE[3 * v + 2];
+         } else if (n == 0) {
+            dest[p++] = 'n';
+         } else {
+            for (int k = 0; k < n; k++) dest[p++] = DECODE[3 * v + k];
          }
       }
+      return p - destOffset;
    }
 
-   private static byte[] pack(String sequenceToPack)
+   /**
+    * same as {@link #unpack(byte[], int, int, byte[], int)} but into a char array.
+    *
+    * @return the number of bases written
+    */
+   public static int unpack(byte[] packed, int offset, int length, char[] dest, int destOffset)
    {
-      int numberOfBases = sequenceToPack.length();
-      int numberOfFullBytes = numberOfBases/3;
-      int overflow = (numberOfBases % 3 == 0 ? 0 : 1);
-      int numberOfBytes = numberOfFullBytes + overflow;
-
-      byte[] bytes = new byte[numberOfBytes];
-
-      int i = 0;
-
-       try {
-      for (i = 0; i < numberOfFullBytes; i++) {
-
-         StringBuilder subseq = new StringBuilder(sequenceToPack.substring(i*3, i*3+3));
-         for (int si = 0; si < 3; si++) {
-            char sichar = subseq.charAt(si);
-            if (sichar != 'a' && sichar != 't' && sichar != 'g' && sichar != 'c' && sichar != 'n') {
-               subseq.setCharAt(si, 'n');
-            }
-         }
-         bytes[i] = hash.get(subseq.toString());
-
-      }
-       } catch (Exception e) {
-           System.out.println("i = " + i);
-       }
-
-      if (overflow > 0) {
-         StringBuilder subseq = new StringBuilder(sequenceToPack.substring(i*3, i*3 + numberOfBases % 3));
-         for (int si = 0; si < numberOfBases % 3; si++) {
-            char sichar = subseq.charAt(si);
-            if (sichar != 'a' && sichar != 't' && sichar != 'g' && sichar != 'c' && sichar != 'n') {
-               subseq.setCharAt(si, 'n');
-            }
+      int p = destOffset;
+      for (int i = offset; i < offset + length; i++) {
+         int v = packed[i] & 0xff;
+         int n = DECODE_LENGTH[v];
+         if (n == 3) {
+            dest[p++] = (char) DECODE[3 * v];
+            dest[p++] = (char) DECODE[3 * v + 1];
+            dest[p++] = (char) DECODE[3 * v + 2];
+         } else if (n == 0) {
+            dest[p++] = 'n';
+         } else {
+            for (int k = 0; k < n; k++) dest[p++] = (char) DECODE[3 * v + k];
          }
-         bytes[i++] = hash.get(subseq.toString());
       }
+      return p - destOffset;
+   }
 
-      // sanity check
-      assert (i == numberOfBytes);
-
+   private static byte[] pack(String sequenceToPack)
+   {
+      byte[] bytes = new byte[packedLength(sequenceToPack.length())];
+      pack(sequenceToPack, 0, sequenceToPack.length(), bytes, 0);
       return bytes;
    }
 
@@ -40,10 +40,19 @@
 package test.gov.jgi.meta;
 
 import gov.jgi.meta.MetaUtils;
+import gov.jgi.meta.hadoop.input.SequenceIndex;
+import gov.jgi.meta.sequence.RollingKmer;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.framework.TestCase;
-
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -108,7 +117,7 @@ public class MetaUtilsTest extends TestCase {
      *
      */
     public void testCountSequences() throws Exception {
-        //TODO: Test goes here...
+        assertEquals(10638, MetaUtils.countSequences("target/test-classes/1M.fas"));
     }
 
     /**
@@ -117,7 +126,29 @@ public class MetaUtilsTest extends TestCase {
      *
      */
     public void testReadSequences() throws Exception {
-        //TODO: Test goes here...
+        Map<String, String> sequences = MetaUtils.readSequences("target/test-classes/1M.fas");
+        assertEquals(10638, sequences.size());
+        assertEquals("TCGTCGCTGAAGCCTTCTTCCACCTTGGCGTTGAACGCCTCCATGTCCAGTGGAGTCCCCTGGACCCCGCGCCCGC".toLowerCase(),
+                     sequences.get("756:1:1:1074:20235/2"));
+    }
+
+    public void testReadSequencesByIds() throws Exception {
+        String dir = "target/index-test/";
+        Configuration conf = new Configuration();
+        FileSystem fs = FileSystem.getLocal(conf);
+        fs.copyFromLocalFile(new Path("target/test-classes/1M.fas"), new Path(dir + "1M.fas"));
+        fs.delete(new Path(dir + "1M.fas.fai"), true);
+
+        List<String> ids = Arrays.asList("756:1:1:1074:20235/2", "756:1:1:1597:17929/1", "no such read");
+        Map<String, String> all = MetaUtils.readSequences("target/test-classes/1M.fas");
+
+        Map<String, String> scanned = MetaUtils.readSequences(dir + "1M.fas", ids);
+        assertEquals(2, scanned.size());
+        assertEquals(all.get("756:1:1:1074:20235/2"), scanned.get("756:1:1:1074:20235/2"));
+        assertEquals(all.get("756:1:1:1597:17929/1"), scanned.get("756:1:1:1597:17929/1"));
+
+        SequenceIndex.index(conf, new Path(dir + "1M.fas"));
+        assertEquals(scanned, MetaUtils.readSequences(dir + "1M.fas", ids));
     }
 
     /**
@@ -223,6 +254,41 @@ public class MetaUtilsTest extends TestCase {
         assertEquals(17010 + 3240 + 405 + 31, x.size());
     }
 
+    public void testVisitAllNeighborsWithinDistance() throws Exception {
+
+        final String start = "aaaacagtct";
+        long kmer = 0;
+        for (int i = 0; i < start.length(); i++) {
+            kmer = (kmer << 2) | "acgt".indexOf(start.charAt(i));
+        }
+
+        for (int distance = 0; distance <= 4; distance++) {
+            final Set<String> visited = new HashSet<String>();
+            MetaUtils.visitAllNeighborsWithinDistance(kmer, start.length(), distance, new MetaUtils.NeighborVisitor() {
+                public void visit(long neighbor, int d) {
+                    String s = RollingKmer.decode(neighbor, start.length());
+                    int changed = 0;
+                    for (int i = 0; i < s.length(); i++) {
+                        if (s.charAt(i) != start.charAt(i)) changed++;
+                    }
+                    assertEquals(s, changed, d);
+                    assertTrue("visited twice: " + s, visited.add(s));
+                }
+            });
+            assertEquals(MetaUtils.generateAllNeighborsWithinDistance(start, distance), visited);
+        }
+
+        // a 32-mer uses all the bits of the long
+        final int[] n = { 0 };
+        MetaUtils.visitAllNeighborsWithinDistance(-1L, 32, 2, new MetaUtils.NeighborVisitor() {
+            public void visit(long neighbor, int d) {
+                assertEquals(d, Long.bitCount((neighbor ^ -1L) & 0x5555555555555555L | ((neighbor ^ -1L) >>> 1) & 0x5555555555555555L));
+                n[0]++;
+            }
+        });
+        assertEquals(1 + 32 * 3 + 32 * 31 / 2 * 9, n[0]);
+    }
+
 
     /**
      *
@@ -0,0 +1,113 @@
+package test.gov.jgi.meta.hadoop.compress;
+
+import gov.jgi.meta.hadoop.compress.BgzfCodec;
+import gov.jgi.meta.hadoop.compress.BgzfInputStream;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.SplitCompressionInputStream;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * BgzfCodec Tester.
+ */
+public class BgzfCodecTest extends TestCase {
+
+    private Configuration conf;
+    private FileSystem fs;
+    private Path file = new Path("target/bgzf-test/1M.fas.gz");
+    private byte[] original;
+
+    public BgzfCodecTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        conf = new Configuration();
+        fs = FileSystem.getLocal(conf);
+        original = read(new FileInputStream("target/test-classes/1M.fas"));
+
+        OutputStream out = new BgzfCodec().createOutputStream(fs.create(file, true));
+        out.write(original);
+        out.close();
+    }
+
+    public void testRoundTrip() throws Exception {
+        byte[] data = read(new BgzfCodec().createInputStream(fs.open(file)));
+        assertTrue(Arrays.equals(original, data));
+
+        // every member is a gzip member, so any gzip reader gets the data back
+        data = read(new GZIPInputStream(fs.open(file)));
+        assertTrue(Arrays.equals(original, data));
+    }
+
+    public void testIsBgzf() throws Exception {
+        byte[] header = new byte[BgzfCodec.HEADER_LENGTH];
+        FSDataInputStream in = fs.open(file);
+        in.readFully(header);
+        in.close();
+        assertTrue(BgzfCodec.isBgzf(header, 0, header.length));
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        OutputStream gz = new java.util.zip.GZIPOutputStream(plain);
+        gz.write(original, 0, 1000);
+        gz.close();
+        assertFalse(BgzfCodec.isBgzf(plain.toByteArray(), 0, plain.size()));
+    }
+
+    /**
+     * reading by splits, each split from its first member up to the first
+     * member past its end, gives every byte exactly once
+     */
+    public void testSplitsCoverTheFile() throws Exception {
+        long length = fs.getFileStatus(file).getLen();
+        for (long splitSize : new long[] { 1000, 30000, 100000 }) {
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            for (long start = 0; start < length; start += splitSize) {
+                long end = Math.min(length, start + splitSize);
+                SplitCompressionInputStream in = new BgzfCodec().createInputStream(fs.open(file), null, start, end,
+                        SplittableCompressionCodec.READ_MODE.BYBLOCK);
+                assertTrue(in.getAdjustedStart() >= start);
+                byte[] b = new byte[4096];
+                int n;
+                while (in.getPos() <= end && (n = in.read(b, 0, b.length)) > 0) {
+                    if (in.getPos() > end) break;
+                    all.write(b, 0, n);
+                }
+                in.close();
+            }
+            assertTrue("split size " + splitSize, Arrays.equals(original, all.toByteArray()));
+        }
+    }
+
+    public void testReadsDoNotCrossMembers() throws Exception {
+        InputStream in = new BgzfInputStream(fs.open(file));
+        byte[] b = new byte[200000];
+        int n = in.read(b, 0, b.length);
+        assertTrue(n > 0 && n <= 0xff00);
+        in.close();
+    }
+
+    private static byte[] read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtils.copyBytes(in, out, 4096, true);
+        return out.toByteArray();
+    }
+
+    public static Test suite() {
+        return new TestSuite(BgzfCodecTest.class);
+    }
+}
@@ -7,7 +7,11 @@ import junit.framework.TestCase;
 import org.apache.hadoop.io.Text;
 import org.junit.Assert;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -118,6 +122,43 @@ public class FastaBlockLineReaderTest extends TestCase {
     }
     
 
+    public void testReadRecords() throws Exception {
+        String fasta = "junk\n>r1 first > read\r\nACGT\r\nTTG\r\n>r2\n\n>r3\tthird\nAC>G\nCC\n>r4";
+        for (int bufferSize : new int[] {1, 2, 3, 5, 64 * 1024}) {
+            FastaBlockLineReader fblr = new FastaBlockLineReader(new ByteArrayInputStream(fasta.getBytes()), bufferSize);
+            final List<String> records = new ArrayList<String>();
+            long n = fblr.readRecords(new FastaBlockLineReader.RecordVisitor() {
+                public void visit(byte[] id, int idLength, byte[] sequence, int sequenceLength) throws IOException {
+                    records.add(new String(id, 0, idLength) + "=" + new String(sequence, 0, sequenceLength));
+                }
+            }, Long.MAX_VALUE);
+            assertEquals(fasta.length(), n);
+            assertEquals("buffer size " + bufferSize, "[r1=ACGTTTG, r2=, r3=AC>GCC, r4=]", records.toString());
+
+            fblr = new FastaBlockLineReader(new ByteArrayInputStream(fasta.getBytes()), bufferSize);
+            assertEquals(4, fblr.countRecords(Long.MAX_VALUE));
+        }
+    }
+
+    public void testReadRecordsInBlocks() throws Exception {
+        FastaBlockLineReader all = new FastaBlockLineReader(new FileInputStream("target/test-classes/1M.fas"));
+        Map<String, String> expected = new HashMap<String, String>();
+        all.readLine(new Text(), expected, Integer.MAX_VALUE, Long.MAX_VALUE);
+        all.close();
+
+        FastaBlockLineReader fblr = new FastaBlockLineReader(new FileInputStream("target/test-classes/1M.fas"), 4096);
+        long total = 0;
+        long blocks = 0;
+        long n;
+        while ((n = fblr.countRecords(10000)) > 0) {
+            total += n;
+            blocks++;
+        }
+        fblr.close();
+        assertEquals(expected.size(), total);
+        assertTrue(blocks > 50);
+    }
+
     public static Test suite() {
         return new TestSuite(FastaBlockLineReaderTest.class);
     }
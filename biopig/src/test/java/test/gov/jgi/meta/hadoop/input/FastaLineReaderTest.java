@@ -47,7 +47,9 @@ import junit.framework.TestCase;
 import org.apache.hadoop.io.Text;
 import org.junit.Assert;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
+import java.util.Arrays;
 
 /**
  * FastaLineReader Tester.
@@ -105,6 +107,38 @@ public class FastaLineReaderTest extends TestCase {
     }
 
 
+    /**
+     * records split over several lines, CR+LF line ends, junk before the
+     * first record and no newline at EOF, read through buffers small enough
+     * to break the records at every position.
+     */
+    public void testReadMultiLineSmallBuffers() throws Exception {
+
+        String fasta = "junk\n>r1 first read\r\nACGTN\r\nacg\r\ntt\r\n>r2\nGGGGGGG\n\n>r3\n>r4 last\nTTAC";
+        String[][] expected = {
+                { "r1 first read", "acgtnacgtt" },
+                { "r2", "ggggggg" },
+                { "r3", "" },
+                { "r4 last", "ttac" } };
+
+        for (int bufferSize = 1; bufferSize <= fasta.length() + 1; bufferSize++) {
+            FastaLineReader reader = new FastaLineReader(new ByteArrayInputStream(fasta.getBytes("ISO-8859-1")), bufferSize);
+            Text key = new Text();
+            Text sequence = new Text();
+            int consumed = 0;
+            for (String[] record : expected) {
+                int bytes = reader.readLine(key, sequence);
+                Assert.assertTrue(bytes > 0);
+                consumed += bytes;
+                Assert.assertEquals("buffer " + bufferSize, record[0], key.toString());
+                Assert.assertEquals("buffer " + bufferSize, record[1],
+                        SequenceString.byteArrayToSequence(Arrays.copyOf(sequence.getBytes(), sequence.getLength())));
+            }
+            Assert.assertEquals(0, reader.readLine(key, sequence));
+            Assert.assertEquals(fasta.length(), consumed);
+        }
+    }
+
     public static Test suite() {
         return new TestSuite(FastaLineReaderTest.class);
     }
@@ -39,9 +39,15 @@
 
 package test.gov.jgi.meta.hadoop.input;
 
+import gov.jgi.meta.hadoop.input.FastqBlockLineReader;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.framework.TestCase;
+import org.apache.hadoop.io.Text;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * FastqBlockLineReader Tester.
@@ -78,7 +84,29 @@ public class FastqBlockLineReaderTest extends TestCase {
      *
      */
     public void testReadLineForKeySetMaxLineLengthMaxBytesToConsume() throws Exception {
-        //TODO: Test goes here...
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("@read").append(i).append("\nACGTN\n+\n").append(i % 2 == 0 ? "@@@@@" : "IIIII").append("\n");
+        }
+        byte[] data = text.toString().getBytes("ISO-8859-1");
+        FastqBlockLineReader fblr = new FastqBlockLineReader(new ByteArrayInputStream(data), 256);
+
+        // blocks of about 1000 bytes, every record in exactly one of them
+        Map<String, String> all = new HashMap<String, String>();
+        Map<String, String> block = new HashMap<String, String>();
+        int total = 0;
+        int n;
+        while ((n = fblr.readLine(new Text(), block, Integer.MAX_VALUE, 1000)) > 0) {
+            assertTrue(block.size() > 1 && block.size() < 100);
+            for (String id : block.keySet()) {
+                assertNull(all.put(id, block.get(id)));
+            }
+            block.clear();
+            total += n;
+        }
+        assertEquals(data.length, total);
+        assertEquals(1000, all.size());
+        assertEquals("acgtn", all.get("read999"));
     }
 
     /**
@@ -46,6 +46,7 @@ import junit.framework.TestCase;
 import org.apache.hadoop.io.Text;
 import org.junit.Assert;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 
 /**
@@ -102,6 +103,61 @@ public class FastqLineReaderTest extends TestCase {
     }
 
 
+    /**
+     * quality lines starting with "@" are not taken for headers, whatever
+     * offset the reader starts from
+     */
+    public void testResyncWithAtInQuality() throws Exception {
+        String[] ids = { "r1", "r2", "r3", "r4" };
+        String[] records = {
+            "@r1 first\nACGTAC\n+\n@@II@I\n",
+            "@r2\nGGCCA\n+r2\n@ABCD\n",
+            "@r3\r\nTTTT\r\n+\r\n@@@@\r\n",
+            "@r4\nNACG\n+\nI@II"
+        };
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[records.length];
+        for (int i = 0; i < records.length; i++) {
+            starts[i] = text.length();
+            text.append(records[i]);
+        }
+        byte[] data = text.toString().getBytes("ISO-8859-1");
+
+        for (int offset = 0; offset < data.length; offset++) {
+            int first = 0;
+            while (first < starts.length && starts[first] < offset) first++;
+
+            for (int bufferSize : new int[] { 4, 64 * 1024 }) {
+                FastqLineReader fqlr = new FastqLineReader(new ByteArrayInputStream(data, offset, data.length - offset), bufferSize);
+                Text key = new Text();
+                Text sequence = new Text();
+
+                int skipped = fqlr.skipToRecord();
+                if (first < starts.length) {
+                    Assert.assertEquals("offset " + offset, starts[first] - offset, skipped);
+                }
+                for (int i = first; i < ids.length; i++) {
+                    Assert.assertTrue("offset " + offset, fqlr.readLine(key, sequence) > 0);
+                    Assert.assertEquals("offset " + offset, ids[i], key.toString());
+                }
+                Assert.assertEquals("offset " + offset, 0, fqlr.readLine(key, sequence));
+            }
+        }
+    }
+
+    public void testCheckRecord() throws Exception {
+        byte[] b = "@r\nACGT\n+\n@III\n@x".getBytes("ISO-8859-1");
+        Assert.assertEquals(15, FastqLineReader.checkRecord(b, 0, b.length, false));
+        // a quality line is not a record start
+        Assert.assertEquals(0, FastqLineReader.checkRecord(b, 10, b.length, true));
+        // nor is a header without a whole record after it
+        Assert.assertEquals(-1, FastqLineReader.checkRecord(b, 15, b.length, false));
+        Assert.assertEquals(0, FastqLineReader.checkRecord(b, 15, b.length, true));
+        // the quality must be as long as the sequence
+        byte[] c = "@r\nACGT\n+\nIII\n".getBytes("ISO-8859-1");
+        Assert.assertEquals(0, FastqLineReader.checkRecord(c, 0, c.length, true));
+    }
+
     public static Test suite() {
         return new TestSuite(FastqLineReaderTest.class);
     }
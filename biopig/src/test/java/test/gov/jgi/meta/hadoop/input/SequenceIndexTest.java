@@ -0,0 +1,188 @@
+package test.gov.jgi.meta.hadoop.input;
+
+import gov.jgi.meta.hadoop.input.SequenceIndex;
+import gov.jgi.meta.hadoop.input.SequenceIndexInputFormat;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SequenceIndex Tester.
+ */
+public class SequenceIndexTest extends TestCase {
+
+    private static final String DIR = "target/index-test/";
+
+    private Configuration conf;
+    private FileSystem fs;
+
+    public SequenceIndexTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        conf = new Configuration();
+        fs = FileSystem.getLocal(conf);
+        fs.copyFromLocalFile(new Path("target/test-classes/1M.fas"), new Path(DIR + "1M.fas"));
+    }
+
+    private void write(String file, String contents) throws Exception {
+        OutputStream out = fs.create(new Path(DIR + file), true);
+        out.write(contents.getBytes("ISO-8859-1"));
+        out.close();
+    }
+
+    private List<String> lines(Path p) throws Exception {
+        List<String> l = new ArrayList<String>();
+        BufferedReader r = new BufferedReader(new InputStreamReader(fs.open(p)));
+        String line;
+        while ((line = r.readLine()) != null) {
+            l.add(line);
+        }
+        r.close();
+        return l;
+    }
+
+    public void testFastaIndex() throws Exception {
+        write("wrapped.fa", ">one first record\nACGTACGTAC\nGTACGTAC\n>two\nAAAAACCCCC\nGGGGGTTTTT\n>three\n>four\nAC");
+        Path file = new Path(DIR + "wrapped.fa");
+        SequenceIndex.index(conf, file);
+
+        assertEquals(Arrays.asList("one\t18\t18\t10\t11",
+                                   "two\t20\t43\t10\t11",
+                                   "three\t0\t72\t0\t0",
+                                   "four\t2\t78\t2\t2"),
+                     lines(SequenceIndex.indexPath(file)));
+
+        SequenceIndex index = SequenceIndex.open(conf, file);
+        assertEquals(4, index.size());
+        assertEquals("ACGTACGTACGTACGTAC", index.getSequence("one"));
+        assertEquals("AAAAACCCCCGGGGGTTTTT", index.getSequence("two"));
+        assertEquals("", index.getSequence("three"));
+        assertEquals("AC", index.getSequence("four"));
+        assertNull(index.getSequence("five"));
+        assertNull(index.getQuality("one"));
+        index.close();
+    }
+
+    public void testRaggedFastaIsRejected() throws Exception {
+        write("ragged.fa", ">one\nACGTACGTAC\nGTAC\nACGTACGTAC\n");
+        try {
+            SequenceIndex.index(conf, new Path(DIR + "ragged.fa"));
+            fail("ragged lines were indexed");
+        } catch (java.io.IOException e) {
+            // expected
+        }
+    }
+
+    public void testLongLastFastaLineIsRejected() throws Exception {
+        write("longlast.fa", ">one\nACGTA\nCCCCCCCCCCCC\n>two\nGG\n");
+        try {
+            SequenceIndex.index(conf, new Path(DIR + "longlast.fa"));
+            fail("a last line longer than the others was indexed");
+        } catch (java.io.IOException e) {
+            // expected
+        }
+
+        // a shorter last line, or one without its newline, is fine
+        write("shortlast.fa", ">one\nACGTA\nCC\n>two\nGGGGG\nTTTTT");
+        Path file = new Path(DIR + "shortlast.fa");
+        SequenceIndex.index(conf, file);
+        SequenceIndex index = SequenceIndex.open(conf, file);
+        assertEquals("ACGTACC", index.getSequence("one"));
+        assertEquals("GGGGGTTTTT", index.getSequence("two"));
+        index.close();
+    }
+
+    public void testFastqIndex() throws Exception {
+        write("reads.fq", "@r1 desc\nACGT\n+\n@III\n@r2\nGGCCA\n+r2\nIIIII\n");
+        Path file = new Path(DIR + "reads.fq");
+        SequenceIndex.index(conf, file);
+
+        assertEquals(Arrays.asList("r1\t4\t9\t4\t5\t16", "r2\t5\t25\t5\t6\t35"), lines(SequenceIndex.indexPath(file)));
+
+        SequenceIndex index = SequenceIndex.open(conf, file, Arrays.asList("r2"));
+        assertEquals(1, index.size());
+        assertFalse(index.contains("r1"));
+        assertEquals("GGCCA", index.getSequence("r2"));
+        assertEquals("IIIII", index.getQuality("r2"));
+        index.close();
+    }
+
+    public void testLookup() throws Exception {
+        Path file = new Path(DIR + "1M.fas");
+        SequenceIndex.index(conf, file);
+
+        SequenceIndex index = SequenceIndex.open(conf, file, Arrays.asList("756:1:1:1597:17929/2", "756:1:1:1074:20235/1", "missing"));
+        assertEquals(2, index.size());
+        Map<String, String> sequences = index.getSequences(Arrays.asList("756:1:1:1597:17929/2", "756:1:1:1074:20235/1", "missing"));
+        assertEquals(Arrays.asList("756:1:1:1074:20235/1", "756:1:1:1597:17929/2"), new ArrayList<String>(sequences.keySet()));
+        assertEquals("TGCAGCTCAACANCGTCGGCTACGACNNCACCNNNGAGCGCATCGGCTNCNNNANNNCCTNNNNNNNNCGGGAGGT",
+                     sequences.get("756:1:1:1074:20235/1"));
+        index.close();
+    }
+
+    public void testSplits() throws Exception {
+        StringBuilder fastq = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            fastq.append("@read").append(i).append("/1\n")
+                 .append("ACGTTGCAAGGCTTAACGGATCCAGTGGTTACAGCATGACCATTGACGATCGGA".substring(i % 7)).append("\n+\n")
+                 .append("@IIII@@IIIIIIIIIIIIIIIIIIIIIIIIII@IIIIIIIIIIIIIIIIIIII".substring(i % 7)).append("\n");
+        }
+        write("split.fq", fastq.toString());
+
+        for (String file : new String[] { "1M.fas", "split.fq" }) {
+            Path path = new Path(DIR + file);
+            SequenceIndex.index(conf, path);
+            List<String> expected = lines(SequenceIndex.indexPath(path));
+            for (long splitSize : new long[] { 5000, 60000 }) {
+                assertEquals(file + " in splits of " + splitSize, expected, entries(path, splitSize));
+            }
+        }
+    }
+
+    private List<String> entries(Path file, long splitSize) throws Exception {
+        Job job = Job.getInstance(conf);
+        FileInputFormat.setInputPaths(job, file);
+        FileInputFormat.setMaxInputSplitSize(job, splitSize);
+        SequenceIndexInputFormat format = new SequenceIndexInputFormat();
+        List<InputSplit> splits = format.getSplits(job);
+        assertTrue(splits.size() > 1);
+
+        List<String> entries = new ArrayList<String>();
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+        for (InputSplit split : splits) {
+            RecordReader<LongWritable, SequenceIndex.Entry> reader = format.createRecordReader(split, context);
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                entries.add(reader.getCurrentValue().toString());
+            }
+            reader.close();
+        }
+        return entries;
+    }
+
+    public static Test suite() {
+        return new TestSuite(SequenceIndexTest.class);
+    }
+}
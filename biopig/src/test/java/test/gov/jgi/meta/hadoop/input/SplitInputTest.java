@@ -0,0 +1,172 @@
+package test.gov.jgi.meta.hadoop.input;
+
+import gov.jgi.meta.hadoop.compress.BgzfCodec;
+import gov.jgi.meta.hadoop.input.FastaBlockInputFormat;
+import gov.jgi.meta.hadoop.input.FastaInputFormat;
+import gov.jgi.meta.hadoop.input.FastqBlockInputFormat;
+import gov.jgi.meta.hadoop.input.FastqInputFormat;
+import gov.jgi.meta.sequence.ReadBlock;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SplitInput Tester: the input formats read plain, bzip2 and BGZF files cut
+ * into many splits and every record comes out exactly once.
+ */
+public class SplitInputTest extends TestCase {
+
+    private static final String DIR = "target/split-test/";
+
+    private Configuration conf;
+    private FileSystem fs;
+
+    public SplitInputTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        conf = new Configuration();
+        fs = FileSystem.getLocal(conf);
+
+        writeAll(new FileInputStream("target/test-classes/1M.fas"), DIR + "1M.fas");
+
+        // "@" at the start of the quality line for some records, to trip up a reader that resyncs on it
+        StringBuilder fastq = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            fastq.append("@read").append(i).append("/1\n")
+                 .append("ACGTTGCAAGGCTTAACGGATCCAGTGGTTACAGCATGACCATTGACGATCGGA".substring(i % 7)).append("\n+\n")
+                 .append("@IIII@@IIIIIIIIIIIIIIIIIIIIIIIIII@IIIIIIIIIIIIIIIIIIII".substring(i % 7)).append("\n");
+        }
+        OutputStream out = fs.create(new Path(DIR + "reads.fq"), true);
+        out.write(fastq.toString().getBytes("ISO-8859-1"));
+        out.close();
+
+        for (String name : new String[] { "1M.fas", "reads.fq" }) {
+            // small bzip2 blocks and BGZF members so the files have many of them
+            OutputStream bz = fs.create(new Path(DIR + name + ".bz2"), true);
+            bz.write('B');
+            bz.write('Z');
+            writeAll(fs.open(new Path(DIR + name)), new CBZip2OutputStream(bz, 1));
+            writeAll(fs.open(new Path(DIR + name)), new BgzfCodec().createOutputStream(fs.create(new Path(DIR + name + ".gz"), true)));
+        }
+    }
+
+    public void testFastaSplits() throws Exception {
+        List<String> expected = keys(new FastaInputFormat(), DIR + "1M.fas", Long.MAX_VALUE);
+        assertEquals(10638, expected.size());
+
+        for (String file : new String[] { "1M.fas", "1M.fas.bz2", "1M.fas.gz" }) {
+            for (long splitSize : new long[] { 5000, 60000 }) {
+                assertEquals(file + " in splits of " + splitSize, expected, keys(new FastaInputFormat(), DIR + file, splitSize));
+            }
+        }
+    }
+
+    public void testFastqSplits() throws Exception {
+        List<String> expected = keys(new FastqInputFormat(), DIR + "reads.fq", Long.MAX_VALUE);
+        assertEquals(20000, expected.size());
+
+        for (String file : new String[] { "reads.fq", "reads.fq.bz2", "reads.fq.gz" }) {
+            for (long splitSize : new long[] { 5000, 60000 }) {
+                assertEquals(file + " in splits of " + splitSize, expected, keys(new FastqInputFormat(), DIR + file, splitSize));
+            }
+        }
+    }
+
+    public void testBlockSplits() throws Exception {
+        for (String file : new String[] { "1M.fas", "1M.fas.bz2", "1M.fas.gz" }) {
+            assertEquals(file, 10638, blockRecords(new FastaBlockInputFormat(), DIR + file, 60000));
+        }
+        for (String file : new String[] { "reads.fq", "reads.fq.bz2", "reads.fq.gz" }) {
+            assertEquals(file, 20000, blockRecords(new FastqBlockInputFormat(), DIR + file, 60000));
+        }
+    }
+
+    public void testBlockCaps() throws Exception {
+        conf.setLong(FastaBlockInputFormat.MAX_BLOCK_RECORDS, 1000);
+        conf.setLong(FastaBlockInputFormat.MAX_BLOCK_BYTES, 20000);
+        for (String file : new String[] { "1M.fas", "1M.fas.bz2", "1M.fas.gz" }) {
+            assertEquals(file, 10638, blockRecords(new FastaBlockInputFormat(), DIR + file, 60000));
+            assertEquals(file, 10638, blockRecords(new FastaBlockInputFormat(), DIR + file, Long.MAX_VALUE));
+        }
+        for (String file : new String[] { "reads.fq", "reads.fq.bz2", "reads.fq.gz" }) {
+            assertEquals(file, 20000, blockRecords(new FastqBlockInputFormat(), DIR + file, 60000));
+            assertEquals(file, 20000, blockRecords(new FastqBlockInputFormat(), DIR + file, Long.MAX_VALUE));
+        }
+    }
+
+    public void testCompressedFilesAreSplit() throws Exception {
+        assertTrue(splits(new FastaInputFormat(), DIR + "1M.fas.bz2", 60000).size() > 1);
+        assertTrue(splits(new FastaInputFormat(), DIR + "1M.fas.gz", 60000).size() > 1);
+    }
+
+    private List<InputSplit> splits(InputFormat<?, ?> format, String file, long splitSize) throws Exception {
+        Job job = Job.getInstance(conf);
+        FileInputFormat.setInputPaths(job, new Path(file));
+        FileInputFormat.setMaxInputSplitSize(job, splitSize);
+        return format.getSplits(job);
+    }
+
+    private <K, V> List<String> keys(InputFormat<K, V> format, String file, long splitSize) throws Exception {
+        List<String> keys = new ArrayList<String>();
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+        for (InputSplit split : splits(format, file, splitSize)) {
+            RecordReader<K, V> reader = format.createRecordReader(split, context);
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                keys.add(reader.getCurrentKey().toString());
+            }
+            reader.close();
+        }
+        return keys;
+    }
+
+    private <K> int blockRecords(InputFormat<K, ReadBlock> format, String file, long splitSize) throws Exception {
+        int n = 0;
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+        for (InputSplit split : splits(format, file, splitSize)) {
+            RecordReader<K, ReadBlock> reader = format.createRecordReader(split, context);
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                assertTrue(reader.getCurrentValue().size() <= conf.getLong(FastaBlockInputFormat.MAX_BLOCK_RECORDS,
+                                                                           FastaBlockInputFormat.DEFAULT_MAX_BLOCK_RECORDS));
+                n += reader.getCurrentValue().size();
+            }
+            reader.close();
+        }
+        return n;
+    }
+
+    private void writeAll(InputStream in, String file) throws Exception {
+        writeAll(in, fs.create(new Path(file), true));
+    }
+
+    private static void writeAll(InputStream in, OutputStream out) throws Exception {
+        IOUtils.copyBytes(in, out, 4096, true);
+    }
+
+    public static Test suite() {
+        return new TestSuite(SplitInputTest.class);
+    }
+}
@@ -0,0 +1,110 @@
+package test.gov.jgi.meta.kmer;
+
+import gov.jgi.meta.kmer.DistanceTile;
+import gov.jgi.meta.kmer.KmerVector;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * DistanceTile Tester.
+ */
+public class DistanceTileTest extends TestCase {
+    public DistanceTileTest(String name) {
+        super(name);
+    }
+
+    private static List<int[]> vectors(Random r, int n, int dimension) {
+        List<int[]> vectors = new ArrayList<int[]>();
+        for (int i = 0; i < n; i++) {
+            int[] v = new int[dimension];
+            for (int j = 0; j < dimension; j++) {
+                v[j] = r.nextInt(4) == 0 ? r.nextInt(20) : 0;
+            }
+            vectors.add(v);
+        }
+        vectors.add(new int[dimension]);
+        return vectors;
+    }
+
+    private static Map<String, Double> pairs(DistanceTile a, DistanceTile b, double max) throws IOException {
+        final Map<String, Double> pairs = new HashMap<String, Double>();
+        a.pairs(b, max, new DistanceTile.PairVisitor() {
+            public void visit(int i, int j, double distance) {
+                assertNull("pair visited twice", pairs.put(i + " " + j, distance));
+            }
+        });
+        return pairs;
+    }
+
+    public void testSelfPairs() throws Exception {
+
+        Random r = new Random(11);
+        List<int[]> v = vectors(r, 150, 136);
+        DistanceTile euclidean = new DistanceTile(false, 136);
+        DistanceTile hamming = new DistanceTile(true, 136);
+        for (int[] counts : v) {
+            euclidean.add(counts);
+            hamming.add(counts);
+        }
+        assertEquals(v.size(), euclidean.size());
+
+        Map<String, Double> e = pairs(euclidean, euclidean, Double.POSITIVE_INFINITY);
+        Map<String, Double> h = pairs(hamming, hamming, Double.POSITIVE_INFINITY);
+        assertEquals(v.size() * (v.size() - 1) / 2, e.size());
+        assertEquals(e.keySet(), h.keySet());
+        for (int i = 0; i < v.size(); i++) {
+            for (int j = i + 1; j < v.size(); j++) {
+                String pair = i + " " + j;
+                assertEquals(pair, KmerVector.distance(v.get(i), v.get(j)), e.get(pair), 1e-12);
+                assertEquals(pair, (double) KmerVector.hammingDistance(v.get(i), v.get(j)), h.get(pair));
+            }
+        }
+    }
+
+    public void testCrossPairs() throws Exception {
+
+        Random r = new Random(13);
+        List<int[]> va = vectors(r, 70, 256);
+        List<int[]> vb = vectors(r, 90, 256);
+        DistanceTile a = new DistanceTile(false, 256);
+        DistanceTile b = new DistanceTile(false, 256);
+        for (int[] counts : va) a.add(counts);
+        for (int[] counts : vb) b.add(counts);
+
+        double max = 1.0;
+        Map<String, Double> e = pairs(a, b, max);
+        int expected = 0;
+        for (int i = 0; i < va.size(); i++) {
+            for (int j = 0; j < vb.size(); j++) {
+                double d = KmerVector.distance(va.get(i), vb.get(j));
+                if (d <= max) {
+                    expected++;
+                    assertEquals(d, e.get(i + " " + j), 1e-12);
+                }
+            }
+        }
+        assertEquals(expected, e.size());
+        assertTrue(expected > 0 && expected < va.size() * vb.size());
+
+        a.clear();
+        assertEquals(0, pairs(a, b, max).size());
+        try {
+            a.add(new int[136]);
+            fail("a vector of the wrong dimension must be rejected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(DistanceTileTest.class);
+    }
+}
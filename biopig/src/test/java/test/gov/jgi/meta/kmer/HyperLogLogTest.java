@@ -0,0 +1,82 @@
+package test.gov.jgi.meta.kmer;
+
+import gov.jgi.meta.kmer.CountMinSketch;
+import gov.jgi.meta.kmer.HyperLogLog;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Random;
+
+/**
+ * HyperLogLog and CountMinSketch Tester.
+ */
+public class HyperLogLogTest extends TestCase {
+    public HyperLogLogTest(String name) {
+        super(name);
+    }
+
+    public void testEstimateAndMerge() throws Exception {
+
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        assertEquals(0, a.estimate());
+
+        for (long k = 0; k < 100000; k++) {
+            a.add(k);
+            a.add(k);  // duplicates do not count
+            b.add(k + 50000);
+        }
+        assertEquals(100000, a.estimate(), 3000);
+
+        HyperLogLog copy = new HyperLogLog(a.toBytes(), 0);
+        assertEquals(a.estimate(), copy.estimate());
+
+        copy.merge(b);
+        assertEquals(150000, copy.estimate(), 4500);
+
+        HyperLogLog small = new HyperLogLog();
+        for (long k = 0; k < 100; k++) small.add(k * 7919);
+        assertEquals(100, small.estimate(), 3);
+
+        // a cleared sketch is empty and counts again as a new one
+        long estimate = copy.estimate();
+        copy.clear();
+        assertEquals(0, copy.estimate());
+        for (long k = 0; k < 100000; k++) {
+            copy.add(k);
+            copy.add(k + 50000);
+        }
+        assertEquals(estimate, copy.estimate());
+    }
+
+    public void testCountMinSketch() throws Exception {
+
+        Random r = new Random(11);
+        CountMinSketch a = new CountMinSketch(12, 4);
+        CountMinSketch b = new CountMinSketch(12, 4);
+        int[] exact = new int[1000];
+        for (int i = 0; i < 20000; i++) {
+            int k = (int) Math.abs(r.nextGaussian() * 100) % exact.length;
+            exact[k]++;
+            (i % 2 == 0 ? a : b).add(k, 1);
+        }
+
+        a.merge(new CountMinSketch(b.toBytes(), 0));
+        assertEquals(20000, a.getTotal());
+        for (int k = 0; k < exact.length; k++) {
+            int estimate = a.estimate(k);
+            assertTrue(estimate >= exact[k]);
+            // e * N / width
+            assertTrue(estimate - exact[k] <= 14);
+        }
+
+        a.clear();
+        assertEquals(0, a.getTotal());
+        assertEquals(0, a.estimate(7));
+    }
+
+    public static Test suite() {
+        return new TestSuite(HyperLogLogTest.class);
+    }
+}
@@ -0,0 +1,72 @@
+package test.gov.jgi.meta.kmer;
+
+import gov.jgi.meta.kmer.KmerSet;
+import gov.jgi.meta.kmer.KmerSetWriter;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * KmerSet and KmerSetWriter Tester.
+ */
+public class KmerSetTest extends TestCase {
+    public KmerSetTest(String name) {
+        super(name);
+    }
+
+    public void testWriteAndLookup() throws Exception {
+
+        File f = new File("target/kmerset-test.set");
+        // a small block size, so lookups cross block boundaries
+        KmerSetWriter w = new KmerSetWriter(new FileOutputStream(f), 31, true, 7);
+        for (long k = -300; k < 3000; k += 3) {
+            w.add(k);
+            w.add(k);  // repeats are written once
+        }
+        w.close();
+
+        KmerSet set = new KmerSet(f);
+        try {
+            assertEquals(31, set.getK());
+            assertTrue(set.isCanonical());
+            assertEquals(1100, set.size());
+            assertEquals(-300, set.first());
+            assertEquals(-297, set.get(1));
+            for (long k = -310; k < 3010; k++) {
+                assertEquals("kmer " + k, k >= -300 && k < 3000 && (k + 300) % 3 == 0, set.contains(k));
+            }
+        } finally {
+            set.close();
+        }
+
+        // an empty set
+        w = new KmerSetWriter(new FileOutputStream(f), 20, false);
+        w.close();
+        set = new KmerSet(f);
+        assertEquals(0, set.size());
+        assertFalse(set.contains(0));
+        set.close();
+        f.delete();
+    }
+
+    public void testOutOfOrder() throws Exception {
+
+        KmerSetWriter w = new KmerSetWriter(new ByteArrayOutputStream(), 31, false);
+        w.add(5);
+        try {
+            w.add(4);
+            fail("out of order kmers must be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(KmerSetTest.class);
+    }
+}
@@ -0,0 +1,102 @@
+package test.gov.jgi.meta.kmer;
+
+import gov.jgi.meta.kmer.KmerRunMerger;
+import gov.jgi.meta.kmer.KmerRunReader;
+import gov.jgi.meta.kmer.KmerTable;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * KmerTable Tester.
+ */
+public class KmerTableTest extends TestCase {
+    public KmerTableTest(String name) {
+        super(name);
+    }
+
+    public void testAddAndResize() throws Exception {
+
+        KmerTable table = new KmerTable();
+        int initialCapacity = table.capacity();
+
+        for (long k = 0; k < 10000; k++) {
+            table.add(k * 31, 1);
+            table.add(-k, 2);
+        }
+        assertTrue(table.capacity() > initialCapacity);
+        assertEquals(19999, table.size());
+        assertEquals(3, table.get(0));
+        assertEquals(1, table.get(31 * 9999));
+        assertEquals(2, table.get(-9999));
+        assertEquals(0, table.get(12345678901L));
+
+        int capacity = table.capacity();
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, table.get(0));
+        assertEquals(capacity, table.capacity());
+
+        table.add(42, Integer.MAX_VALUE - 1);
+        table.add(42, 5);
+        assertEquals(Integer.MAX_VALUE, table.get(42));
+    }
+
+    public void testSpillAndMerge() throws Exception {
+
+        Random r = new Random(7);
+        TreeMap<Long, Integer> expected = new TreeMap<Long, Integer>();
+        List<KmerRunReader> runs = new ArrayList<KmerRunReader>();
+
+        KmerTable table = new KmerTable();
+        for (int run = 0; run < 3; run++) {
+            for (int i = 0; i < 5000; i++) {
+                // a small key space, so runs overlap; keep the keys positive to
+                // compare against the signed order of the TreeMap
+                long k = r.nextInt(4000);
+                table.add(k, 1);
+                expected.put(k, (expected.containsKey(k) ? expected.get(k) : 0) + 1);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            assertTrue(table.spill(out) > 0);
+            assertEquals(0, table.size());
+            out.flush();
+            runs.add(new KmerRunReader(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        }
+
+        KmerRunMerger merger = new KmerRunMerger(runs);
+        for (Long k : expected.keySet()) {
+            assertTrue(merger.next());
+            assertEquals(k.longValue(), merger.key());
+            assertEquals(expected.get(k).intValue(), merger.count());
+        }
+        assertFalse(merger.next());
+    }
+
+    public void testSortIsUnsigned() throws Exception {
+
+        KmerTable table = new KmerTable();
+        long[] keys = { -1L, 0L, Long.MIN_VALUE, 5L, Long.MAX_VALUE, -5L };
+        for (long k : keys) table.add(k, 1);
+        table.sort();
+
+        long[] sorted = { 0L, 5L, Long.MAX_VALUE, Long.MIN_VALUE, -5L, -1L };
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(sorted[i], table.getKey(i));
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(KmerTableTest.class);
+    }
+}
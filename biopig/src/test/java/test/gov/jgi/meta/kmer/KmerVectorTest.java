@@ -0,0 +1,119 @@
+package test.gov.jgi.meta.kmer;
+
+import gov.jgi.meta.MetaUtils;
+import gov.jgi.meta.kmer.KmerVector;
+import gov.jgi.meta.sequence.SequenceString;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+
+/**
+ * KmerVector Tester.
+ */
+public class KmerVectorTest extends TestCase {
+    public KmerVectorTest(String name) {
+        super(name);
+    }
+
+    public void testDimension() throws Exception {
+
+        assertEquals(256, new KmerVector(4, false).dimension());
+        assertEquals(136, new KmerVector(4, true).dimension());
+        assertEquals(2, new KmerVector(1, true).dimension());
+        assertEquals(32, new KmerVector(3, true).dimension());
+        try {
+            new KmerVector(9, false);
+            fail("k > 8 must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testCount() throws Exception {
+
+        byte[] s = "acgtNacgtaCGT".getBytes("ISO-8859-1");
+
+        int[] forward = new KmerVector(2, false).count(s, 0, s.length, null);
+        int[] expected = new int[16];
+        expected[0 * 4 + 1] = 3; // ac
+        expected[1 * 4 + 2] = 3; // cg
+        expected[2 * 4 + 3] = 3; // gt
+        expected[3 * 4 + 0] = 1; // ta
+        assertTrue(Arrays.toString(forward), Arrays.equals(expected, forward));
+
+        // ac/gt and cg are counted together with their reverse complements
+        KmerVector canonical = new KmerVector(2, true);
+        int[] counts = canonical.count(s, 0, s.length, null);
+        int total = 0;
+        for (int c : counts) {
+            total += c;
+        }
+        assertEquals(10, total);
+        assertEquals(6, counts[1]);
+
+        // packed and ascii sequences give the same counts
+        String seq = "TGCAGCTCAACANCGTCGGCTACGACNNCACCNNNGAGCGCATCGGCTNCNNNANNNCCTNNNNNNNNCGGGAGGT".toLowerCase();
+        byte[] packed = SequenceString.sequenceToByteArray(seq);
+        KmerVector tnf = new KmerVector(4, true);
+        byte[] ascii = seq.getBytes("ISO-8859-1");
+        assertTrue(Arrays.equals(tnf.count(ascii, 0, ascii.length, null),
+                                 tnf.countPacked(packed, 0, packed.length, null)));
+    }
+
+    public void testCanonicalReverseComplement() throws Exception {
+
+        // a sequence and its reverse complement have the same canonical vector
+        String seq = "tcgtcgctgaagccttcttccaccttggcgttgaacgcctccatgtccagtggagtcccctggaccccgcgcccgc";
+        byte[] forward = seq.getBytes("ISO-8859-1");
+        byte[] reverse = MetaUtils.reverseComplement(seq).getBytes("ISO-8859-1");
+        for (int k = 1; k <= KmerVector.MAX_K; k++) {
+            KmerVector v = new KmerVector(k, true);
+            assertTrue("k = " + k, Arrays.equals(v.count(forward, 0, forward.length, null),
+                                                 v.count(reverse, 0, reverse.length, null)));
+        }
+    }
+
+    public void testEncodeDecode() throws Exception {
+
+        KmerVector tnf = new KmerVector(4, true);
+        byte[] s = "tgcagctcaacancgtcggctacgacnncacc".getBytes("ISO-8859-1");
+        int[] counts = tnf.count(s, 0, s.length, null);
+        counts[7] = 100000;
+
+        byte[] b = tnf.encode(counts);
+        assertEquals(4, KmerVector.getK(b, 0));
+        assertTrue(KmerVector.isCanonical(b, 0));
+        assertTrue(Arrays.equals(counts, KmerVector.decode(b, 0, b.length, null)));
+
+        byte[] shifted = new byte[b.length + 3];
+        System.arraycopy(b, 0, shifted, 3, b.length);
+        assertTrue(Arrays.equals(counts, KmerVector.decode(shifted, 3, b.length, new int[136])));
+
+        try {
+            KmerVector.decode(b, 0, b.length - 1, null);
+            fail("a truncated vector must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testDistance() throws Exception {
+
+        int[] a = { 3, 4, 0 };
+        int[] b = { 0, 0, 2 };
+        assertEquals(5.0, KmerVector.length(a), 1e-12);
+        assertEquals(Math.sqrt(0.36 + 0.64 + 1), KmerVector.distance(a, b), 1e-12);
+        assertEquals(0.0, KmerVector.distance(a, new int[] { 6, 8, 0 }), 1e-12);
+        assertEquals(1.0, KmerVector.distance(new int[3], b), 1e-12);
+
+        assertEquals(3, KmerVector.hammingDistance(a, b));
+        assertEquals(1, KmerVector.hammingDistance(a, new int[] { 1, 1, 1 }));
+        assertEquals(0, KmerVector.hammingDistance(a, new int[] { 6, 8, 0 }));
+    }
+
+    public static Test suite() {
+        return new TestSuite(KmerVectorTest.class);
+    }
+}
@@ -0,0 +1,105 @@
+package test.gov.jgi.meta.kmer;
+
+import gov.jgi.meta.kmer.KmerVector;
+import gov.jgi.meta.kmer.SimHash;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * SimHash Tester.
+ */
+public class SimHashTest extends TestCase {
+    public SimHashTest(String name) {
+        super(name);
+    }
+
+    public void testBandKeys() throws Exception {
+
+        SimHash hash = new SimHash(136, 10, 16, SimHash.DEFAULT_SEED);
+        assertEquals(10, hash.bands());
+        assertEquals(16, hash.rows());
+
+        int[] v = new int[136];
+        Random r = new Random(3);
+        for (int i = 0; i < v.length; i++) {
+            v[i] = r.nextInt(10);
+        }
+        long[] keys = hash.bandKeys(v, null);
+        assertEquals(10, keys.length);
+        for (long key : keys) {
+            assertTrue(key >= 0 && key < (1 << 16));
+        }
+
+        // the keys only depend on the seed and the direction of the vector
+        int[] scaled = new int[136];
+        for (int i = 0; i < v.length; i++) {
+            scaled[i] = 3 * v[i];
+        }
+        assertTrue(Arrays.equals(keys, new SimHash(136, 10, 16, SimHash.DEFAULT_SEED).bandKeys(scaled, new long[10])));
+        assertFalse(Arrays.equals(keys, new SimHash(136, 10, 16, 2).bandKeys(v, null)));
+
+        try {
+            hash.bandKeys(new int[256], null);
+            fail("a vector of the wrong dimension must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testCollisionProbability() throws Exception {
+
+        assertEquals(1.0, SimHash.collisionProbability(0, 4, 8), 1e-12);
+        assertEquals(0.0, SimHash.collisionProbability(2, 4, 8), 1e-12);
+        assertEquals(0.5, SimHash.collisionProbability(Math.sqrt(2), 1, 1), 1e-12);
+        assertTrue(SimHash.collisionProbability(0.3, 20, 8) > SimHash.collisionProbability(0.3, 10, 8));
+        assertTrue(SimHash.collisionProbability(0.3, 20, 8) > SimHash.collisionProbability(0.3, 20, 16));
+
+        // the fraction of bits two vectors share is close to 1 - theta / pi
+        Random r = new Random(5);
+        int[] a = new int[64];
+        int[] b = new int[64];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = r.nextInt(10);
+            b[i] = r.nextInt(10);
+        }
+        int bits = 4000;
+        SimHash hash = new SimHash(64, bits, 1, SimHash.DEFAULT_SEED);
+        long[] ka = hash.bandKeys(a, null);
+        long[] kb = hash.bandKeys(b, null);
+        int same = 0;
+        for (int i = 0; i < bits; i++) {
+            if (ka[i] == kb[i]) same++;
+        }
+        double expected = SimHash.collisionProbability(SimHash.distance(a, b), 1, 1);
+        assertEquals(expected, (double) same / bits, 0.03);
+
+        // counts are all positive, so two unrelated vectors are close before
+        // centering (about 3/4 of the bits of uncentered planes would agree),
+        // but the planes split them about half the time
+        assertTrue(KmerVector.distance(a, b) < 0.9);
+        assertTrue((double) same / bits < 0.6);
+    }
+
+    public void testDistance() throws Exception {
+
+        int[] a = {1, 2, 3, 4};
+        assertEquals(0.0, SimHash.distance(a, new int[] {11, 12, 13, 14}), 1e-12);
+        assertEquals(2.0, SimHash.distance(a, new int[] {4, 3, 2, 1}), 1e-12);
+        assertEquals(Math.sqrt(2), SimHash.distance(a, new int[] {5, 5, 5, 5}), 1e-12);
+        assertEquals(0.0, SimHash.distance(new int[] {2, 2, 2, 2}, new int[] {5, 5, 5, 5}), 1e-12);
+        try {
+            SimHash.distance(a, new int[3]);
+            fail("vectors of different dimensions must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(SimHashTest.class);
+    }
+}
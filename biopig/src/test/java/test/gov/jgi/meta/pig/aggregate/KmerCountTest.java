@@ -0,0 +1,120 @@
+package test.gov.jgi.meta.pig.aggregate;
+
+import gov.jgi.meta.pig.aggregate.KmerCount;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DefaultBagFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import test.gov.jgi.meta.Util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * KmerCount Tester.
+ */
+public class KmerCountTest extends TestCase {
+    public KmerCountTest(String name) {
+        super(name);
+    }
+
+    private static DataBag bagOf(Tuple... tuples) {
+        DataBag bag = DefaultBagFactory.getInstance().newDefaultBag();
+        for (Tuple t : tuples) bag.add(t);
+        return bag;
+    }
+
+    private static Tuple tupleOf(Object... fields) {
+        return TupleFactory.getInstance().newTuple(Arrays.asList(fields));
+    }
+
+    private static Map<Long, Long> toMap(DataBag bag) throws IOException {
+        Map<Long, Long> m = new HashMap<Long, Long>();
+        for (Tuple t : bag) {
+            Long k = (Long) t.get(0);
+            Long c = (Long) t.get(1);
+            m.put(k, (m.containsKey(k) ? m.get(k) : 0L) + c);
+        }
+        return m;
+    }
+
+    public void testAlgebraicWithFlush() throws Exception {
+
+        long[] kmers = { 5, 7, 5, 9, 5, 7, 11, -1, -1, 0 };
+
+        // map side, one kmer per call
+        KmerCount.Initial initial = new KmerCount.Initial();
+        DataBag partials = DefaultBagFactory.getInstance().newDefaultBag();
+        for (long k : kmers) {
+            partials.add(initial.exec(tupleOf(bagOf(tupleOf(k)))));
+        }
+
+        // combiner that flushes after every 2 distinct kmers
+        KmerCount.Intermediate intermediate = new KmerCount.Intermediate("2");
+        Tuple combined = intermediate.exec(tupleOf(partials));
+
+        DataBag result = new KmerCount.Final().exec(tupleOf(bagOf(combined)));
+        Map<Long, Long> counts = toMap(result);
+        assertEquals(6, result.size());
+        assertEquals(Long.valueOf(3), counts.get(5L));
+        assertEquals(Long.valueOf(2), counts.get(7L));
+        assertEquals(Long.valueOf(1), counts.get(9L));
+        assertEquals(Long.valueOf(2), counts.get(-1L));
+        assertEquals(Long.valueOf(1), counts.get(0L));
+
+        // the accumulator and plain exec agree with the algebraic path
+        KmerCount count = new KmerCount();
+        DataBag all = DefaultBagFactory.getInstance().newDefaultBag();
+        for (long k : kmers) all.add(tupleOf(k));
+        assertEquals(counts, toMap(count.exec(tupleOf(all))));
+
+        count.accumulate(tupleOf(bagOf(tupleOf(5L), tupleOf(7L, 4L))));
+        count.accumulate(tupleOf(bagOf(tupleOf(5L))));
+        Map<Long, Long> acc = toMap(count.getValue());
+        assertEquals(Long.valueOf(2), acc.get(5L));
+        assertEquals(Long.valueOf(4), acc.get(7L));
+        count.cleanup();
+    }
+
+    public void testMatchesGroupCount() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "DEFINE KMERS gov.jgi.meta.pig.eval.KmerGenerator('long');\n" +
+                "a = load 'target/test-classes/1M.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+                "b = foreach a generate FLATTEN(KMERS(seq, 10)) as (kmer:long);\n" +
+                "c = group b by (kmer % 16);\n" +
+                "d = foreach c generate gov.jgi.meta.pig.aggregate.KmerCount(b) as counts;\n" +
+                "e = foreach d generate FLATTEN(counts);\n" +
+                "f = group b by kmer;\n" +
+                "g = foreach f generate group, COUNT(b);";
+
+        Util.registerMultiLineQuery(ps, script);
+
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Iterator<Tuple> it = ps.openIterator("g");
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            expected.put((Long) t.get(0), (Long) t.get(1));
+        }
+
+        DataBag actual = DefaultBagFactory.getInstance().newDefaultBag();
+        it = ps.openIterator("e");
+        while (it.hasNext()) actual.add(it.next());
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, toMap(actual));
+    }
+
+    public static Test suite() {
+        return new TestSuite(KmerCountTest.class);
+    }
+}
@@ -0,0 +1,72 @@
+package test.gov.jgi.meta.pig.aggregate;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import test.gov.jgi.meta.Util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * KmerDistinct and KmerSpectrum Tester.
+ */
+public class KmerSpectrumTest extends TestCase {
+    public KmerSpectrumTest(String name) {
+        super(name);
+    }
+
+    public void testApproximateStats() throws Exception {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "DEFINE KMERS gov.jgi.meta.pig.eval.KmerGenerator('long');\n" +
+                "DEFINE SPECTRUM gov.jgi.meta.pig.aggregate.KmerSpectrum('20', '0');\n" +
+                "a = load 'target/test-classes/1M.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+                "b = foreach a generate FLATTEN(KMERS(seq, 20)) as (kmer:long);\n" +
+                "c = group b all;\n" +
+                "d = foreach c generate gov.jgi.meta.pig.aggregate.KmerDistinct(b) as ndistinct, SPECTRUM(b) as spectrum;\n" +
+                "e = foreach d generate FLATTEN(spectrum);\n" +
+                "f = group b by kmer;\n" +
+                "g = foreach f generate COUNT(b) as n;\n" +
+                "h = group g by n;\n" +
+                "i = foreach h generate group, COUNT(g);\n" +
+                "j = group g all;\n" +
+                "k = foreach j generate COUNT(g);";
+
+        Util.registerMultiLineQuery(ps, script);
+
+        long exactDistinct = (Long) ps.openIterator("k").next().get(0);
+        long distinct = (Long) ps.openIterator("d").next().get(0);
+        assertTrue(exactDistinct > 0);
+        assertEquals(exactDistinct, distinct, 0.03 * exactDistinct);
+
+        Map<Long, Long> exact = new HashMap<Long, Long>();
+        Iterator<Tuple> it = ps.openIterator("i");
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            exact.put((Long) t.get(0), (Long) t.get(1));
+        }
+
+        // with every kmer sampled the spectrum only suffers from sketch
+        // collisions, which move a few percent of the singletons up
+        long singletons = 0;
+        long total = 0;
+        it = ps.openIterator("e");
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if ((Long) t.get(0) == 1) singletons = (Long) t.get(1);
+            total += (Long) t.get(1);
+        }
+        assertEquals(exactDistinct, total);
+        assertTrue(singletons <= exact.get(1L));
+        assertEquals(exact.get(1L), singletons, 0.06 * exact.get(1L));
+    }
+
+    public static Test suite() {
+        return new TestSuite(KmerSpectrumTest.class);
+    }
+}
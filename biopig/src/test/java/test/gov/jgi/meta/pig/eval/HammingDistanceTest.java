@@ -39,16 +39,23 @@
 
 package test.gov.jgi.meta.pig.eval;
 
+import gov.jgi.meta.MetaUtils;
+import gov.jgi.meta.pig.eval.HammingDistance;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.framework.TestCase;
 import org.apache.pig.ExecType;
 import org.apache.pig.PigServer;
+import org.apache.pig.data.DataBag;
 import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
 import test.gov.jgi.meta.Util;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 /**
  * HammingDistance Tester.
@@ -120,6 +127,24 @@ public class HammingDistanceTest extends TestCase {
      }
 
 
+    public void testSequenceNeighbors32merSignBit() throws IOException
+     {
+         // 32-mers starting with g or t have a negative 2-bit code, and the
+         // all-t 32-mer codes to -1
+         String[] seqs = { "gattacagattacagattacagattacagatt", "tcgtcgctgaagccttcttccaccttggcgtt",
+                           "tttttttttttttttttttttttttttttttt", "acgtacgtacgtacgtacgtacgtacgtacgt" };
+         HammingDistance udf = new HammingDistance();
+         for (String seq : seqs) {
+            DataBag bag = udf.exec(TupleFactory.getInstance().newTuple(Arrays.<Object>asList(seq, 2)));
+            Set<String> neighbors = new HashSet<String>();
+            for (Tuple t : bag) {
+               assertTrue("neighbor twice: " + t, neighbors.add((String) t.get(0)));
+            }
+            assertEquals(1 + 32 * 3 + 32 * 31 / 2 * 9, neighbors.size());
+            assertEquals(MetaUtils.generateAllNeighborsWithinDistance(seq, 2), neighbors);
+         }
+     }
+
     public static Test suite() {
         return new TestSuite(HammingDistanceTest.class);
     }
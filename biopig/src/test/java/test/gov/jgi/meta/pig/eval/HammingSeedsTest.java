@@ -0,0 +1,83 @@
+package test.gov.jgi.meta.pig.eval;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.framework.TestCase;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import test.gov.jgi.meta.Util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * HammingSeeds and HammingWithin Tester.
+ */
+public class HammingSeedsTest extends TestCase {
+    public HammingSeedsTest(String name) {
+        super(name);
+    }
+
+    public void testSeedJoinMatchesNeighborJoin() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "a = load 'target/test-classes/threepair.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+                "b = foreach a generate id, gov.jgi.meta.pig.eval.UnpackSequence(gov.jgi.meta.pig.eval.SubSequence(seq, 0, 10)) as barcode;\n" +
+                "z = load 'target/test-classes/1M.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+                "y = foreach z generate id, d, gov.jgi.meta.pig.eval.UnpackSequence(gov.jgi.meta.pig.eval.SubSequence(seq, 0, 10)) as prefix;\n" +
+                "x = filter y by not (prefix matches '.*n.*');\n" +
+
+                // all the neighbors of the barcodes
+                "c = foreach b generate id, FLATTEN(gov.jgi.meta.pig.eval.HammingDistance(barcode, 2)) as neighbor;\n" +
+                "w = join x by prefix, c by neighbor USING 'replicated';\n" +
+                "v = foreach w generate c::id, x::id, x::d;\n" +
+
+                // the seeds of the barcodes
+                "cs = foreach b generate id, barcode, FLATTEN(gov.jgi.meta.pig.eval.HammingSeeds(barcode, 2)) as (segment, bases);\n" +
+                "xs = foreach x generate id, d, prefix, FLATTEN(gov.jgi.meta.pig.eval.HammingSeeds(prefix, 2)) as (segment, bases);\n" +
+                "ws = join xs by (segment, bases), cs by (segment, bases) USING 'replicated';\n" +
+                "vs = foreach (filter ws by gov.jgi.meta.pig.eval.HammingWithin(xs::prefix, cs::barcode, 2, cs::segment) is not null) generate cs::id, xs::id, xs::d;\n";
+
+        Util.registerMultiLineQuery(ps, script);
+        List<String> expected = pairs(ps.openIterator("v"));
+        List<String> actual = pairs(ps.openIterator("vs"));
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, actual);
+    }
+
+    public void testHammingWithin() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "a = load 'target/test-classes/threepair.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+                "b = foreach a generate gov.jgi.meta.pig.eval.UnpackSequence(seq) as s;\n" +
+                "c = foreach b generate gov.jgi.meta.pig.eval.HammingWithin(s, s, 0) as d0, " +
+                "gov.jgi.meta.pig.eval.HammingWithin(s, 'acgt', 2) as d1, " +
+                "gov.jgi.meta.pig.eval.HammingWithin('acgtacgtac', 'acctacgaac', 2) as d2, " +
+                "gov.jgi.meta.pig.eval.HammingWithin('acgtacgtac', 'acctacgaac', 1) as d3;\n";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("c");
+        Tuple t = it.next();
+        assertEquals(0, t.get(0));
+        assertNull(t.get(1));
+        assertEquals(2, t.get(2));
+        assertNull(t.get(3));
+    }
+
+    private static List<String> pairs(Iterator<Tuple> it) throws IOException {
+        List<String> pairs = new ArrayList<String>();
+        while (it.hasNext()) {
+            pairs.add(it.next().toString());
+        }
+        Collections.sort(pairs);
+        return pairs;
+    }
+
+    public static Test suite() {
+        return new TestSuite(HammingSeedsTest.class);
+    }
+}
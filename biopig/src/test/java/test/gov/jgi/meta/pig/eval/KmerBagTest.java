@@ -0,0 +1,71 @@
+package test.gov.jgi.meta.pig.eval;
+
+import gov.jgi.meta.pig.eval.KmerBag;
+import gov.jgi.meta.pig.eval.KmerGenerator;
+import gov.jgi.meta.sequence.RollingKmer;
+import gov.jgi.meta.sequence.SequenceString;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DefaultBagFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+import java.util.Iterator;
+
+/**
+ * KmerBag Tester.
+ */
+public class KmerBagTest extends TestCase {
+    public KmerBagTest(String name) {
+        super(name);
+    }
+
+    static final String READ = "tgcagctcaacancgtcggctacgacnncaccnnngagcgcatcggctncnnnanccctaggtcgcccgcgcgggaggt";
+
+    public void testPackedMatchesEagerBag() throws Exception {
+
+        byte[] packed = SequenceString.sequenceToByteArray(READ);
+        int k = 5;
+        int end = READ.length() - k;
+
+        DataBag expected = DefaultBagFactory.getInstance().newDefaultBag();
+        for (int i = 0; i <= end; i++) {
+            String kmer = READ.substring(i, i + k);
+            if (!kmer.contains("n")) {
+                Tuple t = TupleFactory.getInstance().newTuple(1);
+                t.set(0, new DataByteArray(SequenceString.sequenceToByteArray(kmer)));
+                expected.add(t);
+            }
+        }
+
+        DataBag bag = new KmerBag(packed, k, new int[] { 0 }, new int[] { end }, KmerGenerator.PACKED, false);
+        assertEquals(expected.size(), bag.size());
+        assertEquals(0, expected.compareTo(bag));
+
+        // iterating a second time regenerates the same kmers
+        assertEquals(0, bag.compareTo(expected));
+    }
+
+    public void testLongModeRanges() throws Exception {
+
+        byte[] packed = SequenceString.sequenceToByteArray(READ);
+        int k = 4;
+
+        DataBag bag = new KmerBag(packed, k, new int[] { 0, 60 }, new int[] { 2, 62 }, KmerGenerator.LONG, false);
+        Iterator<Tuple> it = bag.iterator();
+        String[] expected = { "tgca", "gcag", "cagc", "ggtc", "gtcg", "tcgc" };
+        for (String kmer : expected) {
+            assertTrue(it.hasNext());
+            assertEquals(kmer, RollingKmer.decode((Long) it.next().get(0), k));
+        }
+        assertFalse(it.hasNext());
+        assertEquals(expected.length, bag.size());
+    }
+
+    public static Test suite() {
+        return new TestSuite(KmerBagTest.class);
+    }
+}
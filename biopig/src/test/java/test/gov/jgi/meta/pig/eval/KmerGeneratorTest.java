@@ -39,6 +39,8 @@
 
 package test.gov.jgi.meta.pig.eval;
 
+import gov.jgi.meta.pig.eval.KmerGenerator;
+import gov.jgi.meta.sequence.RollingKmer;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.framework.TestCase;
@@ -156,6 +158,63 @@ public class KmerGeneratorTest extends TestCase {
 
   }
 
+  public void testKmerGeneratorLongMode() throws IOException
+  {
+
+       PigServer ps = new PigServer(ExecType.LOCAL);
+       String script = "DEFINE KMERS gov.jgi.meta.pig.eval.KmerGenerator('long');\n" +
+               "a = load 'target/test-classes/1M.fas'  using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+               "aa = filter a by ($0 == '756:1:1:1074:20235') and (d == 2);" +
+               "b = foreach aa generate KMERS(seq, 20) as kmers;\n" +
+               "c = foreach b generate COUNT(kmers);\n" +
+               "d = foreach aa generate FLATTEN(KMERS(seq, 20, 0, 1, 1));";
+
+       Util.registerMultiLineQuery(ps, script);
+       Iterator<Tuple> it = ps.openIterator("c");
+       assertEquals(Util.createTuple(new Long[] { new Long(57) }), it.next());
+
+       it = ps.openIterator("d");
+       assertEquals("tcgtcgctgaagccttcttc", RollingKmer.decode((Long) it.next().get(0), 20));
+       assertEquals("cccctggaccccgcgcccgc", RollingKmer.decode((Long) it.next().get(0), 20));
+  }
+
+  public void testKmerGeneratorCanonical() throws IOException
+  {
+
+       PigServer ps = new PigServer(ExecType.LOCAL);
+       String script = "DEFINE CANONICAL_KMERS gov.jgi.meta.pig.eval.KmerGenerator('packed', 'canonical');\n" +
+               "a = load 'target/test-classes/1M.fas'  using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+               "b = foreach a generate FLATTEN(gov.jgi.meta.pig.eval.KmerGenerator(seq, 12)) as kmer;\n" +
+               "c = foreach b generate gov.jgi.meta.pig.eval.LessKmer(gov.jgi.meta.pig.eval.UnpackSequence(kmer));\n" +
+               "d = foreach a generate FLATTEN(CANONICAL_KMERS(seq, 12)) as kmer;\n" +
+               "e = foreach d generate gov.jgi.meta.pig.eval.UnpackSequence(kmer);";
+
+       Util.registerMultiLineQuery(ps, script);
+       Iterator<Tuple> expected = ps.openIterator("c");
+       Iterator<Tuple> it = ps.openIterator("e");
+
+       int n = 0;
+       while (expected.hasNext()) {
+           assertEquals(expected.next(), it.next());
+           n++;
+       }
+       assertFalse(it.hasNext());
+       assertTrue(n > 0);
+  }
+
+  public void testIsCanonical()
+  {
+       assertTrue(KmerGenerator.isCanonical("canonical"));
+       assertTrue(KmerGenerator.isCanonical("Canonical"));
+       assertFalse(KmerGenerator.isCanonical("forward"));
+       try {
+           KmerGenerator.isCanonical("reverse");
+           fail("an unknown strand must be rejected");
+       } catch (RuntimeException e) {
+           // expected
+       }
+  }
+
     public static Test suite() {
         return new TestSuite(KmerGeneratorTest.class);
     }
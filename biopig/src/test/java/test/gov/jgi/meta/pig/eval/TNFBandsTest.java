@@ -0,0 +1,77 @@
+package test.gov.jgi.meta.pig.eval;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.framework.TestCase;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import test.gov.jgi.meta.Util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * TNFBands Tester.
+ */
+public class TNFBandsTest extends TestCase {
+    public TNFBandsTest(String name) {
+        super(name);
+    }
+
+    public void testTNFBandsFindsClosePairs() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        Util.registerMultiLineQuery(ps,
+                "DEFINE BANDS gov.jgi.meta.pig.eval.TNFBands('32', '2'); \n" +
+                "DEFINE CLOSE gov.jgi.meta.pig.eval.TileDistance('euclidean', '0.3'); \n" +
+                "A = load 'target/test-classes/shredded_36l_o22.fa' using gov.jgi.meta.pig.storage.FastaStorage as (readid: chararray, d: chararray, seq: bytearray); \n" +
+                "E = foreach A generate readid, gov.jgi.meta.pig.eval.TNFVector(seq, 4) as tnf; \n" +
+                "T = foreach E generate flatten(gov.jgi.meta.pig.eval.DistanceTiles(readid, 1)), readid, tnf; \n" +
+                "L = foreach (group T by (tile1, tile2)) generate flatten(CLOSE(T)) as (read1, read2, distance); \n" +
+                "L2 = foreach L generate (read1 < read2 ? read1 : read2), (read1 < read2 ? read2 : read1), distance; \n" +
+                "B = foreach E generate flatten(BANDS(tnf)), readid, tnf; \n" +
+                "C = foreach (group B by (band, key)) generate flatten(CLOSE(B.(readid, tnf))); \n" +
+                "M = distinct C; \n");
+
+        Map<String, Double> expected = distances(ps.openIterator("L2"));
+        Map<String, Double> actual = distances(ps.openIterator("M"));
+        assertTrue(expected.size() > 0);
+        // with many short bands, all the close pairs are found, and only once
+        assertEquals(expected, actual);
+    }
+
+    public void testTNFBandsSkipsFarPairs() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        Util.registerMultiLineQuery(ps,
+                "DEFINE BANDS gov.jgi.meta.pig.eval.TNFBands('4', '16'); \n" +
+                "A = load 'target/test-classes/shredded_36l_o22.fa' using gov.jgi.meta.pig.storage.FastaStorage as (readid: chararray, d: chararray, seq: bytearray); \n" +
+                "E = foreach A generate readid, gov.jgi.meta.pig.eval.TNFVector(seq, 4) as tnf; \n" +
+                "B = foreach E generate flatten(BANDS(tnf)), readid, tnf; \n" +
+                "C = foreach (group B by (band, key)) generate flatten(gov.jgi.meta.pig.eval.TileDistance(B.(readid, tnf))); \n" +
+                "M = distinct C; \n");
+
+        Map<String, Double> candidates = distances(ps.openIterator("M"));
+        assertTrue(candidates.size() < 76 * 75 / 2);
+        for (String pair : candidates.keySet()) {
+            String[] ids = pair.split(" ");
+            assertTrue(pair, ids[0].compareTo(ids[1]) < 0);
+        }
+    }
+
+    private static Map<String, Double> distances(Iterator<Tuple> it) throws IOException {
+        Map<String, Double> d = new HashMap<String, Double>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertNull("pair found twice", d.put(t.get(0) + " " + t.get(1), ((Number) t.get(2)).doubleValue()));
+        }
+        return d;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TNFBandsTest.class);
+    }
+}
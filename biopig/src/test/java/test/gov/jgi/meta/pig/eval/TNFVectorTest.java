@@ -0,0 +1,81 @@
+package test.gov.jgi.meta.pig.eval;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.framework.TestCase;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import test.gov.jgi.meta.Util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * TNFVector, TNFVectorDistance and TNFVectorHammingDistance Tester.
+ */
+public class TNFVectorTest extends TestCase {
+    public TNFVectorTest(String name) {
+        super(name);
+    }
+
+    private static final String KMER_BAGS =
+            "A = load 'target/test-classes/threepair.fas' using gov.jgi.meta.pig.storage.FastaStorage as (readid: chararray, d: chararray, seq: bytearray); \n" +
+            "B = foreach A generate readid, gov.jgi.meta.pig.eval.KmerGenerator(seq, 4) as kmers; \n" +
+            "BB = foreach B generate readid, flatten(kmers); \n" +
+            "C = foreach BB generate readid, gov.jgi.meta.pig.eval.UnpackSequence(kmer) as kmer; \n" +
+            "D = foreach (group C by (readid, kmer)) generate flatten(group), COUNT($1) as cnt; \n" +
+            "E = foreach (GROUP D by $0) { data = foreach $1 generate $1 as kmer, $2 as cnt; generate $0 as readid, data; }; \n" +
+            "E2 = foreach E generate *; \n" +
+            "J = foreach (CROSS E, E2) generate $0 as read1, $2 as read2, ($1,$3) as data; \n";
+
+    private static final String VECTORS =
+            "A = load 'target/test-classes/threepair.fas' using gov.jgi.meta.pig.storage.FastaStorage as (readid: chararray, d: chararray, seq: bytearray); \n" +
+            "V = foreach (GROUP A by readid) generate group as readid, gov.jgi.meta.pig.eval.TNFVector(A.seq, 4) as tnf; \n" +
+            "V2 = foreach V generate *; \n" +
+            "VJ = foreach (CROSS V, V2) generate V::readid as read1, V2::readid as read2, V::tnf as tnf1, V2::tnf as tnf2; \n";
+
+    public void testTNFVectorDistance() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        Util.registerMultiLineQuery(ps, KMER_BAGS + VECTORS +
+                "L = foreach J generate read1, read2, flatten(gov.jgi.meta.pig.eval.TNFDistance2(data)); \n" +
+                "M = foreach VJ generate read1, read2, gov.jgi.meta.pig.eval.TNFVectorDistance(tnf1, tnf2); \n");
+
+        Map<String, Double> expected = distances(ps.openIterator("L"));
+        Map<String, Double> actual = distances(ps.openIterator("M"));
+        assertEquals(9, expected.size());
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String pair : expected.keySet()) {
+            assertEquals(pair, expected.get(pair), actual.get(pair), 1e-9);
+        }
+    }
+
+    public void testTNFVectorHammingDistance() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        Util.registerMultiLineQuery(ps, KMER_BAGS + VECTORS +
+                "L = foreach J generate read1, read2, flatten(gov.jgi.meta.pig.eval.TNFHammingDistance(data)); \n" +
+                "M = foreach VJ generate read1, read2, gov.jgi.meta.pig.eval.TNFVectorHammingDistance(tnf1, tnf2); \n");
+
+        Map<String, Double> expected = distances(ps.openIterator("L"));
+        Map<String, Double> actual = distances(ps.openIterator("M"));
+        assertEquals(9, expected.size());
+        assertEquals(expected, actual);
+    }
+
+    private static Map<String, Double> distances(Iterator<Tuple> it) throws IOException {
+        Map<String, Double> d = new HashMap<String, Double>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            d.put(t.get(0) + " " + t.get(1), ((Number) t.get(2)).doubleValue());
+        }
+        return d;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TNFVectorTest.class);
+    }
+}
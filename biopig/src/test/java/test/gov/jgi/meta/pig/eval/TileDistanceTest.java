@@ -0,0 +1,92 @@
+package test.gov.jgi.meta.pig.eval;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.framework.TestCase;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import test.gov.jgi.meta.Util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * DistanceTiles and TileDistance Tester.
+ */
+public class TileDistanceTest extends TestCase {
+    public TileDistanceTest(String name) {
+        super(name);
+    }
+
+    private static final String VECTORS =
+            "A = load 'target/test-classes/shredded_36l_o22.fa' using gov.jgi.meta.pig.storage.FastaStorage as (readid: chararray, d: chararray, seq: bytearray); \n" +
+            "E = foreach A generate readid, gov.jgi.meta.pig.eval.TNFVector(seq, 4) as tnf; \n" +
+            "E2 = foreach E generate *; \n" +
+            "J = foreach (CROSS E, E2) generate E::readid as read1, E2::readid as read2, E::tnf as tnf1, E2::tnf as tnf2; \n" +
+            "T = foreach E generate flatten(gov.jgi.meta.pig.eval.DistanceTiles(readid, 4)), readid, tnf; \n";
+
+    public void testTileDistance() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        Util.registerMultiLineQuery(ps, VECTORS +
+                "L = foreach J generate read1, read2, gov.jgi.meta.pig.eval.TNFVectorDistance(tnf1, tnf2); \n" +
+                "M = foreach (group T by (tile1, tile2)) generate flatten(gov.jgi.meta.pig.eval.TileDistance(T)); \n");
+
+        Map<String, Double> expected = distances(ps.openIterator("L"));
+        Map<String, Double> actual = distances(ps.openIterator("M"));
+        assertEquals(76 * 76, expected.size());
+        assertEquals(76 * 75 / 2, actual.size());
+        for (String pair : actual.keySet()) {
+            assertEquals(pair, expected.get(pair), actual.get(pair), 1e-9);
+        }
+    }
+
+    public void testTileHammingDistanceWithin() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        Util.registerMultiLineQuery(ps, VECTORS +
+                "DEFINE HAMMING gov.jgi.meta.pig.eval.TileDistance('hamming', '10'); \n" +
+                "L = foreach J generate read1, read2, gov.jgi.meta.pig.eval.TNFVectorHammingDistance(tnf1, tnf2) as distance; \n" +
+                "LL = filter L by distance <= 10 and read1 != read2; \n" +
+                "M = foreach (group T by (tile1, tile2)) generate flatten(HAMMING(T)); \n");
+
+        Map<String, Double> expected = distances(ps.openIterator("LL"));
+        Map<String, Double> actual = distances(ps.openIterator("M"));
+        assertTrue(actual.size() > 0);
+        // every pair within the distance, in one order or the other
+        assertEquals(expected.size(), 2 * actual.size());
+        for (String pair : actual.keySet()) {
+            assertEquals(pair, expected.get(pair), actual.get(pair));
+        }
+    }
+
+    public void testBucketCap() throws IOException {
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        Util.registerMultiLineQuery(ps, VECTORS +
+                "DEFINE CAP76 gov.jgi.meta.pig.eval.TileDistance('euclidean', '2', '76'); \n" +
+                "DEFINE CAP75 gov.jgi.meta.pig.eval.TileDistance('euclidean', '2', '75'); \n" +
+                "M = foreach (group E all) generate flatten(CAP76(E.(readid, tnf))); \n" +
+                "N = foreach (group E all) generate flatten(CAP75(E.(readid, tnf))); \n");
+
+        // a bucket of all 76 reads is compared at the cap and skipped above it
+        assertEquals(76 * 75 / 2, distances(ps.openIterator("M")).size());
+        assertFalse(ps.openIterator("N").hasNext());
+    }
+
+    private static Map<String, Double> distances(Iterator<Tuple> it) throws IOException {
+        Map<String, Double> d = new HashMap<String, Double>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            d.put(t.get(0) + " " + t.get(1), ((Number) t.get(2)).doubleValue());
+        }
+        return d;
+    }
+
+    public static Test suite() {
+        return new TestSuite(TileDistanceTest.class);
+    }
+}
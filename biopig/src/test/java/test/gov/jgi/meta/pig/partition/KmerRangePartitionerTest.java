@@ -0,0 +1,140 @@
+package test.gov.jgi.meta.pig.partition;
+
+import gov.jgi.meta.pig.aggregate.KmerPartitionBoundaries;
+import gov.jgi.meta.pig.partition.KmerRangePartitioner;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DefaultBagFactory;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.io.NullableLongWritable;
+import org.apache.pig.impl.io.NullableTuple;
+import test.gov.jgi.meta.Util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Properties;
+
+/**
+ * KmerRangePartitioner Tester.
+ */
+public class KmerRangePartitionerTest extends TestCase {
+    public KmerRangePartitionerTest(String name) {
+        super(name);
+    }
+
+    private static KmerRangePartitioner partitioner(String k, String boundaries) {
+        Configuration conf = new Configuration(false);
+        if (k != null) conf.set(KmerRangePartitioner.KMER_SIZE, k);
+        if (boundaries != null) conf.set(KmerRangePartitioner.BOUNDARIES, boundaries);
+        KmerRangePartitioner p = new KmerRangePartitioner();
+        p.setConf(conf);
+        return p;
+    }
+
+    private static int partition(KmerRangePartitioner p, long kmer, int n) {
+        return p.getPartition(new NullableLongWritable(kmer), null, n);
+    }
+
+    public void testUniformPrefixRanges() throws Exception {
+
+        KmerRangePartitioner p = partitioner("4", null);
+        // 256 4-mers over 4 partitions, one per first base
+        assertEquals(0, partition(p, 0, 4));
+        assertEquals(0, partition(p, 63, 4));
+        assertEquals(1, partition(p, 64, 4));
+        assertEquals(3, partition(p, 255, 4));
+
+        // 32-mers use the whole signed range
+        p = partitioner("32", null);
+        assertEquals(0, partition(p, Long.MIN_VALUE, 3));
+        assertEquals(2, partition(p, Long.MAX_VALUE, 3));
+        int last = 0;
+        for (long k = Long.MIN_VALUE; k < Long.MAX_VALUE - (1L << 58); k += (1L << 58)) {
+            int q = partition(p, k, 3);
+            assertTrue(q >= last);
+            last = q;
+        }
+
+        // longpair keys partition on the high half
+        p = partitioner("40", null);
+        Tuple key = TupleFactory.getInstance().newTuple(Arrays.<Object>asList((1L << 16) - 1, 5L));
+        assertEquals(7, p.getPartition(new NullableTuple(key), null, 8));
+    }
+
+    public void testSampledBoundaries() throws Exception {
+
+        DataBag sample = DefaultBagFactory.getInstance().newDefaultBag();
+        for (long k = 99; k >= 0; k--) {
+            sample.add(TupleFactory.getInstance().newTuple(Arrays.<Object>asList(k * 10, 0L)));
+        }
+        String boundaries = new KmerPartitionBoundaries().exec(TupleFactory.getInstance().newTuple(Arrays.<Object>asList(sample, 4)));
+        assertEquals("250,500,750", boundaries);
+
+        KmerRangePartitioner p = partitioner(null, boundaries);
+        assertEquals(0, partition(p, -5, 4));
+        assertEquals(0, partition(p, 249, 4));
+        assertEquals(1, partition(p, 250, 4));
+        assertEquals(2, partition(p, 700, 4));
+        assertEquals(3, partition(p, 750, 4));
+        assertEquals(3, partition(p, 1L << 40, 4));
+        assertEquals(1, partition(p, 1L << 40, 2));
+    }
+
+    public void testDistinctPartitionBy() throws Exception {
+
+        Properties props = new Properties();
+        props.setProperty(KmerRangePartitioner.KMER_SIZE, "20");
+        PigServer ps = new PigServer(ExecType.LOCAL, props);
+        String script = "DEFINE KMERS gov.jgi.meta.pig.eval.KmerGenerator('long');\n" +
+                "a = load 'target/test-classes/1M.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+                "b = foreach a generate FLATTEN(KMERS(seq, 20)) as (kmer:long);\n" +
+                "bb = group b by kmer PARTITION BY gov.jgi.meta.pig.partition.KmerRangePartitioner PARALLEL 3;\n" +
+                "c = foreach bb generate group;\n" +
+                "d = group c all;\n" +
+                "e = foreach d generate COUNT(c);\n" +
+                "f = DISTINCT b;\n" +
+                "g = group f all;\n" +
+                "h = foreach g generate COUNT(f);";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("e");
+        Tuple count = it.next();
+        assertTrue((Long) count.get(0) > 0);
+        assertEquals(ps.openIterator("h").next(), count);
+
+        // the part files are sorted and in order
+        File out = new File("target/kmer-range-partitioned");
+        FileUtil.fullyDelete(out);
+        ps.store("c", out.getPath());
+        long last = Long.MIN_VALUE;
+        int nonEmpty = 0;
+        for (int i = 0; i < 3; i++) {
+            BufferedReader in = new BufferedReader(new FileReader(new File(out, "part-r-0000" + i)));
+            String line;
+            boolean empty = true;
+            while ((line = in.readLine()) != null) {
+                long kmer = Long.parseLong(line.trim());
+                assertTrue(kmer > last);
+                last = kmer;
+                empty = false;
+            }
+            in.close();
+            if (!empty) nonEmpty++;
+        }
+        assertEquals(3, nonEmpty);
+    }
+
+    public static Test suite() {
+        return new TestSuite(KmerRangePartitionerTest.class);
+    }
+}
@@ -67,6 +67,47 @@ public class FastaBlockStorageTest extends TestCase {
         assertEquals(Util.createTuple(new String[] { "756:1:1:1597:17929" }), it.next());
         assertFalse(it.hasNext());
    }
+    public void testFastaBlockStorageBlockSize() throws IOException
+   {
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "a = load 'target/test-classes/1M.fas' using gov.jgi.meta.pig.storage.FastaBlockStorage('1000') as (offset: int, b:bag {s:(id: chararray, d: int, sequence: chararray)});\n" +
+                "c = foreach a generate COUNT(b);";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("c");
+
+        long total = 0;
+        int blocks = 0;
+        while (it.hasNext()) {
+            long n = (Long) it.next().get(0);
+            assertTrue(n <= 1000);
+            total += n;
+            blocks++;
+        }
+        assertEquals(10638, total);
+        assertEquals(11, blocks);
+   }
+
+    public void testFastaBlockStorageReads() throws IOException
+   {
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "a = load 'target/test-classes/threepair.fas' using gov.jgi.meta.pig.storage.FastaBlockStorage as (offset: int, b:bag {s:(id: chararray, d: int, sequence: chararray)});\n" +
+                "c = foreach a generate FLATTEN(b);";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("c");
+
+        Tuple t = it.next();
+        assertEquals("756:1:1:1074:20235", t.get(0));
+        assertEquals(1, t.get(1));
+        assertEquals("TGCAGCTCAACANCGTCGGCTACGACNNCACCNNNGAGCGCATCGGCTNCNNNANNNCCTNNNNNNNNCGGGAGGT".toLowerCase(), t.get(2));
+        t = it.next();
+        assertEquals("856:1:1:1074:20235", t.get(0));
+        assertEquals(2, t.get(1));
+        assertEquals("956:1:1:1074:20235", it.next().get(0));
+        assertFalse(it.hasNext());
+   }
+
     /**
      *
      * Method: getInputFormat()
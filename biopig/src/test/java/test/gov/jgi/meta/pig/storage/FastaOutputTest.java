@@ -39,9 +39,29 @@
 
 package test.gov.jgi.meta.pig.storage;
 
+import gov.jgi.meta.pig.storage.FastaOutput;
+import gov.jgi.meta.sequence.QualityString;
+import gov.jgi.meta.sequence.SequenceString;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.framework.TestCase;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import test.gov.jgi.meta.Util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.Iterator;
 
 /**
  * FastaOutput Tester.
@@ -69,7 +89,130 @@ public class FastaOutputTest extends TestCase {
      *
      */
     public void testPutNext() throws Exception {
-        //TODO: Test goes here...
+        for (String location : new String[] {"1M.fas", "1M.fas.gz", "1M.fas.bgz"}) {
+            File out = new File("target/fasta-output-test/" + location);
+            delete(out);
+
+            PigServer ps = new PigServer(ExecType.LOCAL);
+            Util.registerMultiLineQuery(ps, "a = load 'target/test-classes/1M.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray, header: chararray);");
+            ps.store("a", out.getPath(), "gov.jgi.meta.pig.storage.FastaOutput('packed', '60')");
+
+            String script = "b = load '" + out.getPath() + "' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+                    "c = group b by '1';\n" +
+                    "d = foreach c generate COUNT(b);\n" +
+                    "e = filter b by id == '756:1:1:1074:20235' and d == 2;\n" +
+                    "f = foreach e generate gov.jgi.meta.pig.eval.UnpackSequence(seq);";
+            Util.registerMultiLineQuery(ps, script);
+            Iterator<Tuple> it = ps.openIterator("d");
+            assertEquals(location, Util.createTuple(new Long[] { new Long(10638) }), it.next());
+
+            it = ps.openIterator("f");
+            assertEquals("TCGTCGCTGAAGCCTTCTTCCACCTTGGCGTTGAACGCCTCCATGTCCAGTGGAGTCCCCTGGACCCCGCGCCCGC".toLowerCase(), it.next().get(0));
+            assertFalse(it.hasNext());
+        }
+
+        // the 76 base reads are wrapped at 60
+        BufferedReader r = new BufferedReader(new FileReader("target/fasta-output-test/1M.fas/part-m-00000"));
+        assertEquals(">756:1:1:1074:20235/1", r.readLine());
+        assertEquals("TGCAGCTCAACANCGTCGGCTACGACNNCACCNNNGAGCGCATCGGCTNCNNNANNNCCT".toLowerCase(), r.readLine());
+        assertEquals("NNNNNNNNCGGGAGGT".toLowerCase(), r.readLine());
+        assertEquals(">756:1:1:1074:20235/2", r.readLine());
+        r.close();
+    }
+
+    public void testPutNextFastq() throws Exception {
+        File out = new File("target/fasta-output-test/reads.fq");
+        delete(out);
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        Util.registerMultiLineQuery(ps, "a = load 'target/test-classes/testfastq2fasta.fasq' using gov.jgi.meta.pig.storage.FastqStorage('quality') as (id: chararray, d: int, seq: chararray, q: bytearray);");
+        ps.store("a", out.getPath(), "gov.jgi.meta.pig.storage.FastaOutput('fastq')");
+
+        BufferedReader r = new BufferedReader(new FileReader(new File(out, "part-m-00000")));
+        assertEquals("@SEQ_ID", r.readLine());
+        assertEquals("GATTTGGGGTTCAAAGCAGTATCGATCAAATAGTAAATCCATTTGTTCAACTCACAGTTT", r.readLine());
+        assertEquals("+", r.readLine());
+        assertEquals("!''*((((***+))%%%++)(%%%%).1***-+*''))**55CCF>>>>>>CCCCCCC65", r.readLine());
+        assertNull(r.readLine());
+        r.close();
+    }
+
+    public void testPutNextFastqQualityLength() throws Exception {
+        final StringBuilder written = new StringBuilder();
+        FastaOutput out = new FastaOutput("fastq");
+        out.prepareToWrite(new RecordWriter<NullWritable, Text>() {
+            public void write(NullWritable key, Text value) {
+                written.append(value.toString());
+            }
+
+            public void close(TaskAttemptContext context) {
+            }
+        });
+
+        TupleFactory tf = TupleFactory.getInstance();
+        out.putNext(tf.newTuple(Arrays.<Object>asList("r1", 1, "acgt", "!!!!")));
+        assertEquals("@r1/1\nacgt\n+\n!!!!\n", written.toString());
+
+        try {
+            out.putNext(tf.newTuple(Arrays.<Object>asList("r2", 1, "acgt", "!!!")));
+            fail("a quality shorter than the sequence must be rejected");
+        } catch (ExecException e) {
+            // expected
+        }
+        try {
+            out.putNext(tf.newTuple(Arrays.<Object>asList("r3", 1, "acgt", new DataByteArray(QualityString.pack("!!!!!".getBytes("ISO-8859-1"), 0, 5, QualityString.PHRED33, false)))));
+            fail("a packed quality longer than the sequence must be rejected");
+        } catch (ExecException e) {
+            // expected
+        }
+    }
+
+    public void testPutNextBytearraySequence() throws Exception {
+        final StringBuilder written = new StringBuilder();
+        RecordWriter<NullWritable, Text> writer = new RecordWriter<NullWritable, Text>() {
+            public void write(NullWritable key, Text value) {
+                written.append(value.toString());
+            }
+
+            public void close(TaskAttemptContext context) {
+            }
+        };
+        TupleFactory tf = TupleFactory.getInstance();
+        DataByteArray raw = new DataByteArray("GATTACA");
+
+        FastaOutput out = new FastaOutput("raw");
+        out.prepareToWrite(writer);
+        out.putNext(tf.newTuple(Arrays.<Object>asList("r1", 0, raw)));
+        out = new FastaOutput("packed");
+        out.prepareToWrite(writer);
+        out.putNext(tf.newTuple(Arrays.<Object>asList("r2", 0, new DataByteArray(SequenceString.sequenceToByteArray("gattaca")))));
+        assertEquals(">r1\nGATTACA\n>r2\ngattaca\n", written.toString());
+
+        // a bytearray sequence is refused until the store is told what it holds
+        out = new FastaOutput();
+        out.prepareToWrite(writer);
+        try {
+            out.putNext(tf.newTuple(Arrays.<Object>asList("r3", 0, raw)));
+            fail("a bytearray sequence must need 'packed' or 'raw'");
+        } catch (ExecException e) {
+            // expected
+        }
+        out = new FastaOutput("packed");
+        out.prepareToWrite(writer);
+        try {
+            out.putNext(tf.newTuple(Arrays.<Object>asList("r4", 0, new DataByteArray("GATTACA\n"))));
+            fail("bytes that are not a packing must be rejected");
+        } catch (ExecException e) {
+            // expected
+        }
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File c : files) delete(c);
+        }
+        f.delete();
     }
 
     /**
@@ -100,26 +243,6 @@ public class FastaOutputTest extends TestCase {
     }
 
 
-    /**
-     *
-     * Method: putField(Object field)
-     *
-     */
-    public void testPutField() throws Exception {
-        //TODO: Test goes here...
-        /*
-        try {
-           Method method = FastaOutput.class.getMethod("putField", Object.class);
-           method.setAccessible(true);
-           method.invoke(<Object>, <Parameters>);
-        } catch(NoSuchMethodException e) {
-        } catch(IllegalAccessException e) {
-        } catch(InvocationTargetException e) {
-        }
-        */
-        }
-
-
     public static Test suite() {
         return new TestSuite(FastaOutputTest.class);
     }
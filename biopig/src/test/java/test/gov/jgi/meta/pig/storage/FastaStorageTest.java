@@ -8,6 +8,8 @@ import org.apache.pig.ExecType;
 import org.apache.pig.PigServer;
 import org.apache.pig.data.Tuple;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Iterator;
 
@@ -70,6 +72,36 @@ public class FastaStorageTest extends TestCase {
      }
 
 
+    public void testFastaStorageProjection() throws IOException
+     {
+          File f = new File("target/projection-test/reads.fas");
+          f.getParentFile().mkdirs();
+          FileWriter w = new FileWriter(f);
+          w.write(">r1/2 first read\nACGT\n>r2\tsecond\nGGCC\n>r3\nTT\n");
+          w.close();
+
+          PigServer ps = new PigServer(ExecType.LOCAL);
+          String script = "a = load '" + f.getPath() + "' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray, header: chararray);\n" +
+                  "b = foreach a generate header, id, d;\n" +
+                  "c = foreach a generate d;\n" +
+                  "e = foreach a generate gov.jgi.meta.pig.eval.UnpackSequence(seq);";
+
+          Util.registerMultiLineQuery(ps, script);
+          Iterator<Tuple> it = ps.openIterator("b");
+          assertEquals(Util.createTuple(new Object[] { " first read", "r1", 2 }), it.next());
+          assertEquals(Util.createTuple(new Object[] { "\tsecond", "r2", 0 }), it.next());
+          assertEquals(Util.createTuple(new Object[] { "", "r3", 0 }), it.next());
+          assertFalse(it.hasNext());
+
+          it = ps.openIterator("c");
+          assertEquals(Util.createTuple(new Integer[] { 2 }), it.next());
+          assertEquals(Util.createTuple(new Integer[] { 0 }), it.next());
+
+          it = ps.openIterator("e");
+          assertEquals(Util.createTuple(new String[] { "acgt" }), it.next());
+     }
+
+
    public static Test suite()
    {
       return(new TestSuite(FastaStorageTest.class ));
@@ -42,6 +42,12 @@ package test.gov.jgi.meta.pig.storage;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.framework.TestCase;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import test.gov.jgi.meta.Util;
+
+import java.util.Iterator;
 
 /**
  * FastqBlockStorage Tester.
@@ -69,7 +75,15 @@ public class FastqBlockStorageTest extends TestCase {
      *
      */
     public void testGetNext() throws Exception {
-        //TODO: Test goes here...
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "a = load 'target/test-classes/testfastq2fasta.fasq' using gov.jgi.meta.pig.storage.FastqBlockStorage as (offset: int, b:bag {s:(id: chararray, d: int, sequence: chararray)});\n" +
+                "c = foreach a generate FLATTEN(b);";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("c");
+
+        assertEquals(Util.createTuple(new Object[] { "SEQ_ID", 0, "GATTTGGGGTTCAAAGCAGTATCGATCAAATAGTAAATCCATTTGTTCAACTCACAGTTT".toLowerCase() }), it.next());
+        assertFalse(it.hasNext());
     }
 
     /**
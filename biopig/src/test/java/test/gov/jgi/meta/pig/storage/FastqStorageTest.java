@@ -42,6 +42,14 @@ package test.gov.jgi.meta.pig.storage;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.framework.TestCase;
+import gov.jgi.meta.sequence.QualityString;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import test.gov.jgi.meta.Util;
+
+import java.util.Iterator;
 
 /**
  * FastqStorage Tester.
@@ -69,7 +77,62 @@ public class FastqStorageTest extends TestCase {
      *
      */
     public void testGetNext() throws Exception {
-        //TODO: Test goes here...
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "a = load 'target/test-classes/testfastq2fasta.fasq' using gov.jgi.meta.pig.storage.FastqStorage as (id: chararray, d: int, seq: chararray);\n" +
+                "b = load 'target/test-classes/testfastq2fasta.fasq' using gov.jgi.meta.pig.storage.FastqStorage('quality') as (id: chararray, d: int, seq: chararray, q: bytearray);\n" +
+                "c = foreach b generate gov.jgi.meta.pig.eval.UnpackQuality(q);";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("a");
+        Tuple t = it.next();
+        assertEquals(3, t.size());
+        assertEquals("SEQ_ID", t.get(0).toString());
+        assertEquals("GATTTGGGGTTCAAAGCAGTATCGATCAAATAGTAAATCCATTTGTTCAACTCACAGTTT", t.get(2).toString());
+        assertFalse(it.hasNext());
+
+        it = ps.openIterator("c");
+        assertEquals("!''*((((***+))%%%++)(%%%%).1***-+*''))**55CCF>>>>>>CCCCCCC65", it.next().get(0));
+        assertFalse(it.hasNext());
+    }
+
+    public void testGetNextBinned() throws Exception {
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "a = load 'target/test-classes/testfastq2fasta.fasq' using gov.jgi.meta.pig.storage.FastqStorage('binned') as (id: chararray, d: int, seq: chararray, q: bytearray);\n" +
+                "b = foreach a generate q, gov.jgi.meta.pig.eval.QualityTrim(q, 20), gov.jgi.meta.pig.eval.MeanQuality(q);\n" +
+                "c = filter a by gov.jgi.meta.pig.eval.QualityFilter(q, 20, 0.5);\n" +
+                "d = filter a by gov.jgi.meta.pig.eval.QualityFilter(q, 20, 0.9);";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("b");
+        Tuple t = it.next();
+        byte[] q = ((DataByteArray) t.get(0)).get();
+        assertEquals(QualityString.BINNED, q[0]);
+        assertEquals(31, q.length);
+        assertEquals(60, QualityString.numBases(q));
+        assertEquals(QualityString.trimLength(q, 20), t.get(1));
+        assertEquals(QualityString.meanQuality(q), (Double) t.get(2), 1e-9);
+
+        // most of the read is below 20
+        assertFalse(ps.openIterator("c").hasNext());
+        assertTrue(ps.openIterator("d").hasNext());
+    }
+
+    public void testGetNextProjection() throws Exception {
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "a = load 'target/test-classes/testfastq2fasta.fasq' using gov.jgi.meta.pig.storage.FastqStorage('quality') as (id: chararray, d: int, seq: chararray, q: bytearray);\n" +
+                "b = foreach a generate id;\n" +
+                "c = foreach a generate gov.jgi.meta.pig.eval.MeanQuality(q), d;";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("b");
+        assertEquals(Util.createTuple(new String[] { "SEQ_ID" }), it.next());
+        assertFalse(it.hasNext());
+
+        it = ps.openIterator("c");
+        Tuple t = it.next();
+        assertEquals(2, t.size());
+        assertTrue((Double) t.get(0) > 0);
+        assertEquals(0, t.get(1));
     }
 
     /**
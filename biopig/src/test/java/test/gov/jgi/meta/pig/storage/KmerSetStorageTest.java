@@ -0,0 +1,86 @@
+package test.gov.jgi.meta.pig.storage;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import test.gov.jgi.meta.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * KmerSetStorage and KmerSetContains Tester.
+ */
+public class KmerSetStorageTest extends TestCase {
+    public KmerSetStorageTest(String name) {
+        super(name);
+    }
+
+    public void testStoreLoadAndContains() throws Exception {
+
+        File out = new File("target/kmerset-storage-test");
+        FileUtil.fullyDelete(out);
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "DEFINE KMERS gov.jgi.meta.pig.eval.KmerGenerator('long');\n" +
+                "a = load 'target/test-classes/1M.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);\n" +
+                "aa = filter a by (d == 1);\n" +
+                "b = foreach aa generate FLATTEN(KMERS(seq, 20)) as (kmer:long);\n" +
+                "c = group b by kmer PARTITION BY gov.jgi.meta.pig.partition.KmerRangePartitioner PARALLEL 2;\n" +
+                "d = foreach c generate group;";
+        Util.registerMultiLineQuery(ps, script);
+        ps.store("d", out.getPath(), "gov.jgi.meta.pig.storage.KmerSetStorage('20')");
+
+        script = "e = load '" + out.getPath() + "' using gov.jgi.meta.pig.storage.KmerSetStorage() as (kmer: long);\n" +
+                "f = group e all;\n" +
+                "g = foreach f generate COUNT(e);\n" +
+                "h = group d all;\n" +
+                "i = foreach h generate COUNT(d);\n" +
+                "DEFINE IN_SET gov.jgi.meta.pig.eval.KmerSetContains('" + out.getPath() + "', '20');\n" +
+                "j = foreach a generate d, IN_SET(KMERS(seq, 20)) as found, COUNT(KMERS(seq, 20)) as n;\n" +
+                "k = filter j by (n > 0);\n" +
+                "l = group k by (d, found);\n" +
+                "m = foreach l generate FLATTEN(group), COUNT(k);";
+        Util.registerMultiLineQuery(ps, script);
+
+        Tuple loaded = ps.openIterator("g").next();
+        assertTrue((Long) loaded.get(0) > 0);
+        assertEquals(ps.openIterator("i").next(), loaded);
+
+        // every /1 read with a kmer is found, and the set screens out some /2 reads
+        Iterator<Tuple> it = ps.openIterator("m");
+        long notFound1 = 0, notFound2 = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int d = (Integer) t.get(0);
+            boolean found = (Boolean) t.get(1);
+            long n = (Long) t.get(2);
+            if (d == 1 && !found) notFound1 += n;
+            if (d == 2 && !found) notFound2 += n;
+        }
+        assertEquals(0, notFound1);
+        assertTrue(notFound2 > 0);
+
+        // kmers of another k or strand than the set's are never found, so they are rejected
+        String[] wrong = { "'25'", "'20', 'canonical'" };
+        for (String args : wrong) {
+            Util.registerMultiLineQuery(ps, "DEFINE WRONG_SET gov.jgi.meta.pig.eval.KmerSetContains('" + out.getPath() + "', " + args + ");\n" +
+                    "n = foreach a generate WRONG_SET(KMERS(seq, 20));");
+            try {
+                ps.openIterator("n").next();
+                fail("a kmer set lookup with " + args + " must fail");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(KmerSetStorageTest.class);
+    }
+}
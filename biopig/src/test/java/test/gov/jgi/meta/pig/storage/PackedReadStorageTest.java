@@ -0,0 +1,142 @@
+package test.gov.jgi.meta.pig.storage;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.framework.TestCase;
+import gov.jgi.meta.pig.storage.PackedReadStorage;
+import gov.jgi.meta.sequence.PackedRead;
+import gov.jgi.meta.sequence.SequenceString;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import test.gov.jgi.meta.Util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * PackedReadStorage Tester.
+ */
+public class PackedReadStorageTest extends TestCase {
+    public PackedReadStorageTest(String name) {
+        super(name);
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File c : files) delete(c);
+        }
+        f.delete();
+    }
+
+    public void testStoreAndLoadFasta() throws Exception {
+        File out = new File("target/packed-test/1M.bpr");
+        delete(out);
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        ps.getPigContext().getProperties().setProperty("biopig.packedread.blocksize", "100000");
+        Util.registerMultiLineQuery(ps, "a = load 'target/test-classes/1M.fas' using gov.jgi.meta.pig.storage.FastaStorage as (id: chararray, d: int, seq: bytearray);");
+        ps.store("a", out.getPath(), "gov.jgi.meta.pig.storage.PackedReadStorage('packed')");
+
+        String script = "b = load '" + out.getPath() + "' using gov.jgi.meta.pig.storage.PackedReadStorage() as (id: chararray, d: int, seq: bytearray, q: bytearray);\n" +
+                "c = group b by '1';\n" +
+                "d = foreach c generate COUNT(b);\n" +
+                "e = filter b by id == '756:1:1:1074:20235' and d == 2;\n" +
+                "f = foreach e generate gov.jgi.meta.pig.eval.UnpackSequence(seq), q;";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("d");
+        assertEquals(Util.createTuple(new Long[] { new Long(10638) }), it.next());
+        assertFalse(it.hasNext());
+
+        it = ps.openIterator("f");
+        Tuple t = it.next();
+        assertEquals("TCGTCGCTGAAGCCTTCTTCCACCTTGGCGTTGAACGCCTCCATGTCCAGTGGAGTCCCCTGGACCCCGCGCCCGC".toLowerCase(), t.get(0));
+        assertNull(t.get(1));
+        assertFalse(it.hasNext());
+    }
+
+    public void testStoreAndLoadFastq() throws Exception {
+        File out = new File("target/packed-test/fastq.bpr");
+        delete(out);
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        Util.registerMultiLineQuery(ps, "a = load 'target/test-classes/testfastq2fasta.fasq' using gov.jgi.meta.pig.storage.FastqStorage('quality') as (id: chararray, d: int, seq: chararray, q: bytearray);");
+        ps.store("a", out.getPath(), "gov.jgi.meta.pig.storage.PackedReadStorage()");
+
+        String script = "b = load '" + out.getPath() + "' using gov.jgi.meta.pig.storage.PackedReadStorage() as (id: chararray, d: int, seq: bytearray, q: bytearray);\n" +
+                "c = foreach b generate id, gov.jgi.meta.pig.eval.UnpackSequence(seq), gov.jgi.meta.pig.eval.UnpackQuality(q);";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("c");
+        Tuple t = it.next();
+        assertEquals("SEQ_ID", t.get(0));
+        assertEquals("GATTTGGGGTTCAAAGCAGTATCGATCAAATAGTAAATCCATTTGTTCAACTCACAGTTT".toLowerCase(), t.get(1));
+        assertEquals("!''*((((***+))%%%++)(%%%%).1***-+*''))**55CCF>>>>>>CCCCCCC65", t.get(2));
+        assertFalse(it.hasNext());
+    }
+
+    public void testStoreBytearraySequences() throws Exception {
+        final List<String> written = new ArrayList<String>();
+        RecordWriter<NullWritable, PackedRead> writer = new RecordWriter<NullWritable, PackedRead>() {
+            public void write(NullWritable key, PackedRead value) {
+                Text seq = value.getSequence();
+                written.add(SequenceString.byteArrayToSequence(Arrays.copyOf(seq.getBytes(), seq.getLength())));
+            }
+
+            public void close(TaskAttemptContext context) {
+            }
+        };
+        TupleFactory tf = TupleFactory.getInstance();
+        DataByteArray raw = new DataByteArray("GATTACA");
+        DataByteArray packed = new DataByteArray(SequenceString.sequenceToByteArray("gattaca"));
+
+        PackedReadStorage store = new PackedReadStorage("raw");
+        store.prepareToWrite(writer);
+        store.putNext(tf.newTuple(Arrays.<Object>asList("r1", 0, raw)));
+        store = new PackedReadStorage("packed");
+        store.prepareToWrite(writer);
+        store.putNext(tf.newTuple(Arrays.<Object>asList("r2", 0, packed)));
+        store.putNext(tf.newTuple(Arrays.<Object>asList("r3", 0, "GATTACA")));
+        assertEquals(Arrays.asList("gattaca", "gattaca", "gattaca"), written);
+
+        // a bytearray sequence is refused until the store is told what it holds
+        store = new PackedReadStorage();
+        store.prepareToWrite(writer);
+        try {
+            store.putNext(tf.newTuple(Arrays.<Object>asList("r4", 0, raw)));
+            fail("a bytearray sequence must need 'packed' or 'raw'");
+        } catch (ExecException e) {
+            // expected
+        }
+        store = new PackedReadStorage("packed");
+        store.prepareToWrite(writer);
+        try {
+            store.putNext(tf.newTuple(Arrays.<Object>asList("r5", 0, new DataByteArray("GATTACA\n"))));
+            fail("bytes that are not a packing must be rejected");
+        } catch (ExecException e) {
+            // expected
+        }
+        try {
+            new PackedReadStorage("fastq");
+            fail("unknown options must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(PackedReadStorageTest.class);
+    }
+}
@@ -0,0 +1,59 @@
+package test.gov.jgi.meta.pig.storage;
+
+import gov.jgi.meta.hadoop.input.SequenceIndex;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.framework.TestCase;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.data.Tuple;
+import test.gov.jgi.meta.Util;
+
+import java.util.Iterator;
+
+/**
+ * SequenceIndexStorage Tester.
+ */
+public class SequenceIndexStorageTest extends TestCase {
+    public SequenceIndexStorageTest(String name) {
+        super(name);
+    }
+
+    public void testGetNext() throws Exception {
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        String script = "a = load 'target/test-classes/threepair.fas' using gov.jgi.meta.pig.storage.SequenceIndexStorage();";
+
+        Util.registerMultiLineQuery(ps, script);
+        Iterator<Tuple> it = ps.openIterator("a");
+
+        assertEquals(Util.createTuple(new Object[] { "756:1:1:1074:20235/1", 76L, 22L, 76, 77 }), it.next());
+        assertEquals(Util.createTuple(new Object[] { "856:1:1:1074:20235/2", 76L, 121L, 76, 77 }), it.next());
+        assertEquals(Util.createTuple(new Object[] { "956:1:1:1074:20235/2", 76L, 220L, 76, 77 }), it.next());
+        assertFalse(it.hasNext());
+    }
+
+    public void testStoreIndex() throws Exception {
+        Configuration conf = new Configuration();
+        FileSystem fs = FileSystem.getLocal(conf);
+        Path file = new Path("target/index-test/pig/1M.fas");
+        fs.copyFromLocalFile(new Path("target/test-classes/1M.fas"), file);
+        fs.delete(SequenceIndex.indexPath(file), true);
+
+        PigServer ps = new PigServer(ExecType.LOCAL);
+        ps.registerQuery("a = load '" + file + "' using gov.jgi.meta.pig.storage.SequenceIndexStorage();");
+        ps.store("a", SequenceIndex.indexPath(file).toString());
+
+        SequenceIndex index = SequenceIndex.open(conf, file);
+        assertEquals(10638, index.size());
+        assertEquals("TCGTCGCTGAAGCCTTCTTCCACCTTGGCGTTGAACGCCTCCATGTCCAGTGGAGTCCCCTGGACCCCGCGCCCGC",
+                     index.getSequence("756:1:1:1074:20235/2"));
+        index.close();
+    }
+
+    public static Test suite() {
+        return new TestSuite(SequenceIndexStorageTest.class);
+    }
+}
@@ -0,0 +1,103 @@
+package test.gov.jgi.meta.sequence;
+
+import gov.jgi.meta.sequence.HammingSegments;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * HammingSegments Tester.
+ */
+public class HammingSegmentsTest extends TestCase {
+    public HammingSegmentsTest(String name) {
+        super(name);
+    }
+
+    private static String random(Random r, int length, String alphabet) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String mutate(Random r, String s, int changes) {
+        char[] c = s.toCharArray();
+        for (int i = 0; i < changes; i++) {
+            c[r.nextInt(c.length)] = "acgt".charAt(r.nextInt(4));
+        }
+        return new String(c);
+    }
+
+    private static int naive(String a, String b) {
+        int d = 0;
+        for (int i = 0; i < a.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) d++;
+        }
+        return d;
+    }
+
+    public void testBounds() throws Exception {
+
+        assertTrue(Arrays.equals(new int[] { 0, 10 }, HammingSegments.bounds(10, 0)));
+        assertTrue(Arrays.equals(new int[] { 0, 3, 6, 10 }, HammingSegments.bounds(10, 2)));
+        assertTrue(Arrays.equals(new int[] { 0, 0, 1, 2 }, HammingSegments.bounds(2, 2)));
+    }
+
+    public void testDistance() throws Exception {
+
+        Random r = new Random(17);
+        for (int length : new int[] { 1, 10, 31, 32, 33, 64, 100 }) {
+            for (int n = 0; n < 200; n++) {
+                String a = random(r, length, "acgt");
+                String b = mutate(r, a, r.nextInt(6));
+                int d = naive(a, b);
+                assertEquals(d, HammingSegments.distance(HammingSegments.encode(a), HammingSegments.encode(b)));
+                assertEquals(Math.min(d, 3), HammingSegments.distance(a, b, 2));
+
+                // not {acgt}, compared base by base
+                String an = a.substring(0, length - 1) + "n";
+                assertNull(HammingSegments.encode(an));
+                assertEquals(Math.min(naive(an, b), 3), HammingSegments.distance(an, b, 2));
+            }
+        }
+        assertEquals(0, HammingSegments.distance("ACGT", "acgt", 0));
+        assertEquals(-1, HammingSegments.distance("acgt", "acg", 4));
+    }
+
+    public void testPigeonhole() throws Exception {
+
+        Random r = new Random(19);
+        for (int distance = 0; distance <= 3; distance++) {
+            for (int n = 0; n < 500; n++) {
+                String a = random(r, 32, "acgt");
+                String b = mutate(r, a, r.nextInt(distance + 3));
+                int first = HammingSegments.firstEqualSegment(a, b, distance);
+                if (naive(a, b) <= distance) {
+                    assertTrue(first >= 0);
+                }
+                int[] bounds = HammingSegments.bounds(32, distance);
+                for (int s = 0; s < first; s++) {
+                    assertFalse(a.substring(bounds[s], bounds[s + 1]).equals(b.substring(bounds[s], bounds[s + 1])));
+                }
+                if (first >= 0) {
+                    assertEquals(a.substring(bounds[first], bounds[first + 1]), b.substring(bounds[first], bounds[first + 1]));
+                }
+            }
+        }
+        assertEquals(-1, HammingSegments.firstEqualSegment("aaaa", "tttt", 1));
+        assertEquals(-1, HammingSegments.firstEqualSegment("aaaa", "aaa", 1));
+
+        // case is ignored, as distance ignores it
+        assertEquals(0, HammingSegments.distance("ACGTacgt", "acgtACGT", 0));
+        assertEquals(0, HammingSegments.firstEqualSegment("ACGTacgt", "acgtACGT", 1));
+        assertEquals(1, HammingSegments.firstEqualSegment("ACGTacgt", "ttttACGT", 1));
+    }
+
+    public static Test suite() {
+        return new TestSuite(HammingSegmentsTest.class);
+    }
+}
@@ -0,0 +1,137 @@
+package test.gov.jgi.meta.sequence;
+
+import gov.jgi.meta.sequence.PackedRead;
+import gov.jgi.meta.sequence.PackedReadFile;
+import gov.jgi.meta.sequence.PackedReadReader;
+import gov.jgi.meta.sequence.PackedReadWriter;
+import gov.jgi.meta.sequence.QualityString;
+import gov.jgi.meta.sequence.SequenceString;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * PackedReadFile Tester.
+ */
+public class PackedReadFileTest extends TestCase {
+    public PackedReadFileTest(String name) {
+        super(name);
+    }
+
+    static final int N = 2000;
+
+    private static String sequence(Random r) {
+        StringBuilder s = new StringBuilder();
+        int n = 20 + r.nextInt(100);
+        for (int i = 0; i < n; i++) {
+            s.append("acgtn".charAt(r.nextInt(5)));
+        }
+        return s.toString();
+    }
+
+    private byte[] write(int blockSize, int level) throws IOException {
+        Random r = new Random(17);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PackedReadWriter writer = new PackedReadWriter(bytes, blockSize, level);
+        PackedRead read = new PackedRead();
+        for (int i = 0; i < N; i++) {
+            read.clear();
+            read.getId().set("read" + i);
+            read.setDirection(i % 3);
+            read.getSequence().set(SequenceString.sequenceToByteArray(sequence(r)));
+            if (i % 2 == 0) {
+                byte[] q = new byte[10];
+                for (int j = 0; j < q.length; j++) q[j] = (byte) ('!' + r.nextInt(41));
+                read.getQuality().set(QualityString.pack(q, 0, q.length, QualityString.PHRED33, i % 4 == 0));
+            }
+            writer.add(read);
+        }
+        assertEquals(N, writer.size());
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    private int read(byte[] file, long start, long end, int columns, boolean[] seen) throws IOException {
+        byte[] sync = PackedReadFile.readHeader(new DataInputStream(new ByteArrayInputStream(file)), "test");
+        start = Math.max(start, PackedReadFile.HEADER_SIZE);
+        ByteArrayInputStream in = new ByteArrayInputStream(file, (int) start, file.length - (int) start);
+        PackedReadReader reader = new PackedReadReader(in, start, end, sync);
+        reader.setColumns(columns);
+
+        PackedRead read = new PackedRead();
+        int n = 0;
+        while (reader.next(read)) {
+            n++;
+            assertTrue(reader.getBlockStart() >= start && reader.getBlockStart() < end);
+            if ((columns & (1 << PackedReadFile.ID)) != 0) {
+                int i = Integer.parseInt(read.getId().toString().substring(4));
+                assertFalse(seen[i]);
+                seen[i] = true;
+                assertEquals(i % 3, read.getDirection());
+                assertEquals(i % 2 == 0 ? (i % 4 == 0 ? 6 : 11) : 0, read.getQuality().getLength());
+            } else {
+                assertEquals(0, read.getId().getLength());
+                assertEquals(0, read.getDirection());
+            }
+        }
+        reader.close();
+        return n;
+    }
+
+    public void testRoundTrip() throws Exception {
+        byte[] file = write(1 << 20, 6);
+        Random r = new Random(17);
+
+        byte[] sync = PackedReadFile.readHeader(new DataInputStream(new ByteArrayInputStream(file)), "test");
+        PackedReadReader reader = new PackedReadReader(new ByteArrayInputStream(file, PackedReadFile.HEADER_SIZE, file.length), PackedReadFile.HEADER_SIZE, file.length, sync);
+        PackedRead read = new PackedRead();
+        for (int i = 0; i < N; i++) {
+            assertTrue(reader.next(read));
+            assertEquals("read" + i, read.getId().toString());
+            assertEquals(sequence(r), SequenceString.byteArrayToSequence(read.getSequence()));
+            if (i % 2 == 0) {
+                for (int j = 0; j < 10; j++) r.nextInt(41);
+            }
+        }
+        assertFalse(reader.next(read));
+        reader.close();
+    }
+
+    public void testSplits() throws Exception {
+        for (int level : new int[] {0, 6}) {
+            byte[] file = write(4096, level);
+            for (int splitSize : new int[] {1000, 4096, 7777, file.length}) {
+                boolean[] seen = new boolean[N];
+                int n = 0;
+                for (long start = 0; start < file.length; start += splitSize) {
+                    n += read(file, start, Math.min(start + splitSize, file.length), PackedReadFile.ALL_COLUMNS, seen);
+                }
+                assertEquals("split size " + splitSize, N, n);
+            }
+        }
+    }
+
+    public void testColumns() throws Exception {
+        byte[] file = write(4096, 6);
+        assertEquals(N, read(file, 0, file.length, 1 << PackedReadFile.SEQUENCE, new boolean[N]));
+        assertEquals(N, read(file, 0, file.length, 1 << PackedReadFile.ID | 1 << PackedReadFile.DIRECTION | 1 << PackedReadFile.QUALITY, new boolean[N]));
+    }
+
+    public void testNotPackedReadFile() throws Exception {
+        try {
+            PackedReadFile.readHeader(new DataInputStream(new ByteArrayInputStream(">read1\nacgt\n".getBytes())), "test");
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(PackedReadFileTest.class);
+    }
+}
@@ -0,0 +1,107 @@
+package test.gov.jgi.meta.sequence;
+
+import gov.jgi.meta.sequence.QualityString;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.framework.TestCase;
+import org.junit.Assert;
+
+/**
+ * QualityString Tester.
+ */
+public class QualityStringTest extends TestCase {
+    public QualityStringTest(String name) {
+        super(name);
+    }
+
+    static final String QUALITY = "!''*((((***+))%%%++)(%%%%).1***-+*''))**55CCF>>>>>>CCCCCCC65";
+
+    public void testPackUnpackRaw() throws Exception {
+        byte[] src = ("xx" + QUALITY + "yy").getBytes("ISO-8859-1");
+        byte[] packed = QualityString.pack(src, 2, 2 + QUALITY.length(), QualityString.PHRED33, false);
+
+        Assert.assertEquals(QualityString.packedLength(QUALITY.length(), false), packed.length);
+        Assert.assertEquals(QUALITY.length(), QualityString.numBases(packed));
+        Assert.assertEquals(QUALITY, QualityString.unpack(packed, QualityString.PHRED33));
+        for (int i = 0; i < QUALITY.length(); i++) {
+            Assert.assertEquals(QUALITY.charAt(i) - 33, QualityString.scoreAt(packed, i));
+        }
+
+        // phred+64 input re-encoded as phred+33
+        StringBuilder q64 = new StringBuilder();
+        for (int i = 0; i < QUALITY.length(); i++) {
+            q64.append((char) (QUALITY.charAt(i) + 31));
+        }
+        byte[] b = q64.toString().getBytes("ISO-8859-1");
+        Assert.assertEquals(QUALITY, QualityString.unpack(QualityString.pack(b, 0, b.length, QualityString.PHRED64, false), QualityString.PHRED33));
+    }
+
+    public void testPackBinned() throws Exception {
+        for (int n = 0; n <= 5; n++) {
+            String q = QUALITY.substring(0, QUALITY.length() - n);
+            byte[] src = q.getBytes("ISO-8859-1");
+            byte[] packed = QualityString.pack(src, 0, src.length, QualityString.PHRED33, true);
+
+            Assert.assertEquals(QualityString.packedLength(q.length(), true), packed.length);
+            Assert.assertEquals(q.length(), QualityString.numBases(packed));
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < q.length(); i++) {
+                Assert.assertEquals(QualityString.bin(q.charAt(i) - 33), QualityString.scoreAt(packed, i));
+                expected.append((char) (QualityString.bin(q.charAt(i) - 33) + 33));
+            }
+            Assert.assertEquals(expected.toString(), QualityString.unpack(packed, QualityString.PHRED33));
+        }
+    }
+
+    public void testBin() throws Exception {
+        Assert.assertEquals(2, QualityString.bin(0));
+        Assert.assertEquals(6, QualityString.bin(9));
+        Assert.assertEquals(15, QualityString.bin(10));
+        Assert.assertEquals(22, QualityString.bin(20));
+        Assert.assertEquals(27, QualityString.bin(29));
+        Assert.assertEquals(33, QualityString.bin(30));
+        Assert.assertEquals(37, QualityString.bin(39));
+        Assert.assertEquals(40, QualityString.bin(41));
+    }
+
+    public void testStatistics() throws Exception {
+        byte[] src = QUALITY.getBytes("ISO-8859-1");
+        for (int n = 0; n < 2; n++) {
+            // an odd length exercises the pad nibble
+            int end = src.length - n;
+            for (boolean binned : new boolean[] {false, true}) {
+                byte[] packed = QualityString.pack(src, 0, end, QualityString.PHRED33, binned);
+                for (int minQ = 0; minQ <= 42; minQ++) {
+                    int below = 0;
+                    for (int i = 0; i < end; i++) {
+                        if (QualityString.scoreAt(packed, i) < minQ) below++;
+                    }
+                    Assert.assertEquals("minQ " + minQ, below, QualityString.countBelow(packed, minQ));
+                }
+                double sum = 0;
+                for (int i = 0; i < end; i++) {
+                    sum += QualityString.scoreAt(packed, i);
+                }
+                Assert.assertEquals(sum / end, QualityString.meanQuality(packed), 1e-9);
+            }
+        }
+    }
+
+    public void testTrimLength() throws Exception {
+        byte[] good = "IIIIIIIIII".getBytes("ISO-8859-1");
+        Assert.assertEquals(10, QualityString.trimLength(QualityString.pack(good, 0, good.length, QualityString.PHRED33, false), 20));
+
+        // a single good base in the bad tail does not stop the trim
+        byte[] tail = "IIIIII##I###".getBytes("ISO-8859-1");
+        Assert.assertEquals(6, QualityString.trimLength(QualityString.pack(tail, 0, tail.length, QualityString.PHRED33, false), 20));
+        Assert.assertEquals(6, QualityString.trimLength(QualityString.pack(tail, 0, tail.length, QualityString.PHRED33, true), 20));
+
+        byte[] bad = "####".getBytes("ISO-8859-1");
+        Assert.assertEquals(0, QualityString.trimLength(QualityString.pack(bad, 0, bad.length, QualityString.PHRED33, true), 20));
+        Assert.assertEquals(0, QualityString.numBases(QualityString.pack(bad, 0, 0, QualityString.PHRED33, true)));
+    }
+
+    public static Test suite() {
+        return new TestSuite(QualityStringTest.class);
+    }
+}
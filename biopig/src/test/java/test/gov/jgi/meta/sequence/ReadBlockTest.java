@@ -0,0 +1,67 @@
+package test.gov.jgi.meta.sequence;
+
+import gov.jgi.meta.sequence.ReadBlock;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import junit.framework.TestCase;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.Text;
+
+import java.io.IOException;
+
+/**
+ * ReadBlock Tester.
+ */
+public class ReadBlockTest extends TestCase {
+    public ReadBlockTest(String name) {
+        super(name);
+    }
+
+    private static void add(ReadBlock block, String id, String sequence) throws IOException {
+        byte[] i = id.getBytes("ISO-8859-1");
+        byte[] s = sequence.getBytes("ISO-8859-1");
+        block.add(i, i.length, s, s.length);
+    }
+
+    public void testReadRecords() throws Exception {
+        String dna = "TGCAGCTCAACANCGTCGGCTACGACNNCACCNNNGAGCGCATCGGCTNCNNNANNNCCTNNNNNNNNCGGGAGGT";
+        ReadBlock block = new ReadBlock();
+        add(block, "756:1:1:1074:20235/1", dna);
+        // the dna is packed three bases a byte, after the id, direction, encoding and length
+        assertEquals(1 + 18 + 1 + 1 + 1 + 26, block.getLength());
+        add(block, "756:1:1:1074:20235/2/extra", "acgt");
+        add(block, "gi|12345", "MKVLAAGIVGX");
+        add(block, "read/a", "");
+        assertEquals(4, block.size());
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(block.getData(), block.getLength());
+        Text id = new Text();
+        Text sequence = new Text();
+
+        assertEquals(1, ReadBlock.readRecord(in, id, sequence));
+        assertEquals("756:1:1:1074:20235", id.toString());
+        assertEquals(dna.toLowerCase(), sequence.toString());
+
+        assertEquals(2, ReadBlock.readRecord(in, id, sequence));
+        assertEquals("756:1:1:1074:20235", id.toString());
+        assertEquals("acgt", sequence.toString());
+
+        assertEquals(0, ReadBlock.readRecord(in, id, sequence));
+        assertEquals("gi|12345", id.toString());
+        assertEquals("mkvlaagivgx", sequence.toString());
+
+        assertEquals(0, ReadBlock.readRecord(in, id, sequence));
+        assertEquals("read/a", id.toString());
+        assertEquals("", sequence.toString());
+        assertEquals(block.getLength(), in.getPosition());
+
+        block.clear();
+        assertEquals(0, block.size());
+        assertEquals(0, block.getLength());
+    }
+
+    public static Test suite() {
+        return new TestSuite(ReadBlockTest.class);
+    }
+}
@@ -0,0 +1,121 @@
+package test.gov.jgi.meta.sequence;
+
+import gov.jgi.meta.sequence.RollingKmer;
+import gov.jgi.meta.sequence.SequenceString;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.junit.Assert;
+
+/**
+ * RollingKmer Tester.
+ */
+public class RollingKmerTest extends TestCase {
+    public RollingKmerTest(String name) {
+        super(name);
+    }
+
+    public void testRollingMatchesEncode() throws Exception {
+
+        String s = "tgcagctcaacancgtcggctacgacnncaccgagcgcatcggctacgggaggtcgcccgcgc";
+        byte[] packed = SequenceString.sequenceToByteArray(s);
+
+        for (int k = 1; k <= 20; k++) {
+            RollingKmer kmer = new RollingKmer(k);
+            int emitted = 0;
+            for (int i = 0; i < s.length(); i++) {
+                if (kmer.add(SequenceString.baseAt(packed, i))) {
+                    String expected = s.substring(i - k + 1, i + 1);
+                    Assert.assertFalse(expected.contains("n"));
+                    Assert.assertEquals(expected, RollingKmer.decode(kmer.get(), k));
+                    Assert.assertEquals(RollingKmer.encode(packed, i - k + 1, k), kmer.get());
+                    emitted++;
+                }
+            }
+            int expectedCount = 0;
+            for (int i = 0; i + k <= s.length(); i++) {
+                if (!s.substring(i, i + k).contains("n")) expectedCount++;
+            }
+            Assert.assertEquals(expectedCount, emitted);
+        }
+    }
+
+    public void testLongKmers() throws Exception {
+
+        String s = "acgtacgtacgtacgtacgtacgtacgtacgtggccttaaggccttaaggcc";
+        byte[] packed = SequenceString.sequenceToByteArray(s);
+
+        RollingKmer kmer = new RollingKmer(40);
+        for (int i = 0; i < s.length(); i++) {
+            if (kmer.add(SequenceString.baseAt(packed, i))) {
+                Assert.assertEquals(s.substring(i - 39, i + 1), RollingKmer.decode(kmer.getHigh(), kmer.get(), 40));
+            }
+        }
+    }
+
+    private static String reverseComplement(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = s.length() - 1; i >= 0; i--) {
+            sb.append("tgca".charAt("acgt".indexOf(s.charAt(i))));
+        }
+        return sb.toString();
+    }
+
+    public void testCanonical() throws Exception {
+
+        String s = "acgtttgcagctcaacancgtcggctacgacnncaccgagcgcatcggctacgggaggtcgcccgcgcaatttggcacgtatatcgcgcatgcagtcgatcggctagctaggaacccaattgca";
+        byte[] packed = SequenceString.sequenceToByteArray(s);
+
+        int[] sizes = {1, 2, 4, 15, 31, 32, 33, 40, 63, 64};
+        for (int k : sizes) {
+            RollingKmer kmer = new RollingKmer(k);
+            for (int i = 0; i < s.length(); i++) {
+                if (kmer.add(SequenceString.baseAt(packed, i))) {
+                    String forward = s.substring(i - k + 1, i + 1);
+                    String reverse = reverseComplement(forward);
+                    String canonical = (forward.compareTo(reverse) > 0 ? reverse : forward);
+
+                    Assert.assertEquals(reverse, RollingKmer.decode(kmer.getReverseHigh(), kmer.getReverse(), k));
+                    Assert.assertEquals("k = " + k, canonical,
+                                        RollingKmer.decode(kmer.getCanonicalHigh(), kmer.getCanonical(), k));
+                    Assert.assertArrayEquals(SequenceString.sequenceToByteArray(canonical),
+                                             RollingKmer.toPacked(kmer.getCanonicalHigh(), kmer.getCanonical(), k));
+                }
+            }
+        }
+    }
+
+    public void testOrdering() throws Exception {
+
+        Assert.assertTrue(RollingKmer.encode(SequenceString.sequenceToByteArray("aacg"), 0, 4)
+                          < RollingKmer.encode(SequenceString.sequenceToByteArray("aact"), 0, 4));
+        Assert.assertTrue(RollingKmer.encode(SequenceString.sequenceToByteArray("gttt"), 0, 4)
+                          < RollingKmer.encode(SequenceString.sequenceToByteArray("taaa"), 0, 4));
+    }
+
+    public void testEncodeValidity() throws Exception {
+
+        // the all-t 32-mer codes to -1 and is still a valid k-mer
+        StringBuilder t32 = new StringBuilder();
+        for (int i = 0; i < 32; i++) t32.append('t');
+        byte[] packed = SequenceString.sequenceToByteArray(t32.toString());
+        Assert.assertTrue(RollingKmer.isEncodable(packed, 0, 32));
+        Assert.assertEquals(-1L, RollingKmer.encode(packed, 0, 32));
+
+        packed = SequenceString.sequenceToByteArray("acgntacg");
+        Assert.assertTrue(RollingKmer.isEncodable(packed, 0, 3));
+        Assert.assertTrue(RollingKmer.isEncodable(packed, 4, 4));
+        Assert.assertFalse(RollingKmer.isEncodable(packed, 1, 4));
+        Assert.assertFalse(RollingKmer.isEncodable(packed, 0, 0));
+        try {
+            RollingKmer.encode(packed, 1, 4);
+            Assert.fail("a range with an n must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public static Test suite() {
+        return new TestSuite(RollingKmerTest.class);
+    }
+}
@@ -97,6 +97,78 @@ public class SequenceStringTest extends TestCase {
 
 
 
+   public void testSubseqAllRanges() throws Exception {
+
+      String s2 = "TGCAGCTCAACANCGTCGGCTACGACNNCACCNNNGAGCGCATCGGCTNCNNNANNNCCTNNNNNNNNCGGGAGGT".toLowerCase();
+      byte[] ss2 = SequenceString.sequenceToByteArray(s2);
+
+      for (int start = 0; start < s2.length(); start++) {
+         for (int end = start + 1; end <= s2.length(); end++) {
+            String expected = s2.substring(start, end);
+            byte[] sub = SequenceString.subseq(ss2, start, end);
+            Assert.assertArrayEquals("subseq(" + start + "," + end + ")", SequenceString.sequenceToByteArray(expected), sub);
+            Assert.assertEquals(expected.contains("n"), SequenceString.containsN(ss2, start, end));
+         }
+         Assert.assertEquals("atgcn".indexOf(s2.charAt(start)), SequenceString.baseAt(ss2, start));
+      }
+   }
+
+   public void testPackAllBaseGroups() throws Exception {
+
+      String alphabet = "atgcn";
+      for (int i = 0; i < 5; i++) {
+         for (int j = 0; j < 5; j++) {
+            for (int k = 0; k < 5; k++) {
+               String s = "" + alphabet.charAt(i) + alphabet.charAt(j) + alphabet.charAt(k);
+               byte[] ss = SequenceString.sequenceToByteArray(s);
+               Assert.assertEquals(1, ss.length);
+               Assert.assertEquals(32 + i * 25 + j * 5 + k, ss[0] & 0xff);
+               Assert.assertEquals(s, SequenceString.byteArrayToSequence(ss));
+            }
+            String s2 = "" + alphabet.charAt(i) + alphabet.charAt(j);
+            Assert.assertEquals(32 + 192 + i * 5 + j, SequenceString.sequenceToByteArray(s2)[0] & 0xff);
+            Assert.assertEquals(s2, SequenceString.byteArrayToSequence(SequenceString.sequenceToByteArray(s2)));
+         }
+         String s1 = "" + alphabet.charAt(i);
+         Assert.assertEquals(32 + 128 + i, SequenceString.sequenceToByteArray(s1)[0] & 0xff);
+      }
+   }
+
+   public void testPackBytesWithOffsets() throws Exception {
+
+      String s2 = "TGCAGCTCAACANCGTCGGCTACGACNNCACCNNNGAGCGCATCGGCTNCNNNANNNCCTNNNNNNNNCGGGAGGT";
+      byte[] ascii = ("xx" + s2 + "yy").getBytes("ISO-8859-1");
+
+      byte[] packed = new byte[SequenceString.packedLength(s2.length()) + 1];
+      int n = SequenceString.pack(ascii, 2, 2 + s2.length(), packed, 1);
+      Assert.assertEquals(SequenceString.packedLength(s2.length()), n);
+      Assert.assertEquals(s2.length(), SequenceString.numBases(packed, 1, n));
+
+      byte[] unpacked = new byte[s2.length()];
+      Assert.assertEquals(s2.length(), SequenceString.unpack(packed, 1, n, unpacked, 0));
+      Assert.assertEquals(s2.toLowerCase(), new String(unpacked, "ISO-8859-1"));
+
+      // the byte and string paths must agree on the wire format
+      byte[] fromString = SequenceString.sequenceToByteArray(s2.toLowerCase());
+      for (int i = 0; i < fromString.length; i++) {
+         Assert.assertEquals(fromString[i], packed[i + 1]);
+      }
+   }
+
+   public void testIsPacked() throws Exception {
+      for (String s : new String[] {"", "a", "ac", "acg", "acgtn", "acgtnac"}) {
+         byte[] packed = SequenceString.sequenceToByteArray(s);
+         Assert.assertTrue(s, SequenceString.isPacked(packed, 0, packed.length));
+      }
+      // a one or two base byte may only end the sequence
+      byte[] packed = SequenceString.sequenceToByteArray("acgt");
+      byte[] twice = new byte[2 * packed.length];
+      System.arraycopy(packed, 0, twice, 0, packed.length);
+      System.arraycopy(packed, 0, twice, packed.length, packed.length);
+      Assert.assertFalse(SequenceString.isPacked(twice, 0, twice.length));
+      Assert.assertFalse(SequenceString.isPacked("acgt\n".getBytes("ISO-8859-1"), 0, 5));
+   }
+
     /**
      *
      * Method: initHash()